@@ -0,0 +1,248 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link CallTracer} collecting call counts, latency and item count histograms
+ * and error codes per interface and operation number.
+ * <br/>
+ * Install it using {@link org.openscada.opc.dcom.common.impl.Helper#setCallTracer(CallTracer)}.
+ */
+public class CallStatistics implements CallTracer
+{
+    /**
+     * The statistics of one operation of one interface
+     */
+    public static class Entry
+    {
+        private final String interfaceName;
+
+        private final int opnum;
+
+        private final Histogram latency = new Histogram ();
+
+        private final Histogram items = new Histogram ();
+
+        private final AtomicLong failures = new AtomicLong ();
+
+        private final ConcurrentMap<Integer, AtomicLong> errorCodes = new ConcurrentHashMap<Integer, AtomicLong> ();
+
+        public Entry ( final String interfaceName, final int opnum )
+        {
+            this.interfaceName = interfaceName;
+            this.opnum = opnum;
+        }
+
+        void record ( final int items, final long nanos, final int errorCode )
+        {
+            this.latency.record ( nanos / 1000L );
+            this.items.record ( items );
+
+            if ( errorCode != Constants.S_OK )
+            {
+                if ( errorCode < 0 )
+                {
+                    this.failures.incrementAndGet ();
+                }
+
+                AtomicLong counter = this.errorCodes.get ( errorCode );
+                if ( counter == null )
+                {
+                    final AtomicLong newCounter = new AtomicLong ();
+                    counter = this.errorCodes.putIfAbsent ( errorCode, newCounter );
+                    if ( counter == null )
+                    {
+                        counter = newCounter;
+                    }
+                }
+                counter.incrementAndGet ();
+            }
+        }
+
+        public String getInterfaceName ()
+        {
+            return this.interfaceName;
+        }
+
+        public int getOpnum ()
+        {
+            return this.opnum;
+        }
+
+        public long getCount ()
+        {
+            return this.latency.getCount ();
+        }
+
+        /**
+         * Get the number of calls which failed, including calls which threw an exception
+         * @return the number of failed calls
+         */
+        public long getFailures ()
+        {
+            return this.failures.get ();
+        }
+
+        /**
+         * Get the call latency histogram
+         * @return the latency histogram in microseconds
+         */
+        public Histogram getLatency ()
+        {
+            return this.latency;
+        }
+
+        /**
+         * Get the histogram of the number of items per call
+         * @return the item count histogram
+         */
+        public Histogram getItems ()
+        {
+            return this.items;
+        }
+
+        /**
+         * Get the result codes other than {@link Constants#S_OK}
+         * @return a copy of the result code to count map
+         */
+        public Map<Integer, Long> getErrorCodes ()
+        {
+            final Map<Integer, Long> result = new HashMap<Integer, Long> ();
+            for ( final Map.Entry<Integer, AtomicLong> entry : this.errorCodes.entrySet () )
+            {
+                result.put ( entry.getKey (), entry.getValue ().get () );
+            }
+            return result;
+        }
+
+        @Override
+        public String toString ()
+        {
+            final StringBuilder sb = new StringBuilder ();
+            sb.append ( String.format ( "%s#%d: calls=%d, failures=%d, latency[us]={%s}, items={%s}", this.interfaceName, this.opnum, getCount (), getFailures (), this.latency, this.items ) );
+            for ( final Map.Entry<Integer, Long> entry : getErrorCodes ().entrySet () )
+            {
+                sb.append ( String.format ( ", %08X=%d", entry.getKey (), entry.getValue () ) );
+            }
+            return sb.toString ();
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<Integer, Entry>> entries = new ConcurrentHashMap<String, ConcurrentMap<Integer, Entry>> ();
+
+    public void callStarted ( final String interfaceName, final int opnum )
+    {
+    }
+
+    public void callCompleted ( final String interfaceName, final int opnum, final int items, final long nanos, final int errorCode )
+    {
+        getOrCreateEntry ( interfaceName, opnum ).record ( items, nanos, errorCode );
+    }
+
+    private Entry getOrCreateEntry ( final String interfaceName, final int opnum )
+    {
+        ConcurrentMap<Integer, Entry> operations = this.entries.get ( interfaceName );
+        if ( operations == null )
+        {
+            final ConcurrentMap<Integer, Entry> newOperations = new ConcurrentHashMap<Integer, Entry> ();
+            operations = this.entries.putIfAbsent ( interfaceName, newOperations );
+            if ( operations == null )
+            {
+                operations = newOperations;
+            }
+        }
+
+        Entry entry = operations.get ( opnum );
+        if ( entry == null )
+        {
+            final Entry newEntry = new Entry ( interfaceName, opnum );
+            entry = operations.putIfAbsent ( opnum, newEntry );
+            if ( entry == null )
+            {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Get the statistics of one operation
+     * @param interfaceName the interface name
+     * @param opnum the operation number
+     * @return the statistics or <code>null</code> if the operation was never called
+     */
+    public Entry getEntry ( final String interfaceName, final int opnum )
+    {
+        final ConcurrentMap<Integer, Entry> operations = this.entries.get ( interfaceName );
+        return operations == null ? null : operations.get ( opnum );
+    }
+
+    /**
+     * Get the statistics of all operations that were called
+     * @return the entries sorted by interface name and operation number
+     */
+    public List<Entry> getEntries ()
+    {
+        final List<Entry> result = new ArrayList<Entry> ();
+        for ( final ConcurrentMap<Integer, Entry> operations : this.entries.values () )
+        {
+            result.addAll ( operations.values () );
+        }
+        Collections.sort ( result, new Comparator<Entry> () {
+
+            public int compare ( final Entry o1, final Entry o2 )
+            {
+                final int result = o1.getInterfaceName ().compareTo ( o2.getInterfaceName () );
+                if ( result != 0 )
+                {
+                    return result;
+                }
+                return o1.getOpnum () - o2.getOpnum ();
+            }
+        } );
+        return result;
+    }
+
+    public void reset ()
+    {
+        this.entries.clear ();
+    }
+
+    @Override
+    public String toString ()
+    {
+        final StringBuilder sb = new StringBuilder ();
+        for ( final Entry entry : getEntries () )
+        {
+            sb.append ( entry ).append ( '\n' );
+        }
+        return sb.toString ();
+    }
+}
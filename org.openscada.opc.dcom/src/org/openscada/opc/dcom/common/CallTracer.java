@@ -0,0 +1,47 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.common;
+
+/**
+ * Receives the outcome of every DCOM call made through {@link org.openscada.opc.dcom.common.impl.Helper}.
+ * <br/>
+ * Implementations are called from the thread performing the call and must be
+ * thread safe, fast and must not throw exceptions.
+ */
+public interface CallTracer
+{
+    /**
+     * A DCOM call is about to be made. Every call to this method is followed by a call to
+     * {@link #callCompleted(String, int, int, long, int)} from the same thread.
+     * @param interfaceName the name of the interface, e.g. <code>OPCSyncIO</code>
+     * @param opnum the operation number of the call
+     */
+    public abstract void callStarted ( String interfaceName, int opnum );
+
+    /**
+     * A DCOM call completed
+     * @param interfaceName the name of the interface, e.g. <code>OPCSyncIO</code>
+     * @param opnum the operation number of the call
+     * @param items the number of items passed to the call or zero if the call does not operate on items
+     * @param nanos the duration of the call in nanoseconds
+     * @param errorCode the result code of the call, {@link Constants#S_OK} on success
+     */
+    public abstract void callCompleted ( String interfaceName, int opnum, int items, long nanos, int errorCode );
+}
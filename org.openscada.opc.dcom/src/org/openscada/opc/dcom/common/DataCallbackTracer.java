@@ -0,0 +1,46 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.common;
+
+/**
+ * Receives the outcome of every data change callback handled by {@link org.openscada.opc.dcom.da.impl.OPCDataCallback}.
+ * <br/>
+ * Implementations are called from the callback thread and must be
+ * thread safe, fast and must not throw exceptions.
+ */
+public interface DataCallbackTracer
+{
+    /**
+     * A data change callback was received and is about to be decoded. If the callback is handled
+     * successfully this is followed by a call to {@link #dataChangeCompleted(int, int, long, long)}
+     * from the same thread.
+     * @param serverGroupHandle the server handle of the group
+     */
+    public abstract void dataChangeStarted ( int serverGroupHandle );
+
+    /**
+     * A data change callback was handled
+     * @param serverGroupHandle the server handle of the group
+     * @param items the number of items in the callback
+     * @param decodeNanos the time it took to decode the callback data in nanoseconds
+     * @param dispatchNanos the time the listener took to process the callback in nanoseconds
+     */
+    public abstract void dataChangeCompleted ( int serverGroupHandle, int items, long decodeNanos, long dispatchNanos );
+}
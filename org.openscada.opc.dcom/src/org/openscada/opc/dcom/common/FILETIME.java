@@ -124,6 +124,33 @@ public class FILETIME
         return ft;
     }
 
+    /**
+     * Create a FILETIME from a Java timestamp
+     * @param millis the milliseconds since the Java epoch
+     * @return the new FILETIME
+     */
+    public static FILETIME fromMillis ( final long millis )
+    {
+        final long ticks = ( millis + 11644473600000L ) * 10000L;
+        return new FILETIME ( (int) ( ticks >>> 32 ), (int)ticks );
+    }
+
+    /**
+     * Convert to a structure as it is used on the wire
+     * @return the new structure
+     * @throws JIException
+     * @see #getStruct()
+     */
+    public JIStruct toStruct () throws JIException
+    {
+        final JIStruct struct = new JIStruct ();
+
+        struct.addMember ( Integer.valueOf ( this.low ) );
+        struct.addMember ( Integer.valueOf ( this.high ) );
+
+        return struct;
+    }
+
     public Calendar asCalendar ()
     {
         final Calendar c = Calendar.getInstance ();
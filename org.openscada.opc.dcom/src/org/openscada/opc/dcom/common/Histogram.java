@@ -0,0 +1,167 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram using a fixed amount of memory.
+ * <br/>
+ * Values are counted in power of two buckets. Bucket 0 holds the value 0, bucket <q>n</q>
+ * holds the values from 2<sup>n-1</sup> to 2<sup>n</sup>-1. The last bucket holds all larger
+ * values. Percentiles are reported as the upper bound of the bucket, so they are exact to a factor of two.
+ */
+public class Histogram
+{
+    public static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray ( BUCKETS );
+
+    private final AtomicLong count = new AtomicLong ();
+
+    private final AtomicLong total = new AtomicLong ();
+
+    private final AtomicLong max = new AtomicLong ();
+
+    /**
+     * Record a value
+     * @param value the value, negative values are counted as zero
+     */
+    public void record ( long value )
+    {
+        if ( value < 0 )
+        {
+            value = 0;
+        }
+
+        this.buckets.incrementAndGet ( bucketOf ( value ) );
+        this.count.incrementAndGet ();
+        this.total.addAndGet ( value );
+
+        long current = this.max.get ();
+        while ( value > current && !this.max.compareAndSet ( current, value ) )
+        {
+            current = this.max.get ();
+        }
+    }
+
+    private static int bucketOf ( final long value )
+    {
+        return Math.min ( 64 - Long.numberOfLeadingZeros ( value ), BUCKETS - 1 );
+    }
+
+    /**
+     * Get the largest value a bucket can hold
+     * @param bucket the bucket index
+     * @return the upper bound of the bucket
+     */
+    public static long getUpperBound ( final int bucket )
+    {
+        if ( bucket >= BUCKETS - 1 )
+        {
+            return Long.MAX_VALUE;
+        }
+        return ( 1L << bucket ) - 1;
+    }
+
+    public long getCount ()
+    {
+        return this.count.get ();
+    }
+
+    public long getTotal ()
+    {
+        return this.total.get ();
+    }
+
+    public long getMax ()
+    {
+        return this.max.get ();
+    }
+
+    public long getMean ()
+    {
+        final long count = this.count.get ();
+        return count == 0 ? 0 : this.total.get () / count;
+    }
+
+    /**
+     * Get a copy of the bucket counters
+     * @return the bucket counters
+     */
+    public long[] getBuckets ()
+    {
+        final long[] result = new long[BUCKETS];
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            result[i] = this.buckets.get ( i );
+        }
+        return result;
+    }
+
+    /**
+     * Get an estimate of a percentile
+     * @param percentile the percentile, from 0.0 to 100.0
+     * @return the upper bound of the bucket containing the percentile, but never more than the maximum value
+     */
+    public long getPercentile ( final double percentile )
+    {
+        final long[] buckets = getBuckets ();
+        long count = 0;
+        for ( final long bucket : buckets )
+        {
+            count += bucket;
+        }
+        if ( count == 0 )
+        {
+            return 0;
+        }
+
+        final long rank = (long)Math.ceil ( count * percentile / 100.0 );
+        long sum = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            sum += buckets[i];
+            if ( sum >= rank && sum > 0 )
+            {
+                return Math.min ( getUpperBound ( i ), getMax () );
+            }
+        }
+        return getMax ();
+    }
+
+    public void reset ()
+    {
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            this.buckets.set ( i, 0 );
+        }
+        this.count.set ( 0 );
+        this.total.set ( 0 );
+        this.max.set ( 0 );
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "count=%d, mean=%d, p50=%d, p90=%d, p99=%d, max=%d", getCount (), getMean (), getPercentile ( 50 ), getPercentile ( 90 ), getPercentile ( 99 ), getMax () );
+    }
+}
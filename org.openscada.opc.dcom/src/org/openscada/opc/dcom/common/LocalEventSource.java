@@ -0,0 +1,49 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.common;
+
+import org.jinterop.dcom.common.JIException;
+
+/**
+ * A COM object living in the same VM which accepts event handlers directly
+ * instead of through DCOM connection points.
+ * <br/>
+ * Objects received through DCOM never implement this interface. It is
+ * implemented by in-process objects, like simulated servers, which are
+ * passed in place of an {@link org.jinterop.dcom.core.IJIComObject}.
+ */
+public interface LocalEventSource
+{
+    /**
+     * Attach an event handler
+     * @param interfaceIdentifier the IID of the event interface
+     * @param handler the local event handler, e.g. an {@link org.openscada.opc.dcom.da.impl.OPCDataCallback}
+     * @return the identifier of the connection, used for detaching the handler
+     * @throws JIException if the handler cannot be attached
+     */
+    public abstract String attachEventHandler ( String interfaceIdentifier, Object handler ) throws JIException;
+
+    /**
+     * Detach an event handler
+     * @param identifier the identifier returned by {@link #attachEventHandler(String, Object)}
+     * @throws JIException if the handler cannot be detached
+     */
+    public abstract void detachEventHandler ( String identifier ) throws JIException;
+}
@@ -21,12 +21,16 @@
 
 package org.openscada.opc.dcom.common.impl;
 
+import org.jinterop.dcom.common.JIException;
 import org.jinterop.dcom.core.IJIComObject;
+import org.jinterop.dcom.core.JICallBuilder;
 
 public class BaseCOMObject
 {
     private IJIComObject comObject = null;
 
+    private final String interfaceName = getClass ().getSimpleName ();
+
     /**
      * Create a new base COM object
      * 
@@ -42,4 +46,54 @@ public class BaseCOMObject
     {
         return this.comObject;
     }
+
+    /**
+     * Make a call on the wrapped COM object
+     * @param callObject the call object
+     * @return the result of the call
+     * @throws JIException
+     * @see Helper#call(IJIComObject, JICallBuilder, String, int, boolean)
+     */
+    protected Object[] call ( final JICallBuilder callObject ) throws JIException
+    {
+        return Helper.call ( getCOMObject (), callObject, this.interfaceName, 0, false );
+    }
+
+    /**
+     * Make a call on the wrapped COM object
+     * @param callObject the call object
+     * @param items the number of items passed to the call
+     * @return the result of the call
+     * @throws JIException
+     * @see Helper#call(IJIComObject, JICallBuilder, String, int, boolean)
+     */
+    protected Object[] call ( final JICallBuilder callObject, final int items ) throws JIException
+    {
+        return Helper.call ( getCOMObject (), callObject, this.interfaceName, items, false );
+    }
+
+    /**
+     * Make a call on the wrapped COM object but do not treat S_FALSE as error condition for the whole call
+     * @param callObject the call object
+     * @return the result of the call
+     * @throws JIException
+     * @see Helper#call(IJIComObject, JICallBuilder, String, int, boolean)
+     */
+    protected Object[] callRespectSFALSE ( final JICallBuilder callObject ) throws JIException
+    {
+        return Helper.call ( getCOMObject (), callObject, this.interfaceName, 0, true );
+    }
+
+    /**
+     * Make a call on the wrapped COM object but do not treat S_FALSE as error condition for the whole call
+     * @param callObject the call object
+     * @param items the number of items passed to the call
+     * @return the result of the call
+     * @throws JIException
+     * @see Helper#call(IJIComObject, JICallBuilder, String, int, boolean)
+     */
+    protected Object[] callRespectSFALSE ( final JICallBuilder callObject, final int items ) throws JIException
+    {
+        return Helper.call ( getCOMObject (), callObject, this.interfaceName, items, true );
+    }
 }
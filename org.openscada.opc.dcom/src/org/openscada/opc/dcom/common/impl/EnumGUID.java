@@ -56,7 +56,7 @@ public class EnumGUID extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIArray ( UUID.class, null, 1, true, true ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
 
-        Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object[] result = callRespectSFALSE ( callObject, num );
 
         UUID[] resultData = (UUID[]) ( (JIArray)result[0] ).getArrayInstance ();
         Integer cnt = (Integer)result[1];
@@ -87,7 +87,7 @@ public class EnumGUID extends BaseCOMObject
 
         callObject.addInParamAsInt ( num, JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public void reset () throws JIException
@@ -95,7 +95,7 @@ public class EnumGUID extends BaseCOMObject
         JICallBuilder callObject = new JICallBuilder ( true );
         callObject.setOpnum ( 2 );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public EnumGUID cloneObject () throws JIException, IllegalArgumentException, UnknownHostException
@@ -105,7 +105,7 @@ public class EnumGUID extends BaseCOMObject
 
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         IJIComObject object = (IJIComObject)result[0];
 
@@ -57,7 +57,7 @@ public class EnumString extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIArray ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ), null, 1, true, true ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
 
-        Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object[] result = callRespectSFALSE ( callObject, num );
 
         //JIPointer[] resultData = (JIPointer[]) ( (JIArray) ( result[0] ) ).getArrayInstance ();
         JIString[] resultData = (JIString[]) ( (JIArray)result[0] ).getArrayInstance ();
@@ -90,7 +90,7 @@ public class EnumString extends BaseCOMObject
 
         callObject.addInParamAsInt ( num, JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public void reset () throws JIException
@@ -98,7 +98,7 @@ public class EnumString extends BaseCOMObject
         JICallBuilder callObject = new JICallBuilder ( true );
         callObject.setOpnum ( 2 );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public EnumString cloneObject () throws JIException, IllegalArgumentException, UnknownHostException
@@ -108,7 +108,7 @@ public class EnumString extends BaseCOMObject
 
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         IJIComObject object = (IJIComObject)result[0];
         return new EnumString ( object );
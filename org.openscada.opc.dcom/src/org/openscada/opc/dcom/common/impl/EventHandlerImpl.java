@@ -23,6 +23,7 @@ import org.jinterop.dcom.common.JIException;
 import org.jinterop.dcom.core.IJIComObject;
 import org.jinterop.dcom.core.JIFrameworkHelper;
 import org.openscada.opc.dcom.common.EventHandler;
+import org.openscada.opc.dcom.common.LocalEventSource;
 
 public class EventHandlerImpl implements EventHandler
 {
@@ -52,7 +53,14 @@ public class EventHandlerImpl implements EventHandler
         {
             try
             {
-                JIFrameworkHelper.detachEventHandler ( this.object, this.identifier );
+                if ( this.object instanceof LocalEventSource )
+                {
+                    ( (LocalEventSource)this.object ).detachEventHandler ( this.identifier );
+                }
+                else
+                {
+                    JIFrameworkHelper.detachEventHandler ( this.object, this.identifier );
+                }
             }
             finally
             {
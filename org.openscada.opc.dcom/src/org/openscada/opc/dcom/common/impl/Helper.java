@@ -24,9 +24,60 @@ import org.jinterop.dcom.core.IJIComObject;
 import org.jinterop.dcom.core.JICallBuilder;
 import org.jinterop.dcom.core.JIFlags;
 import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.CallStatistics;
+import org.openscada.opc.dcom.common.CallTracer;
+import org.openscada.opc.dcom.common.DataCallbackTracer;
 
 public class Helper
 {
+    /**
+     * The result code reported to the call tracer if the call failed with an exception other than {@link JIException}
+     */
+    private static final int E_UNEXPECTED = 0x8000FFFF;
+
+    private static volatile CallTracer callTracer = Boolean.getBoolean ( "openscada.dcom.call-statistics" ) ? new CallStatistics () : null;
+
+    private static volatile DataCallbackTracer dataCallbackTracer;
+
+    /**
+     * Get the tracer which receives all data change callbacks
+     * @return the tracer or <code>null</code> if none is set
+     */
+    public static DataCallbackTracer getDataCallbackTracer ()
+    {
+        return dataCallbackTracer;
+    }
+
+    /**
+     * Set the tracer which receives all data change callbacks
+     * @param dataCallbackTracer the new tracer, <code>null</code> to disable tracing
+     */
+    public static void setDataCallbackTracer ( final DataCallbackTracer dataCallbackTracer )
+    {
+        Helper.dataCallbackTracer = dataCallbackTracer;
+    }
+
+    /**
+     * Get the tracer which receives all DCOM calls
+     * @return the call tracer or <code>null</code> if none is set
+     */
+    public static CallTracer getCallTracer ()
+    {
+        return callTracer;
+    }
+
+    /**
+     * Set the tracer which receives all DCOM calls.
+     * <br/>
+     * If the system property <code>openscada.dcom.call-statistics</code> is set
+     * a {@link CallStatistics} instance is set by default.
+     * @param callTracer the new call tracer, <code>null</code> to disable tracing
+     */
+    public static void setCallTracer ( final CallTracer callTracer )
+    {
+        Helper.callTracer = callTracer;
+    }
+
     /**
      * Make the COM call but do not treat S_FALSE as error condition for the whole call
      * @param object the object to make to call on
@@ -36,18 +87,56 @@ public class Helper
      */
     public static Object[] callRespectSFALSE ( final IJIComObject object, final JICallBuilder callObject ) throws JIException
     {
+        return call ( object, callObject, object.getInterfaceIdentifier (), 0, true );
+    }
+
+    /**
+     * Make the COM call and report it to the call tracer
+     * @param object the object to make to call on
+     * @param callObject the call object
+     * @param interfaceName the name of the interface reported to the call tracer
+     * @param items the number of items passed to the call, reported to the call tracer
+     * @param respectSFALSE <code>true</code> if S_FALSE should not be treated as error condition for the whole call
+     * @return the result of the call
+     * @throws JIException
+     */
+    public static Object[] call ( final IJIComObject object, final JICallBuilder callObject, final String interfaceName, final int items, final boolean respectSFALSE ) throws JIException
+    {
+        final CallTracer tracer = callTracer;
+        final long start;
+        if ( tracer != null )
+        {
+            tracer.callStarted ( interfaceName, callObject.getOpnum () );
+            start = System.nanoTime ();
+        }
+        else
+        {
+            start = 0;
+        }
+        int errorCode = E_UNEXPECTED;
+
         try
         {
-            return object.call ( callObject );
+            final Object[] result = object.call ( callObject );
+            errorCode = org.openscada.opc.dcom.common.Constants.S_OK;
+            return result;
         }
         catch ( JIException e )
         {
-            if ( e.getErrorCode () != org.openscada.opc.dcom.common.Constants.S_FALSE )
+            errorCode = e.getErrorCode ();
+            if ( !respectSFALSE || errorCode != org.openscada.opc.dcom.common.Constants.S_FALSE )
             {
                 throw e;
             }
             return callObject.getResultsInCaseOfException ();
         }
+        finally
+        {
+            if ( tracer != null )
+            {
+                tracer.callCompleted ( interfaceName, callObject.getOpnum (), items, System.nanoTime () - start, errorCode );
+            }
+        }
     }
 
     /**
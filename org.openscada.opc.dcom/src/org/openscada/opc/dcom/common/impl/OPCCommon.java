@@ -45,7 +45,7 @@ public class OPCCommon extends BaseCOMObject
 
         callObject.addInParamAsInt ( localeID, JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public int getLocaleID () throws JIException
@@ -55,7 +55,7 @@ public class OPCCommon extends BaseCOMObject
 
         callObject.addOutParamAsObject ( Integer.class, JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
         return (Integer)result[0];
     }
 
@@ -68,7 +68,7 @@ public class OPCCommon extends BaseCOMObject
         callObject.addInParamAsInt ( localeID, JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ) ), JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
         return ( (JIString) ( (JIPointer)result[0] ).getReferent () ).getString ();
     }
 
@@ -79,7 +79,7 @@ public class OPCCommon extends BaseCOMObject
 
         callObject.addInParamAsString ( clientName, JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public Collection<Integer> queryAvailableLocaleIDs () throws JIException
@@ -90,7 +90,7 @@ public class OPCCommon extends BaseCOMObject
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         JIArray resultArray = (JIArray) ( (JIPointer)result[1] ).getReferent ();
         Integer[] intArray = (Integer[])resultArray.getArrayInstance ();
@@ -0,0 +1,373 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.common.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.IJIUnsigned;
+import org.jinterop.dcom.core.JIArray;
+import org.jinterop.dcom.core.JIFlags;
+import org.jinterop.dcom.core.JIString;
+import org.jinterop.dcom.core.JIUnsignedFactory;
+import org.jinterop.dcom.core.JIVariant;
+
+/**
+ * A compact binary encoding of variants and numbers.
+ * <br/>
+ * Numbers are written as variable length quantities, seven bits per byte. Signed
+ * numbers are zig zag encoded first so that small negative numbers stay small.
+ * A variant is written as a tag byte followed by its content. Scalar values and
+ * one dimensional arrays of scalar values are supported.
+ */
+public final class VariantCodec
+{
+    private static final byte TAG_EMPTY = 0;
+
+    private static final byte TAG_NULL = 1;
+
+    private static final byte TAG_BOOLEAN = 2;
+
+    private static final byte TAG_BYTE = 3;
+
+    private static final byte TAG_CHARACTER = 4;
+
+    private static final byte TAG_SHORT = 5;
+
+    private static final byte TAG_INTEGER = 6;
+
+    private static final byte TAG_LONG = 7;
+
+    private static final byte TAG_FLOAT = 8;
+
+    private static final byte TAG_DOUBLE = 9;
+
+    private static final byte TAG_STRING = 10;
+
+    private static final byte TAG_DATE = 11;
+
+    private static final byte TAG_UNSIGNED = 12;
+
+    private static final byte TAG_ARRAY = 13;
+
+    private static final Class<?>[] TAG_CLASSES = new Class<?>[] { null, null, Boolean.class, Byte.class, Character.class, Short.class, Integer.class, Long.class, Float.class, Double.class, JIString.class, Date.class, IJIUnsigned.class };
+
+    private VariantCodec ()
+    {
+    }
+
+    /**
+     * Write an unsigned number as variable length quantity
+     */
+    public static void writeVarLong ( final DataOutput out, long value ) throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            out.writeByte ( (int) ( value & 0x7F | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte ( (int)value );
+    }
+
+    public static long readVarLong ( final DataInput in ) throws IOException
+    {
+        long value = 0;
+        for ( int shift = 0; shift < 64; shift += 7 )
+        {
+            final int b = in.readUnsignedByte ();
+            value |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return value;
+            }
+        }
+        throw new IOException ( "Malformed variable length number" );
+    }
+
+    /**
+     * Write a signed number as zig zag encoded variable length quantity
+     */
+    public static void writeZigZag ( final DataOutput out, final long value ) throws IOException
+    {
+        writeVarLong ( out, value << 1 ^ value >> 63 );
+    }
+
+    public static long readZigZag ( final DataInput in ) throws IOException
+    {
+        final long value = readVarLong ( in );
+        return value >>> 1 ^ - ( value & 1 );
+    }
+
+    private static byte tagOf ( final Class<?> clazz )
+    {
+        for ( int i = TAG_BOOLEAN; i < TAG_CLASSES.length; i++ )
+        {
+            if ( TAG_CLASSES[i].isAssignableFrom ( clazz ) )
+            {
+                return (byte)i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write a variant
+     * @param out the output to write to
+     * @param value the value to write, may be <code>null</code>
+     * @return <code>false</code> if the type of the value is not supported and
+     * an empty value was written instead
+     */
+    public static boolean writeValue ( final DataOutput out, final JIVariant value ) throws IOException
+    {
+        if ( value == null )
+        {
+            out.writeByte ( TAG_EMPTY );
+            return true;
+        }
+
+        try
+        {
+            final int type = value.getType ();
+            if ( type == JIVariant.VT_EMPTY )
+            {
+                out.writeByte ( TAG_EMPTY );
+                return true;
+            }
+            if ( type == JIVariant.VT_NULL )
+            {
+                out.writeByte ( TAG_NULL );
+                return true;
+            }
+
+            if ( value.isArray () )
+            {
+                return writeArray ( out, value.getObjectAsArray () );
+            }
+
+            final Object object = value.getObject ();
+            if ( object instanceof JIVariant )
+            {
+                return writeValue ( out, (JIVariant)object );
+            }
+
+            final byte tag = object != null ? tagOf ( object.getClass () ) : -1;
+            if ( tag < 0 || tag == TAG_UNSIGNED && ( (IJIUnsigned)object ).getValue () == null )
+            {
+                out.writeByte ( TAG_EMPTY );
+                return false;
+            }
+
+            out.writeByte ( tag );
+            writeScalar ( out, tag, object );
+            return true;
+        }
+        catch ( final JIException e )
+        {
+            out.writeByte ( TAG_EMPTY );
+            return false;
+        }
+    }
+
+    private static boolean writeArray ( final DataOutput out, final JIArray array ) throws IOException
+    {
+        final Object instance = array != null ? array.getArrayInstance () : null;
+        if ( ! ( instance instanceof Object[] ) || array.getDimensions () != 1 )
+        {
+            out.writeByte ( TAG_EMPTY );
+            return false;
+        }
+
+        final Object[] elements = (Object[])instance;
+        final byte tag = tagOf ( elements.getClass ().getComponentType () );
+        if ( tag < 0 || tag == TAG_UNSIGNED )
+        {
+            out.writeByte ( TAG_EMPTY );
+            return false;
+        }
+
+        out.writeByte ( TAG_ARRAY );
+        out.writeByte ( tag );
+        writeVarLong ( out, elements.length );
+        for ( final Object element : elements )
+        {
+            writeScalar ( out, tag, element );
+        }
+        return true;
+    }
+
+    private static void writeScalar ( final DataOutput out, final byte tag, final Object value ) throws IOException
+    {
+        switch ( tag )
+        {
+            case TAG_BOOLEAN:
+                out.writeBoolean ( (Boolean)value );
+                break;
+            case TAG_BYTE:
+                out.writeByte ( (Byte)value );
+                break;
+            case TAG_CHARACTER:
+                out.writeChar ( (Character)value );
+                break;
+            case TAG_SHORT:
+                out.writeShort ( (Short)value );
+                break;
+            case TAG_INTEGER:
+                out.writeInt ( (Integer)value );
+                break;
+            case TAG_LONG:
+                out.writeLong ( (Long)value );
+                break;
+            case TAG_FLOAT:
+                out.writeFloat ( (Float)value );
+                break;
+            case TAG_DOUBLE:
+                out.writeDouble ( (Double)value );
+                break;
+            case TAG_STRING:
+                writeString ( out, (JIString)value );
+                break;
+            case TAG_DATE:
+                out.writeLong ( ( (Date)value ).getTime () );
+                break;
+            case TAG_UNSIGNED:
+                writeVarLong ( out, ( (IJIUnsigned)value ).getType () );
+                out.writeLong ( ( (IJIUnsigned)value ).getValue ().longValue () );
+                break;
+        }
+    }
+
+    private static void writeString ( final DataOutput out, final JIString value ) throws IOException
+    {
+        final String string = value != null ? value.getString () : null;
+        if ( string == null )
+        {
+            writeVarLong ( out, 0 );
+            return;
+        }
+
+        final byte[] data = string.getBytes ( "UTF-8" );
+        writeVarLong ( out, data.length + 1 );
+        writeVarLong ( out, value.getType () );
+        out.write ( data );
+    }
+
+    /**
+     * Read a variant written by {@link #writeValue(DataOutput, JIVariant)}
+     * @param in the input to read from
+     * @return the new variant
+     * @throws IOException if the input cannot be read or is malformed
+     */
+    public static JIVariant readValue ( final DataInput in ) throws IOException
+    {
+        final byte tag = in.readByte ();
+        switch ( tag )
+        {
+            case TAG_EMPTY:
+                return JIVariant.EMPTY ();
+            case TAG_NULL:
+                return JIVariant.NULL ();
+            case TAG_ARRAY:
+                return readArray ( in );
+            default:
+                return JIVariant.makeVariant ( readScalar ( in, tag ) );
+        }
+    }
+
+    private static JIVariant readArray ( final DataInput in ) throws IOException
+    {
+        final byte tag = in.readByte ();
+        if ( tag < TAG_BOOLEAN || tag >= TAG_UNSIGNED )
+        {
+            throw new IOException ( String.format ( "Invalid array element tag: %s", tag ) );
+        }
+
+        final int length = (int)readVarLong ( in );
+        final Object[] elements = (Object[])java.lang.reflect.Array.newInstance ( TAG_CLASSES[tag], length );
+        for ( int i = 0; i < length; i++ )
+        {
+            elements[i] = readScalar ( in, tag );
+        }
+        return new JIVariant ( new JIArray ( elements, true ) );
+    }
+
+    private static Object readScalar ( final DataInput in, final byte tag ) throws IOException
+    {
+        switch ( tag )
+        {
+            case TAG_BOOLEAN:
+                return in.readBoolean ();
+            case TAG_BYTE:
+                return in.readByte ();
+            case TAG_CHARACTER:
+                return in.readChar ();
+            case TAG_SHORT:
+                return in.readShort ();
+            case TAG_INTEGER:
+                return in.readInt ();
+            case TAG_LONG:
+                return in.readLong ();
+            case TAG_FLOAT:
+                return in.readFloat ();
+            case TAG_DOUBLE:
+                return in.readDouble ();
+            case TAG_STRING:
+                return readString ( in );
+            case TAG_DATE:
+                return new Date ( in.readLong () );
+            case TAG_UNSIGNED:
+                return readUnsigned ( in );
+            default:
+                throw new IOException ( String.format ( "Invalid value tag: %s", tag ) );
+        }
+    }
+
+    private static JIString readString ( final DataInput in ) throws IOException
+    {
+        final int length = (int)readVarLong ( in );
+        if ( length == 0 )
+        {
+            return null;
+        }
+
+        final int type = (int)readVarLong ( in );
+        final byte[] data = new byte[length - 1];
+        in.readFully ( data );
+        return new JIString ( new String ( data, "UTF-8" ), type );
+    }
+
+    private static IJIUnsigned readUnsigned ( final DataInput in ) throws IOException
+    {
+        final int type = (int)readVarLong ( in );
+        final long value = in.readLong ();
+
+        switch ( type )
+        {
+            case JIFlags.FLAG_REPRESENTATION_UNSIGNED_BYTE:
+                return JIUnsignedFactory.getUnsigned ( Short.valueOf ( (short)value ), type );
+            case JIFlags.FLAG_REPRESENTATION_UNSIGNED_SHORT:
+                return JIUnsignedFactory.getUnsigned ( Integer.valueOf ( (int)value ), type );
+            default:
+                return JIUnsignedFactory.getUnsigned ( Long.valueOf ( value ), type );
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.da;
+
+import org.jinterop.dcom.core.JIStruct;
+import org.jinterop.dcom.core.JIVariant;
+
+/**
+ * Receives the raw content of every data callback handled by {@link org.openscada.opc.dcom.da.impl.OPCDataCallback}
+ * before it gets decoded.
+ * <br/>
+ * Implementations are called from the callback thread and must be
+ * thread safe and must not throw exceptions. The arrays must not be modified.
+ * @see org.openscada.opc.dcom.da.impl.OPCDataCallback#setRecorder(DataCallbackRecorder)
+ */
+public interface DataCallbackRecorder
+{
+    /**
+     * An <code>OnDataChange</code> call was received
+     */
+    public abstract void dataChange ( int transactionId, int serverGroupHandle, int masterQuality, int masterErrorCode, int count, Integer[] clientHandles, JIVariant[] values, Short[] qualities, JIStruct[] timestamps, Integer[] errors );
+
+    /**
+     * An <code>OnReadComplete</code> call was received
+     */
+    public abstract void readComplete ( int transactionId, int serverGroupHandle, int masterQuality, int masterErrorCode, int count, Integer[] clientHandles, JIVariant[] values, Short[] qualities, JIStruct[] timestamps, Integer[] errors );
+}
@@ -80,7 +80,7 @@ public class OPCAsyncIO2 extends BaseCOMObject
 
         callObject.addInParamAsInt ( state ? 1 : 0, JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public int refresh ( final OPCDATASOURCE dataSource, final int transactionID ) throws JIException
@@ -92,7 +92,7 @@ public class OPCAsyncIO2 extends BaseCOMObject
         callObject.addInParamAsInt ( transactionID, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
 
-        final Object result[] = getCOMObject ().call ( callObject );
+        final Object result[] = call ( callObject );
 
         return (Integer)result[0];
     }
@@ -104,7 +104,7 @@ public class OPCAsyncIO2 extends BaseCOMObject
 
         callObject.addInParamAsInt ( cancelId, JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public AsyncResult read ( final int transactionId, final Integer... serverHandles ) throws JIException
@@ -124,7 +124,7 @@ public class OPCAsyncIO2 extends BaseCOMObject
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        final Object[] result = getCOMObject ().call ( callObject );
+        final Object[] result = call ( callObject, serverHandles.length );
 
         final Integer cancelId = (Integer)result[0];
         final Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
@@ -29,7 +29,6 @@ import org.jinterop.dcom.core.JIPointer;
 import org.jinterop.dcom.core.JIString;
 import org.openscada.opc.dcom.common.impl.BaseCOMObject;
 import org.openscada.opc.dcom.common.impl.EnumString;
-import org.openscada.opc.dcom.common.impl.Helper;
 import org.openscada.opc.dcom.da.Constants;
 import org.openscada.opc.dcom.da.OPCBROWSEDIRECTION;
 import org.openscada.opc.dcom.da.OPCBROWSETYPE;
@@ -42,6 +41,8 @@ import org.openscada.opc.dcom.da.OPCNAMESPACETYPE;
  */
 public class OPCBrowseServerAddressSpace extends BaseCOMObject
 {
+    private volatile long positionChanges = 0;
+
     public OPCBrowseServerAddressSpace ( final IJIComObject opcServer ) throws IllegalArgumentException, UnknownHostException, JIException
     {
         super ( opcServer.queryInterface ( Constants.IOPCBrowseServerAddressSpace_IID ) );
@@ -59,7 +60,7 @@ public class OPCBrowseServerAddressSpace extends BaseCOMObject
 
         callObject.addOutParamAsType ( Short.class, JIFlags.FLAG_NULL );
 
-        Object result[] = getCOMObject ().call ( callObject );
+        Object result[] = call ( callObject );
 
         return OPCNAMESPACETYPE.fromID ( (Short)result[0] );
     }
@@ -89,8 +90,21 @@ public class OPCBrowseServerAddressSpace extends BaseCOMObject
         callObject.addInParamAsShort ( (short)direction.id (), JIFlags.FLAG_NULL );
         callObject.addInParamAsString ( position, JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR );
 
-        getCOMObject ().call ( callObject );
+        this.positionChanges++;
+        call ( callObject );
+
+    }
 
+    /**
+     * Get the number of calls to {@link #changePosition(String, OPCBROWSEDIRECTION)}
+     * <br/>
+     * Users keeping track of the browser position can compare this value
+     * in order to detect that someone else has moved the browser.
+     * @return the number of position changes
+     */
+    public long getPositionChanges ()
+    {
+        return this.positionChanges;
     }
 
     public EnumString browse ( final OPCBROWSETYPE browseType, final String filterCriteria, final int accessRights, final int dataType ) throws JIException, IllegalArgumentException, UnknownHostException
@@ -104,7 +118,7 @@ public class OPCBrowseServerAddressSpace extends BaseCOMObject
         callObject.addInParamAsInt ( accessRights, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object result[] = callRespectSFALSE ( callObject );
 
         return new EnumString ( (IJIComObject)result[0] );
     }
@@ -125,7 +139,7 @@ public class OPCBrowseServerAddressSpace extends BaseCOMObject
         callObject.addInParamAsString ( itemID, JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR );
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object[] result = callRespectSFALSE ( callObject );
 
         return new EnumString ( (IJIComObject)result[0] );
     }
@@ -150,7 +164,7 @@ public class OPCBrowseServerAddressSpace extends BaseCOMObject
         callObject.addInParamAsString ( item, JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR );
         callObject.addOutParamAsObject ( new JIPointer ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ) ), JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         return ( (JIString) ( (JIPointer)result[0] ).getReferent () ).getString ();
     }
@@ -33,18 +33,23 @@ import org.jinterop.dcom.core.JILocalMethodDescriptor;
 import org.jinterop.dcom.core.JILocalParamsDescriptor;
 import org.jinterop.dcom.core.JIStruct;
 import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.DataCallbackTracer;
 import org.openscada.opc.dcom.common.FILETIME;
 import org.openscada.opc.dcom.common.KeyedResult;
 import org.openscada.opc.dcom.common.KeyedResultSet;
 import org.openscada.opc.dcom.common.Result;
 import org.openscada.opc.dcom.common.ResultSet;
 import org.openscada.opc.dcom.common.impl.EventHandlerImpl;
+import org.openscada.opc.dcom.common.impl.Helper;
 import org.openscada.opc.dcom.da.Constants;
+import org.openscada.opc.dcom.da.DataCallbackRecorder;
 import org.openscada.opc.dcom.da.IOPCDataCallback;
 import org.openscada.opc.dcom.da.ValueData;
 
 public class OPCDataCallback extends EventHandlerImpl
 {
+    private static volatile DataCallbackRecorder recorder;
+
     private IOPCDataCallback callback = null;
 
     private JILocalCoClass coClass = null;
@@ -62,6 +67,18 @@ public class OPCDataCallback extends EventHandlerImpl
             return new Object[] { org.openscada.opc.dcom.common.Constants.S_OK };
         }
 
+        final DataCallbackTracer tracer = Helper.getDataCallbackTracer ();
+        final long start;
+        if ( tracer != null )
+        {
+            tracer.dataChangeStarted ( serverGroupHandle );
+            start = System.nanoTime ();
+        }
+        else
+        {
+            start = 0;
+        }
+
         // get arrays for more readable code later ;-)
         final Integer[] errorCodes = (Integer[])errors.getArrayInstance ();
         final Integer[] itemHandles = (Integer[])clientHandles.getArrayInstance ();
@@ -69,6 +86,12 @@ public class OPCDataCallback extends EventHandlerImpl
         final JIVariant[] valuesArray = (JIVariant[])values.getArrayInstance ();
         final JIStruct[] timestampArray = (JIStruct[])timestamps.getArrayInstance ();
 
+        final DataCallbackRecorder recorder = OPCDataCallback.recorder;
+        if ( recorder != null )
+        {
+            recorder.dataChange ( transactionId, serverGroupHandle, masterQuality, masterErrorCode, count, itemHandles, valuesArray, qualitiesArray, timestampArray, errorCodes );
+        }
+
         // create result data
         final KeyedResultSet<Integer, ValueData> result = new KeyedResultSet<Integer, ValueData> ();
         for ( int i = 0; i < count; i++ )
@@ -80,6 +103,8 @@ public class OPCDataCallback extends EventHandlerImpl
             result.add ( new KeyedResult<Integer, ValueData> ( itemHandles[i], vd, errorCodes[i] ) );
         }
 
+        final long decoded = tracer != null ? System.nanoTime () : 0;
+
         // fire event
         try
         {
@@ -90,6 +115,11 @@ public class OPCDataCallback extends EventHandlerImpl
             e.printStackTrace ();
         }
 
+        if ( tracer != null )
+        {
+            tracer.dataChangeCompleted ( serverGroupHandle, count, decoded - start, System.nanoTime () - decoded );
+        }
+
         // The client must always return S_OK
         return new Object[] { org.openscada.opc.dcom.common.Constants.S_OK };
     }
@@ -108,6 +138,12 @@ public class OPCDataCallback extends EventHandlerImpl
         final JIVariant[] valuesArray = (JIVariant[])values.getArrayInstance ();
         final JIStruct[] timestampArray = (JIStruct[])timestamps.getArrayInstance ();
 
+        final DataCallbackRecorder recorder = OPCDataCallback.recorder;
+        if ( recorder != null )
+        {
+            recorder.readComplete ( transactionId, serverGroupHandle, masterQuality, masterErrorCode, count, itemHandles, valuesArray, qualitiesArray, timestampArray, errorCodes );
+        }
+
         // create result data
         final KeyedResultSet<Integer, ValueData> result = new KeyedResultSet<Integer, ValueData> ();
         for ( int i = 0; i < count; i++ )
@@ -256,4 +292,23 @@ public class OPCDataCallback extends EventHandlerImpl
     {
         return this.callback;
     }
+
+    /**
+     * Get the recorder which receives the raw content of all data callbacks
+     * @return the recorder or <code>null</code> if none is set
+     */
+    public static DataCallbackRecorder getRecorder ()
+    {
+        return recorder;
+    }
+
+    /**
+     * Set the recorder which receives the raw content of all data callbacks
+     * @param recorder the new recorder, <code>null</code> to stop recording
+     * @see org.openscada.opc.dcom.da.recording.TransactionRecorder
+     */
+    public static void setRecorder ( final DataCallbackRecorder recorder )
+    {
+        OPCDataCallback.recorder = recorder;
+    }
 }
@@ -30,6 +30,7 @@ import org.jinterop.dcom.core.JIPointer;
 import org.jinterop.dcom.core.JIString;
 import org.jinterop.dcom.impls.JIObjectFactory;
 import org.openscada.opc.dcom.common.EventHandler;
+import org.openscada.opc.dcom.common.LocalEventSource;
 import org.openscada.opc.dcom.common.impl.BaseCOMObject;
 import org.openscada.opc.dcom.da.Constants;
 import org.openscada.opc.dcom.da.IOPCDataCallback;
@@ -61,7 +62,7 @@ public class OPCGroupStateMgt extends BaseCOMObject
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
 
-        final Object result[] = getCOMObject ().call ( callObject );
+        final Object result[] = call ( callObject );
 
         final OPCGroupState state = new OPCGroupState ();
         state.setUpdateRate ( (Integer)result[0] );
@@ -115,7 +116,7 @@ public class OPCGroupStateMgt extends BaseCOMObject
 
         callObject.addOutParamAsType ( Integer.class, JIFlags.FLAG_NULL );
 
-        final Object[] result = getCOMObject ().call ( callObject );
+        final Object[] result = call ( callObject );
 
         return (Integer)result[0];
     }
@@ -139,7 +140,7 @@ public class OPCGroupStateMgt extends BaseCOMObject
 
         callObject.addInParamAsString ( name, JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     /**
@@ -161,7 +162,7 @@ public class OPCGroupStateMgt extends BaseCOMObject
         callObject.addInParamAsUUID ( Constants.IOPCGroupStateMgt_IID, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        final Object[] result = getCOMObject ().call ( callObject );
+        final Object[] result = call ( callObject );
         return new OPCGroupStateMgt ( (IJIComObject)result[0] );
     }
 
@@ -179,15 +180,25 @@ public class OPCGroupStateMgt extends BaseCOMObject
 
         callbackObject.setCallback ( callback );
 
+        final IJIComObject comObject = getCOMObject ();
+
         // sync the callback object so that no calls get through the callback
         // until the callback information is set
         // If happens in some cases that the callback is triggered before
         // the method attachEventHandler returns.
         synchronized ( callbackObject )
         {
-            final String id = JIFrameworkHelper.attachEventHandler ( getCOMObject (), Constants.IOPCDataCallback_IID, JIObjectFactory.buildObject ( getCOMObject ().getAssociatedSession (), callbackObject.getCoClass () ) );
-
-            callbackObject.setInfo ( getCOMObject (), id );
+            final String id;
+            if ( comObject instanceof LocalEventSource )
+            {
+                id = ( (LocalEventSource)comObject ).attachEventHandler ( Constants.IOPCDataCallback_IID, callbackObject );
+            }
+            else
+            {
+                id = JIFrameworkHelper.attachEventHandler ( comObject, Constants.IOPCDataCallback_IID, JIObjectFactory.buildObject ( comObject.getAssociatedSession (), callbackObject.getCoClass () ) );
+            }
+
+            callbackObject.setInfo ( comObject, id );
         }
         return callbackObject;
     }
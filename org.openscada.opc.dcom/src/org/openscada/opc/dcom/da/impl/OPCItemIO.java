@@ -68,6 +68,6 @@ public class OPCItemIO extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( FILETIME.getStruct (), null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject, requests.length );
     }
 }
@@ -31,7 +31,6 @@ import org.openscada.opc.dcom.common.KeyedResultSet;
 import org.openscada.opc.dcom.common.Result;
 import org.openscada.opc.dcom.common.ResultSet;
 import org.openscada.opc.dcom.common.impl.BaseCOMObject;
-import org.openscada.opc.dcom.common.impl.Helper;
 import org.openscada.opc.dcom.da.Constants;
 import org.openscada.opc.dcom.da.OPCITEMDEF;
 import org.openscada.opc.dcom.da.OPCITEMRESULT;
@@ -66,7 +65,7 @@ public class OPCItemMgt extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( OPCITEMRESULT.getStruct (), null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        final Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        final Object result[] = callRespectSFALSE ( callObject, items.length );
 
         final JIStruct[] results = (JIStruct[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         final Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
@@ -111,7 +110,7 @@ public class OPCItemMgt extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( OPCITEMRESULT.getStruct (), null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        final Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        final Object result[] = callRespectSFALSE ( callObject, items.length );
 
         final JIStruct[] results = (JIStruct[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         final Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
@@ -141,7 +140,7 @@ public class OPCItemMgt extends BaseCOMObject
         callObject.addInParamAsArray ( new JIArray ( serverHandles, true ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        final Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        final Object result[] = callRespectSFALSE ( callObject, serverHandles.length );
 
         final Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         final ResultSet<Integer> results = new ResultSet<Integer> ( serverHandles.length );
@@ -167,7 +166,7 @@ public class OPCItemMgt extends BaseCOMObject
         callObject.addInParamAsInt ( state ? 1 : 0, JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        final Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        final Object[] result = callRespectSFALSE ( callObject, items.length );
 
         final Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         final ResultSet<Integer> results = new ResultSet<Integer> ( items.length );
@@ -197,7 +196,7 @@ public class OPCItemMgt extends BaseCOMObject
         callObject.addInParamAsArray ( new JIArray ( clientHandles, true ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        final Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        final Object[] result = callRespectSFALSE ( callObject, serverHandles.length );
 
         final Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         final ResultSet<Integer> results = new ResultSet<Integer> ( serverHandles.length );
@@ -35,7 +35,6 @@ import org.jinterop.dcom.core.JIVariant;
 import org.openscada.opc.dcom.common.KeyedResult;
 import org.openscada.opc.dcom.common.KeyedResultSet;
 import org.openscada.opc.dcom.common.impl.BaseCOMObject;
-import org.openscada.opc.dcom.common.impl.Helper;
 import org.openscada.opc.dcom.da.Constants;
 import org.openscada.opc.dcom.da.PropertyDescription;
 
@@ -59,7 +58,7 @@ public class OPCItemProperties extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_BSTR ), null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Short.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        Object result[] = getCOMObject ().call ( callObject );
+        Object result[] = call ( callObject );
 
         List<PropertyDescription> properties = new LinkedList<PropertyDescription> ();
 
@@ -102,7 +101,7 @@ public class OPCItemProperties extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( JIVariant.class, null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object result[] = callRespectSFALSE ( callObject, properties.length );
 
         JIVariant[] values = (JIVariant[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
@@ -138,7 +137,7 @@ public class OPCItemProperties extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( new JIPointer ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ) ), null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object result[] = callRespectSFALSE ( callObject, properties.length );
 
         JIPointer[] itemIDs = (JIPointer[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
         Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
@@ -29,7 +29,6 @@ import org.jinterop.dcom.core.JIPointer;
 import org.jinterop.dcom.core.JIStruct;
 import org.openscada.opc.dcom.common.impl.BaseCOMObject;
 import org.openscada.opc.dcom.common.impl.EnumString;
-import org.openscada.opc.dcom.common.impl.Helper;
 import org.openscada.opc.dcom.common.impl.OPCCommon;
 import org.openscada.opc.dcom.da.Constants;
 import org.openscada.opc.dcom.da.OPCENUMSCOPE;
@@ -37,6 +36,8 @@ import org.openscada.opc.dcom.da.OPCSERVERSTATUS;
 
 public class OPCServer extends BaseCOMObject
 {
+    private OPCBrowseServerAddressSpace browser;
+
     public OPCServer ( final IJIComObject opcServer ) throws IllegalArgumentException, UnknownHostException, JIException
     {
         super ( opcServer.queryInterface ( Constants.IOPCServer_IID ) );
@@ -54,7 +55,7 @@ public class OPCServer extends BaseCOMObject
 
         callObject.addOutParamAsObject ( new JIPointer ( OPCSERVERSTATUS.getStruct () ), JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         return OPCSERVERSTATUS.fromStruct ( (JIStruct) ( (JIPointer)result[0] ).getReferent () );
     }
@@ -76,7 +77,7 @@ public class OPCServer extends BaseCOMObject
         callObject.addInParamAsUUID ( Constants.IOPCGroupStateMgt_IID, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         return new OPCGroupStateMgt ( (IJIComObject)result[2] );
     }
@@ -89,7 +90,7 @@ public class OPCServer extends BaseCOMObject
         callObject.addInParamAsInt ( serverHandle, JIFlags.FLAG_NULL );
         callObject.addInParamAsInt ( force ? 1 : 0, JIFlags.FLAG_NULL );
 
-        getCOMObject ().call ( callObject );
+        call ( callObject );
     }
 
     public void removeGroup ( final OPCGroupStateMgt group, final boolean force ) throws JIException
@@ -106,7 +107,7 @@ public class OPCServer extends BaseCOMObject
         callObject.addInParamAsUUID ( Constants.IOPCGroupStateMgt_IID, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object[] result = getCOMObject ().call ( callObject );
+        Object[] result = call ( callObject );
 
         return new OPCGroupStateMgt ( (IJIComObject)result[0] );
     }
@@ -128,7 +129,7 @@ public class OPCServer extends BaseCOMObject
         callObject.addInParamAsUUID ( org.openscada.opc.dcom.common.Constants.IEnumString_IID, JIFlags.FLAG_NULL );
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
-        Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object[] result = callRespectSFALSE ( callObject );
 
         return new EnumString ( (IJIComObject)result[0] );
     }
@@ -159,13 +160,19 @@ public class OPCServer extends BaseCOMObject
 
     /**
      * Get the browser object (<code>IOPCBrowseServerAddressSpace</code>) from the server instance
+     * <br/>
+     * The browse position is kept by the server instance, so all callers get the same browser object.
      * @return the browser object
      */
-    public OPCBrowseServerAddressSpace getBrowser ()
+    public synchronized OPCBrowseServerAddressSpace getBrowser ()
     {
         try
         {
-            return new OPCBrowseServerAddressSpace ( getCOMObject () );
+            if ( this.browser == null )
+            {
+                this.browser = new OPCBrowseServerAddressSpace ( getCOMObject () );
+            }
+            return this.browser;
         }
         catch ( Exception e )
         {
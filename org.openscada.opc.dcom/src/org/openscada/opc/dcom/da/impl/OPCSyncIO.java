@@ -62,7 +62,7 @@ public class OPCSyncIO extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( OPCITEMSTATE.getStruct (), null, 1, true ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object result[] = callRespectSFALSE ( callObject, serverHandles.length );
 
         KeyedResultSet<Integer, OPCITEMSTATE> results = new KeyedResultSet<Integer, OPCITEMSTATE> ();
         JIStruct[] states = (JIStruct[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
@@ -99,7 +99,7 @@ public class OPCSyncIO extends BaseCOMObject
         callObject.addInParamAsArray ( new JIArray ( values, true ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
 
-        Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object result[] = callRespectSFALSE ( callObject, requests.length );
 
         Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
 
@@ -0,0 +1,175 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.da.recording;
+
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.FILETIME;
+import org.openscada.opc.dcom.common.KeyedResult;
+import org.openscada.opc.dcom.common.KeyedResultSet;
+import org.openscada.opc.dcom.da.IOPCDataCallback;
+import org.openscada.opc.dcom.da.ValueData;
+
+/**
+ * A single data callback read from a recording
+ */
+public class RecordedTransaction
+{
+    public static enum Type
+    {
+        DATA_CHANGE,
+        READ_COMPLETE
+    }
+
+    private final Type type;
+
+    private final long offset;
+
+    private final int transactionId;
+
+    private final int serverGroupHandle;
+
+    private final int masterQuality;
+
+    private final int masterErrorCode;
+
+    private final int[] clientHandles;
+
+    private final JIVariant[] values;
+
+    private final short[] qualities;
+
+    private final FILETIME[] timestamps;
+
+    private final int[] errors;
+
+    public RecordedTransaction ( final Type type, final long offset, final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final int[] clientHandles, final JIVariant[] values, final short[] qualities, final FILETIME[] timestamps, final int[] errors )
+    {
+        this.type = type;
+        this.offset = offset;
+        this.transactionId = transactionId;
+        this.serverGroupHandle = serverGroupHandle;
+        this.masterQuality = masterQuality;
+        this.masterErrorCode = masterErrorCode;
+        this.clientHandles = clientHandles;
+        this.values = values;
+        this.qualities = qualities;
+        this.timestamps = timestamps;
+        this.errors = errors;
+    }
+
+    public Type getType ()
+    {
+        return this.type;
+    }
+
+    /**
+     * Get the time the transaction was received
+     * @return the nanoseconds since the recording was started
+     */
+    public long getOffset ()
+    {
+        return this.offset;
+    }
+
+    public int getTransactionId ()
+    {
+        return this.transactionId;
+    }
+
+    public int getServerGroupHandle ()
+    {
+        return this.serverGroupHandle;
+    }
+
+    public int getMasterQuality ()
+    {
+        return this.masterQuality;
+    }
+
+    public int getMasterErrorCode ()
+    {
+        return this.masterErrorCode;
+    }
+
+    public int getCount ()
+    {
+        return this.clientHandles.length;
+    }
+
+    public int[] getClientHandles ()
+    {
+        return this.clientHandles;
+    }
+
+    public JIVariant[] getValues ()
+    {
+        return this.values;
+    }
+
+    public short[] getQualities ()
+    {
+        return this.qualities;
+    }
+
+    public FILETIME[] getTimestamps ()
+    {
+        return this.timestamps;
+    }
+
+    public int[] getErrors ()
+    {
+        return this.errors;
+    }
+
+    /**
+     * Create the result set the same way {@link org.openscada.opc.dcom.da.impl.OPCDataCallback} does
+     * @return a new result set
+     */
+    public KeyedResultSet<Integer, ValueData> toResultSet ()
+    {
+        final KeyedResultSet<Integer, ValueData> result = new KeyedResultSet<Integer, ValueData> ();
+        for ( int i = 0; i < this.clientHandles.length; i++ )
+        {
+            final ValueData vd = new ValueData ();
+            vd.setQuality ( this.qualities[i] );
+            vd.setTimestamp ( this.timestamps[i].asCalendar () );
+            vd.setValue ( this.values[i] );
+            result.add ( new KeyedResult<Integer, ValueData> ( this.clientHandles[i], vd, this.errors[i] ) );
+        }
+        return result;
+    }
+
+    /**
+     * Deliver the transaction to a callback
+     * @param callback the callback to deliver to
+     */
+    public void dispatch ( final IOPCDataCallback callback )
+    {
+        switch ( this.type )
+        {
+            case DATA_CHANGE:
+                callback.dataChange ( this.transactionId, this.serverGroupHandle, this.masterQuality, this.masterErrorCode, toResultSet () );
+                break;
+            case READ_COMPLETE:
+                callback.readComplete ( this.transactionId, this.serverGroupHandle, this.masterQuality, this.masterErrorCode, toResultSet () );
+                break;
+        }
+    }
+}
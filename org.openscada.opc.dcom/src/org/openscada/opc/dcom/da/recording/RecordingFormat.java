@@ -0,0 +1,51 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.da.recording;
+
+/**
+ * The binary format of a transaction recording.
+ * <br/>
+ * A file starts with the magic number, the format version and the wall clock
+ * time the recording was started. It is followed by one record per transaction:
+ * <ul>
+ * <li>type (byte)</li>
+ * <li>nanoseconds since the previous record (var long)</li>
+ * <li>transaction id, master quality and master error (zig zag var int each)</li>
+ * <li>server group handle (int)</li>
+ * <li>item count (var int)</li>
+ * </ul>
+ * Each item is written as client handle (int), quality (short), error (zig zag var int),
+ * the FILETIME as difference to the previous timestamp of the file (zig zag var long)
+ * and the value as encoded by {@link org.openscada.opc.dcom.common.impl.VariantCodec}.
+ */
+final class RecordingFormat
+{
+    static final int MAGIC = 0x55544752; // "UTGR"
+
+    static final byte VERSION = 1;
+
+    static final byte TYPE_DATA_CHANGE = 1;
+
+    static final byte TYPE_READ_COMPLETE = 2;
+
+    private RecordingFormat ()
+    {
+    }
+}
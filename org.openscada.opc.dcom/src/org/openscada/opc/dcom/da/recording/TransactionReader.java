@@ -0,0 +1,141 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.da.recording;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.FILETIME;
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+
+/**
+ * Reads the transactions of a recording created by the {@link TransactionRecorder}
+ */
+public class TransactionReader implements Closeable
+{
+    private final DataInputStream in;
+
+    private final long startTime;
+
+    private long offset;
+
+    private long lastTimestamp;
+
+    public TransactionReader ( final File file ) throws IOException
+    {
+        this ( new FileInputStream ( file ) );
+    }
+
+    public TransactionReader ( final InputStream stream ) throws IOException
+    {
+        this.in = new DataInputStream ( new BufferedInputStream ( stream, 64 * 1024 ) );
+
+        try
+        {
+            if ( this.in.readInt () != RecordingFormat.MAGIC )
+            {
+                throw new IOException ( "Stream is not a transaction recording" );
+            }
+
+            final byte version = this.in.readByte ();
+            if ( version != RecordingFormat.VERSION )
+            {
+                throw new IOException ( String.format ( "Unsupported recording version: %s", version ) );
+            }
+
+            this.startTime = this.in.readLong ();
+        }
+        catch ( final IOException e )
+        {
+            this.in.close ();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the time the recording was started
+     * @return the wall clock time in milliseconds
+     */
+    public long getStartTime ()
+    {
+        return this.startTime;
+    }
+
+    /**
+     * Read the next transaction
+     * @return the next transaction or <code>null</code> if the end of the recording was reached
+     * @throws IOException if the recording cannot be read
+     */
+    public RecordedTransaction next () throws IOException
+    {
+        final int type = this.in.read ();
+        if ( type < 0 )
+        {
+            return null;
+        }
+
+        this.offset += VariantCodec.readVarLong ( this.in );
+
+        final int transactionId = (int)VariantCodec.readZigZag ( this.in );
+        final int masterQuality = (int)VariantCodec.readZigZag ( this.in );
+        final int masterErrorCode = (int)VariantCodec.readZigZag ( this.in );
+        final int serverGroupHandle = this.in.readInt ();
+        final int count = (int)VariantCodec.readVarLong ( this.in );
+
+        final int[] clientHandles = new int[count];
+        final JIVariant[] values = new JIVariant[count];
+        final short[] qualities = new short[count];
+        final FILETIME[] timestamps = new FILETIME[count];
+        final int[] errors = new int[count];
+
+        for ( int i = 0; i < count; i++ )
+        {
+            clientHandles[i] = this.in.readInt ();
+            qualities[i] = this.in.readShort ();
+            errors[i] = (int)VariantCodec.readZigZag ( this.in );
+
+            this.lastTimestamp += VariantCodec.readZigZag ( this.in );
+            timestamps[i] = new FILETIME ( (int) ( this.lastTimestamp >>> 32 ), (int)this.lastTimestamp );
+
+            values[i] = VariantCodec.readValue ( this.in );
+        }
+
+        switch ( type )
+        {
+            case RecordingFormat.TYPE_DATA_CHANGE:
+                return new RecordedTransaction ( RecordedTransaction.Type.DATA_CHANGE, this.offset, transactionId, serverGroupHandle, masterQuality, masterErrorCode, clientHandles, values, qualities, timestamps, errors );
+            case RecordingFormat.TYPE_READ_COMPLETE:
+                return new RecordedTransaction ( RecordedTransaction.Type.READ_COMPLETE, this.offset, transactionId, serverGroupHandle, masterQuality, masterErrorCode, clientHandles, values, qualities, timestamps, errors );
+            default:
+                throw new IOException ( String.format ( "Invalid transaction type: %s", type ) );
+        }
+    }
+
+    public void close () throws IOException
+    {
+        this.in.close ();
+    }
+}
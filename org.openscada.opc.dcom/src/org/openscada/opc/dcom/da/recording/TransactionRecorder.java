@@ -0,0 +1,212 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.da.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jinterop.dcom.core.JIStruct;
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+import org.openscada.opc.dcom.da.DataCallbackRecorder;
+
+/**
+ * Records the raw data callbacks to a file which can later be played back
+ * using the {@link TransactionReplayer}.
+ * <br/>
+ * Register the recorder using {@link org.openscada.opc.dcom.da.impl.OPCDataCallback#setRecorder(DataCallbackRecorder)}:
+ * <pre>
+ * TransactionRecorder recorder = new TransactionRecorder ( new File ( "traffic.rec" ) );
+ * OPCDataCallback.setRecorder ( recorder );
+ * ...
+ * OPCDataCallback.setRecorder ( null );
+ * recorder.close ();
+ * </pre>
+ * If writing fails the recorder stops recording and reports the error when
+ * it gets closed. Values of types which cannot be recorded are written as
+ * <code>VT_EMPTY</code> and are counted in {@link #getUnsupportedValues()}.
+ */
+public class TransactionRecorder implements DataCallbackRecorder, Closeable
+{
+    private final DataOutputStream out;
+
+    private long lastNanos;
+
+    private long lastTimestamp;
+
+    private long transactions;
+
+    private long items;
+
+    private long unsupportedValues;
+
+    private IOException error;
+
+    private boolean closed;
+
+    public TransactionRecorder ( final File file ) throws IOException
+    {
+        this ( new FileOutputStream ( file ) );
+    }
+
+    public TransactionRecorder ( final OutputStream stream ) throws IOException
+    {
+        this.out = new DataOutputStream ( new BufferedOutputStream ( stream, 64 * 1024 ) );
+
+        this.out.writeInt ( RecordingFormat.MAGIC );
+        this.out.writeByte ( RecordingFormat.VERSION );
+        this.out.writeLong ( System.currentTimeMillis () );
+
+        this.lastNanos = System.nanoTime ();
+    }
+
+    public void dataChange ( final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final int count, final Integer[] clientHandles, final JIVariant[] values, final Short[] qualities, final JIStruct[] timestamps, final Integer[] errors )
+    {
+        record ( RecordingFormat.TYPE_DATA_CHANGE, transactionId, serverGroupHandle, masterQuality, masterErrorCode, count, clientHandles, values, qualities, timestamps, errors );
+    }
+
+    public void readComplete ( final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final int count, final Integer[] clientHandles, final JIVariant[] values, final Short[] qualities, final JIStruct[] timestamps, final Integer[] errors )
+    {
+        record ( RecordingFormat.TYPE_READ_COMPLETE, transactionId, serverGroupHandle, masterQuality, masterErrorCode, count, clientHandles, values, qualities, timestamps, errors );
+    }
+
+    private synchronized void record ( final byte type, final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final int count, final Integer[] clientHandles, final JIVariant[] values, final Short[] qualities, final JIStruct[] timestamps, final Integer[] errors )
+    {
+        if ( this.closed || this.error != null )
+        {
+            return;
+        }
+
+        final long now = System.nanoTime ();
+
+        try
+        {
+            this.out.writeByte ( type );
+            VariantCodec.writeVarLong ( this.out, Math.max ( 0, now - this.lastNanos ) );
+            VariantCodec.writeZigZag ( this.out, transactionId );
+            VariantCodec.writeZigZag ( this.out, masterQuality );
+            VariantCodec.writeZigZag ( this.out, masterErrorCode );
+            this.out.writeInt ( serverGroupHandle );
+            VariantCodec.writeVarLong ( this.out, count );
+
+            for ( int i = 0; i < count; i++ )
+            {
+                this.out.writeInt ( clientHandles[i] );
+                this.out.writeShort ( qualities[i] != null ? qualities[i] : 0 );
+                VariantCodec.writeZigZag ( this.out, errors[i] != null ? errors[i] : 0 );
+
+                final long timestamp = toLong ( timestamps[i] );
+                VariantCodec.writeZigZag ( this.out, timestamp - this.lastTimestamp );
+                this.lastTimestamp = timestamp;
+
+                if ( !VariantCodec.writeValue ( this.out, values[i] ) )
+                {
+                    this.unsupportedValues++;
+                }
+            }
+
+            this.lastNanos = now;
+            this.transactions++;
+            this.items += count;
+        }
+        catch ( final IOException e )
+        {
+            this.error = e;
+        }
+    }
+
+    private static long toLong ( final JIStruct timestamp )
+    {
+        if ( timestamp == null )
+        {
+            return 0;
+        }
+
+        final long low = (Integer)timestamp.getMember ( 0 );
+        final long high = (Integer)timestamp.getMember ( 1 );
+        return high << 32 | low & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Flush recorded data to the underlying stream
+     * @throws IOException if writing failed
+     */
+    public synchronized void flush () throws IOException
+    {
+        if ( this.error != null )
+        {
+            throw this.error;
+        }
+        if ( !this.closed )
+        {
+            this.out.flush ();
+        }
+    }
+
+    /**
+     * Stop recording and close the underlying stream
+     * @throws IOException if writing failed at any time during the recording
+     */
+    public synchronized void close () throws IOException
+    {
+        if ( this.closed )
+        {
+            return;
+        }
+        this.closed = true;
+
+        this.out.close ();
+
+        if ( this.error != null )
+        {
+            throw this.error;
+        }
+    }
+
+    /**
+     * Get the number of recorded transactions
+     */
+    public synchronized long getTransactions ()
+    {
+        return this.transactions;
+    }
+
+    /**
+     * Get the number of recorded items over all transactions
+     */
+    public synchronized long getItems ()
+    {
+        return this.items;
+    }
+
+    /**
+     * Get the number of values which were recorded as <code>VT_EMPTY</code>
+     * since their type is not supported by the recording format
+     */
+    public synchronized long getUnsupportedValues ()
+    {
+        return this.unsupportedValues;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.dcom.da.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openscada.opc.dcom.da.IOPCDataCallback;
+
+/**
+ * Plays back a recording created by the {@link TransactionRecorder} into an {@link IOPCDataCallback}.
+ * <br/>
+ * The speed factor scales the recorded time between transactions. A factor of
+ * {@link #ORIGINAL_SPEED} keeps the original timing, larger factors accelerate the
+ * playback and {@link #MAXIMUM_SPEED} delivers the transactions as fast as the callback
+ * accepts them. Transactions are delivered from the calling thread.
+ */
+public class TransactionReplayer
+{
+    public static final double ORIGINAL_SPEED = 1.0;
+
+    public static final double MAXIMUM_SPEED = Double.POSITIVE_INFINITY;
+
+    private final File file;
+
+    private final double speed;
+
+    private long transactions;
+
+    private long items;
+
+    private long maximumLag;
+
+    public TransactionReplayer ( final File file, final double speed )
+    {
+        if ( ! ( speed > 0.0 ) )
+        {
+            throw new IllegalArgumentException ( "Speed must be greater than zero" );
+        }
+
+        this.file = file;
+        this.speed = speed;
+    }
+
+    /**
+     * Play back the whole recording
+     * @param callback the callback to deliver the transactions to
+     * @return the number of transactions delivered
+     * @throws IOException if the recording cannot be read
+     * @throws InterruptedException if the thread was interrupted while waiting for the next transaction
+     */
+    public long replay ( final IOPCDataCallback callback ) throws IOException, InterruptedException
+    {
+        this.transactions = 0;
+        this.items = 0;
+        this.maximumLag = 0;
+
+        final TransactionReader reader = new TransactionReader ( this.file );
+        try
+        {
+            final long start = System.nanoTime ();
+
+            RecordedTransaction transaction;
+            while ( ( transaction = reader.next () ) != null )
+            {
+                if ( this.speed != MAXIMUM_SPEED )
+                {
+                    final long due = start + (long) ( transaction.getOffset () / this.speed );
+                    final long delay = due - System.nanoTime ();
+                    if ( delay > 0 )
+                    {
+                        TimeUnit.NANOSECONDS.sleep ( delay );
+                    }
+                    else
+                    {
+                        this.maximumLag = Math.max ( this.maximumLag, -delay );
+                    }
+                }
+
+                transaction.dispatch ( callback );
+
+                this.transactions++;
+                this.items += transaction.getCount ();
+            }
+        }
+        finally
+        {
+            reader.close ();
+        }
+
+        return this.transactions;
+    }
+
+    /**
+     * Get the number of transactions delivered by the last playback
+     */
+    public long getTransactions ()
+    {
+        return this.transactions;
+    }
+
+    /**
+     * Get the number of items delivered by the last playback
+     */
+    public long getItems ()
+    {
+        return this.items;
+    }
+
+    /**
+     * Get the largest delay of a transaction behind its scheduled time during the last playback.
+     * <br/>
+     * A growing lag indicates that the callback cannot keep up with the playback speed.
+     * @return the lag in nanoseconds, always zero when playing at maximum speed
+     */
+    public long getMaximumLag ()
+    {
+        return this.maximumLag;
+    }
+}
@@ -31,7 +31,6 @@ import org.jinterop.dcom.core.JIPointer;
 import org.jinterop.dcom.core.JIString;
 import org.openscada.opc.dcom.common.impl.BaseCOMObject;
 import org.openscada.opc.dcom.common.impl.EnumGUID;
-import org.openscada.opc.dcom.common.impl.Helper;
 import org.openscada.opc.dcom.list.ClassDetails;
 import org.openscada.opc.dcom.list.Constants;
 
@@ -59,7 +58,7 @@ public class OPCServerList extends BaseCOMObject
 
         try
         {
-            Object[] result = getCOMObject ().call ( callObject );
+            Object[] result = call ( callObject );
             return JIClsid.valueOf ( ( (UUID)result[0] ).toString () );
         }
         catch ( JIException e )
@@ -92,7 +91,7 @@ public class OPCServerList extends BaseCOMObject
         callObject.addOutParamAsObject ( new JIPointer ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ) ), JIFlags.FLAG_NULL );
         callObject.addOutParamAsObject ( new JIPointer ( new JIString ( JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ) ), JIFlags.FLAG_NULL );
 
-        Object[] result = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object[] result = callRespectSFALSE ( callObject );
 
         ClassDetails cd = new ClassDetails ();
         cd.setClsId ( clsId.getCLSID () );
@@ -161,7 +160,7 @@ public class OPCServerList extends BaseCOMObject
         callObject.addOutParamAsType ( IJIComObject.class, JIFlags.FLAG_NULL );
 
         // ** RESULT
-        Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
+        Object result[] = callRespectSFALSE ( callObject );
 
         return new EnumGUID ( (IJIComObject)result[0] );
     }
@@ -0,0 +1,48 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks of this bundle.
+ * <br/>
+ * The first argument, if present, is a regular expression selecting the
+ * benchmarks to run. By default all benchmarks of this package are run.
+ * <br/>
+ * The bundle must be compiled with the JMH annotation processor so that the
+ * benchmark harness gets generated. The build does this when the profile
+ * <code>benchmarks</code> is active. The benchmarks use the simulated server
+ * of <code>org.openscada.opc.lib.sim</code>, which must be on the class path
+ * together with JMH and the libraries.
+ */
+public class BenchmarkRunner
+{
+    public static void main ( final String[] args ) throws RunnerException
+    {
+        final String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage ().getName () + ".*Benchmark";
+
+        final Options options = new OptionsBuilder ().include ( include ).build ();
+        new Runner ( options ).run ();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.jinterop.dcom.core.JIStruct;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.opc.dcom.common.FILETIME;
+
+/**
+ * Conversion of FILETIME structures into calendars
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.NANOSECONDS )
+@Warmup ( iterations = 5, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class FiletimeBenchmark
+{
+    private JIStruct struct;
+
+    private FILETIME fileTime;
+
+    @Setup
+    public void setup ()
+    {
+        this.struct = SyntheticData.fileTime ( System.currentTimeMillis () );
+        this.fileTime = FILETIME.fromStruct ( this.struct );
+    }
+
+    @Benchmark
+    public FILETIME fromStruct ()
+    {
+        return FILETIME.fromStruct ( this.struct );
+    }
+
+    @Benchmark
+    public Calendar asCalendar ()
+    {
+        return this.fileTime.asCalendar ();
+    }
+
+    @Benchmark
+    public Calendar asBigDecimalCalendar ()
+    {
+        return this.fileTime.asBigDecimalCalendar ();
+    }
+
+    @Benchmark
+    public Calendar fromStructAsCalendar ()
+    {
+        return FILETIME.fromStruct ( this.struct ).asCalendar ();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.opc.lib.da.Group;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.sim.SimulatedServer;
+import org.openscada.opc.lib.sim.SimulationConfiguration;
+
+/**
+ * The bookkeeping of {@link Group#addItems(String...)} and {@link Group#clear()}:
+ * client handle generation, item definition and result assembly and the item maps
+ * of the group, adding the items to a {@link SimulatedServer}
+ */
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Warmup ( iterations = 5, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class GroupAddItemsBenchmark
+{
+    @Param ( { "10", "1000", "10000" } )
+    public int items;
+
+    private SimulatedServer server;
+
+    private Group group;
+
+    private String[] itemIds;
+
+    @Setup
+    public void setup () throws Exception
+    {
+        final SimulationConfiguration configuration = new SimulationConfiguration ( this.items, 1.0 );
+        this.server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+        this.server.connect ();
+        this.group = this.server.addGroup ();
+
+        this.itemIds = new String[this.items];
+        for ( int i = 0; i < this.items; i++ )
+        {
+            this.itemIds[i] = configuration.getTagPrefix () + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        this.server.dispose ();
+        this.server.getScheduler ().shutdown ();
+    }
+
+    @Benchmark
+    public Map<String, Item> addAndClear () throws Exception
+    {
+        final Map<String, Item> result = this.group.addItems ( this.itemIds );
+        this.group.clear ();
+        return result;
+    }
+}
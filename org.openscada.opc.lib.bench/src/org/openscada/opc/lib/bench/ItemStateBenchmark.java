@@ -0,0 +1,92 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jinterop.dcom.core.JIVariant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.opc.lib.da.ItemState;
+
+/**
+ * Comparison and hashing of item states, as done for every update
+ * by {@link org.openscada.opc.lib.da.AccessBase}
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.NANOSECONDS )
+@Warmup ( iterations = 5, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class ItemStateBenchmark
+{
+    private ItemState state;
+
+    private ItemState equalState;
+
+    private ItemState changedValue;
+
+    private ItemState changedTimestamp;
+
+    @Setup
+    public void setup ()
+    {
+        final long now = System.currentTimeMillis ();
+        final JIVariant value = SyntheticData.value ( 1, 0 );
+
+        this.state = new ItemState ( 0, value, SyntheticData.calendar ( now ), SyntheticData.QUALITY_GOOD );
+        this.equalState = new ItemState ( 0, value, SyntheticData.calendar ( now ), SyntheticData.QUALITY_GOOD );
+        this.changedValue = new ItemState ( 0, SyntheticData.value ( 1, 1 ), SyntheticData.calendar ( now ), SyntheticData.QUALITY_GOOD );
+        this.changedTimestamp = new ItemState ( 0, value, SyntheticData.calendar ( now + 1 ), SyntheticData.QUALITY_GOOD );
+    }
+
+    @Benchmark
+    public boolean equalsEqual ()
+    {
+        return this.state.equals ( this.equalState );
+    }
+
+    @Benchmark
+    public boolean equalsChangedValue ()
+    {
+        return this.state.equals ( this.changedValue );
+    }
+
+    @Benchmark
+    public boolean equalsChangedTimestamp ()
+    {
+        return this.state.equals ( this.changedTimestamp );
+    }
+
+    @Benchmark
+    public int hashCodeState ()
+    {
+        return this.state.hashCode ();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jinterop.dcom.core.JIArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.opc.dcom.common.KeyedResultSet;
+import org.openscada.opc.dcom.common.ResultSet;
+import org.openscada.opc.dcom.da.IOPCDataCallback;
+import org.openscada.opc.dcom.da.ValueData;
+import org.openscada.opc.dcom.da.impl.OPCDataCallback;
+
+/**
+ * Decoding of the <code>IOPCDataCallback::OnDataChange</code> arguments into
+ * a result set
+ */
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Warmup ( iterations = 5, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class OnDataChangeBenchmark
+{
+    @Param ( { "1", "100", "1000", "10000" } )
+    public int items;
+
+    private final OPCDataCallback dataCallback = new OPCDataCallback ();
+
+    private KeyedResultSet<Integer, ValueData> result;
+
+    private JIArray clientHandles;
+
+    private JIArray values;
+
+    private JIArray qualities;
+
+    private JIArray timestamps;
+
+    private JIArray errors;
+
+    @Setup
+    public void setup ()
+    {
+        this.clientHandles = SyntheticData.clientHandles ( this.items, 1 );
+        this.values = SyntheticData.values ( this.items, 0 );
+        this.qualities = SyntheticData.qualities ( this.items );
+        this.timestamps = SyntheticData.timestamps ( this.items, System.currentTimeMillis () );
+        this.errors = SyntheticData.errors ( this.items );
+
+        this.dataCallback.setCallback ( new IOPCDataCallback () {
+
+            @Override
+            public void dataChange ( final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final KeyedResultSet<Integer, ValueData> result )
+            {
+                OnDataChangeBenchmark.this.result = result;
+            }
+
+            @Override
+            public void readComplete ( final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final KeyedResultSet<Integer, ValueData> result )
+            {
+                OnDataChangeBenchmark.this.result = result;
+            }
+
+            @Override
+            public void writeComplete ( final int transactionId, final int serverGroupHandle, final int masterErrorCode, final ResultSet<Integer> result )
+            {
+            }
+
+            @Override
+            public void cancelComplete ( final int transactionId, final int serverGroupHandle )
+            {
+            }
+        } );
+    }
+
+    @Benchmark
+    public KeyedResultSet<Integer, ValueData> onDataChange ()
+    {
+        this.dataCallback.OnDataChange ( 0, 1, 0, 0, this.items, this.clientHandles, this.values, this.qualities, this.timestamps, this.errors );
+        return this.result;
+    }
+
+    @Benchmark
+    public KeyedResultSet<Integer, ValueData> onReadComplete ()
+    {
+        this.dataCallback.OnReadComplete ( 1, 1, 0, 0, this.items, this.clientHandles, this.values, this.qualities, this.timestamps, this.errors );
+        return this.result;
+    }
+}
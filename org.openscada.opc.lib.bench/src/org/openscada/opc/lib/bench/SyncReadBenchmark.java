@@ -0,0 +1,138 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.opc.dcom.common.KeyedResult;
+import org.openscada.opc.dcom.common.KeyedResultSet;
+import org.openscada.opc.dcom.da.OPCDATASOURCE;
+import org.openscada.opc.dcom.da.OPCITEMDEF;
+import org.openscada.opc.dcom.da.OPCITEMRESULT;
+import org.openscada.opc.dcom.da.OPCITEMSTATE;
+import org.openscada.opc.dcom.da.impl.OPCGroupStateMgt;
+import org.openscada.opc.dcom.da.impl.OPCServer;
+import org.openscada.opc.dcom.da.impl.OPCSyncIO;
+import org.openscada.opc.lib.da.Group;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+import org.openscada.opc.lib.sim.SimulatedServer;
+import org.openscada.opc.lib.sim.SimulationConfiguration;
+
+/**
+ * Assembly of the results of synchronous reads, once on the level of {@link OPCSyncIO}
+ * and once including the conversion to item states done by {@link Group}, both reading
+ * from a {@link SimulatedServer}
+ */
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Warmup ( iterations = 5, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class SyncReadBenchmark
+{
+    @Param ( { "1", "100", "1000", "10000" } )
+    public int items;
+
+    private SimulatedServer server;
+
+    private Group group;
+
+    private Integer[] groupHandles;
+
+    private OPCSyncIO syncIO;
+
+    private Integer[] syncHandles;
+
+    @Setup
+    public void setup () throws Exception
+    {
+        final SimulationConfiguration configuration = new SimulationConfiguration ( this.items, 1.0 );
+        this.server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+        this.server.connect ();
+
+        final String[] itemIds = new String[this.items];
+        final OPCITEMDEF[] itemDefs = new OPCITEMDEF[this.items];
+        for ( int i = 0; i < this.items; i++ )
+        {
+            itemIds[i] = configuration.getTagPrefix () + i;
+
+            itemDefs[i] = new OPCITEMDEF ();
+            itemDefs[i].setItemID ( itemIds[i] );
+            itemDefs[i].setActive ( true );
+            itemDefs[i].setClientHandle ( i );
+        }
+
+        // library level
+        this.group = this.server.addGroup ();
+
+        final Item[] groupItems = this.group.addItems ( itemIds ).values ().toArray ( new Item[this.items] );
+        this.groupHandles = new Integer[this.items];
+        for ( int i = 0; i < this.items; i++ )
+        {
+            this.groupHandles[i] = groupItems[i].getServerHandle ();
+        }
+
+        // DCOM level
+        final OPCGroupStateMgt groupMgt = new OPCServer ( this.server.getInstance ().getComObject () ).addGroup ( "sync", true, 1000, 0, null, null, 0 );
+        final KeyedResultSet<OPCITEMDEF, OPCITEMRESULT> result = groupMgt.getItemManagement ().add ( itemDefs );
+        this.syncHandles = new Integer[this.items];
+        int i = 0;
+        for ( final KeyedResult<OPCITEMDEF, OPCITEMRESULT> entry : result )
+        {
+            this.syncHandles[i++] = entry.getValue ().getServerHandle ();
+        }
+        this.syncIO = groupMgt.getSyncIO ();
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        this.server.dispose ();
+        this.server.getScheduler ().shutdown ();
+    }
+
+    @Benchmark
+    public KeyedResultSet<Integer, OPCITEMSTATE> syncIORead () throws Exception
+    {
+        return this.syncIO.read ( OPCDATASOURCE.OPC_DS_CACHE, this.syncHandles );
+    }
+
+    @Benchmark
+    public Map<Item, ItemState> groupRead () throws Exception
+    {
+        return this.group.read ( false, this.groupHandles );
+    }
+}
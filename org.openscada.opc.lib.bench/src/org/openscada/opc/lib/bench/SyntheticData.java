@@ -0,0 +1,207 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.Calendar;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIArray;
+import org.jinterop.dcom.core.JIStruct;
+import org.jinterop.dcom.core.JIVariant;
+
+/**
+ * Builders for the synthetic DCOM structures the benchmarks are fed with
+ */
+public final class SyntheticData
+{
+    /**
+     * The difference between the FILETIME epoch (1601-01-01) and the Java epoch in milliseconds
+     */
+    private static final long EPOCH_DIFFERENCE = 11644473600000L;
+
+    /**
+     * The OPC quality "good"
+     */
+    public static final short QUALITY_GOOD = 192;
+
+    private SyntheticData ()
+    {
+    }
+
+    /**
+     * Create a FILETIME structure as it is received from the wire
+     * @param millis the time in milliseconds since the Java epoch
+     * @return the new structure
+     */
+    public static JIStruct fileTime ( final long millis )
+    {
+        final long ticks = ( millis + EPOCH_DIFFERENCE ) * 10000L;
+        try
+        {
+            final JIStruct struct = new JIStruct ();
+            struct.addMember ( Integer.valueOf ( (int)ticks ) );
+            struct.addMember ( Integer.valueOf ( (int) ( ticks >>> 32 ) ) );
+            return struct;
+        }
+        catch ( final JIException e )
+        {
+            throw new RuntimeException ( e );
+        }
+    }
+
+    /**
+     * Create a value for the item at the provided index.
+     * <br/>
+     * The values rotate over the variant types which are commonly seen in OPC servers.
+     * @param index the index of the item
+     * @param generation the generation of the value, changing the generation changes the value
+     * @return the new value
+     */
+    public static JIVariant value ( final int index, final int generation )
+    {
+        switch ( index % 4 )
+        {
+        case 0:
+            return new JIVariant ( index + generation );
+        case 1:
+            return new JIVariant ( (double) ( index + generation ) / 10.0 );
+        case 2:
+            return new JIVariant ( ( index + generation ) % 2 == 0 );
+        default:
+            return new JIVariant ( (short) ( index + generation ) );
+        }
+    }
+
+    /**
+     * Create the client handle array of a data change
+     * @param count the number of items
+     * @param firstHandle the first client handle, the following handles are consecutive
+     * @return the new array
+     */
+    public static JIArray clientHandles ( final int count, final int firstHandle )
+    {
+        final Integer[] handles = new Integer[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            handles[i] = firstHandle + i;
+        }
+        return new JIArray ( handles, true );
+    }
+
+    /**
+     * Create the value array of a data change
+     * @param count the number of items
+     * @param generation the generation of the values
+     * @return the new array
+     * @see #value(int, int)
+     */
+    public static JIArray values ( final int count, final int generation )
+    {
+        final JIVariant[] values = new JIVariant[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            values[i] = value ( i, generation );
+        }
+        return new JIArray ( values, true );
+    }
+
+    /**
+     * Create the quality array of a data change with all qualities being good
+     * @param count the number of items
+     * @return the new array
+     */
+    public static JIArray qualities ( final int count )
+    {
+        final Short[] qualities = new Short[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            qualities[i] = QUALITY_GOOD;
+        }
+        return new JIArray ( qualities, true );
+    }
+
+    /**
+     * Create the timestamp array of a data change
+     * @param count the number of items
+     * @param millis the time of the first item, each following item is one millisecond later
+     * @return the new array
+     */
+    public static JIArray timestamps ( final int count, final long millis )
+    {
+        final JIStruct[] timestamps = new JIStruct[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            timestamps[i] = fileTime ( millis + i );
+        }
+        return new JIArray ( timestamps, true );
+    }
+
+    /**
+     * Create an error code array of a data change with all codes being <code>S_OK</code>
+     * @param count the number of items
+     * @return the new array
+     */
+    public static JIArray errors ( final int count )
+    {
+        final Integer[] errors = new Integer[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            errors[i] = 0;
+        }
+        return new JIArray ( errors, true );
+    }
+
+    /**
+     * Create an OPCITEMSTATE structure as it is returned by <code>IOPCSyncIO::Read</code>
+     * @param clientHandle the client handle of the item
+     * @param millis the timestamp of the value
+     * @param value the value
+     * @return the new structure
+     */
+    public static JIStruct itemState ( final int clientHandle, final long millis, final JIVariant value )
+    {
+        try
+        {
+            final JIStruct struct = new JIStruct ();
+            struct.addMember ( Integer.valueOf ( clientHandle ) );
+            struct.addMember ( fileTime ( millis ) );
+            struct.addMember ( Short.valueOf ( QUALITY_GOOD ) );
+            struct.addMember ( Short.valueOf ( (short)0 ) );
+            struct.addMember ( value );
+            return struct;
+        }
+        catch ( final JIException e )
+        {
+            throw new RuntimeException ( e );
+        }
+    }
+
+    /**
+     * Create a calendar for the provided time
+     * @param millis the time in milliseconds
+     * @return the new calendar
+     */
+    public static Calendar calendar ( final long millis )
+    {
+        final Calendar c = Calendar.getInstance ();
+        c.setTimeInMillis ( millis );
+        return c;
+    }
+}
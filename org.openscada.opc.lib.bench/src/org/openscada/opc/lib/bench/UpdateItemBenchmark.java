@@ -0,0 +1,163 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.opc.lib.da.AccessBase;
+import org.openscada.opc.lib.da.DataCallback;
+import org.openscada.opc.lib.da.Group;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+import org.openscada.opc.lib.da.Server;
+import org.openscada.opc.lib.sim.SimulatedServer;
+import org.openscada.opc.lib.sim.SimulationConfiguration;
+
+/**
+ * Delivery of updates through {@link AccessBase#updateItem(Item, ItemState)}, once
+ * with changing values and once with duplicates which get suppressed
+ */
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.NANOSECONDS )
+@Warmup ( iterations = 5, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class UpdateItemBenchmark
+{
+    private static final int ITEMS = 1000;
+
+    private SimulatedServer server;
+
+    private BenchmarkAccess access;
+
+    private Item[] items;
+
+    private ItemState[][] states;
+
+    private int generation;
+
+    private int changes;
+
+    private static class BenchmarkAccess extends AccessBase
+    {
+        public BenchmarkAccess ( final Server server )
+        {
+            super ( server, 1000, null );
+        }
+
+        public void register ( final Item item, final DataCallback dataCallback )
+        {
+            this.items.put ( item, dataCallback );
+            this.itemMap.put ( item.getId (), item );
+        }
+
+        public void update ( final Item item, final ItemState itemState )
+        {
+            updateItem ( item, itemState );
+        }
+    }
+
+    @Setup
+    public void setup () throws Exception
+    {
+        final SimulationConfiguration configuration = new SimulationConfiguration ( ITEMS, 1.0 );
+        this.server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+        this.server.connect ();
+        this.access = new BenchmarkAccess ( this.server );
+
+        final List<String> itemIds = new ArrayList<String> ( ITEMS );
+        for ( int i = 0; i < ITEMS; i++ )
+        {
+            itemIds.add ( configuration.getTagPrefix () + i );
+        }
+
+        final Group group = this.server.addGroup ();
+        this.items = group.addItems ( itemIds.toArray ( new String[ITEMS] ) ).values ().toArray ( new Item[ITEMS] );
+
+        final DataCallback dataCallback = new DataCallback () {
+
+            @Override
+            public void changed ( final Item item, final ItemState itemState )
+            {
+                UpdateItemBenchmark.this.changes++;
+            }
+        };
+
+        // two generations of states, alternating between them changes every value
+        final long now = System.currentTimeMillis ();
+        this.states = new ItemState[2][ITEMS];
+        for ( int i = 0; i < ITEMS; i++ )
+        {
+            this.access.register ( this.items[i], dataCallback );
+            for ( int j = 0; j < 2; j++ )
+            {
+                this.states[j][i] = new ItemState ( 0, SyntheticData.value ( i, j ), SyntheticData.calendar ( now + j ), SyntheticData.QUALITY_GOOD );
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        this.access.clear ();
+        this.server.dispose ();
+        this.server.getScheduler ().shutdown ();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation ( ITEMS )
+    public int changed ()
+    {
+        final ItemState[] states = this.states[this.generation++ & 1];
+        for ( int i = 0; i < ITEMS; i++ )
+        {
+            this.access.update ( this.items[i], states[i] );
+        }
+        return this.changes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation ( ITEMS )
+    public int duplicate ()
+    {
+        final ItemState[] states = this.states[0];
+        for ( int i = 0; i < ITEMS; i++ )
+        {
+            this.access.update ( this.items[i], states[i] );
+        }
+        return this.changes;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A remote call to an OPC server
+ */
+@Name ( "org.openscada.opc.DcomCall" )
+@Label ( "DCOM Call" )
+@Description ( "A remote call to an OPC server" )
+@Category ( { "OpenSCADA", "Utgard" } )
+@StackTrace ( false )
+public class DcomCallEvent extends jdk.jfr.Event
+{
+    @Label ( "Interface" )
+    public String interfaceName;
+
+    @Label ( "Operation Number" )
+    public int opnum;
+
+    @Label ( "Items" )
+    public int items;
+
+    @Label ( "Call Duration" )
+    @Timespan ( Timespan.NANOSECONDS )
+    public long callDuration;
+
+    @Label ( "Result Code" )
+    public int errorCode;
+}
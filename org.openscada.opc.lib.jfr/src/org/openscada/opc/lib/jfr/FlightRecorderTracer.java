@@ -0,0 +1,234 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.jfr;
+
+import jdk.jfr.Event;
+
+import org.openscada.opc.dcom.common.CallTracer;
+import org.openscada.opc.dcom.common.DataCallbackTracer;
+import org.openscada.opc.dcom.common.impl.Helper;
+import org.openscada.opc.lib.common.ConnectionInformation;
+import org.openscada.opc.lib.da.AutoReconnectState;
+import org.openscada.opc.lib.da.ConnectionTracer;
+import org.openscada.opc.lib.da.Server;
+
+/**
+ * Emits Java Flight Recorder events for DCOM calls, data change callbacks,
+ * connection attempts, session cleanups and reconnect state changes.
+ * <br/>
+ * Call {@link #install()} once to hook into Utgard. The events are only created
+ * if they are enabled in the active recording.
+ * <br/>
+ * Events are begun when the operation starts and committed when it completes, so that
+ * their start time and duration are those of the operation. Since each operation starts
+ * and completes on the same thread, the pending events are kept in thread locals. If no
+ * event was begun, e.g. because the tracer was installed while the operation was running,
+ * the event is committed without a duration and only the duration field of the event is set.
+ */
+public class FlightRecorderTracer implements CallTracer, DataCallbackTracer, ConnectionTracer
+{
+    private final ThreadLocal<DcomCallEvent> callEvent = new ThreadLocal<DcomCallEvent> ();
+
+    private final ThreadLocal<DataChangeEvent> dataChangeEvent = new ThreadLocal<DataChangeEvent> ();
+
+    private final ThreadLocal<ConnectEvent> connectEvent = new ThreadLocal<ConnectEvent> ();
+
+    private final ThreadLocal<CleanupEvent> cleanupEvent = new ThreadLocal<CleanupEvent> ();
+
+    /**
+     * Install a new tracer as call, data callback and connection tracer.
+     * <br/>
+     * This replaces tracers which are already installed.
+     * @return the installed tracer
+     */
+    public static FlightRecorderTracer install ()
+    {
+        final FlightRecorderTracer tracer = new FlightRecorderTracer ();
+        Helper.setCallTracer ( tracer );
+        Helper.setDataCallbackTracer ( tracer );
+        Server.setConnectionTracer ( tracer );
+        return tracer;
+    }
+
+    /**
+     * Remove all tracers
+     */
+    public static void uninstall ()
+    {
+        Helper.setCallTracer ( null );
+        Helper.setDataCallbackTracer ( null );
+        Server.setConnectionTracer ( null );
+    }
+
+    @Override
+    public void callStarted ( final String interfaceName, final int opnum )
+    {
+        this.callEvent.set ( begin ( new DcomCallEvent () ) );
+    }
+
+    @Override
+    public void callCompleted ( final String interfaceName, final int opnum, final int items, final long nanos, final int errorCode )
+    {
+        DcomCallEvent event = end ( this.callEvent );
+        if ( event == null )
+        {
+            event = new DcomCallEvent ();
+            if ( !event.isEnabled () )
+            {
+                return;
+            }
+        }
+
+        event.interfaceName = interfaceName;
+        event.opnum = opnum;
+        event.items = items;
+        event.callDuration = nanos;
+        event.errorCode = errorCode;
+        event.commit ();
+    }
+
+    @Override
+    public void dataChangeStarted ( final int serverGroupHandle )
+    {
+        this.dataChangeEvent.set ( begin ( new DataChangeEvent () ) );
+    }
+
+    @Override
+    public void dataChangeCompleted ( final int serverGroupHandle, final int items, final long decodeNanos, final long dispatchNanos )
+    {
+        DataChangeEvent event = end ( this.dataChangeEvent );
+        if ( event == null )
+        {
+            event = new DataChangeEvent ();
+            if ( !event.isEnabled () )
+            {
+                return;
+            }
+        }
+
+        event.serverGroupHandle = serverGroupHandle;
+        event.items = items;
+        event.decodeTime = decodeNanos;
+        event.dispatchTime = dispatchNanos;
+        event.commit ();
+    }
+
+    @Override
+    public void connectStarted ( final ConnectionInformation connectionInformation )
+    {
+        this.connectEvent.set ( begin ( new ConnectEvent () ) );
+    }
+
+    @Override
+    public void connectCompleted ( final ConnectionInformation connectionInformation, final long nanos, final Throwable error )
+    {
+        ConnectEvent event = end ( this.connectEvent );
+        if ( event == null )
+        {
+            event = new ConnectEvent ();
+            if ( !event.isEnabled () )
+            {
+                return;
+            }
+        }
+
+        event.server = makeServerName ( connectionInformation );
+        event.connectTime = nanos;
+        event.error = error != null ? error.toString () : null;
+        event.commit ();
+    }
+
+    @Override
+    public void cleanupStarted ( final ConnectionInformation connectionInformation )
+    {
+        this.cleanupEvent.set ( begin ( new CleanupEvent () ) );
+    }
+
+    @Override
+    public void cleanupCompleted ( final ConnectionInformation connectionInformation, final long nanos )
+    {
+        CleanupEvent event = end ( this.cleanupEvent );
+        if ( event == null )
+        {
+            event = new CleanupEvent ();
+            if ( !event.isEnabled () )
+            {
+                return;
+            }
+        }
+
+        event.server = makeServerName ( connectionInformation );
+        event.cleanupTime = nanos;
+        event.commit ();
+    }
+
+    @Override
+    public void reconnectStateChanged ( final ConnectionInformation connectionInformation, final AutoReconnectState state )
+    {
+        final ReconnectStateEvent event = new ReconnectStateEvent ();
+        if ( !event.isEnabled () )
+        {
+            return;
+        }
+
+        event.server = makeServerName ( connectionInformation );
+        event.state = state.toString ();
+        event.commit ();
+    }
+
+    /**
+     * Begin an event if it is enabled
+     * @param event the new event
+     * @return the begun event or <code>null</code> if the event is disabled
+     */
+    private static <T extends Event> T begin ( final T event )
+    {
+        if ( !event.isEnabled () )
+        {
+            return null;
+        }
+        event.begin ();
+        return event;
+    }
+
+    /**
+     * End the event begun by the current thread
+     * @param pending the thread local holding the begun event
+     * @return the ended event or <code>null</code> if no event was begun
+     */
+    private static <T extends Event> T end ( final ThreadLocal<T> pending )
+    {
+        final T event = pending.get ();
+        if ( event == null )
+        {
+            return null;
+        }
+
+        pending.set ( null );
+        event.end ();
+        return event;
+    }
+
+    private static String makeServerName ( final ConnectionInformation connectionInformation )
+    {
+        final String target = connectionInformation.getClsid () != null ? connectionInformation.getClsid () : connectionInformation.getProgId ();
+        return connectionInformation.getHost () + "/" + target;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIArray;
+import org.jinterop.dcom.core.JIStruct;
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.FILETIME;
+import org.openscada.opc.dcom.da.Constants;
+import org.openscada.opc.dcom.da.OPCDATASOURCE;
+import org.openscada.opc.dcom.da.impl.OPCDataCallback;
+import org.openscada.opc.lib.da.Async20Access;
+import org.openscada.opc.lib.da.DataCallback;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+import org.openscada.opc.lib.da.OverrunPolicy;
+import org.openscada.opc.lib.da.PollingScheduler;
+import org.openscada.opc.lib.da.SyncAccess;
+
+/**
+ * Measure the memory allocated per item update on the data path and fail
+ * if it exceeds the budget.
+ * <br/>
+ * Two paths are measured on the calling thread using the allocation counters
+ * of the {@link com.sun.management.ThreadMXBean}. Every update carries a changed value,
+ * so each update is passed on to the {@link DataCallback}:
+ * <ul>
+ * <li><code>async</code>: {@link OPCDataCallback} to {@link Async20Access} to the {@link DataCallback}</li>
+ * <li><code>sync</code>: one read cycle of the {@link SyncAccess}. The time of the simulated server
+ * is advanced before each cycle so that all values change. The allocations of the simulated
+ * server answering the same reads are measured separately and subtracted.</li>
+ * </ul>
+ * Arguments: <code>[items] [cycles]</code>, the defaults are 1000 items and 2000 cycles.
+ * <br/>
+ * The budgets in bytes per item update are set by the system properties
+ * <code>openscada.opc.alloc.async</code> and <code>openscada.opc.alloc.sync</code>.
+ * The process exits with status 1 if a budget is exceeded.
+ * <br/>
+ * This is a manual tool like the other programs of this bundle, it is not run by the build.
+ */
+public class AllocationTest
+{
+    private static final int ASYNC_BUDGET = Integer.getInteger ( "openscada.opc.alloc.async", 1024 );
+
+    private static final int SYNC_BUDGET = Integer.getInteger ( "openscada.opc.alloc.sync", 2048 );
+
+    private static final short QUALITY_GOOD = 0xC0;
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean ();
+
+    private static interface Cycle
+    {
+        public void run () throws Exception;
+    }
+
+    private static class MeasuredAsyncAccess extends Async20Access
+    {
+        public MeasuredAsyncAccess ( final SimulatedServer server ) throws Exception
+        {
+            super ( server, 1000, false );
+        }
+
+        public synchronized Integer[] getClientHandles ()
+        {
+            final Integer[] clientHandles = new Integer[this.items.size ()];
+            int i = 0;
+            for ( final Item item : this.items.keySet () )
+            {
+                clientHandles[i++] = item.getClientHandle ();
+            }
+            return clientHandles;
+        }
+    }
+
+    private static class MeasuredSyncAccess extends SyncAccess
+    {
+        public MeasuredSyncAccess ( final SimulatedServer server, final PollingScheduler pollingScheduler ) throws Exception
+        {
+            super ( server, Integer.MAX_VALUE, pollingScheduler, OverrunPolicy.SKIP );
+        }
+
+        public void cycle () throws JIException
+        {
+            runOnce ();
+        }
+
+        public synchronized Integer[] getServerHandles ()
+        {
+            final Integer[] serverHandles = new Integer[this.items.size ()];
+            int i = 0;
+            for ( final Item item : this.items.keySet () )
+            {
+                serverHandles[i++] = item.getServerHandle ();
+            }
+            return serverHandles;
+        }
+
+        public synchronized int getGroupServerHandle ()
+        {
+            return this.items.keySet ().iterator ().next ().getGroup ().getServerHandle ();
+        }
+    }
+
+    private static class CountingDataCallback implements DataCallback
+    {
+        private final AtomicLong updates = new AtomicLong ();
+
+        @Override
+        public void changed ( final Item item, final ItemState itemState )
+        {
+            this.updates.incrementAndGet ();
+        }
+
+        public long getUpdates ()
+        {
+            return this.updates.get ();
+        }
+    }
+
+    public static void main ( final String[] args ) throws Throwable
+    {
+        final int items = args.length > 0 ? Integer.parseInt ( args[0] ) : 1000;
+        final int cycles = args.length > 1 ? Integer.parseInt ( args[1] ) : 2000;
+
+        if ( !threads.isThreadAllocatedMemorySupported () )
+        {
+            System.out.println ( "The JVM does not support measuring thread allocations" );
+            System.exit ( 2 );
+        }
+        threads.setThreadAllocatedMemoryEnabled ( true );
+
+        // one change per millisecond of simulated time
+        final SimulationConfiguration configuration = new SimulationConfiguration ( items, 1000.0 );
+        configuration.setCallLatency ( 0 );
+        // the simulated groups must not report data changes on their own
+        configuration.setMinimumUpdateRate ( Integer.MAX_VALUE );
+
+        final SimulatedServer server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+        server.connect ();
+
+        boolean passed = true;
+        try
+        {
+            passed &= testAsync ( server, items, cycles );
+            passed &= testSync ( server, items, cycles );
+        }
+        finally
+        {
+            server.dispose ();
+            server.getScheduler ().shutdown ();
+        }
+
+        System.exit ( passed ? 0 : 1 );
+    }
+
+    private static boolean testAsync ( final SimulatedServer server, final int items, final int cycles ) throws Exception
+    {
+        final MeasuredAsyncAccess access = new MeasuredAsyncAccess ( server );
+        final CountingDataCallback dataCallback = new CountingDataCallback ();
+        for ( int i = 0; i < items; i++ )
+        {
+            access.addItem ( server.getConfiguration ().getTagPrefix () + i, dataCallback );
+        }
+        access.bind ();
+
+        try
+        {
+            final Integer[] clientHandles = access.getClientHandles ();
+
+            // two generations of values, alternating between them changes every value
+            final long now = System.currentTimeMillis ();
+            final JIArray[][] generations = new JIArray[][] { makeValues ( clientHandles, 0, now ), makeValues ( clientHandles, 1, now + 1 ) };
+
+            final OPCDataCallback callback = new OPCDataCallback ();
+            callback.setCallback ( access );
+
+            final Cycle cycle = new Cycle () {
+
+                private int generation;
+
+                @Override
+                public void run () throws Exception
+                {
+                    final JIArray[] data = generations[this.generation++ & 1];
+                    callback.OnDataChange ( 0, 1, 0, 0, items, data[0], data[1], data[2], data[3], data[4] );
+                }
+            };
+
+            return report ( "async", measure ( cycle, cycles, items, dataCallback ), ASYNC_BUDGET );
+        }
+        finally
+        {
+            access.unbind ();
+        }
+    }
+
+    private static boolean testSync ( final SimulatedServer server, final int items, final int cycles ) throws Exception
+    {
+        final PollingScheduler pollingScheduler = new PollingScheduler ( 1 );
+        final MeasuredSyncAccess access = new MeasuredSyncAccess ( server, pollingScheduler );
+        final CountingDataCallback dataCallback = new CountingDataCallback ();
+        for ( int i = 0; i < items; i++ )
+        {
+            access.addItem ( server.getConfiguration ().getTagPrefix () + i, dataCallback );
+        }
+        access.bind ();
+
+        try
+        {
+            // wait for the initial cycle of the scheduler to complete
+            while ( access.getPollingTask ().getCycles () == 0 )
+            {
+                Thread.sleep ( 10 );
+            }
+
+            final SimulatedOPCServer instance = server.getInstance ();
+            final SimulatedGroup group = instance.getGroup ( access.getGroupServerHandle () );
+            final Object[] read = new Object[] { Short.valueOf ( (short)OPCDATASOURCE.OPC_DS_CACHE.id () ), items, new JIArray ( access.getServerHandles (), true ) };
+
+            // advancing the time by one millisecond changes all values
+            final long[] time = new long[] { instance.currentTimeMillis () };
+
+            final Cycle cycle = new Cycle () {
+
+                @Override
+                public void run () throws Exception
+                {
+                    instance.setTime ( ++time[0] );
+                    access.cycle ();
+                }
+            };
+
+            final Cycle baseline = new Cycle () {
+
+                @Override
+                public void run () throws Exception
+                {
+                    instance.setTime ( ++time[0] );
+                    group.call ( Constants.IOPCSyncIO_IID, 0, read );
+                }
+            };
+
+            final double total = measure ( cycle, cycles, items, dataCallback );
+            final double simulation = measure ( baseline, cycles, items, null );
+            System.out.println ( String.format ( "sync   %10.1f bytes/update in total, %.1f of them by the simulated server", total, simulation ) );
+
+            return report ( "sync", total - simulation, SYNC_BUDGET );
+        }
+        finally
+        {
+            server.getInstance ().setTime ( -1 );
+            access.unbind ();
+            pollingScheduler.shutdown ();
+        }
+    }
+
+    private static JIArray[] makeValues ( final Integer[] clientHandles, final int generation, final long timestamp ) throws JIException
+    {
+        final int count = clientHandles.length;
+
+        final JIVariant[] values = new JIVariant[count];
+        final Short[] qualities = new Short[count];
+        final JIStruct[] timestamps = new JIStruct[count];
+        final Integer[] errors = new Integer[count];
+
+        for ( int i = 0; i < count; i++ )
+        {
+            values[i] = new JIVariant ( (double) ( i * 2 + generation ) );
+            qualities[i] = QUALITY_GOOD;
+            timestamps[i] = FILETIME.fromMillis ( timestamp ).toStruct ();
+            errors[i] = 0;
+        }
+
+        return new JIArray[] { new JIArray ( clientHandles, true ), new JIArray ( values, true ), new JIArray ( qualities, true ), new JIArray ( timestamps, true ), new JIArray ( errors, true ) };
+    }
+
+    /**
+     * Run the cycle once to warm up and once to measure
+     * @param dataCallback if not <code>null</code> the callback must have received one
+     * update per item and cycle
+     * @return the bytes allocated per item and cycle
+     */
+    private static double measure ( final Cycle cycle, final int cycles, final int items, final CountingDataCallback dataCallback ) throws Exception
+    {
+        for ( int i = 0; i < cycles; i++ )
+        {
+            cycle.run ();
+        }
+
+        final long updates = dataCallback != null ? dataCallback.getUpdates () : 0;
+        final long threadId = Thread.currentThread ().getId ();
+        final long start = threads.getThreadAllocatedBytes ( threadId );
+
+        for ( int i = 0; i < cycles; i++ )
+        {
+            cycle.run ();
+        }
+
+        final long allocated = threads.getThreadAllocatedBytes ( threadId ) - start;
+
+        if ( dataCallback != null && dataCallback.getUpdates () - updates != (long)cycles * items )
+        {
+            throw new IllegalStateException ( String.format ( "Expected %s updates but got %s", (long)cycles * items, dataCallback.getUpdates () - updates ) );
+        }
+
+        return (double)allocated / ( (long)cycles * items );
+    }
+
+    private static boolean report ( final String name, final double bytes, final int budget )
+    {
+        final boolean passed = bytes <= budget;
+        System.out.println ( String.format ( "%-6s %10.1f bytes/update, budget %6d: %s", name, bytes, budget, passed ? "OK" : "FAILED" ) );
+        return passed;
+    }
+}
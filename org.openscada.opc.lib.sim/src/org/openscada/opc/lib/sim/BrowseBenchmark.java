@@ -0,0 +1,162 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+
+import org.openscada.opc.lib.da.browser.Branch;
+import org.openscada.opc.lib.da.browser.FlatBrowser;
+import org.openscada.opc.lib.da.browser.ItemIdResolution;
+import org.openscada.opc.lib.da.browser.Leaf;
+import org.openscada.opc.lib.da.browser.TreeBrowser;
+
+/**
+ * Browse the address space of a simulated server and report the number of
+ * round trips and the time it took.
+ * <br/>
+ * Arguments: <code>[depth] [branches] [leaves] [latency] [batchSize]</code>, the defaults are
+ * a depth of 4 with 10 sub-branches and 90 leaves per branch, which makes about one million
+ * nodes, no latency and the default batch size of the <code>EnumString</code>. The latency is
+ * the time each call takes in microseconds.
+ * <br/>
+ * The flat browser and the tree browser using each way of resolving item IDs are run.
+ * Each run asks every leaf of the tree for its item ID, like a consumer of the browse result
+ * would, so that all modes do the same work.
+ */
+public class BrowseBenchmark
+{
+    private static interface Run
+    {
+        public long browse () throws Exception;
+    }
+
+    public static void main ( final String[] args ) throws Throwable
+    {
+        final SimulationConfiguration configuration = new SimulationConfiguration ();
+        configuration.setBrowseDepth ( args.length > 0 ? Integer.parseInt ( args[0] ) : 4 );
+        configuration.setBrowseBranches ( args.length > 1 ? Integer.parseInt ( args[1] ) : 10 );
+        configuration.setBrowseLeaves ( args.length > 2 ? Integer.parseInt ( args[2] ) : 90 );
+        configuration.setCallLatency ( args.length > 3 ? Integer.parseInt ( args[3] ) : 0 );
+        final Integer batchSize = args.length > 4 ? Integer.valueOf ( args[4] ) : null;
+
+        final SimulatedServer server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+        server.connect ();
+
+        try
+        {
+            final SimulatedAddressSpace addressSpace = server.getInstance ().getAddressSpace ();
+            System.out.println ( String.format ( "Address space: %s branches, %s leaves, latency: %s us", addressSpace.getBranchCount (), addressSpace.getLeafCount (), configuration.getCallLatency () ) );
+
+            run ( server, "flat", new Run () {
+
+                @Override
+                public long browse () throws Exception
+                {
+                    final FlatBrowser browser = server.getFlatBrowser ();
+                    if ( batchSize != null )
+                    {
+                        browser.setBatchSize ( batchSize );
+                    }
+                    return browser.browse ().size ();
+                }
+            } );
+
+            for ( final ItemIdResolution itemIdResolution : ItemIdResolution.values () )
+            {
+                runTree ( server, itemIdResolution, false, batchSize );
+            }
+            runTree ( server, ItemIdResolution.PATH_DERIVED, true, batchSize );
+        }
+        finally
+        {
+            server.dispose ();
+            server.getScheduler ().shutdown ();
+        }
+    }
+
+    private static void runTree ( final SimulatedServer server, final ItemIdResolution itemIdResolution, final boolean browseToBranches, final Integer batchSize ) throws Exception
+    {
+        final String name = String.format ( "tree/%s%s", itemIdResolution, browseToBranches ? "/browse-to" : "" );
+
+        run ( server, name, new Run () {
+
+            @Override
+            public long browse () throws Exception
+            {
+                final TreeBrowser browser = server.getTreeBrowser ();
+                if ( batchSize != null )
+                {
+                    browser.setBatchSize ( batchSize );
+                }
+                browser.setItemIdResolution ( itemIdResolution );
+                browser.setBrowseToBranches ( browseToBranches );
+                return resolveLeaves ( browser.browse () );
+            }
+        } );
+    }
+
+    private static void run ( final SimulatedServer server, final String name, final Run run ) throws Exception
+    {
+        final SimulatedOPCServer instance = server.getInstance ();
+
+        final long calls = instance.getCalls ();
+        final long start = System.nanoTime ();
+
+        final long leaves = run.browse ();
+
+        final long duration = System.nanoTime () - start;
+        final long roundTrips = instance.getCalls () - calls;
+
+        System.out.println ( String.format ( "%-28s %10d leaves, %10d round trips (%.3f per leaf), %8d ms", name, leaves, roundTrips, leaves > 0 ? (double)roundTrips / leaves : 0.0, duration / 1000000 ) );
+    }
+
+    /**
+     * Get the item ID of each leaf of the tree
+     * @return the number of leaves with an item ID
+     */
+    private static long resolveLeaves ( final Branch branch )
+    {
+        long leaves = 0;
+
+        final Collection<Leaf> branchLeaves = branch.getLeaves ();
+        if ( branchLeaves != null )
+        {
+            for ( final Leaf leaf : branchLeaves )
+            {
+                if ( leaf.getItemId () != null )
+                {
+                    leaves++;
+                }
+            }
+        }
+
+        final Collection<Branch> branches = branch.getBranches ();
+        if ( branches != null )
+        {
+            for ( final Branch child : branches )
+            {
+                leaves += resolveLeaves ( child );
+            }
+        }
+
+        return leaves;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscada.opc.lib.da.AccessBase;
+import org.openscada.opc.lib.da.Async20Access;
+import org.openscada.opc.lib.da.DataCallback;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+import org.openscada.opc.lib.da.SyncAccess;
+
+/**
+ * Subscribe to all tags of a simulated server and report the throughput.
+ * <br/>
+ * Arguments: <code>[tags] [async|sync] [seconds] [changeRate] [period]</code>,
+ * the defaults are 100000 tags using {@link Async20Access} for 30 seconds with
+ * one change per tag and second and a period of 1000 milliseconds.
+ */
+public class LoadTest
+{
+    public static void main ( final String[] args ) throws Throwable
+    {
+        final int tags = args.length > 0 ? Integer.parseInt ( args[0] ) : 100000;
+        final boolean async = args.length > 1 ? !"sync".equals ( args[1] ) : true;
+        final int seconds = args.length > 2 ? Integer.parseInt ( args[2] ) : 30;
+        final double changeRate = args.length > 3 ? Double.parseDouble ( args[3] ) : 1.0;
+        final int period = args.length > 4 ? Integer.parseInt ( args[4] ) : 1000;
+
+        final SimulationConfiguration configuration = new SimulationConfiguration ( tags, changeRate );
+        final SimulatedServer server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+        server.connect ();
+
+        final AccessBase access = async ? new Async20Access ( server, period, false ) : new SyncAccess ( server, period );
+
+        final AtomicLong updates = new AtomicLong ();
+        final DataCallback dataCallback = new DataCallback () {
+
+            @Override
+            public void changed ( final Item item, final ItemState itemState )
+            {
+                updates.incrementAndGet ();
+            }
+        };
+
+        for ( int i = 0; i < tags; i++ )
+        {
+            access.addItem ( configuration.getTagPrefix () + i, dataCallback );
+        }
+
+        long start = System.currentTimeMillis ();
+        access.bind ();
+        System.out.println ( String.format ( "Subscribed %s tags using %s in %s ms", tags, access.getClass ().getSimpleName (), System.currentTimeMillis () - start ) );
+
+        start = System.currentTimeMillis ();
+        long lastUpdates = 0;
+        for ( int i = 0; i < seconds; i++ )
+        {
+            Thread.sleep ( 1000 );
+            final long current = updates.get ();
+            System.out.println ( String.format ( "%6d s: %10d updates/s, %12d total", i + 1, current - lastUpdates, current ) );
+            lastUpdates = current;
+        }
+        final long duration = System.currentTimeMillis () - start;
+
+        System.out.println ( String.format ( "Average: %.0f updates/s, calls: %s", lastUpdates * 1000.0 / duration, server.getInstance ().getCalls () ) );
+
+        access.unbind ();
+        server.dispose ();
+        server.getScheduler ().shutdown ();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import org.openscada.opc.lib.da.AccessBase;
+import org.openscada.opc.lib.da.Async20Access;
+import org.openscada.opc.lib.da.DataCallback;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+
+/**
+ * Disconnect a simulated server at random points while it restores its accesses.
+ * <br/>
+ * Each round connects the server in one thread and disconnects it from another one. The
+ * test fails if the two threads do not complete within ten seconds, e.g. because of a
+ * deadlock, or if an access is still active after the server was disconnected.
+ * <br/>
+ * Arguments: <code>[rounds] [accesses] [items per access] [call latency]</code>,
+ * the defaults are 200 rounds of 8 accesses with 500 items each and a call latency of one millisecond.
+ */
+public class RestoreStressTest
+{
+    private static final long TIMEOUT = 10 * 1000;
+
+    public static void main ( final String[] args ) throws Throwable
+    {
+        final int rounds = args.length > 0 ? Integer.parseInt ( args[0] ) : 200;
+        final int accesses = args.length > 1 ? Integer.parseInt ( args[1] ) : 8;
+        final int items = args.length > 2 ? Integer.parseInt ( args[2] ) : 500;
+        final int callLatency = args.length > 3 ? Integer.parseInt ( args[3] ) : 1;
+
+        final SimulationConfiguration configuration = new SimulationConfiguration ( accesses * items, 1.0 );
+        configuration.setCallLatency ( callLatency );
+        final SimulatedServer server = new SimulatedServer ( configuration, Executors.newSingleThreadScheduledExecutor () );
+
+        final DataCallback dataCallback = new DataCallback () {
+
+            @Override
+            public void changed ( final Item item, final ItemState itemState )
+            {
+            }
+        };
+
+        final List<AccessBase> list = new ArrayList<AccessBase> ( accesses );
+        for ( int i = 0; i < accesses; i++ )
+        {
+            final AccessBase access = new Async20Access ( server, 1000, true );
+            for ( int j = 0; j < items; j++ )
+            {
+                access.addItem ( configuration.getTagPrefix () + ( i * items + j ), dataCallback );
+            }
+            access.bind ();
+            list.add ( access );
+        }
+
+        // measure the time of a full restore to spread the disconnects over it
+        long start = System.currentTimeMillis ();
+        server.connect ();
+        final long restoreTime = Math.max ( 1, System.currentTimeMillis () - start );
+        server.disconnect ();
+        System.out.println ( String.format ( "Restoring %s accesses takes %s ms", accesses, restoreTime ) );
+
+        final Random random = new Random ();
+        start = System.currentTimeMillis ();
+        int failures = 0;
+
+        for ( int round = 0; round < rounds; round++ )
+        {
+            final long delay = random.nextInt ( (int)restoreTime );
+
+            final Thread connector = new Thread ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    try
+                    {
+                        server.connect ();
+                    }
+                    catch ( final Exception e )
+                    {
+                        System.out.println ( "Connect failed: " + e );
+                    }
+                }
+            }, "StressConnect" );
+            final Thread disconnector = new Thread ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    try
+                    {
+                        Thread.sleep ( delay );
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                    }
+                    server.disconnect ();
+                }
+            }, "StressDisconnect" );
+
+            connector.start ();
+            disconnector.start ();
+            connector.join ( TIMEOUT );
+            disconnector.join ( TIMEOUT );
+
+            if ( connector.isAlive () || disconnector.isAlive () )
+            {
+                System.out.println ( String.format ( "Round %s did not complete after disconnecting at %s ms", round, delay ) );
+                for ( final ThreadInfo info : ManagementFactory.getThreadMXBean ().dumpAllThreads ( true, true ) )
+                {
+                    System.out.print ( info );
+                }
+                System.exit ( 1 );
+            }
+
+            final boolean connected = server.getInstance () != null;
+            for ( final AccessBase access : list )
+            {
+                if ( access.isActive () != connected )
+                {
+                    failures++;
+                    System.out.println ( String.format ( "Round %s: access active %s, server connected %s", round, access.isActive (), connected ) );
+                }
+            }
+
+            server.disconnect ();
+        }
+
+        System.out.println ( String.format ( "Completed %s rounds in %s ms, %s inconsistent accesses", rounds, System.currentTimeMillis () - start, failures ) );
+
+        server.dispose ();
+        server.getScheduler ().shutdown ();
+        System.exit ( failures == 0 ? 0 : 1 );
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIPointer;
+import org.jinterop.dcom.core.JIString;
+import org.openscada.opc.dcom.da.OPCBROWSEDIRECTION;
+import org.openscada.opc.dcom.da.OPCBROWSETYPE;
+import org.openscada.opc.dcom.da.OPCNAMESPACETYPE;
+
+/**
+ * The hierarchical address space of the simulated server, answering
+ * <code>IOPCBrowseServerAddressSpace</code> calls.
+ * <br/>
+ * The tree has {@link SimulationConfiguration#getBrowseDepth()} levels of branches
+ * below the root. Each branch above the deepest level has {@link SimulationConfiguration#getBrowseBranches()}
+ * sub-branches named <q>Branch<em>n</em></q> and each branch, including the root, has
+ * {@link SimulationConfiguration#getBrowseLeaves()} leaves named <q>Leaf<em>n</em></q>.
+ * The item ID of a leaf is the path of branch names and the leaf name separated by dots.
+ * <br/>
+ * The names are generated when they are requested, so large address spaces do not
+ * take up any memory. The filter criteria, data type and access rights of browse
+ * requests are ignored. The items of the address space are not connected to the
+ * tags of the {@link SimulatedNamespace}.
+ */
+public class SimulatedAddressSpace
+{
+    private static final String SEPARATOR = ".";
+
+    private static final String BRANCH_PREFIX = "Branch";
+
+    private static final String LEAF_PREFIX = "Leaf";
+
+    private final SimulatedOPCServer server;
+
+    private final int depth;
+
+    private final int branches;
+
+    private final int leaves;
+
+    /**
+     * The number of branches in a sub-tree, including the top branch, by the level of the top branch
+     */
+    private final long[] subTreeSizes;
+
+    /**
+     * The sub-branch indices of the current browse position
+     */
+    private final List<Integer> position = new ArrayList<Integer> ();
+
+    public SimulatedAddressSpace ( final SimulatedOPCServer server, final SimulationConfiguration configuration )
+    {
+        this.server = server;
+        this.depth = Math.max ( 0, configuration.getBrowseDepth () );
+        this.branches = Math.max ( 0, configuration.getBrowseBranches () );
+        this.leaves = Math.max ( 0, configuration.getBrowseLeaves () );
+
+        this.subTreeSizes = new long[this.depth + 1];
+        this.subTreeSizes[this.depth] = 1;
+        for ( int i = this.depth - 1; i >= 0; i-- )
+        {
+            this.subTreeSizes[i] = 1 + this.branches * this.subTreeSizes[i + 1];
+        }
+
+        if ( this.subTreeSizes[0] * this.leaves > Integer.MAX_VALUE )
+        {
+            throw new IllegalArgumentException ( "The browse address space has too many leaves" );
+        }
+    }
+
+    /**
+     * Get the number of branches, excluding the root
+     * @return the number of branches
+     */
+    public long getBranchCount ()
+    {
+        return this.subTreeSizes[0] - 1;
+    }
+
+    /**
+     * Get the number of leaves in all branches
+     * @return the number of leaves
+     */
+    public long getLeafCount ()
+    {
+        return this.subTreeSizes[0] * this.leaves;
+    }
+
+    synchronized Object[] call ( final int opnum, final Object[] in ) throws JIException
+    {
+        switch ( opnum )
+        {
+        case 0:
+            return new Object[] { (short)OPCNAMESPACETYPE.OPC_NS_HIERARCHIAL.id () };
+        case 1:
+            changePosition ( OPCBROWSEDIRECTION.fromID ( (Short)in[0] ), SimulatedObject.toString ( in[1] ) );
+            return new Object[0];
+        case 2:
+            return new Object[] { new SimulatedEnumString ( this.server, browse ( OPCBROWSETYPE.fromID ( (Short)in[0] ) ), 0 ).createComObject ( SimulatedObject.IUnknown_IID ) };
+        case 3:
+            return new Object[] { new JIPointer ( new JIString ( getItemId ( SimulatedObject.toString ( in[0] ) ) ) ) };
+        }
+
+        throw new JIException ( SimulatedObject.E_NOTIMPL );
+    }
+
+    private void changePosition ( final OPCBROWSEDIRECTION direction, final String name ) throws JIException
+    {
+        switch ( direction )
+        {
+        case OPC_BROWSE_UP:
+            if ( this.position.isEmpty () )
+            {
+                throw new JIException ( SimulatedObject.E_FAIL );
+            }
+            this.position.remove ( this.position.size () - 1 );
+            break;
+        case OPC_BROWSE_DOWN:
+            if ( this.position.size () >= this.depth )
+            {
+                throw new JIException ( SimulatedObject.E_INVALIDARG );
+            }
+            this.position.add ( parseIndex ( name, BRANCH_PREFIX, this.branches ) );
+            break;
+        case OPC_BROWSE_TO:
+            final List<Integer> target = new ArrayList<Integer> ();
+            if ( name != null && name.length () > 0 )
+            {
+                for ( final String segment : name.split ( "\\" + SEPARATOR ) )
+                {
+                    target.add ( parseIndex ( segment, BRANCH_PREFIX, this.branches ) );
+                }
+            }
+            if ( target.size () > this.depth )
+            {
+                throw new JIException ( SimulatedObject.E_INVALIDARG );
+            }
+            this.position.clear ();
+            this.position.addAll ( target );
+            break;
+        default:
+            throw new JIException ( SimulatedObject.E_INVALIDARG );
+        }
+    }
+
+    private static int parseIndex ( final String name, final String prefix, final int count ) throws JIException
+    {
+        if ( name != null && name.startsWith ( prefix ) )
+        {
+            try
+            {
+                final int index = Integer.parseInt ( name.substring ( prefix.length () ) );
+                if ( index >= 0 && index < count )
+                {
+                    return index;
+                }
+            }
+            catch ( final NumberFormatException e )
+            {
+            }
+        }
+        throw new JIException ( SimulatedObject.E_INVALIDARG );
+    }
+
+    private List<String> browse ( final OPCBROWSETYPE type ) throws JIException
+    {
+        switch ( type )
+        {
+        case OPC_BRANCH:
+            return this.position.size () < this.depth ? new Names ( BRANCH_PREFIX, this.branches ) : Collections.<String> emptyList ();
+        case OPC_LEAF:
+            return new Names ( LEAF_PREFIX, this.leaves );
+        case OPC_FLAT:
+            return new ItemIds ();
+        default:
+            throw new JIException ( SimulatedObject.E_INVALIDARG );
+        }
+    }
+
+    private String getItemId ( final String name ) throws JIException
+    {
+        if ( name == null || !name.startsWith ( LEAF_PREFIX ) && !name.startsWith ( BRANCH_PREFIX ) )
+        {
+            throw new JIException ( SimulatedObject.E_INVALIDARG );
+        }
+
+        final StringBuilder sb = new StringBuilder ();
+        for ( final Integer index : this.position )
+        {
+            sb.append ( BRANCH_PREFIX ).append ( index ).append ( SEPARATOR );
+        }
+        return sb.append ( name ).toString ();
+    }
+
+    /**
+     * The names of the sub-branches or leaves of a branch
+     */
+    private static class Names extends AbstractList<String>
+    {
+        private final String prefix;
+
+        private final int size;
+
+        public Names ( final String prefix, final int size )
+        {
+            this.prefix = prefix;
+            this.size = size;
+        }
+
+        @Override
+        public String get ( final int index )
+        {
+            return this.prefix + index;
+        }
+
+        @Override
+        public int size ()
+        {
+            return this.size;
+        }
+    }
+
+    /**
+     * The item IDs of all leaves, in pre-order of their branches
+     */
+    private class ItemIds extends AbstractList<String>
+    {
+        @Override
+        public String get ( final int index )
+        {
+            final StringBuilder sb = new StringBuilder ();
+
+            // find the branch by its pre-order index
+            long branch = index / SimulatedAddressSpace.this.leaves;
+            int level = 0;
+            while ( branch > 0 )
+            {
+                branch--;
+                final long size = SimulatedAddressSpace.this.subTreeSizes[level + 1];
+                sb.append ( BRANCH_PREFIX ).append ( branch / size ).append ( SEPARATOR );
+                branch %= size;
+                level++;
+            }
+
+            return sb.append ( LEAF_PREFIX ).append ( index % SimulatedAddressSpace.this.leaves ).toString ();
+        }
+
+        @Override
+        public int size ()
+        {
+            return (int)getLeafCount ();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.List;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIArray;
+import org.jinterop.dcom.core.JIString;
+import org.openscada.opc.dcom.common.Constants;
+
+/**
+ * A simulated <code>IEnumString</code> object enumerating a list of strings
+ */
+public class SimulatedEnumString extends SimulatedObject
+{
+    private final List<String> entries;
+
+    private int position;
+
+    SimulatedEnumString ( final SimulatedOPCServer server, final List<String> entries, final int position )
+    {
+        super ( server );
+        this.entries = entries;
+        this.position = position;
+    }
+
+    @Override
+    protected boolean supports ( final String interfaceIdentifier )
+    {
+        return Constants.IEnumString_IID.equals ( interfaceIdentifier );
+    }
+
+    @Override
+    protected synchronized Object[] call ( final String interfaceIdentifier, final int opnum, final Object[] in ) throws JIException
+    {
+        if ( !Constants.IEnumString_IID.equals ( interfaceIdentifier ) )
+        {
+            throw new JIException ( E_NOTIMPL );
+        }
+
+        switch ( opnum )
+        {
+        case 0:
+            return next ( (Integer)in[0] );
+        case 1:
+            this.position = Math.min ( this.entries.size (), this.position + Math.max ( 0, (Integer)in[0] ) );
+            return new Object[0];
+        case 2:
+            this.position = 0;
+            return new Object[0];
+        case 3:
+            return new Object[] { new SimulatedEnumString ( getServer (), this.entries, this.position ).createComObject ( IUnknown_IID ) };
+        }
+
+        throw new JIException ( E_NOTIMPL );
+    }
+
+    private Object[] next ( final int num )
+    {
+        final int count = Math.max ( 0, Math.min ( num, this.entries.size () - this.position ) );
+
+        final JIString[] result = new JIString[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            result[i] = new JIString ( this.entries.get ( this.position++ ) );
+        }
+
+        return new Object[] { new JIArray ( result, true ), count };
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "SimulatedEnumString[%s/%s]", this.position, this.entries.size () );
+    }
+}
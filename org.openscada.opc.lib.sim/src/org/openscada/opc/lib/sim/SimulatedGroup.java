@@ -0,0 +1,635 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIArray;
+import org.jinterop.dcom.core.JIPointer;
+import org.jinterop.dcom.core.JIString;
+import org.jinterop.dcom.core.JIStruct;
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.FILETIME;
+import org.openscada.opc.dcom.common.LocalEventSource;
+import org.openscada.opc.dcom.da.Constants;
+import org.openscada.opc.dcom.da.OPCDATASOURCE;
+import org.openscada.opc.dcom.da.impl.OPCDataCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A simulated OPC group.
+ * <br/>
+ * It implements <code>IOPCGroupStateMgt</code>, <code>IOPCItemMgt</code>, <code>IOPCSyncIO</code>
+ * and <code>IOPCAsyncIO2</code>. Data callbacks are attached as {@link LocalEventSource}.
+ * <br/>
+ * While the group is active and enabled it is scanned with its update rate and
+ * all active items whose value changed since the last scan are reported
+ * by a single <code>OnDataChange</code> call.
+ */
+public class SimulatedGroup extends SimulatedObject implements LocalEventSource
+{
+    private static Logger logger = LoggerFactory.getLogger ( SimulatedGroup.class );
+
+    private static final short QUALITY_GOOD = 0xC0;
+
+    private static final short QUALITY_OUT_OF_SERVICE = 0x1C;
+
+    private static final int ACCESS_READ_WRITE = 3;
+
+    private final SimulatedNamespace namespace;
+
+    private final int serverHandle;
+
+    private volatile String name;
+
+    private volatile boolean active;
+
+    private volatile boolean enabled = true;
+
+    private volatile int updateRate;
+
+    private volatile int clientHandle;
+
+    private volatile int timeBias;
+
+    private volatile float percentDeadband;
+
+    private volatile int localeId;
+
+    private final Map<Integer, SimulatedItem> items = new ConcurrentHashMap<Integer, SimulatedItem> ();
+
+    private final AtomicInteger nextItemHandle = new AtomicInteger ( 1 );
+
+    private final Map<String, OPCDataCallback> callbacks = new ConcurrentHashMap<String, OPCDataCallback> ();
+
+    private final AtomicInteger nextConnection = new AtomicInteger ( 1 );
+
+    private final AtomicInteger nextCancelId = new AtomicInteger ( 1 );
+
+    private ScheduledFuture<?> updateJob;
+
+    private static class SimulatedItem
+    {
+        private final int index;
+
+        private volatile int clientHandle;
+
+        private volatile boolean active;
+
+        /**
+         * The timestamp of the value last reported by <code>OnDataChange</code>
+         */
+        private volatile long lastTimestamp = -1;
+
+        public SimulatedItem ( final int index, final int clientHandle, final boolean active )
+        {
+            this.index = index;
+            this.clientHandle = clientHandle;
+            this.active = active;
+        }
+    }
+
+    SimulatedGroup ( final SimulatedOPCServer server, final int serverHandle, final String name, final boolean active, final int updateRate, final int clientHandle, final int timeBias, final float percentDeadband, final int localeId )
+    {
+        super ( server );
+        this.namespace = server.getNamespace ();
+        this.serverHandle = serverHandle;
+        this.name = name;
+        this.active = active;
+        this.clientHandle = clientHandle;
+        this.timeBias = timeBias;
+        this.percentDeadband = percentDeadband;
+        this.localeId = localeId;
+
+        setUpdateRate ( updateRate );
+    }
+
+    public String getName ()
+    {
+        return this.name;
+    }
+
+    public int getServerHandle ()
+    {
+        return this.serverHandle;
+    }
+
+    public int getUpdateRate ()
+    {
+        return this.updateRate;
+    }
+
+    public int getItemCount ()
+    {
+        return this.items.size ();
+    }
+
+    /**
+     * Stop scanning the group and drop all callbacks
+     */
+    synchronized void dispose ()
+    {
+        if ( this.updateJob != null )
+        {
+            this.updateJob.cancel ( false );
+            this.updateJob = null;
+        }
+        this.callbacks.clear ();
+        this.items.clear ();
+    }
+
+    private synchronized void setUpdateRate ( final int requestedUpdateRate )
+    {
+        final int updateRate = Math.max ( requestedUpdateRate, getServer ().getConfiguration ().getMinimumUpdateRate () );
+        if ( updateRate == this.updateRate && this.updateJob != null )
+        {
+            return;
+        }
+
+        this.updateRate = updateRate;
+
+        if ( this.updateJob != null )
+        {
+            this.updateJob.cancel ( false );
+        }
+        this.updateJob = getServer ().getExecutor ().scheduleAtFixedRate ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                update ();
+            }
+        }, updateRate, updateRate, TimeUnit.MILLISECONDS );
+    }
+
+    @Override
+    public String attachEventHandler ( final String interfaceIdentifier, final Object handler ) throws JIException
+    {
+        if ( !Constants.IOPCDataCallback_IID.equals ( interfaceIdentifier ) || ! ( handler instanceof OPCDataCallback ) )
+        {
+            throw new JIException ( E_NOINTERFACE );
+        }
+
+        final String identifier = String.format ( "%s/%s", this.serverHandle, this.nextConnection.getAndIncrement () );
+        this.callbacks.put ( identifier, (OPCDataCallback)handler );
+        return identifier;
+    }
+
+    @Override
+    public void detachEventHandler ( final String identifier ) throws JIException
+    {
+        if ( this.callbacks.remove ( identifier ) == null )
+        {
+            throw new JIException ( CONNECT_E_NOCONNECTION );
+        }
+    }
+
+    @Override
+    protected boolean supports ( final String interfaceIdentifier )
+    {
+        return Constants.IOPCGroupStateMgt_IID.equals ( interfaceIdentifier ) || Constants.IOPCItemMgt_IID.equals ( interfaceIdentifier ) || Constants.IOPCSyncIO_IID.equals ( interfaceIdentifier ) || Constants.IOPCAsyncIO2_IID.equals ( interfaceIdentifier );
+    }
+
+    @Override
+    protected Object[] call ( final String interfaceIdentifier, final int opnum, final Object[] in ) throws JIException
+    {
+        if ( Constants.IOPCGroupStateMgt_IID.equals ( interfaceIdentifier ) )
+        {
+            switch ( opnum )
+            {
+            case 0:
+                return new Object[] { this.updateRate, this.active, new JIPointer ( new JIString ( this.name ) ), this.timeBias, this.percentDeadband, this.localeId, this.clientHandle, this.serverHandle };
+            case 1:
+                return setState ( (Integer)fromPointer ( in[0] ), (Integer)fromPointer ( in[1] ), (Integer)fromPointer ( in[2] ), (Float)fromPointer ( in[3] ), (Integer)fromPointer ( in[4] ), (Integer)fromPointer ( in[5] ) );
+            case 2:
+                this.name = toString ( in[0] );
+                return new Object[0];
+            }
+        }
+        else if ( Constants.IOPCItemMgt_IID.equals ( interfaceIdentifier ) )
+        {
+            switch ( opnum )
+            {
+            case 0:
+                return addItems ( getArray ( JIStruct[].class, in[1] ), true );
+            case 1:
+                return addItems ( getArray ( JIStruct[].class, in[1] ), false );
+            case 2:
+                return removeItems ( getArray ( Integer[].class, in[1] ) );
+            case 3:
+                return setActiveState ( getArray ( Integer[].class, in[1] ), (Integer)in[2] != 0 );
+            case 4:
+                return setClientHandles ( getArray ( Integer[].class, in[1] ), getArray ( Integer[].class, in[2] ) );
+            }
+        }
+        else if ( Constants.IOPCSyncIO_IID.equals ( interfaceIdentifier ) )
+        {
+            switch ( opnum )
+            {
+            case 0:
+                return read ( OPCDATASOURCE.fromID ( (Short)in[0] ), getArray ( Integer[].class, in[2] ) );
+            case 1:
+                return write ( getArray ( Integer[].class, in[1] ), getArray ( JIVariant[].class, in[2] ) );
+            }
+        }
+        else if ( Constants.IOPCAsyncIO2_IID.equals ( interfaceIdentifier ) )
+        {
+            switch ( opnum )
+            {
+            case 0:
+                return asyncRead ( getArray ( Integer[].class, in[1] ), (Integer)in[2] );
+            case 2:
+                return new Object[] { refresh ( (Integer)in[1] ) };
+            case 3:
+                return new Object[0];
+            case 4:
+                this.enabled = (Integer)in[0] != 0;
+                return new Object[0];
+            }
+        }
+
+        throw new JIException ( E_NOTIMPL );
+    }
+
+    private Object[] setState ( final Integer updateRate, final Integer active, final Integer timeBias, final Float percentDeadband, final Integer localeId, final Integer clientHandle )
+    {
+        if ( updateRate != null )
+        {
+            setUpdateRate ( updateRate );
+        }
+        if ( timeBias != null )
+        {
+            this.timeBias = timeBias;
+        }
+        if ( percentDeadband != null )
+        {
+            this.percentDeadband = percentDeadband;
+        }
+        if ( localeId != null )
+        {
+            this.localeId = localeId;
+        }
+        if ( clientHandle != null )
+        {
+            this.clientHandle = clientHandle;
+        }
+        if ( active != null )
+        {
+            final boolean state = active != 0;
+            if ( state && !this.active )
+            {
+                // report all values after the group got activated
+                for ( final SimulatedItem item : this.items.values () )
+                {
+                    item.lastTimestamp = -1;
+                }
+            }
+            this.active = state;
+        }
+        return new Object[] { this.updateRate };
+    }
+
+    private Object[] addItems ( final JIStruct[] itemDefs, final boolean add ) throws JIException
+    {
+        final JIStruct[] results = new JIStruct[itemDefs.length];
+        final Integer[] errors = new Integer[itemDefs.length];
+
+        for ( int i = 0; i < itemDefs.length; i++ )
+        {
+            final int index = this.namespace.indexOf ( toString ( itemDefs[i].getMember ( 1 ) ) );
+            int handle = 0;
+            if ( index < 0 )
+            {
+                errors[i] = OPC_E_UNKNOWNITEMID;
+            }
+            else
+            {
+                errors[i] = 0;
+                if ( add )
+                {
+                    handle = this.nextItemHandle.getAndIncrement ();
+                    this.items.put ( handle, new SimulatedItem ( index, (Integer)itemDefs[i].getMember ( 3 ), (Integer)itemDefs[i].getMember ( 2 ) != 0 ) );
+                }
+            }
+
+            final JIStruct result = new JIStruct ();
+            result.addMember ( Integer.valueOf ( handle ) );
+            result.addMember ( Short.valueOf ( index < 0 ? (short)JIVariant.VT_EMPTY : this.namespace.getCanonicalType ( index ) ) );
+            result.addMember ( Short.valueOf ( (short)0 ) );
+            result.addMember ( Integer.valueOf ( index < 0 ? 0 : ACCESS_READ_WRITE ) );
+            result.addMember ( Integer.valueOf ( 0 ) );
+            result.addMember ( new JIPointer ( null ) );
+            results[i] = result;
+        }
+
+        return new Object[] { new JIPointer ( new JIArray ( results, true ) ), new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private Object[] removeItems ( final Integer[] serverHandles )
+    {
+        final Integer[] errors = new Integer[serverHandles.length];
+        for ( int i = 0; i < serverHandles.length; i++ )
+        {
+            errors[i] = this.items.remove ( serverHandles[i] ) != null ? 0 : OPC_E_INVALIDHANDLE;
+        }
+        return new Object[] { new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private Object[] setActiveState ( final Integer[] serverHandles, final boolean state )
+    {
+        final Integer[] errors = new Integer[serverHandles.length];
+        for ( int i = 0; i < serverHandles.length; i++ )
+        {
+            final SimulatedItem item = this.items.get ( serverHandles[i] );
+            if ( item == null )
+            {
+                errors[i] = OPC_E_INVALIDHANDLE;
+                continue;
+            }
+
+            if ( state && !item.active )
+            {
+                // report the value after the item got activated
+                item.lastTimestamp = -1;
+            }
+            item.active = state;
+            errors[i] = 0;
+        }
+        return new Object[] { new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private Object[] setClientHandles ( final Integer[] serverHandles, final Integer[] clientHandles )
+    {
+        final Integer[] errors = new Integer[serverHandles.length];
+        for ( int i = 0; i < serverHandles.length; i++ )
+        {
+            final SimulatedItem item = this.items.get ( serverHandles[i] );
+            if ( item == null )
+            {
+                errors[i] = OPC_E_INVALIDHANDLE;
+                continue;
+            }
+            item.clientHandle = clientHandles[i];
+            errors[i] = 0;
+        }
+        return new Object[] { new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private Object[] read ( final OPCDATASOURCE source, final Integer[] serverHandles ) throws JIException
+    {
+        final long now = getServer ().currentTimeMillis ();
+
+        final JIStruct[] states = new JIStruct[serverHandles.length];
+        final Integer[] errors = new Integer[serverHandles.length];
+        for ( int i = 0; i < serverHandles.length; i++ )
+        {
+            final SimulatedItem item = this.items.get ( serverHandles[i] );
+
+            final JIStruct state = new JIStruct ();
+            if ( item == null )
+            {
+                state.addMember ( Integer.valueOf ( 0 ) );
+                state.addMember ( FILETIME.fromMillis ( now ).toStruct () );
+                state.addMember ( Short.valueOf ( (short)0 ) );
+                state.addMember ( Short.valueOf ( (short)0 ) );
+                state.addMember ( JIVariant.EMPTY () );
+                errors[i] = OPC_E_INVALIDHANDLE;
+            }
+            else
+            {
+                // cache reads of inactive items report "out of service"
+                final boolean inService = source == OPCDATASOURCE.OPC_DS_DEVICE || this.active && item.active;
+                state.addMember ( Integer.valueOf ( item.clientHandle ) );
+                state.addMember ( FILETIME.fromMillis ( this.namespace.getTimestamp ( item.index, now ) ).toStruct () );
+                state.addMember ( Short.valueOf ( inService ? QUALITY_GOOD : QUALITY_OUT_OF_SERVICE ) );
+                state.addMember ( Short.valueOf ( (short)0 ) );
+                state.addMember ( this.namespace.getValue ( item.index, now ) );
+                errors[i] = 0;
+            }
+            states[i] = state;
+        }
+
+        return new Object[] { new JIPointer ( new JIArray ( states, true ) ), new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private Object[] write ( final Integer[] serverHandles, final JIVariant[] values )
+    {
+        final long now = getServer ().currentTimeMillis ();
+
+        final Integer[] errors = new Integer[serverHandles.length];
+        for ( int i = 0; i < serverHandles.length; i++ )
+        {
+            final SimulatedItem item = this.items.get ( serverHandles[i] );
+            if ( item == null )
+            {
+                errors[i] = OPC_E_INVALIDHANDLE;
+                continue;
+            }
+            this.namespace.write ( item.index, values[i], now );
+            errors[i] = 0;
+        }
+        return new Object[] { new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private Object[] asyncRead ( final Integer[] serverHandles, final int transactionId ) throws JIException
+    {
+        if ( this.callbacks.isEmpty () )
+        {
+            throw new JIException ( CONNECT_E_NOCONNECTION );
+        }
+
+        final List<SimulatedItem> items = new ArrayList<SimulatedItem> ( serverHandles.length );
+        final Integer[] errors = new Integer[serverHandles.length];
+        for ( int i = 0; i < serverHandles.length; i++ )
+        {
+            final SimulatedItem item = this.items.get ( serverHandles[i] );
+            if ( item != null )
+            {
+                items.add ( item );
+                errors[i] = 0;
+            }
+            else
+            {
+                errors[i] = OPC_E_INVALIDHANDLE;
+            }
+        }
+
+        if ( !items.isEmpty () )
+        {
+            getServer ().getExecutor ().execute ( new Runnable () {
+
+                @Override
+                public void run ()
+                {
+                    deliver ( transactionId, items, true );
+                }
+            } );
+        }
+
+        return new Object[] { this.nextCancelId.getAndIncrement (), new JIPointer ( new JIArray ( errors, true ) ) };
+    }
+
+    private int refresh ( final int transactionId ) throws JIException
+    {
+        if ( this.callbacks.isEmpty () )
+        {
+            throw new JIException ( CONNECT_E_NOCONNECTION );
+        }
+
+        final List<SimulatedItem> items = new ArrayList<SimulatedItem> ();
+        if ( this.active )
+        {
+            for ( final SimulatedItem item : this.items.values () )
+            {
+                if ( item.active )
+                {
+                    items.add ( item );
+                }
+            }
+        }
+
+        if ( items.isEmpty () )
+        {
+            throw new JIException ( E_FAIL );
+        }
+
+        getServer ().getExecutor ().execute ( new Runnable () {
+
+            @Override
+            public void run ()
+            {
+                deliver ( transactionId, items, false );
+            }
+        } );
+
+        return this.nextCancelId.getAndIncrement ();
+    }
+
+    /**
+     * Scan the group and report all changed values
+     */
+    protected void update ()
+    {
+        if ( !this.active || !this.enabled || this.callbacks.isEmpty () || !getServer ().isAvailable () )
+        {
+            return;
+        }
+
+        final long now = getServer ().currentTimeMillis ();
+
+        final List<SimulatedItem> changed = new ArrayList<SimulatedItem> ();
+        for ( final SimulatedItem item : this.items.values () )
+        {
+            if ( item.active && this.namespace.getTimestamp ( item.index, now ) != item.lastTimestamp )
+            {
+                changed.add ( item );
+            }
+        }
+
+        if ( !changed.isEmpty () )
+        {
+            deliver ( 0, changed, false );
+        }
+    }
+
+    /**
+     * Deliver the current values of the items to all attached callbacks
+     * @param transactionId the transaction ID, zero for subscriptions
+     * @param items the items to deliver
+     * @param readComplete <code>true</code> to deliver by <code>OnReadComplete</code>,
+     * <code>false</code> for <code>OnDataChange</code>
+     */
+    private void deliver ( final int transactionId, final Collection<SimulatedItem> items, final boolean readComplete )
+    {
+        final long now = getServer ().currentTimeMillis ();
+        final int count = items.size ();
+
+        final Integer[] clientHandles = new Integer[count];
+        final JIVariant[] values = new JIVariant[count];
+        final Short[] qualities = new Short[count];
+        final JIStruct[] timestamps = new JIStruct[count];
+        final Integer[] errors = new Integer[count];
+
+        try
+        {
+            int i = 0;
+            for ( final SimulatedItem item : items )
+            {
+                final long timestamp = this.namespace.getTimestamp ( item.index, now );
+                if ( !readComplete )
+                {
+                    item.lastTimestamp = timestamp;
+                }
+
+                clientHandles[i] = item.clientHandle;
+                values[i] = this.namespace.getValue ( item.index, now );
+                qualities[i] = QUALITY_GOOD;
+                timestamps[i] = FILETIME.fromMillis ( timestamp ).toStruct ();
+                errors[i] = 0;
+                i++;
+            }
+        }
+        catch ( final JIException e )
+        {
+            logger.warn ( "Failed to encode values", e );
+            return;
+        }
+
+        for ( final OPCDataCallback callback : this.callbacks.values () )
+        {
+            try
+            {
+                if ( readComplete )
+                {
+                    callback.OnReadComplete ( transactionId, this.clientHandle, 0, 0, count, new JIArray ( clientHandles, true ), new JIArray ( values, true ), new JIArray ( qualities, true ), new JIArray ( timestamps, true ), new JIArray ( errors, true ) );
+                }
+                else
+                {
+                    callback.OnDataChange ( transactionId, this.clientHandle, 0, 0, count, new JIArray ( clientHandles, true ), new JIArray ( values, true ), new JIArray ( qualities, true ), new JIArray ( timestamps, true ), new JIArray ( errors, true ) );
+                    getServer ().dataChangeDelivered ( count );
+                }
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Callback failed", e );
+            }
+        }
+    }
+
+    private static <T> T getArray ( final Class<T> clazz, final Object array )
+    {
+        return clazz.cast ( ( (JIArray)array ).getArrayInstance () );
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "SimulatedGroup[%s/%s]", this.name, this.serverHandle );
+    }
+}
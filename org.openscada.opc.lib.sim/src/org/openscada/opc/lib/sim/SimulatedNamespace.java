@@ -0,0 +1,209 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jinterop.dcom.core.JIVariant;
+
+/**
+ * The tags of a simulated server.
+ * <br/>
+ * The value of a tag is a function of the time, so that no state has to
+ * be kept for tags which were not written. The changes of the tags are spread
+ * evenly over time. Written values are kept until the next change of the tag.
+ */
+public class SimulatedNamespace
+{
+    private static final double PHASE = 0.6180339887498949;
+
+    private final String tagPrefix;
+
+    private final int tagCount;
+
+    private final double changeRate;
+
+    private final long startTime;
+
+    private final Map<Integer, WrittenValue> writtenValues = new ConcurrentHashMap<Integer, WrittenValue> ();
+
+    private static class WrittenValue
+    {
+        private final JIVariant value;
+
+        private final long timestamp;
+
+        public WrittenValue ( final JIVariant value, final long timestamp )
+        {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public SimulatedNamespace ( final SimulationConfiguration configuration, final long startTime )
+    {
+        this.tagPrefix = configuration.getTagPrefix ();
+        this.tagCount = configuration.getTagCount ();
+        this.changeRate = configuration.getChangeRate ();
+        this.startTime = startTime;
+    }
+
+    public int getTagCount ()
+    {
+        return this.tagCount;
+    }
+
+    /**
+     * Get the index of a tag
+     * @param itemId the item ID of the tag
+     * @return the index or <code>-1</code> if there is no such tag
+     */
+    public int indexOf ( final String itemId )
+    {
+        if ( itemId == null || !itemId.startsWith ( this.tagPrefix ) )
+        {
+            return -1;
+        }
+
+        try
+        {
+            final int index = Integer.parseInt ( itemId.substring ( this.tagPrefix.length () ) );
+            return index >= 0 && index < this.tagCount ? index : -1;
+        }
+        catch ( final NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    public String getItemId ( final int index )
+    {
+        return this.tagPrefix + index;
+    }
+
+    /**
+     * Get the variant type of a tag. The types rotate over
+     * <code>VT_I4</code>, <code>VT_R8</code>, <code>VT_BOOL</code> and <code>VT_I2</code>.
+     * @param index the index of the tag
+     * @return the variant type
+     */
+    public short getCanonicalType ( final int index )
+    {
+        switch ( index % 4 )
+        {
+        case 0:
+            return (short)JIVariant.VT_I4;
+        case 1:
+            return (short)JIVariant.VT_R8;
+        case 2:
+            return (short)JIVariant.VT_BOOL;
+        default:
+            return (short)JIVariant.VT_I2;
+        }
+    }
+
+    /**
+     * Get the timestamp of the current value of a tag.
+     * <br/>
+     * The timestamp changes exactly when the value changes, so it can be
+     * used to check for changes without creating the value.
+     * @param index the index of the tag
+     * @param now the current time
+     * @return the timestamp in milliseconds
+     */
+    public long getTimestamp ( final int index, final long now )
+    {
+        final long timestamp = getGenerationTimestamp ( index, getGeneration ( index, now ) );
+        final WrittenValue written = this.writtenValues.get ( index );
+        if ( written != null && written.timestamp >= timestamp )
+        {
+            return written.timestamp;
+        }
+        return timestamp;
+    }
+
+    /**
+     * Get the current value of a tag
+     * @param index the index of the tag
+     * @param now the current time
+     * @return the value
+     */
+    public JIVariant getValue ( final int index, final long now )
+    {
+        final long generation = getGeneration ( index, now );
+        final WrittenValue written = this.writtenValues.get ( index );
+        if ( written != null )
+        {
+            if ( written.timestamp >= getGenerationTimestamp ( index, generation ) )
+            {
+                return written.value;
+            }
+            this.writtenValues.remove ( index );
+        }
+
+        switch ( index % 4 )
+        {
+        case 0:
+            return new JIVariant ( (int) ( generation + index ) );
+        case 1:
+            return new JIVariant ( generation / 10.0 + index );
+        case 2:
+            return new JIVariant ( generation % 2 == 0 );
+        default:
+            return new JIVariant ( (short) ( generation + index ) );
+        }
+    }
+
+    /**
+     * Write a value to a tag. The value is kept until the next change of the tag.
+     * @param index the index of the tag
+     * @param value the new value
+     * @param now the current time
+     */
+    public void write ( final int index, final JIVariant value, final long now )
+    {
+        this.writtenValues.put ( index, new WrittenValue ( value, now ) );
+    }
+
+    private long getGeneration ( final int index, final long now )
+    {
+        if ( this.changeRate <= 0.0 )
+        {
+            return 0;
+        }
+        return (long)Math.floor ( ( now - this.startTime ) / 1000.0 * this.changeRate + getPhase ( index ) );
+    }
+
+    private long getGenerationTimestamp ( final int index, final long generation )
+    {
+        if ( this.changeRate <= 0.0 || generation <= 0 )
+        {
+            return this.startTime;
+        }
+        return this.startTime + (long)Math.ceil ( ( generation - getPhase ( index ) ) / this.changeRate * 1000.0 );
+    }
+
+    private double getPhase ( final int index )
+    {
+        final double phase = index * PHASE;
+        return phase - Math.floor ( phase );
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.IJIComObject;
+import org.jinterop.dcom.core.JIPointer;
+import org.jinterop.dcom.core.JIString;
+import org.jinterop.dcom.core.JIStruct;
+import org.openscada.opc.dcom.common.FILETIME;
+import org.openscada.opc.dcom.da.Constants;
+import org.openscada.opc.dcom.da.OPCSERVERSTATE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A simulated OPC DA 2.0 server instance.
+ * <br/>
+ * It implements <code>IOPCServer</code>, <code>IOPCCommon</code> and
+ * <code>IOPCBrowseServerAddressSpace</code>. The groups are implemented by
+ * {@link SimulatedGroup} and the address space by {@link SimulatedAddressSpace}. The groups are scanned and the
+ * callbacks are delivered by a thread pool of the server instance.
+ */
+public class SimulatedOPCServer extends SimulatedObject
+{
+    private static Logger logger = LoggerFactory.getLogger ( SimulatedOPCServer.class );
+
+    private static final int RPC_E_DISCONNECTED = 0x80010108;
+
+    private static final AtomicInteger instanceCounter = new AtomicInteger ();
+
+    private final SimulationConfiguration configuration;
+
+    private final SimulatedNamespace namespace;
+
+    private final SimulatedAddressSpace addressSpace;
+
+    private final long startTime = System.currentTimeMillis ();
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<Integer, SimulatedGroup> groups = new ConcurrentHashMap<Integer, SimulatedGroup> ();
+
+    private final AtomicInteger nextGroupHandle = new AtomicInteger ( 1 );
+
+    private volatile boolean available = true;
+
+    private volatile long time = -1;
+
+    private volatile int localeId = 0;
+
+    private final AtomicLong calls = new AtomicLong ();
+
+    private final AtomicLong dataChanges = new AtomicLong ();
+
+    private final AtomicLong itemUpdates = new AtomicLong ();
+
+    public SimulatedOPCServer ( final SimulationConfiguration configuration )
+    {
+        super ( null );
+        this.configuration = configuration;
+        this.namespace = new SimulatedNamespace ( configuration, this.startTime );
+        this.addressSpace = new SimulatedAddressSpace ( this, configuration );
+
+        final String threadName = "SimulatedOPCServer/" + instanceCounter.incrementAndGet ();
+        this.executor = Executors.newScheduledThreadPool ( Math.max ( 1, configuration.getCallbackThreads () ), new ThreadFactory () {
+
+            private final AtomicInteger counter = new AtomicInteger ();
+
+            @Override
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread t = new Thread ( r, threadName + "/" + this.counter.incrementAndGet () );
+                t.setDaemon ( true );
+                return t;
+            }
+        } );
+    }
+
+    /**
+     * Get the COM object of the server instance, it can be passed to
+     * {@link org.openscada.opc.dcom.da.impl.OPCServer#OPCServer(IJIComObject)}
+     * @return a new COM object
+     */
+    public IJIComObject getComObject ()
+    {
+        return createComObject ( IUnknown_IID );
+    }
+
+    public SimulationConfiguration getConfiguration ()
+    {
+        return this.configuration;
+    }
+
+    public SimulatedNamespace getNamespace ()
+    {
+        return this.namespace;
+    }
+
+    public SimulatedAddressSpace getAddressSpace ()
+    {
+        return this.addressSpace;
+    }
+
+    @Override
+    protected SimulatedOPCServer getServer ()
+    {
+        return this;
+    }
+
+    ScheduledExecutorService getExecutor ()
+    {
+        return this.executor;
+    }
+
+    /**
+     * Set if the server is reachable. If the server is not available all calls fail
+     * as if the connection was lost and no callbacks are delivered.
+     * @param available the new state
+     */
+    public void setAvailable ( final boolean available )
+    {
+        this.available = available;
+    }
+
+    public boolean isAvailable ()
+    {
+        return this.available;
+    }
+
+    /**
+     * Set the time of the simulation. Values change according to this time instead
+     * of the system time, which allows to drive value changes step by step.
+     * @param time the time in milliseconds or <code>-1</code> to use the system time again
+     */
+    public void setTime ( final long time )
+    {
+        this.time = time;
+    }
+
+    /**
+     * Get the current time of the simulation
+     * @return the time set by {@link #setTime(long)} or the system time
+     */
+    public long currentTimeMillis ()
+    {
+        final long time = this.time;
+        return time >= 0 ? time : System.currentTimeMillis ();
+    }
+
+    /**
+     * Get a group of this server instance
+     * @param serverHandle the server handle of the group
+     * @return the group or <code>null</code> if there is no such group
+     */
+    SimulatedGroup getGroup ( final int serverHandle )
+    {
+        return this.groups.get ( serverHandle );
+    }
+
+    /**
+     * Get the number of calls made to the server and its groups
+     * @return the number of calls
+     */
+    public long getCalls ()
+    {
+        return this.calls.get ();
+    }
+
+    /**
+     * Get the number of data change callbacks delivered
+     * @return the number of callbacks
+     */
+    public long getDataChanges ()
+    {
+        return this.dataChanges.get ();
+    }
+
+    /**
+     * Get the number of item values delivered by data change callbacks
+     * @return the number of item values
+     */
+    public long getItemUpdates ()
+    {
+        return this.itemUpdates.get ();
+    }
+
+    public int getGroupCount ()
+    {
+        return this.groups.size ();
+    }
+
+    /**
+     * Shut down the server instance. All groups stop delivering callbacks and
+     * all further calls fail.
+     */
+    public void shutdown ()
+    {
+        this.available = false;
+        this.executor.shutdownNow ();
+        for ( final SimulatedGroup group : this.groups.values () )
+        {
+            group.dispose ();
+        }
+        this.groups.clear ();
+    }
+
+    /**
+     * Called before every call to the server or one of its groups
+     * @throws JIException if the server is not available
+     */
+    void beforeCall () throws JIException
+    {
+        if ( !this.available )
+        {
+            throw new JIException ( RPC_E_DISCONNECTED );
+        }
+
+        this.calls.incrementAndGet ();
+
+        final int latency = this.configuration.getCallLatency ();
+        if ( latency > 0 )
+        {
+            LockSupport.parkNanos ( latency * 1000L );
+        }
+    }
+
+    void dataChangeDelivered ( final int items )
+    {
+        this.dataChanges.incrementAndGet ();
+        this.itemUpdates.addAndGet ( items );
+    }
+
+    int getLocaleId ()
+    {
+        return this.localeId;
+    }
+
+    @Override
+    protected boolean supports ( final String interfaceIdentifier )
+    {
+        return Constants.IOPCServer_IID.equals ( interfaceIdentifier ) || org.openscada.opc.dcom.common.Constants.IOPCCommon_IID.equals ( interfaceIdentifier ) || Constants.IOPCBrowseServerAddressSpace_IID.equals ( interfaceIdentifier );
+    }
+
+    @Override
+    protected Object[] call ( final String interfaceIdentifier, final int opnum, final Object[] in ) throws JIException
+    {
+        if ( Constants.IOPCServer_IID.equals ( interfaceIdentifier ) )
+        {
+            switch ( opnum )
+            {
+            case 0:
+                return addGroup ( toString ( in[0] ), (Integer)in[1] != 0, (Integer)in[2], (Integer)in[3], (Integer)fromPointer ( in[4] ), (Float)fromPointer ( in[5] ), (Integer)in[6] );
+            case 2:
+                return new Object[] { getGroupByName ( toString ( in[0] ) ).createComObject ( IUnknown_IID ) };
+            case 3:
+                return new Object[] { new JIPointer ( getStatus () ) };
+            case 4:
+                removeGroup ( (Integer)in[0] );
+                return new Object[0];
+            }
+        }
+        else if ( org.openscada.opc.dcom.common.Constants.IOPCCommon_IID.equals ( interfaceIdentifier ) )
+        {
+            switch ( opnum )
+            {
+            case 0:
+                this.localeId = (Integer)in[0];
+                return new Object[0];
+            case 1:
+                return new Object[] { this.localeId };
+            case 3:
+                return new Object[] { new JIPointer ( new JIString ( String.format ( "Simulated error %08X", in[0] ) ) ) };
+            case 4:
+                return new Object[0];
+            }
+        }
+        else if ( Constants.IOPCBrowseServerAddressSpace_IID.equals ( interfaceIdentifier ) )
+        {
+            return this.addressSpace.call ( opnum, in );
+        }
+
+        throw new JIException ( E_NOTIMPL );
+    }
+
+    private synchronized Object[] addGroup ( String name, final boolean active, final int updateRate, final int clientHandle, final Integer timeBias, final Float percentDeadband, final int localeId ) throws JIException
+    {
+        final int serverHandle = this.nextGroupHandle.getAndIncrement ();
+        if ( name == null || name.length () == 0 )
+        {
+            name = "Group" + serverHandle;
+        }
+
+        for ( final SimulatedGroup group : this.groups.values () )
+        {
+            if ( group.getName ().equals ( name ) )
+            {
+                throw new JIException ( OPC_E_DUPLICATENAME );
+            }
+        }
+
+        final SimulatedGroup group = new SimulatedGroup ( this, serverHandle, name, active, updateRate, clientHandle, timeBias != null ? timeBias : 0, percentDeadband != null ? percentDeadband : 0.0f, localeId );
+        this.groups.put ( serverHandle, group );
+
+        logger.debug ( "Added group {} - handle: {}", name, serverHandle );
+
+        return new Object[] { serverHandle, group.getUpdateRate (), group.createComObject ( IUnknown_IID ) };
+    }
+
+    private SimulatedGroup getGroupByName ( final String name ) throws JIException
+    {
+        for ( final SimulatedGroup group : this.groups.values () )
+        {
+            if ( group.getName ().equals ( name ) )
+            {
+                return group;
+            }
+        }
+        throw new JIException ( E_INVALIDARG );
+    }
+
+    private void removeGroup ( final int serverHandle ) throws JIException
+    {
+        final SimulatedGroup group = this.groups.remove ( serverHandle );
+        if ( group == null )
+        {
+            throw new JIException ( E_INVALIDARG );
+        }
+        group.dispose ();
+
+        logger.debug ( "Removed group {} - handle: {}", group.getName (), serverHandle );
+    }
+
+    private JIStruct getStatus () throws JIException
+    {
+        final long now = System.currentTimeMillis ();
+
+        final JIStruct struct = new JIStruct ();
+        struct.addMember ( FILETIME.fromMillis ( this.startTime ).toStruct () );
+        struct.addMember ( FILETIME.fromMillis ( now ).toStruct () );
+        struct.addMember ( FILETIME.fromMillis ( now ).toStruct () );
+        struct.addMember ( Short.valueOf ( (short)OPCSERVERSTATE.OPC_STATUS_RUNNING.id () ) );
+        struct.addMember ( Integer.valueOf ( this.groups.size () ) );
+        struct.addMember ( Integer.valueOf ( -1 ) );
+        struct.addMember ( Short.valueOf ( (short)1 ) );
+        struct.addMember ( Short.valueOf ( (short)0 ) );
+        struct.addMember ( Short.valueOf ( (short)0 ) );
+        struct.addMember ( Short.valueOf ( (short)0 ) );
+        struct.addMember ( new JIPointer ( new JIString ( "openSCADA Utgard Simulation" ) ) );
+        return struct;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "SimulatedOPCServer[tags=%s]", this.namespace.getTagCount () );
+    }
+}
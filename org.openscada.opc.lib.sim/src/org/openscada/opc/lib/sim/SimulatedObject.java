@@ -0,0 +1,227 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.IJIComObject;
+import org.jinterop.dcom.core.JICallBuilder;
+import org.jinterop.dcom.core.JIPointer;
+import org.jinterop.dcom.core.JIString;
+import org.openscada.opc.dcom.common.LocalEventSource;
+
+/**
+ * Base class of the simulated COM objects.
+ * <br/>
+ * The simulated object is handed out as a proxy implementing {@link IJIComObject} so that
+ * it can be wrapped by the DCOM classes like any object received through DCOM. Calls are
+ * dispatched by interface and operation number to {@link #call(String, int, Object[])}.
+ * If the simulated object implements {@link LocalEventSource}, so does the proxy.
+ * Methods which are not simulated fail with a {@link JIException} carrying <code>E_NOTIMPL</code>
+ * if they may throw one, otherwise they return <code>null</code>, zero or <code>false</code>.
+ */
+public abstract class SimulatedObject
+{
+    protected static final String IUnknown_IID = "00000000-0000-0000-C000-000000000046";
+
+    protected static final int E_NOTIMPL = 0x80004001;
+
+    protected static final int E_NOINTERFACE = 0x80004002;
+
+    protected static final int E_FAIL = 0x80004005;
+
+    protected static final int E_INVALIDARG = 0x80070057;
+
+    protected static final int CONNECT_E_NOCONNECTION = 0x80040200;
+
+    protected static final int OPC_E_INVALIDHANDLE = 0xC0040001;
+
+    protected static final int OPC_E_UNKNOWNITEMID = 0xC0040007;
+
+    protected static final int OPC_E_DUPLICATENAME = 0xC004000C;
+
+    private final SimulatedOPCServer server;
+
+    /**
+     * Create a new simulated object
+     * @param server the server instance the object belongs to, <code>null</code> if the object is the server instance
+     */
+    protected SimulatedObject ( final SimulatedOPCServer server )
+    {
+        this.server = server;
+    }
+
+    protected SimulatedOPCServer getServer ()
+    {
+        return this.server;
+    }
+
+    /**
+     * Check if the object supports an interface
+     * @param interfaceIdentifier the IID of the interface
+     * @return <code>true</code> if the interface is supported
+     */
+    protected abstract boolean supports ( String interfaceIdentifier );
+
+    /**
+     * Perform a call
+     * @param interfaceIdentifier the IID of the interface called
+     * @param opnum the operation number
+     * @param in the input parameters as added to the {@link JICallBuilder}
+     * @return the output parameters
+     * @throws JIException if the call fails
+     */
+    protected abstract Object[] call ( String interfaceIdentifier, int opnum, Object[] in ) throws JIException;
+
+    /**
+     * Create a new COM object for an interface of this object
+     * @param interfaceIdentifier the IID of the interface
+     * @return the new COM object
+     */
+    public IJIComObject createComObject ( final String interfaceIdentifier )
+    {
+        final Class<?>[] interfaces;
+        if ( this instanceof LocalEventSource )
+        {
+            interfaces = new Class<?>[] { IJIComObject.class, LocalEventSource.class };
+        }
+        else
+        {
+            interfaces = new Class<?>[] { IJIComObject.class };
+        }
+        return (IJIComObject)Proxy.newProxyInstance ( SimulatedObject.class.getClassLoader (), interfaces, new Handler ( interfaceIdentifier ) );
+    }
+
+    protected static String toString ( final Object value )
+    {
+        if ( value instanceof JIString )
+        {
+            return ( (JIString)value ).getString ();
+        }
+        else if ( value instanceof JIPointer )
+        {
+            return toString ( ( (JIPointer)value ).getReferent () );
+        }
+        return (String)value;
+    }
+
+    protected static Object fromPointer ( final Object value )
+    {
+        if ( value instanceof JIPointer )
+        {
+            return ( (JIPointer)value ).getReferent ();
+        }
+        return value;
+    }
+
+    /**
+     * Handle a method of the COM object proxy which is not simulated
+     * @param method the method called
+     * @return the default value of the return type
+     * @throws JIException with <code>E_NOTIMPL</code> if the method may throw it
+     */
+    protected static Object notImplemented ( final Method method ) throws JIException
+    {
+        for ( final Class<?> exceptionType : method.getExceptionTypes () )
+        {
+            if ( exceptionType.isAssignableFrom ( JIException.class ) )
+            {
+                throw new JIException ( E_NOTIMPL, String.format ( "%s is not supported by simulated objects", method.getName () ) );
+            }
+        }
+
+        final Class<?> returnType = method.getReturnType ();
+        if ( !returnType.isPrimitive () || returnType == Void.TYPE )
+        {
+            return null;
+        }
+        // the default value of the primitive type
+        return Array.get ( Array.newInstance ( returnType, 1 ), 0 );
+    }
+
+    private class Handler implements InvocationHandler
+    {
+        private final String interfaceIdentifier;
+
+        public Handler ( final String interfaceIdentifier )
+        {
+            this.interfaceIdentifier = interfaceIdentifier;
+        }
+
+        @Override
+        public Object invoke ( final Object proxy, final Method method, final Object[] args ) throws Throwable
+        {
+            final String methodName = method.getName ();
+
+            if ( "call".equals ( methodName ) )
+            {
+                final JICallBuilder callObject = (JICallBuilder)args[0];
+                getServer ().beforeCall ();
+                return call ( this.interfaceIdentifier, callObject.getOpnum (), callObject.getInParams () );
+            }
+            else if ( "queryInterface".equals ( methodName ) )
+            {
+                getServer ().beforeCall ();
+                final String interfaceIdentifier = (String)args[0];
+                if ( !IUnknown_IID.equals ( interfaceIdentifier ) && !supports ( interfaceIdentifier ) )
+                {
+                    throw new JIException ( E_NOINTERFACE );
+                }
+                return createComObject ( interfaceIdentifier );
+            }
+            else if ( "attachEventHandler".equals ( methodName ) )
+            {
+                getServer ().beforeCall ();
+                return ( (LocalEventSource)SimulatedObject.this ).attachEventHandler ( (String)args[0], args[1] );
+            }
+            else if ( "detachEventHandler".equals ( methodName ) )
+            {
+                ( (LocalEventSource)SimulatedObject.this ).detachEventHandler ( (String)args[0] );
+                return null;
+            }
+            else if ( "getInterfaceIdentifier".equals ( methodName ) )
+            {
+                return this.interfaceIdentifier;
+            }
+            else if ( "release".equals ( methodName ) || "addRef".equals ( methodName ) )
+            {
+                return null;
+            }
+            else if ( "equals".equals ( methodName ) )
+            {
+                return proxy == args[0];
+            }
+            else if ( "hashCode".equals ( methodName ) )
+            {
+                return System.identityHashCode ( proxy );
+            }
+            else if ( "toString".equals ( methodName ) )
+            {
+                return String.format ( "%s[%s]", SimulatedObject.this, this.interfaceIdentifier );
+            }
+
+            return notImplemented ( method );
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+import java.net.UnknownHostException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.IJIComObject;
+import org.openscada.opc.lib.common.ConnectionInformation;
+import org.openscada.opc.lib.da.Server;
+
+/**
+ * A server connecting to an in-process {@link SimulatedOPCServer} instead of
+ * a DCOM server.
+ * <br/>
+ * Each connect creates a new server instance which is shut down on disconnect.
+ * Everything else, including groups, accesses and the auto reconnect controller,
+ * works like with a real server.
+ */
+public class SimulatedServer extends Server
+{
+    private final SimulationConfiguration configuration;
+
+    private SimulatedOPCServer instance;
+
+    private volatile boolean available = true;
+
+    public SimulatedServer ( final SimulationConfiguration configuration, final ScheduledExecutorService scheduler )
+    {
+        super ( makeConnectionInformation (), scheduler );
+        this.configuration = configuration;
+    }
+
+    private static ConnectionInformation makeConnectionInformation ()
+    {
+        final ConnectionInformation ci = new ConnectionInformation ();
+        ci.setHost ( "localhost" );
+        ci.setProgId ( "OpenSCADA.Simulation" );
+        return ci;
+    }
+
+    public SimulationConfiguration getConfiguration ()
+    {
+        return this.configuration;
+    }
+
+    /**
+     * Get the current server instance
+     * @return the server instance or <code>null</code> if the server is not connected
+     */
+    public synchronized SimulatedOPCServer getInstance ()
+    {
+        return this.instance;
+    }
+
+    /**
+     * Simulate the loss and the return of the server. While the server is not
+     * available all calls to the current instance fail and connection attempts
+     * are refused.
+     * @param available the new state
+     */
+    public synchronized void setAvailable ( final boolean available )
+    {
+        this.available = available;
+        if ( this.instance != null )
+        {
+            this.instance.setAvailable ( available );
+        }
+    }
+
+    @Override
+    protected synchronized IJIComObject createInstance () throws IllegalArgumentException, UnknownHostException, JIException
+    {
+        if ( !this.available )
+        {
+            throw new UnknownHostException ( "Simulated server is not available" );
+        }
+
+        this.instance = new SimulatedOPCServer ( this.configuration );
+        return this.instance.getComObject ();
+    }
+
+    @Override
+    protected void cleanup ()
+    {
+        super.cleanup ();
+
+        if ( this.instance != null )
+        {
+            this.instance.shutdown ();
+            this.instance = null;
+        }
+    }
+}
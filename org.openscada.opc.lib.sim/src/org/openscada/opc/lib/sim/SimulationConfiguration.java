@@ -0,0 +1,184 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.sim;
+
+/**
+ * The configuration of a simulated OPC server.
+ * <br/>
+ * The defaults can be set using system properties.
+ */
+public class SimulationConfiguration
+{
+    private int tagCount = Integer.getInteger ( "openscada.opc.sim.tags", 1000 );
+
+    private String tagPrefix = System.getProperty ( "openscada.opc.sim.tagPrefix", "Simulation.Tag." );
+
+    private double changeRate = Double.parseDouble ( System.getProperty ( "openscada.opc.sim.changeRate", "1.0" ) );
+
+    private int callLatency = Integer.getInteger ( "openscada.opc.sim.callLatency", 0 );
+
+    private int minimumUpdateRate = Integer.getInteger ( "openscada.opc.sim.minimumUpdateRate", 10 );
+
+    private int callbackThreads = Integer.getInteger ( "openscada.opc.sim.callbackThreads", 1 );
+
+    private int browseDepth = Integer.getInteger ( "openscada.opc.sim.browseDepth", 3 );
+
+    private int browseBranches = Integer.getInteger ( "openscada.opc.sim.browseBranches", 10 );
+
+    private int browseLeaves = Integer.getInteger ( "openscada.opc.sim.browseLeaves", 100 );
+
+    public SimulationConfiguration ()
+    {
+    }
+
+    public SimulationConfiguration ( final int tagCount, final double changeRate )
+    {
+        this.tagCount = tagCount;
+        this.changeRate = changeRate;
+    }
+
+    /**
+     * Get the number of tags in the namespace
+     * @return the number of tags
+     */
+    public int getTagCount ()
+    {
+        return this.tagCount;
+    }
+
+    public void setTagCount ( final int tagCount )
+    {
+        this.tagCount = tagCount;
+    }
+
+    /**
+     * Get the prefix of the item IDs. The item ID of a tag is the prefix followed by
+     * the index of the tag, starting with zero.
+     * @return the prefix of the item IDs
+     */
+    public String getTagPrefix ()
+    {
+        return this.tagPrefix;
+    }
+
+    public void setTagPrefix ( final String tagPrefix )
+    {
+        this.tagPrefix = tagPrefix;
+    }
+
+    /**
+     * Get the number of value changes per second of each tag
+     * @return the change rate, zero if the values never change
+     */
+    public double getChangeRate ()
+    {
+        return this.changeRate;
+    }
+
+    public void setChangeRate ( final double changeRate )
+    {
+        this.changeRate = changeRate;
+    }
+
+    /**
+     * Get the time each call to the simulated server takes
+     * @return the latency in microseconds
+     */
+    public int getCallLatency ()
+    {
+        return this.callLatency;
+    }
+
+    public void setCallLatency ( final int callLatency )
+    {
+        this.callLatency = callLatency;
+    }
+
+    /**
+     * Get the fastest update rate the server grants to groups
+     * @return the update rate in milliseconds
+     */
+    public int getMinimumUpdateRate ()
+    {
+        return this.minimumUpdateRate;
+    }
+
+    public void setMinimumUpdateRate ( final int minimumUpdateRate )
+    {
+        this.minimumUpdateRate = minimumUpdateRate;
+    }
+
+    /**
+     * Get the number of threads which scan the groups and deliver the callbacks
+     * @return the number of threads
+     */
+    public int getCallbackThreads ()
+    {
+        return this.callbackThreads;
+    }
+
+    public void setCallbackThreads ( final int callbackThreads )
+    {
+        this.callbackThreads = callbackThreads;
+    }
+
+    /**
+     * Get the number of branch levels below the root of the browse address space
+     * @return the depth of the browse address space
+     */
+    public int getBrowseDepth ()
+    {
+        return this.browseDepth;
+    }
+
+    public void setBrowseDepth ( final int browseDepth )
+    {
+        this.browseDepth = browseDepth;
+    }
+
+    /**
+     * Get the number of sub-branches of each branch of the browse address space,
+     * except the branches at the deepest level
+     * @return the number of sub-branches
+     */
+    public int getBrowseBranches ()
+    {
+        return this.browseBranches;
+    }
+
+    public void setBrowseBranches ( final int browseBranches )
+    {
+        this.browseBranches = browseBranches;
+    }
+
+    /**
+     * Get the number of leaves of each branch of the browse address space, including the root
+     * @return the number of leaves
+     */
+    public int getBrowseLeaves ()
+    {
+        return this.browseLeaves;
+    }
+
+    public void setBrowseLeaves ( final int browseLeaves )
+    {
+        this.browseLeaves = browseLeaves;
+    }
+}
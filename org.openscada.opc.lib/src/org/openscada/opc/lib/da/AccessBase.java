@@ -21,11 +21,17 @@ package org.openscada.opc.lib.da;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import javax.management.ObjectName;
+
 import org.jinterop.dcom.common.JIException;
 import org.openscada.opc.lib.common.NotConnectedException;
 import org.slf4j.Logger;
@@ -35,6 +41,11 @@ public abstract class AccessBase implements ServerConnectionStateListener
 {
     private static Logger logger = LoggerFactory.getLogger ( AccessBase.class );
 
+    /**
+     * The maximum number of items added to the group in one call when all items are realized
+     */
+    public static final int REALIZE_BATCH_SIZE = Integer.getInteger ( "openscada.opc.realize-batch-size", 1000 );
+
     protected Server server = null;
 
     protected Group group = null;
@@ -50,18 +61,48 @@ public abstract class AccessBase implements ServerConnectionStateListener
      */
     protected Map<Item, DataCallback> items = new HashMap<Item, DataCallback> ();
 
-    protected Map<String, Item> itemMap = new HashMap<String, Item> ();
+    /**
+     * Holds the item ID to item assignment. Concurrent since it is used by {@link #getLastValue(String)}.
+     */
+    protected Map<String, Item> itemMap = new ConcurrentHashMap<String, Item> ();
+
+    /**
+     * Holds the last state of each item. Updated by the callback thread and
+     * read without locking by {@link #getLastValue(String)} and {@link #getLastValues()}.
+     */
+    protected Map<Item, ItemState> itemCache = new ConcurrentHashMap<Item, ItemState> ();
+
+    /**
+     * Holds item states restored from a snapshot until the item is realized
+     */
+    protected Map<String, ItemState> restoredStates = new HashMap<String, ItemState> ();
 
-    protected Map<Item, ItemState> itemCache = new HashMap<Item, ItemState> ();
+    /**
+     * Holds the realized items whose cached state was restored and not yet confirmed by an update.
+     * These states are not reported by {@link #getLastValue(String)}.
+     */
+    protected Map<Item, ItemState> restoredItems = new ConcurrentHashMap<Item, ItemState> ();
 
     private int period = 0;
 
     protected Map<String, DataCallback> itemSet = new HashMap<String, DataCallback> ();
 
+    /**
+     * Holds the client handles items were realized with, so that they get
+     * the same client handles after a reconnect
+     */
+    protected Map<String, Integer> clientHandles = new HashMap<String, Integer> ();
+
     protected String logTag = null;
 
     protected Logger dataLogger = null;
 
+    private final AccessStatistics statistics = new AccessStatistics ( this );
+
+    private ObjectName objectName;
+
+    private volatile UpdateJournal journal;
+
     public AccessBase ( final Server server, final int period ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
     {
         super ();
@@ -95,6 +136,8 @@ public abstract class AccessBase implements ServerConnectionStateListener
 
         this.server.addStateListener ( this );
         this.bound = true;
+
+        this.objectName = ManagementSupport.register ( String.format ( "type=Access,%s,access=%s-%08x", this.server.getManagementProperties (), getClass ().getName (), System.identityHashCode ( this ) ), this.statistics );
     }
 
     public synchronized void unbind () throws JIException
@@ -107,6 +150,9 @@ public abstract class AccessBase implements ServerConnectionStateListener
         this.server.removeStateListener ( this );
         this.bound = false;
 
+        ManagementSupport.unregister ( this.objectName );
+        this.objectName = null;
+
         stop ();
     }
 
@@ -115,6 +161,16 @@ public abstract class AccessBase implements ServerConnectionStateListener
         return this.active;
     }
 
+    /**
+     * Get the statistics of this access. The statistics are registered as MBean while
+     * the access is bound, until it is unbound or cleared, if {@link ManagementSupport#isEnabled()} is set.
+     * @return the statistics
+     */
+    public AccessStatistics getStatistics ()
+    {
+        return this.statistics;
+    }
+
     public void addStateListener ( final AccessStateListener listener )
     {
         this.stateListeners.add ( listener );
@@ -166,6 +222,72 @@ public abstract class AccessBase implements ServerConnectionStateListener
         }
     }
 
+    /**
+     * Replace the data callback of an item without removing it from the group
+     * @param itemId the item
+     * @param dataCallback the new callback
+     * @return <code>true</code> if the item was added to this access before
+     */
+    public synchronized boolean setItemCallback ( final String itemId, final DataCallback dataCallback )
+    {
+        if ( !this.itemSet.containsKey ( itemId ) )
+        {
+            return false;
+        }
+
+        this.itemSet.put ( itemId, dataCallback );
+
+        final Item item = this.itemMap.get ( itemId );
+        if ( item != null )
+        {
+            this.items.put ( item, dataCallback );
+        }
+        return true;
+    }
+
+    /**
+     * Get the IDs of all items added to this access
+     * @return a new set of item IDs
+     */
+    public synchronized Set<String> getItemIds ()
+    {
+        return new TreeSet<String> ( this.itemSet.keySet () );
+    }
+
+    /**
+     * Restore the last known states of items, e.g. from an {@link AccessSnapshot}.
+     * <br/>
+     * The state is used as cached state once the item is realized. So if the
+     * first update of the item is equal to the restored state it is not passed
+     * to the data callback. The restored state is used only once, it is discarded when the
+     * item is realized again after a reconnect.
+     * <br/>
+     * Until the first update confirms it, the restored state is not reported as last value.
+     * Use {@link #isRestored(String)} and {@link #getLastValues(boolean)} to access it.
+     * @param states the states by item ID
+     */
+    public synchronized void restoreLastValues ( final Map<String, ItemState> states )
+    {
+        for ( final Map.Entry<String, ItemState> entry : states.entrySet () )
+        {
+            if ( entry.getValue () == null )
+            {
+                continue;
+            }
+
+            final Item item = this.itemMap.get ( entry.getKey () );
+            if ( item == null )
+            {
+                this.restoredStates.put ( entry.getKey (), entry.getValue () );
+            }
+            else if ( !this.itemCache.containsKey ( item ) )
+            {
+                this.restoredItems.put ( item, entry.getValue () );
+                this.itemCache.put ( item, entry.getValue () );
+            }
+        }
+    }
+
     public synchronized void removeItem ( final String itemId )
     {
         if ( !this.itemSet.containsKey ( itemId ) )
@@ -174,6 +296,9 @@ public abstract class AccessBase implements ServerConnectionStateListener
         }
 
         this.itemSet.remove ( itemId );
+        this.restoredStates.remove ( itemId );
+        this.clientHandles.remove ( itemId );
+        this.server.getLastValueCache ().remove ( itemId );
 
         if ( isActive () )
         {
@@ -208,7 +333,7 @@ public abstract class AccessBase implements ServerConnectionStateListener
         }
 
         logger.debug ( "Create a new group" );
-        this.group = this.server.addGroup ();
+        this.group = createGroup ();
         this.group.setActive ( true );
         this.active = true;
 
@@ -217,6 +342,21 @@ public abstract class AccessBase implements ServerConnectionStateListener
         realizeAll ();
     }
 
+    /**
+     * Create the group used by this access. The default implementation
+     * creates a group using the default settings of the server.
+     * @return the new group
+     * @throws JIException
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws NotConnectedException
+     * @throws DuplicateGroupException
+     */
+    protected Group createGroup () throws JIException, IllegalArgumentException, UnknownHostException, NotConnectedException, DuplicateGroupException
+    {
+        return this.server.addGroup ();
+    }
+
     protected void realizeItem ( final String itemId ) throws JIException, AddFailedException
     {
         logger.debug ( "Realizing item: {}", itemId );
@@ -227,16 +367,45 @@ public abstract class AccessBase implements ServerConnectionStateListener
             return;
         }
 
-        final Item item = this.group.addItem ( itemId );
+        final Item item = this.group.addItems ( this.clientHandles, itemId ).get ( itemId );
+        itemRealized ( item, dataCallback );
+    }
+
+    /**
+     * Register an item that was added to a group
+     * @param item the new item
+     * @param dataCallback the callback of the item
+     */
+    protected void itemRealized ( final Item item, final DataCallback dataCallback )
+    {
         this.items.put ( item, dataCallback );
-        this.itemMap.put ( itemId, item );
+        this.itemMap.put ( item.getId (), item );
+        this.clientHandles.put ( item.getId (), item.getClientHandle () );
+        applyRestoredState ( item );
+    }
+
+    /**
+     * Use the restored state of a newly realized item as cached state
+     * @param item the item
+     */
+    protected void applyRestoredState ( final Item item )
+    {
+        final ItemState restored = this.restoredStates.remove ( item.getId () );
+        if ( restored != null )
+        {
+            this.restoredItems.put ( item, restored );
+            this.itemCache.put ( item, restored );
+        }
     }
 
     protected void unrealizeItem ( final String itemId )
     {
         final Item item = this.itemMap.remove ( itemId );
-        this.items.remove ( item );
-        this.itemCache.remove ( item );
+        if ( item != null )
+        {
+            this.items.remove ( item );
+            this.itemCache.remove ( item );
+        }
 
         try
         {
@@ -248,12 +417,52 @@ public abstract class AccessBase implements ServerConnectionStateListener
         }
     }
 
-    /*
-     * FIXME: need some perfomance boost: subscribe all in one call
+    /**
+     * Realize all items. The items are added to the group in batches of
+     * {@link #REALIZE_BATCH_SIZE} items using their previous client handles.
+     * If a batch fails completely its items are added one by one.
      */
     protected void realizeAll ()
     {
-        for ( final String itemId : this.itemSet.keySet () )
+        final List<String> itemIds = new ArrayList<String> ( this.itemSet.keySet () );
+        for ( int i = 0; i < itemIds.size (); i += REALIZE_BATCH_SIZE )
+        {
+            final List<String> batch = itemIds.subList ( i, Math.min ( i + REALIZE_BATCH_SIZE, itemIds.size () ) );
+
+            Map<String, Item> added;
+            try
+            {
+                added = this.group.addItems ( this.clientHandles, batch.toArray ( new String[batch.size ()] ) );
+            }
+            catch ( final AddFailedException e )
+            {
+                for ( final Map.Entry<String, Integer> entry : e.getErrors ().entrySet () )
+                {
+                    logger.warn ( String.format ( "Failed to add item: %s (%08X)", entry.getKey (), entry.getValue () ) );
+                }
+                added = e.getItems ();
+            }
+            catch ( final JIException e )
+            {
+                logger.warn ( "Failed to add items in one call, adding them one by one", e );
+                realizeEach ( batch );
+                continue;
+            }
+
+            for ( final Item item : added.values () )
+            {
+                itemRealized ( item, this.itemSet.get ( item.getId () ) );
+            }
+        }
+    }
+
+    /**
+     * Realize items one by one using {@link #realizeItem(String)}
+     * @param itemIds the items to realize
+     */
+    protected void realizeEach ( final Collection<String> itemIds )
+    {
+        for ( final String itemId : itemIds )
         {
             try
             {
@@ -298,6 +507,7 @@ public abstract class AccessBase implements ServerConnectionStateListener
         }
 
         unrealizeAll ();
+        this.restoredItems.clear ();
 
         this.active = false;
         notifyStateListenersState ( false );
@@ -315,10 +525,22 @@ public abstract class AccessBase implements ServerConnectionStateListener
 
     public synchronized void clear ()
     {
+        ManagementSupport.unregister ( this.objectName );
+        this.objectName = null;
+
+        final LastValueCache cache = this.server.getLastValueCache ();
+        for ( final String itemId : this.itemSet.keySet () )
+        {
+            cache.remove ( itemId );
+        }
+
         this.itemSet.clear ();
         this.items.clear ();
         this.itemMap.clear ();
         this.itemCache.clear ();
+        this.restoredStates.clear ();
+        this.restoredItems.clear ();
+        this.clientHandles.clear ();
     }
 
     protected void updateItem ( final Item item, final ItemState itemState )
@@ -331,27 +553,172 @@ public abstract class AccessBase implements ServerConnectionStateListener
         final DataCallback dataCallback = this.items.get ( item );
         if ( dataCallback == null )
         {
+            this.statistics.dropped ();
             return;
         }
 
+        this.server.getLastValueCache ().update ( item.getId (), itemState );
+
         final ItemState cachedState = this.itemCache.get ( item );
+        final ItemState restoredState = this.restoredItems.isEmpty () ? null : this.restoredItems.get ( item );
         if ( cachedState == null )
         {
+            this.statistics.changed ();
             this.itemCache.put ( item, itemState );
+            journal ( item, itemState );
             dataCallback.changed ( item, itemState );
         }
+        else if ( restoredState != null )
+        {
+            // the first update confirms or replaces the restored state
+            this.itemCache.put ( item, itemState );
+            this.restoredItems.remove ( item );
+            if ( AccessSnapshot.isUnchanged ( restoredState, itemState ) )
+            {
+                this.statistics.duplicate ();
+            }
+            else
+            {
+                this.statistics.changed ();
+                journal ( item, itemState );
+                dataCallback.changed ( item, itemState );
+            }
+        }
         else
         {
             if ( !cachedState.equals ( itemState ) )
             {
+                this.statistics.changed ();
                 this.itemCache.put ( item, itemState );
+                journal ( item, itemState );
                 dataCallback.changed ( item, itemState );
             }
+            else
+            {
+                this.statistics.duplicate ();
+            }
+        }
+    }
+
+    private void journal ( final Item item, final ItemState itemState )
+    {
+        final UpdateJournal journal = this.journal;
+        if ( journal != null )
+        {
+            journal.append ( item, itemState );
+        }
+    }
+
+    /**
+     * Set the journal which receives every update before it is passed to the data callback
+     * @param journal the journal or <code>null</code> to disable journaling
+     */
+    public void setJournal ( final UpdateJournal journal )
+    {
+        this.journal = journal;
+    }
+
+    public UpdateJournal getJournal ()
+    {
+        return this.journal;
+    }
+
+    /**
+     * Check if the cached state of an item was restored and is not yet confirmed by an update
+     * @param itemId the item ID
+     * @return <code>true</code> if the state of the item was restored and not yet confirmed
+     */
+    public boolean isRestored ( final String itemId )
+    {
+        final Item item = this.itemMap.get ( itemId );
+        return item != null && this.restoredItems.containsKey ( item );
+    }
+
+    /**
+     * Get the last state of an item without locking
+     * @param itemId the item ID
+     * @return the last state or <code>null</code> if the item is unknown, no value was received yet
+     * or the state was restored and is not yet confirmed
+     */
+    public ItemState getLastValue ( final String itemId )
+    {
+        final Item item = this.itemMap.get ( itemId );
+        if ( item == null || this.restoredItems.containsKey ( item ) )
+        {
+            return null;
+        }
+        return this.itemCache.get ( item );
+    }
+
+    /**
+     * Get a snapshot of the last states of all items that received a value.
+     * <br/>
+     * The snapshot is taken without locking, it is consistent for each item but
+     * not necessarily across items.
+     * @return a new map of item ID to item state
+     */
+    public Map<String, ItemState> getLastValues ()
+    {
+        return getLastValues ( false );
+    }
+
+    /**
+     * Get a snapshot of the last states of all items
+     * @param includeRestored also include restored states which are not yet confirmed by an update
+     * @return a new map of item ID to item state
+     */
+    public Map<String, ItemState> getLastValues ( final boolean includeRestored )
+    {
+        final Map<String, ItemState> result = new HashMap<String, ItemState> ( this.itemCache.size () * 4 / 3 + 1 );
+        for ( final Map.Entry<Item, ItemState> entry : this.itemCache.entrySet () )
+        {
+            if ( includeRestored || !this.restoredItems.containsKey ( entry.getKey () ) )
+            {
+                result.put ( entry.getKey ().getId (), entry.getValue () );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a snapshot of the last states of the requested items
+     * @param itemIds the item IDs
+     * @return a new map of item ID to item state, items without a value are omitted
+     */
+    public Map<String, ItemState> getLastValues ( final String... itemIds )
+    {
+        final Map<String, ItemState> result = new HashMap<String, ItemState> ( itemIds.length * 4 / 3 + 1 );
+        for ( final String itemId : itemIds )
+        {
+            final ItemState state = getLastValue ( itemId );
+            if ( state != null )
+            {
+                result.put ( itemId, state );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Pass an update to {@link #updateItem(Item, ItemState)} and record its latency
+     * in the statistics of the group of the item
+     * @param item the item
+     * @param itemState the new state
+     * @param receiveTime the local time the update was received, from {@link System#currentTimeMillis()}
+     * @param receiveNanos the time the update was received, from {@link System#nanoTime()}
+     */
+    protected void deliverUpdate ( final Item item, final ItemState itemState, final long receiveTime, final long receiveNanos )
+    {
+        updateItem ( item, itemState );
+        if ( item != null )
+        {
+            item.getGroup ().getStatistics ().updateDelivered ( itemState.getTimestamp (), receiveTime, System.nanoTime () - receiveNanos );
         }
     }
 
     protected void handleError ( final Throwable e )
     {
+        this.statistics.error ();
         notifyStateListenersError ( e );
         this.server.dispose ();
     }
@@ -0,0 +1,317 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+
+/**
+ * A snapshot of the items of an access and their last known states.
+ * <br/>
+ * The snapshot is used for a warm restart. It is written periodically by an
+ * {@link AccessSnapshotWriter} and read again when the process starts. Restoring it
+ * adds the items to the new access and passes the states to
+ * {@link AccessBase#restoreLastValues(Map)}, so the initial refresh does not
+ * deliver values that did not change since the snapshot was taken.
+ */
+public class AccessSnapshot
+{
+    private static final int MAGIC = 0x4F505353;
+
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_STATE = 1;
+
+    private static final int FLAG_TIMESTAMP = 2;
+
+    private static final int FLAG_QUALITY = 4;
+
+    private final long timestamp;
+
+    private final int period;
+
+    private final Map<String, ItemState> items;
+
+    /**
+     * Create a new snapshot
+     * @param timestamp the time the snapshot was taken
+     * @param period the update period of the access
+     * @param items the item IDs and their last states, states may be <code>null</code>
+     */
+    public AccessSnapshot ( final long timestamp, final int period, final Map<String, ItemState> items )
+    {
+        this.timestamp = timestamp;
+        this.period = period;
+        this.items = Collections.unmodifiableMap ( new LinkedHashMap<String, ItemState> ( items ) );
+    }
+
+    /**
+     * Take a snapshot of an access
+     * @param access the access
+     * @return the new snapshot
+     */
+    public static AccessSnapshot capture ( final AccessBase access )
+    {
+        // keep restored states which were not yet confirmed, they are still the last known states
+        final Map<String, ItemState> states = access.getLastValues ( true );
+
+        final Map<String, ItemState> items = new LinkedHashMap<String, ItemState> ();
+        for ( final String itemId : access.getItemIds () )
+        {
+            items.put ( itemId, states.get ( itemId ) );
+        }
+
+        return new AccessSnapshot ( System.currentTimeMillis (), access.getPeriod (), items );
+    }
+
+    public long getTimestamp ()
+    {
+        return this.timestamp;
+    }
+
+    /**
+     * Get the update period of the access the snapshot was taken from. Use it
+     * to create the new access with the same settings.
+     * @return the update period in milliseconds
+     */
+    public int getPeriod ()
+    {
+        return this.period;
+    }
+
+    /**
+     * Get the items of the snapshot
+     * @return an unmodifiable map of item IDs to their last states, states may be <code>null</code>
+     */
+    public Map<String, ItemState> getItems ()
+    {
+        return this.items;
+    }
+
+    /**
+     * Restore the snapshot to an access. This should be done before the access
+     * is bound.
+     * @param access the access to restore the items to
+     * @param dataCallback the callback for all restored items
+     * @throws JIException if the access is active and adding an item fails
+     * @throws AddFailedException if the access is active and adding an item fails
+     */
+    public void restore ( final AccessBase access, final DataCallback dataCallback ) throws JIException, AddFailedException
+    {
+        access.restoreLastValues ( this.items );
+        for ( final String itemId : this.items.keySet () )
+        {
+            access.addItem ( itemId, dataCallback );
+        }
+    }
+
+    /**
+     * Write the snapshot to a file. The file is replaced only once the
+     * snapshot was written completely.
+     * @param file the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write ( final File file ) throws IOException
+    {
+        final File tmp = new File ( file.getParentFile (), file.getName () + ".tmp" );
+
+        final FileOutputStream fos = new FileOutputStream ( tmp );
+        try
+        {
+            final DataOutputStream out = new DataOutputStream ( new BufferedOutputStream ( fos ) );
+            out.writeInt ( MAGIC );
+            out.writeByte ( VERSION );
+            out.writeLong ( this.timestamp );
+            out.writeInt ( this.period );
+            out.writeInt ( this.items.size () );
+            for ( final Map.Entry<String, ItemState> entry : this.items.entrySet () )
+            {
+                out.writeUTF ( entry.getKey () );
+                writeState ( out, entry.getValue () );
+            }
+            out.flush ();
+            fos.getFD ().sync ();
+        }
+        finally
+        {
+            fos.close ();
+        }
+
+        if ( !tmp.renameTo ( file ) )
+        {
+            // some platforms do not replace existing files
+            file.delete ();
+            if ( !tmp.renameTo ( file ) )
+            {
+                throw new IOException ( String.format ( "Unable to replace snapshot: %s", file ) );
+            }
+        }
+    }
+
+    private static void writeState ( final DataOutputStream out, final ItemState state ) throws IOException
+    {
+        if ( state == null )
+        {
+            out.writeByte ( 0 );
+            return;
+        }
+
+        final Calendar timestamp = state.getTimestamp ();
+        final Short quality = state.getQuality ();
+
+        out.writeByte ( FLAG_STATE | ( timestamp != null ? FLAG_TIMESTAMP : 0 ) | ( quality != null ? FLAG_QUALITY : 0 ) );
+        out.writeInt ( state.getErrorCode () );
+        if ( timestamp != null )
+        {
+            out.writeLong ( timestamp.getTimeInMillis () );
+        }
+        if ( quality != null )
+        {
+            out.writeShort ( quality );
+        }
+        VariantCodec.writeValue ( out, state.getValue () );
+    }
+
+    /**
+     * Check if an item state equals a restored one. The values are compared by their
+     * content, since variants do not implement {@link Object#equals(Object)}.
+     * @param restored the restored state
+     * @param state the current state
+     * @return <code>true</code> if both states are equal
+     */
+    static boolean isUnchanged ( final ItemState restored, final ItemState state )
+    {
+        if ( restored.getErrorCode () != state.getErrorCode () )
+        {
+            return false;
+        }
+        if ( restored.getQuality () == null ? state.getQuality () != null : !restored.getQuality ().equals ( state.getQuality () ) )
+        {
+            return false;
+        }
+        if ( restored.getTimestamp () == null ? state.getTimestamp () != null : state.getTimestamp () == null || restored.getTimestamp ().getTimeInMillis () != state.getTimestamp ().getTimeInMillis () )
+        {
+            return false;
+        }
+
+        try
+        {
+            return Arrays.equals ( encode ( restored ), encode ( state ) );
+        }
+        catch ( final IOException e )
+        {
+            return false;
+        }
+    }
+
+    private static byte[] encode ( final ItemState state ) throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream ();
+        final DataOutputStream out = new DataOutputStream ( bos );
+        if ( !VariantCodec.writeValue ( out, state.getValue () ) )
+        {
+            // not supported, so we cannot tell
+            throw new IOException ();
+        }
+        out.close ();
+        return bos.toByteArray ();
+    }
+
+    /**
+     * Read a snapshot from a file
+     * @param file the file to read
+     * @return the snapshot or <code>null</code> if the file does not exist
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static AccessSnapshot read ( final File file ) throws IOException
+    {
+        if ( !file.isFile () )
+        {
+            return null;
+        }
+
+        final DataInputStream in = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( file ) ) );
+        try
+        {
+            if ( in.readInt () != MAGIC || in.readByte () != VERSION )
+            {
+                throw new IOException ( String.format ( "Invalid snapshot file: %s", file ) );
+            }
+
+            final long timestamp = in.readLong ();
+            final int period = in.readInt ();
+            final int count = in.readInt ();
+
+            final Map<String, ItemState> items = new LinkedHashMap<String, ItemState> ();
+            for ( int i = 0; i < count; i++ )
+            {
+                final String itemId = in.readUTF ();
+                items.put ( itemId, readState ( in ) );
+            }
+
+            return new AccessSnapshot ( timestamp, period, items );
+        }
+        finally
+        {
+            in.close ();
+        }
+    }
+
+    private static ItemState readState ( final DataInputStream in ) throws IOException
+    {
+        final int flags = in.readByte ();
+        if ( ( flags & FLAG_STATE ) == 0 )
+        {
+            return null;
+        }
+
+        final int errorCode = in.readInt ();
+
+        Calendar timestamp = null;
+        if ( ( flags & FLAG_TIMESTAMP ) != 0 )
+        {
+            timestamp = Calendar.getInstance ();
+            timestamp.setTimeInMillis ( in.readLong () );
+        }
+
+        Short quality = null;
+        if ( ( flags & FLAG_QUALITY ) != 0 )
+        {
+            quality = in.readShort ();
+        }
+
+        return new ItemState ( errorCode, VariantCodec.readValue ( in ), timestamp, quality );
+    }
+}
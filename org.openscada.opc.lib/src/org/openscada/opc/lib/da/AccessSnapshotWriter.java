@@ -0,0 +1,121 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically writes an {@link AccessSnapshot} of an access to a file.
+ * <br/>
+ * The default period is one minute and can be changed by the system
+ * property <code>openscada.opc.snapshot-period</code>. A final snapshot is written when
+ * the writer is stopped.
+ */
+public class AccessSnapshotWriter implements Runnable
+{
+    private static Logger logger = LoggerFactory.getLogger ( AccessSnapshotWriter.class );
+
+    public static final long DEFAULT_PERIOD = Long.getLong ( "openscada.opc.snapshot-period", 60 * 1000 );
+
+    private final AccessBase access;
+
+    private final File file;
+
+    private ScheduledFuture<?> future;
+
+    private volatile long lastWrite;
+
+    private volatile long failures;
+
+    public AccessSnapshotWriter ( final AccessBase access, final File file )
+    {
+        this.access = access;
+        this.file = file;
+    }
+
+    public synchronized void start ( final ScheduledExecutorService executor )
+    {
+        start ( executor, DEFAULT_PERIOD );
+    }
+
+    /**
+     * Start writing snapshots
+     * @param executor the executor to run on, e.g. the scheduler of the server
+     * @param period the period in milliseconds
+     */
+    public synchronized void start ( final ScheduledExecutorService executor, final long period )
+    {
+        if ( this.future != null )
+        {
+            return;
+        }
+        this.future = executor.scheduleWithFixedDelay ( this, period, period, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stop writing snapshots and write a final one
+     */
+    public synchronized void stop ()
+    {
+        if ( this.future == null )
+        {
+            return;
+        }
+        this.future.cancel ( false );
+        this.future = null;
+
+        run ();
+    }
+
+    public synchronized void run ()
+    {
+        try
+        {
+            AccessSnapshot.capture ( this.access ).write ( this.file );
+            this.lastWrite = System.currentTimeMillis ();
+        }
+        catch ( final IOException e )
+        {
+            this.failures++;
+            logger.warn ( String.format ( "Failed to write snapshot: %s", this.file ), e );
+        }
+    }
+
+    /**
+     * Get the time of the last successful write
+     * @return the time in milliseconds since the epoch or zero if no snapshot was written yet
+     */
+    public long getLastWrite ()
+    {
+        return this.lastWrite;
+    }
+
+    public long getFailures ()
+    {
+        return this.failures;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of an {@link AccessBase}
+ * <br/>
+ * Updates are counted when they reach {@link AccessBase#updateItem(Item, ItemState)}. They are either
+ * passed on as changed, suppressed as duplicates or dropped since no callback is registered for the item.
+ */
+public class AccessStatistics implements AccessStatisticsMBean
+{
+    private final AccessBase access;
+
+    private final AtomicLong changedUpdates = new AtomicLong ();
+
+    private final AtomicLong duplicateUpdates = new AtomicLong ();
+
+    private final AtomicLong droppedUpdates = new AtomicLong ();
+
+    private final AtomicLong errors = new AtomicLong ();
+
+    AccessStatistics ( final AccessBase access )
+    {
+        this.access = access;
+    }
+
+    void changed ()
+    {
+        this.changedUpdates.incrementAndGet ();
+    }
+
+    void duplicate ()
+    {
+        this.duplicateUpdates.incrementAndGet ();
+    }
+
+    void dropped ()
+    {
+        this.droppedUpdates.incrementAndGet ();
+    }
+
+    void error ()
+    {
+        this.errors.incrementAndGet ();
+    }
+
+    public boolean isActive ()
+    {
+        return this.access.isActive ();
+    }
+
+    public int getItemCount ()
+    {
+        return this.access.itemMap.size ();
+    }
+
+    public int getCacheSize ()
+    {
+        return this.access.itemCache.size ();
+    }
+
+    public long getUpdates ()
+    {
+        return this.changedUpdates.get () + this.duplicateUpdates.get () + this.droppedUpdates.get ();
+    }
+
+    public long getChangedUpdates ()
+    {
+        return this.changedUpdates.get ();
+    }
+
+    public long getDuplicateUpdates ()
+    {
+        return this.duplicateUpdates.get ();
+    }
+
+    public long getDroppedUpdates ()
+    {
+        return this.droppedUpdates.get ();
+    }
+
+    public long getErrors ()
+    {
+        return this.errors.get ();
+    }
+
+    public void reset ()
+    {
+        this.changedUpdates.set ( 0 );
+        this.duplicateUpdates.set ( 0 );
+        this.droppedUpdates.set ( 0 );
+        this.errors.set ( 0 );
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.lib.common.NotConnectedException;
+
+/**
+ * A synchronous access which adapts the polling rate of each item to how often it changes.
+ * <br/>
+ * Every item starts being read each period. Each time a read returns an unchanged
+ * value the item's period is doubled, up to <q>maxMultiplier</q> times the base period.
+ * As soon as a read returns a changed value the item is read every period again.
+ */
+public class AdaptiveSyncAccess extends SyncAccess
+{
+    /**
+     * The default maximum multiplier. Can be overridden by the java property
+     * <q>openscada.opc.adaptive-max-multiplier</q>.
+     */
+    public static final int DEFAULT_MAX_MULTIPLIER = Integer.getInteger ( "openscada.opc.adaptive-max-multiplier", 16 );
+
+    private static class Adaptation
+    {
+        private int multiplier = 1;
+
+        private int remaining = 1;
+    }
+
+    private final int maxMultiplier;
+
+    private final Map<Item, Adaptation> adaptations = new HashMap<Item, Adaptation> ();
+
+    private long readCount = 0;
+
+    private long skipCount = 0;
+
+    public AdaptiveSyncAccess ( final Server server, final int period ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        this ( server, period, DEFAULT_MAX_MULTIPLIER );
+    }
+
+    public AdaptiveSyncAccess ( final Server server, final int period, final int maxMultiplier ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        super ( server, period );
+        if ( maxMultiplier < 1 )
+        {
+            throw new IllegalArgumentException ( "The maximum multiplier must be at least one" );
+        }
+        this.maxMultiplier = maxMultiplier;
+    }
+
+    public int getMaxMultiplier ()
+    {
+        return this.maxMultiplier;
+    }
+
+    /**
+     * Get the current multiplier of the base period for an item
+     * @param itemId the item
+     * @return the multiplier or zero if the item is not realized
+     */
+    public synchronized int getPollMultiplier ( final String itemId )
+    {
+        final Item item = this.itemMap.get ( itemId );
+        final Adaptation adaptation = item == null ? null : this.adaptations.get ( item );
+        return adaptation == null ? 0 : adaptation.multiplier;
+    }
+
+    /**
+     * Get the number of item reads performed
+     * @return the number of item reads
+     */
+    public synchronized long getReadCount ()
+    {
+        return this.readCount;
+    }
+
+    /**
+     * Get the number of item reads saved compared to reading each item every period
+     * @return the number of skipped item reads
+     */
+    public synchronized long getSkipCount ()
+    {
+        return this.skipCount;
+    }
+
+    @Override
+    protected void itemRealized ( final Item item, final DataCallback dataCallback )
+    {
+        super.itemRealized ( item, dataCallback );
+        this.adaptations.put ( item, new Adaptation () );
+    }
+
+    @Override
+    protected void unrealizeItem ( final String itemId )
+    {
+        final Item item = this.itemMap.get ( itemId );
+        if ( item != null )
+        {
+            this.adaptations.remove ( item );
+        }
+
+        super.unrealizeItem ( itemId );
+    }
+
+    @Override
+    protected void unrealizeAll ()
+    {
+        this.adaptations.clear ();
+        super.unrealizeAll ();
+    }
+
+    @Override
+    public synchronized void clear ()
+    {
+        this.adaptations.clear ();
+        super.clear ();
+    }
+
+    @Override
+    protected void runOnce () throws JIException
+    {
+        if ( !this.active || this.group == null )
+        {
+            return;
+        }
+
+        Map<Item, ItemState> result;
+
+        // lock only this section since we could get into a deadlock otherwise
+        // calling updateItem
+        synchronized ( this )
+        {
+            final List<Item> due = new ArrayList<Item> ();
+            for ( final Map.Entry<Item, Adaptation> entry : this.adaptations.entrySet () )
+            {
+                final Adaptation adaptation = entry.getValue ();
+                adaptation.remaining--;
+                if ( adaptation.remaining <= 0 )
+                {
+                    due.add ( entry.getKey () );
+                }
+            }
+
+            this.readCount += due.size ();
+            this.skipCount += this.adaptations.size () - due.size ();
+
+            if ( due.isEmpty () )
+            {
+                return;
+            }
+            result = this.group.read ( false, due.toArray ( new Item[due.size ()] ) );
+        }
+
+        final long receiveTime = System.currentTimeMillis ();
+        final long receiveNanos = System.nanoTime ();
+        for ( final Map.Entry<Item, ItemState> entry : result.entrySet () )
+        {
+            deliverUpdate ( entry.getKey (), entry.getValue (), receiveTime, receiveNanos );
+        }
+    }
+
+    @Override
+    protected void updateItem ( final Item item, final ItemState itemState )
+    {
+        final ItemState cachedState = item != null ? this.itemCache.get ( item ) : null;
+        final boolean changed = cachedState == null || !cachedState.equals ( itemState );
+
+        super.updateItem ( item, itemState );
+
+        synchronized ( this )
+        {
+            final Adaptation adaptation = this.adaptations.get ( item );
+            if ( adaptation == null )
+            {
+                return;
+            }
+
+            if ( changed )
+            {
+                adaptation.multiplier = 1;
+            }
+            else
+            {
+                adaptation.multiplier = Math.min ( adaptation.multiplier * 2, this.maxMultiplier );
+            }
+            adaptation.remaining = adaptation.multiplier;
+        }
+    }
+}
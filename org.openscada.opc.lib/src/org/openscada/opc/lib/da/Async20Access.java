@@ -116,12 +116,22 @@ public class Async20Access extends AccessBase implements IOPCDataCallback
             return;
         }
 
+        final long receiveTime = System.currentTimeMillis ();
+        final long start = System.nanoTime ();
+
         for ( final KeyedResult<Integer, ValueData> entry : result )
         {
             final Item item = group.findItemByClientHandle ( entry.getKey () );
+            if ( item == null )
+            {
+                // the item was removed while the callback was in progress
+                continue;
+            }
             logger.debug ( "Update for '{}'", item.getId () );
-            updateItem ( item, new ItemState ( entry.getErrorCode (), entry.getValue ().getValue (), entry.getValue ().getTimestamp (), entry.getValue ().getQuality () ) );
+            deliverUpdate ( item, new ItemState ( entry.getErrorCode (), entry.getValue ().getValue (), entry.getValue ().getTimestamp (), entry.getValue ().getQuality () ), receiveTime, start );
         }
+
+        group.getStatistics ().dataChange ( result.size (), System.nanoTime () - start );
     }
 
     public void readComplete ( final int transactionId, final int serverGroupHandle, final int masterQuality, final int masterErrorCode, final KeyedResultSet<Integer, ValueData> result )
@@ -19,27 +19,67 @@
 
 package org.openscada.opc.lib.da;
 
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Keeps a server connected.
+ * <br/>
+ * After the connection is lost the controller waits for the delay and tries to connect again.
+ * Each failed attempt multiplies the delay by the backoff multiplier, up to the maximum delay.
+ * The delay is reduced by a random part of up to the jitter factor, so that
+ * many controllers do not try to reconnect at the same time. The defaults can be set using
+ * the system properties <code>openscada.opc.reconnect.multiplier</code> (2.0),
+ * <code>openscada.opc.reconnect.max-delay</code> (60000 milliseconds) and
+ * <code>openscada.opc.reconnect.jitter</code> (0.2). A multiplier of one and a jitter of
+ * zero give the fixed delay of earlier versions.
+ * <br/>
+ * The attempts run on a {@link ReconnectScheduler}, which is shared by all controllers
+ * unless one is provided.
+ */
 public class AutoReconnectController implements ServerConnectionStateListener
 {
     private static Logger _log = LoggerFactory.getLogger ( AutoReconnectController.class );
 
     private static final int DEFAULT_DELAY = 5 * 1000;
 
+    private static final double DEFAULT_MULTIPLIER = Double.parseDouble ( System.getProperty ( "openscada.opc.reconnect.multiplier", "2.0" ) );
+
+    private static final int DEFAULT_MAX_DELAY = Integer.getInteger ( "openscada.opc.reconnect.max-delay", 60 * 1000 );
+
+    private static final double DEFAULT_JITTER = Double.parseDouble ( System.getProperty ( "openscada.opc.reconnect.jitter", "0.2" ) );
+
     private int _delay;
 
+    private double _multiplier = DEFAULT_MULTIPLIER;
+
+    private int _maxDelay = DEFAULT_MAX_DELAY;
+
+    private double _jitter = DEFAULT_JITTER;
+
+    private int _failedAttempts = 0;
+
+    private final Random _random = new Random ();
+
+    private final ReconnectScheduler _scheduler;
+
     private final Server _server;
 
     private final Set<AutoReconnectListener> _listeners = new CopyOnWriteArraySet<AutoReconnectListener> ();
 
     private AutoReconnectState _state = AutoReconnectState.DISABLED;
 
-    private Thread _connectTask = null;
+    private boolean _connectPending = false;
+
+    private final AutoReconnectStatistics _statistics = new AutoReconnectStatistics ( this );
+
+    private ObjectName _objectName;
 
     public AutoReconnectController ( final Server server )
     {
@@ -47,11 +87,17 @@ public class AutoReconnectController implements ServerConnectionStateListener
     }
 
     public AutoReconnectController ( final Server server, final int delay )
+    {
+        this ( server, delay, ReconnectScheduler.getDefault () );
+    }
+
+    public AutoReconnectController ( final Server server, final int delay, final ReconnectScheduler scheduler )
     {
         super ();
         setDelay ( delay );
 
         this._server = server;
+        this._scheduler = scheduler;
         this._server.addStateListener ( this );
     }
 
@@ -72,12 +118,40 @@ public class AutoReconnectController implements ServerConnectionStateListener
     protected void notifyStateChange ( final AutoReconnectState state )
     {
         this._state = state;
+        this._statistics.stateChanged ();
+
+        final ConnectionTracer tracer = Server.getConnectionTracer ();
+        if ( tracer != null )
+        {
+            tracer.reconnectStateChanged ( this._server.getConnectionInformation (), state );
+        }
+
         for ( AutoReconnectListener listener : this._listeners )
         {
             listener.stateChanged ( state );
         }
     }
 
+    public AutoReconnectState getState ()
+    {
+        return this._state;
+    }
+
+    public AutoReconnectStatistics getStatistics ()
+    {
+        return this._statistics;
+    }
+
+    /**
+     * Unregister the MBean of this controller. The MBean is registered while a connection
+     * is requested, so this is only required if the controller is abandoned without calling {@link #disconnect()}.
+     */
+    public synchronized void unregisterMBean ()
+    {
+        ManagementSupport.unregister ( this._objectName );
+        this._objectName = null;
+    }
+
     public int getDelay ()
     {
         return this._delay;
@@ -97,6 +171,65 @@ public class AutoReconnectController implements ServerConnectionStateListener
         this._delay = delay;
     }
 
+    public double getMultiplier ()
+    {
+        return this._multiplier;
+    }
+
+    /**
+     * Set the factor the delay is multiplied with after each failed attempt
+     * @param multiplier the multiplier, values less than one are treated as one
+     */
+    public void setMultiplier ( final double multiplier )
+    {
+        this._multiplier = Math.max ( 1.0, multiplier );
+    }
+
+    public int getMaxDelay ()
+    {
+        return this._maxDelay;
+    }
+
+    /**
+     * Set the upper limit of the delay between two attempts
+     * @param maxDelay the maximum delay in milliseconds
+     */
+    public void setMaxDelay ( final int maxDelay )
+    {
+        this._maxDelay = maxDelay;
+    }
+
+    public double getJitter ()
+    {
+        return this._jitter;
+    }
+
+    /**
+     * Set the part of the delay which is randomized
+     * @param jitter the factor from zero (no jitter) to one (the delay is anything between zero and the full delay)
+     */
+    public void setJitter ( final double jitter )
+    {
+        this._jitter = Math.min ( 1.0, Math.max ( 0.0, jitter ) );
+    }
+
+    /**
+     * Calculate the delay before the next attempt
+     * @return the delay in milliseconds
+     */
+    private synchronized long nextDelay ()
+    {
+        final double limit = Math.max ( this._maxDelay, this._delay );
+        final double backoff = this._delay * Math.pow ( this._multiplier, this._failedAttempts );
+        if ( backoff < limit )
+        {
+            // stop counting once the limit is reached
+            this._failedAttempts++;
+        }
+        final double delay = Math.min ( backoff, limit );
+        return (long) ( delay * ( 1.0 - this._jitter * this._random.nextDouble () ) );
+    }
+
     public synchronized void connect ()
     {
         if ( isRequested () )
@@ -105,6 +238,11 @@ public class AutoReconnectController implements ServerConnectionStateListener
         }
 
         _log.debug ( "Requesting connection" );
+        if ( this._objectName == null )
+        {
+            this._objectName = ManagementSupport.register ( "type=AutoReconnectController," + this._server.getManagementProperties (), this._statistics );
+        }
+        this._failedAttempts = 0;
         notifyStateChange ( AutoReconnectState.DISCONNECTED );
 
         triggerReconnect ( false );
@@ -121,6 +259,8 @@ public class AutoReconnectController implements ServerConnectionStateListener
 
         notifyStateChange ( AutoReconnectState.DISABLED );
         this._server.disconnect ();
+
+        unregisterMBean ();
     }
 
     public boolean isRequested ()
@@ -148,6 +288,7 @@ public class AutoReconnectController implements ServerConnectionStateListener
             }
             else
             {
+                this._failedAttempts = 0;
                 notifyStateChange ( AutoReconnectState.CONNECTED );
             }
         }
@@ -155,26 +296,39 @@ public class AutoReconnectController implements ServerConnectionStateListener
 
     private synchronized void triggerReconnect ( final boolean wait )
     {
-        if ( this._connectTask != null )
+        if ( this._connectPending )
         {
-            _log.info ( "Connect thread already running" );
+            _log.info ( "Connect attempt already pending" );
             return;
         }
 
         _log.debug ( "Trigger reconnect" );
 
-        this._connectTask = new Thread ( new Runnable () {
+        long delay = 0;
+        if ( wait )
+        {
+            delay = nextDelay ();
+            this._statistics.reconnectDelayed ( delay );
+            notifyStateChange ( AutoReconnectState.WAITING );
+            _log.debug ( String.format ( "Delaying (%s)...", delay ) );
+        }
+
+        this._connectPending = true;
+        this._scheduler.schedule ( new Runnable () {
 
             public void run ()
             {
                 boolean result = false;
                 try
                 {
-                    result = performReconnect ( wait );
+                    result = performReconnect ();
                 }
                 finally
                 {
-                    AutoReconnectController.this._connectTask = null;
+                    synchronized ( AutoReconnectController.this )
+                    {
+                        AutoReconnectController.this._connectPending = false;
+                    }
                     _log.debug ( String.format ( "performReconnect completed : %s", result ) );
                     if ( !result )
                     {
@@ -182,26 +336,11 @@ public class AutoReconnectController implements ServerConnectionStateListener
                     }
                 }
             }
-        }, "OPCReconnectThread" );
-        this._connectTask.setDaemon ( true );
-        this._connectTask.start ();
+        }, delay );
     }
 
-    private boolean performReconnect ( final boolean wait )
+    private boolean performReconnect ()
     {
-        try
-        {
-            if ( wait )
-            {
-                notifyStateChange ( AutoReconnectState.WAITING );
-                _log.debug ( String.format ( "Delaying (%s)...", this._delay ) );
-                Thread.sleep ( this._delay );
-            }
-        }
-        catch ( InterruptedException e )
-        {
-        }
-
         if ( !isRequested () )
         {
             _log.debug ( "Request canceled during delay" );
@@ -212,16 +351,17 @@ public class AutoReconnectController implements ServerConnectionStateListener
         {
             _log.debug ( "Connecting to server" );
             notifyStateChange ( AutoReconnectState.CONNECTING );
-            synchronized ( this )
-            {
-                this._server.connect ();
-                return true;
-            }
+            this._statistics.reconnectAttempt ();
+            // not synchronized, so that disconnect() is not blocked while the server restores its accesses.
+            // If the connection is no longer requested once connected, the server callback disconnects again.
+            this._server.connect ();
+            return true;
             // CONNECTED state will be set by server callback
         }
         catch ( Throwable e )
         {
             _log.info ( "Re-connect failed", e );
+            this._statistics.reconnectFailed ();
             notifyStateChange ( AutoReconnectState.DISCONNECTED );
             return false;
         }
@@ -0,0 +1,106 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of an {@link AutoReconnectController}
+ */
+public class AutoReconnectStatistics implements AutoReconnectStatisticsMBean
+{
+    private final AutoReconnectController controller;
+
+    private final AtomicLong stateTransitions = new AtomicLong ();
+
+    private final AtomicLong reconnectAttempts = new AtomicLong ();
+
+    private final AtomicLong reconnectFailures = new AtomicLong ();
+
+    private final AtomicLong lastDelay = new AtomicLong ();
+
+    AutoReconnectStatistics ( final AutoReconnectController controller )
+    {
+        this.controller = controller;
+    }
+
+    void stateChanged ()
+    {
+        this.stateTransitions.incrementAndGet ();
+    }
+
+    void reconnectAttempt ()
+    {
+        this.reconnectAttempts.incrementAndGet ();
+    }
+
+    void reconnectFailed ()
+    {
+        this.reconnectFailures.incrementAndGet ();
+    }
+
+    void reconnectDelayed ( final long delay )
+    {
+        this.lastDelay.set ( delay );
+    }
+
+    public String getState ()
+    {
+        return this.controller.getState ().toString ();
+    }
+
+    public int getDelay ()
+    {
+        return this.controller.getDelay ();
+    }
+
+    public int getMaxDelay ()
+    {
+        return this.controller.getMaxDelay ();
+    }
+
+    public long getLastDelay ()
+    {
+        return this.lastDelay.get ();
+    }
+
+    public long getStateTransitions ()
+    {
+        return this.stateTransitions.get ();
+    }
+
+    public long getReconnectAttempts ()
+    {
+        return this.reconnectAttempts.get ();
+    }
+
+    public long getReconnectFailures ()
+    {
+        return this.reconnectFailures.get ();
+    }
+
+    public void reset ()
+    {
+        this.stateTransitions.set ( 0 );
+        this.reconnectAttempts.set ( 0 );
+        this.reconnectFailures.set ( 0 );
+        this.lastDelay.set ( 0 );
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import org.openscada.opc.lib.common.ConnectionInformation;
+
+/**
+ * Receives connection related events of all {@link Server} and {@link AutoReconnectController} instances.
+ * <br/>
+ * Set the tracer using {@link Server#setConnectionTracer(ConnectionTracer)}. Implementations
+ * must be thread safe and must not throw exceptions.
+ */
+public interface ConnectionTracer
+{
+    /**
+     * A connection attempt starts. Every call to this method is followed by a call to
+     * {@link #connectCompleted(ConnectionInformation, long, Throwable)} from the same thread.
+     * @param connectionInformation the connection information of the server
+     */
+    public abstract void connectStarted ( ConnectionInformation connectionInformation );
+
+    /**
+     * A connection attempt completed
+     * @param connectionInformation the connection information of the server
+     * @param nanos the duration of the attempt in nanoseconds
+     * @param error the error if the attempt failed, <code>null</code> otherwise
+     */
+    public abstract void connectCompleted ( ConnectionInformation connectionInformation, long nanos, Throwable error );
+
+    /**
+     * The DCOM session of a closed connection is about to be destroyed. Every call to this method
+     * is followed by a call to {@link #cleanupCompleted(ConnectionInformation, long)} from the same thread.
+     * @param connectionInformation the connection information of the server
+     */
+    public abstract void cleanupStarted ( ConnectionInformation connectionInformation );
+
+    /**
+     * The DCOM session of a closed connection was destroyed
+     * @param connectionInformation the connection information of the server
+     * @param nanos the time it took to destroy the session in nanoseconds
+     */
+    public abstract void cleanupCompleted ( ConnectionInformation connectionInformation, long nanos );
+
+    /**
+     * The state of an auto reconnect controller changed
+     * @param connectionInformation the connection information of the server
+     * @param state the new state
+     */
+    public abstract void reconnectStateChanged ( ConnectionInformation connectionInformation, AutoReconnectState state );
+}
@@ -29,6 +29,8 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import javax.management.ObjectName;
+
 import org.jinterop.dcom.common.JIException;
 import org.openscada.opc.dcom.common.EventHandler;
 import org.openscada.opc.dcom.common.KeyedResult;
@@ -69,6 +71,10 @@ public class Group
 
     private final Map<Integer, Item> _itemClientMap = new HashMap<Integer, Item> ();
 
+    private final GroupStatistics _statistics = new GroupStatistics ( this );
+
+    private ObjectName _objectName;
+
     Group ( final Server server, final int serverHandle, final OPCGroupStateMgt group ) throws IllegalArgumentException, UnknownHostException, JIException
     {
         _log.debug ( "Creating new group instance with COM group " + group );
@@ -77,6 +83,8 @@ public class Group
         this._group = group;
         this._items = group.getItemManagement ();
         this._syncIO = group.getSyncIO ();
+
+        this._objectName = ManagementSupport.register ( String.format ( "type=Group,%s,handle=%08x", server.getManagementProperties (), serverHandle ), this._statistics );
     }
 
     public void setActive ( final boolean state ) throws JIException
@@ -170,7 +178,24 @@ public class Group
      * @throws JIException The add operation completely failed. No item was added.
      * @throws AddFailedException If one or more item could not be added. Item without error where added.
      */
-    public synchronized Map<String, Item> addItems ( final String... items ) throws JIException, AddFailedException
+    public Map<String, Item> addItems ( final String... items ) throws JIException, AddFailedException
+    {
+        return addItems ( null, items );
+    }
+
+    /**
+     * Add new items to the group using the provided client handles where possible.
+     * <br/>
+     * This allows to recreate items after a reconnect with the client handles
+     * they had before. If no client handle is provided for an item or the handle
+     * is already in use a new one is generated.
+     * @param clientHandles The client handles by item id, may be <code>null</code>
+     * @param items The items (by string id) to add
+     * @return A result map of id to item object
+     * @throws JIException The add operation completely failed. No item was added.
+     * @throws AddFailedException If one or more item could not be added. Item without error where added.
+     */
+    public synchronized Map<String, Item> addItems ( final Map<String, Integer> clientHandles, final String... items ) throws JIException, AddFailedException
     {
         // Find which items we already have
         Map<String, Integer> handles = findItems ( items );
@@ -200,11 +225,11 @@ public class Group
             def.setItemID ( missingItems.get ( i ) );
             def.setActive ( true );
 
-            Integer clientHandle;
-            do
+            Integer clientHandle = clientHandles != null ? clientHandles.get ( missingItems.get ( i ) ) : null;
+            while ( clientHandle == null || this._itemClientMap.containsKey ( clientHandle ) || newClientHandles.contains ( clientHandle ) )
             {
                 clientHandle = _random.nextInt ();
-            } while ( this._itemClientMap.containsKey ( clientHandle ) || newClientHandles.contains ( clientHandle ) );
+            }
             newClientHandles.add ( clientHandle );
             def.setClientHandle ( clientHandle );
 
@@ -251,6 +276,7 @@ public class Group
 
     private synchronized void removeItem ( final Item item )
     {
+        this._server.getLastValueCache ().remove ( item.getId () );
         this._itemHandleMap.remove ( item.getId () );
         this._itemMap.remove ( item.getServerHandle () );
         this._itemClientMap.remove ( item.getClientHandle () );
@@ -350,6 +376,7 @@ public class Group
         }
 
         ResultSet<org.openscada.opc.dcom.da.WriteRequest> resultSet = this._syncIO.write ( wr );
+        this._statistics.write ( wr.length );
 
         Map<Item, Integer> result = new HashMap<Item, Integer> ();
         for ( int i = 0; i < requests.length; i++ )
@@ -363,20 +390,80 @@ public class Group
 
     public synchronized Map<Item, ItemState> read ( final boolean device, final Item... items ) throws JIException
     {
-        Integer[] handles = getServerHandles ( items );
+        return read ( device, getServerHandles ( items ) );
+    }
 
+    /**
+     * Read items using their server handles.
+     * <br/>
+     * Use this method if the same items are read over and over again so that the handle array
+     * can be prepared once. The handles must belong to items of this group, see {@link #getServerHandles(Item[])}.
+     * @param device <code>true</code> to read from the device, <code>false</code> to read from the cache
+     * @param handles the server handles of the items to read
+     * @return the result map of item to item state
+     * @throws JIException
+     */
+    public synchronized Map<Item, ItemState> read ( final boolean device, final Integer[] handles ) throws JIException
+    {
+        long start = System.nanoTime ();
         KeyedResultSet<Integer, OPCITEMSTATE> states = this._syncIO.read ( device ? OPCDATASOURCE.OPC_DS_DEVICE : OPCDATASOURCE.OPC_DS_CACHE, handles );
+        this._statistics.read ( handles.length, System.nanoTime () - start );
 
-        Map<Item, ItemState> data = new HashMap<Item, ItemState> ();
+        Map<Item, ItemState> data = new HashMap<Item, ItemState> ( states.size () * 4 / 3 + 1 );
         for ( KeyedResult<Integer, OPCITEMSTATE> entry : states )
         {
             Item item = this._itemMap.get ( entry.getKey () );
             ItemState state = new ItemState ( entry.getErrorCode (), entry.getValue ().getValue (), entry.getValue ().getTimestamp ().asCalendar (), entry.getValue ().getQuality () );
             data.put ( item, state );
+            if ( item != null )
+            {
+                this._server.getLastValueCache ().update ( item.getId (), state );
+            }
         }
         return data;
     }
 
+    /**
+     * Read items but use values from the last value cache of the server if they are recent enough.
+     * <br/>
+     * Only the items which have no cached value younger than <q>maxAge</q> are read from the
+     * server. If <q>maxAge</q> is zero the items will be read from the device, otherwise from
+     * the cache of the OPC server.
+     * @param maxAge the maximum age of the values in milliseconds
+     * @param items the items to read
+     * @return the result map of item to item state
+     * @throws JIException
+     */
+    public Map<Item, ItemState> read ( final int maxAge, final Item... items ) throws JIException
+    {
+        checkItems ( items );
+
+        final LastValueCache cache = this._server.getLastValueCache ();
+
+        Map<Item, ItemState> data = new HashMap<Item, ItemState> ( items.length * 4 / 3 + 1 );
+        List<Item> missing = new ArrayList<Item> ();
+        for ( Item item : items )
+        {
+            ItemState state = maxAge > 0 ? cache.get ( item.getId (), maxAge ) : null;
+            if ( state != null )
+            {
+                data.put ( item, state );
+            }
+            else
+            {
+                missing.add ( item );
+            }
+        }
+
+        if ( !missing.isEmpty () )
+        {
+            _log.debug ( String.format ( "Reading %d of %d items from the server", missing.size (), items.length ) );
+            data.putAll ( read ( maxAge == 0, missing.toArray ( new Item[missing.size ()] ) ) );
+        }
+
+        return data;
+    }
+
     public Server getServer ()
     {
         return this._server;
@@ -392,6 +479,7 @@ public class Group
         finally
         {
             // in any case clear our maps
+            evictLastValues ();
             this._itemHandleMap.clear ();
             this._itemMap.clear ();
             this._itemClientMap.clear ();
@@ -418,6 +506,40 @@ public class Group
         return this._serverHandle;
     }
 
+    /**
+     * Get the number of items in this group.
+     * <br/>
+     * The value is read without locking the group and is meant for monitoring only.
+     * @return the number of items
+     */
+    public int getItemCount ()
+    {
+        return this._itemMap.size ();
+    }
+
+    public GroupStatistics getStatistics ()
+    {
+        return this._statistics;
+    }
+
+    /**
+     * Remove the items of this group from the last value cache of the server
+     */
+    synchronized void evictLastValues ()
+    {
+        final LastValueCache cache = this._server.getLastValueCache ();
+        for ( Item item : this._itemMap.values () )
+        {
+            cache.remove ( item.getId () );
+        }
+    }
+
+    void unregisterMBean ()
+    {
+        ManagementSupport.unregister ( this._objectName );
+        this._objectName = null;
+    }
+
     public synchronized void removeItem ( final String opcItemId ) throws IllegalArgumentException, UnknownHostException, JIException
     {
         _log.debug ( String.format ( "Removing item '%s'", opcItemId ) );
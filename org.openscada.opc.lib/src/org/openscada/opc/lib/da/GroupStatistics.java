@@ -0,0 +1,277 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscada.opc.dcom.common.Histogram;
+
+/**
+ * Statistics of a {@link Group}
+ * <br/>
+ * Besides counters the statistics hold two histograms of the updates delivered by accesses:
+ * the value age, which is the time from the server timestamp of the value to the reception of the
+ * update, corrected by the clock offset of the server; and the dispatch time, which is the time from
+ * the reception of the update until the access finished processing it. The histogram buckets are
+ * powers of two, see {@link Histogram}.
+ */
+public class GroupStatistics implements GroupStatisticsMBean
+{
+    private final Group group;
+
+    private final AtomicLong dataChangeItems = new AtomicLong ();
+
+    private final AtomicLong maxItemsPerCallback = new AtomicLong ();
+
+    private final LatencyCounter callbackTime = new LatencyCounter ();
+
+    private final AtomicLong readItems = new AtomicLong ();
+
+    private final LatencyCounter readTime = new LatencyCounter ();
+
+    private final AtomicLong writes = new AtomicLong ();
+
+    private final Histogram valueAge = new Histogram ();
+
+    private final Histogram dispatchTime = new Histogram ();
+
+    private final AtomicLong writeItems = new AtomicLong ();
+
+    GroupStatistics ( final Group group )
+    {
+        this.group = group;
+    }
+
+    /**
+     * Record a data change callback of the group
+     * @param items the number of items in the callback
+     * @param nanos the time it took to process the callback
+     */
+    public void dataChange ( final int items, final long nanos )
+    {
+        this.dataChangeItems.addAndGet ( items );
+        this.callbackTime.record ( nanos );
+
+        long current = this.maxItemsPerCallback.get ();
+        while ( items > current && !this.maxItemsPerCallback.compareAndSet ( current, items ) )
+        {
+            current = this.maxItemsPerCallback.get ();
+        }
+    }
+
+    void read ( final int items, final long nanos )
+    {
+        this.readItems.addAndGet ( items );
+        this.readTime.record ( nanos );
+    }
+
+    /**
+     * Record the latency of an update which was delivered by an access
+     * @param timestamp the server timestamp of the value, may be <code>null</code>
+     * @param receiveTime the local time the update was received in milliseconds
+     * @param dispatchNanos the time from receiving the update until it was processed in nanoseconds
+     */
+    void updateDelivered ( final Calendar timestamp, final long receiveTime, final long dispatchNanos )
+    {
+        if ( timestamp != null )
+        {
+            this.valueAge.record ( receiveTime - ( timestamp.getTimeInMillis () - this.group.getServer ().getClockOffset () ) );
+        }
+        this.dispatchTime.record ( dispatchNanos / 1000L );
+    }
+
+    void write ( final int items )
+    {
+        this.writes.incrementAndGet ();
+        this.writeItems.addAndGet ( items );
+    }
+
+    public int getServerHandle ()
+    {
+        return this.group.getServerHandle ();
+    }
+
+    public int getItemCount ()
+    {
+        return this.group.getItemCount ();
+    }
+
+    public long getDataChangeCallbacks ()
+    {
+        return this.callbackTime.getCount ();
+    }
+
+    public long getDataChangeItems ()
+    {
+        return this.dataChangeItems.get ();
+    }
+
+    public long getMaxItemsPerCallback ()
+    {
+        return this.maxItemsPerCallback.get ();
+    }
+
+    public long getAverageItemsPerCallback ()
+    {
+        final long count = this.callbackTime.getCount ();
+        if ( count == 0 )
+        {
+            return 0;
+        }
+        return this.dataChangeItems.get () / count;
+    }
+
+    public long getLastCallbackTimeMicros ()
+    {
+        return this.callbackTime.getLastMicros ();
+    }
+
+    public long getMaxCallbackTimeMicros ()
+    {
+        return this.callbackTime.getMaxMicros ();
+    }
+
+    public long getAverageCallbackTimeMicros ()
+    {
+        return this.callbackTime.getAverageMicros ();
+    }
+
+    public long getReads ()
+    {
+        return this.readTime.getCount ();
+    }
+
+    public long getReadItems ()
+    {
+        return this.readItems.get ();
+    }
+
+    public long getLastReadTimeMicros ()
+    {
+        return this.readTime.getLastMicros ();
+    }
+
+    public long getMaxReadTimeMicros ()
+    {
+        return this.readTime.getMaxMicros ();
+    }
+
+    public long getAverageReadTimeMicros ()
+    {
+        return this.readTime.getAverageMicros ();
+    }
+
+    public long getUpdates ()
+    {
+        return this.dispatchTime.getCount ();
+    }
+
+    public long getMeanValueAgeMillis ()
+    {
+        return this.valueAge.getMean ();
+    }
+
+    public long getMedianValueAgeMillis ()
+    {
+        return this.valueAge.getPercentile ( 50 );
+    }
+
+    public long get99thPercentileValueAgeMillis ()
+    {
+        return this.valueAge.getPercentile ( 99 );
+    }
+
+    public long getMaxValueAgeMillis ()
+    {
+        return this.valueAge.getMax ();
+    }
+
+    public long[] getValueAgeHistogram ()
+    {
+        return this.valueAge.getBuckets ();
+    }
+
+    public long getMeanDispatchTimeMicros ()
+    {
+        return this.dispatchTime.getMean ();
+    }
+
+    public long getMedianDispatchTimeMicros ()
+    {
+        return this.dispatchTime.getPercentile ( 50 );
+    }
+
+    public long get99thPercentileDispatchTimeMicros ()
+    {
+        return this.dispatchTime.getPercentile ( 99 );
+    }
+
+    public long getMaxDispatchTimeMicros ()
+    {
+        return this.dispatchTime.getMax ();
+    }
+
+    public long[] getDispatchTimeHistogram ()
+    {
+        return this.dispatchTime.getBuckets ();
+    }
+
+    /**
+     * Get the histogram of the value age in milliseconds
+     * @return the value age histogram
+     */
+    public Histogram getValueAge ()
+    {
+        return this.valueAge;
+    }
+
+    /**
+     * Get the histogram of the dispatch time in microseconds
+     * @return the dispatch time histogram
+     */
+    public Histogram getDispatchTime ()
+    {
+        return this.dispatchTime;
+    }
+
+    public long getWrites ()
+    {
+        return this.writes.get ();
+    }
+
+    public long getWriteItems ()
+    {
+        return this.writeItems.get ();
+    }
+
+    public void reset ()
+    {
+        this.dataChangeItems.set ( 0 );
+        this.maxItemsPerCallback.set ( 0 );
+        this.callbackTime.reset ();
+        this.readItems.set ( 0 );
+        this.readTime.reset ();
+        this.writes.set ( 0 );
+        this.writeItems.set ( 0 );
+        this.valueAge.reset ();
+        this.dispatchTime.reset ();
+    }
+}
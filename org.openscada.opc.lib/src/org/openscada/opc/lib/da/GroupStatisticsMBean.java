@@ -0,0 +1,82 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+/**
+ * Management interface of {@link GroupStatistics}
+ */
+public interface GroupStatisticsMBean
+{
+    public int getServerHandle ();
+
+    public int getItemCount ();
+
+    public long getDataChangeCallbacks ();
+
+    public long getDataChangeItems ();
+
+    public long getMaxItemsPerCallback ();
+
+    public long getAverageItemsPerCallback ();
+
+    public long getLastCallbackTimeMicros ();
+
+    public long getMaxCallbackTimeMicros ();
+
+    public long getAverageCallbackTimeMicros ();
+
+    public long getReads ();
+
+    public long getReadItems ();
+
+    public long getLastReadTimeMicros ();
+
+    public long getMaxReadTimeMicros ();
+
+    public long getAverageReadTimeMicros ();
+
+    public long getUpdates ();
+
+    public long getMeanValueAgeMillis ();
+
+    public long getMedianValueAgeMillis ();
+
+    public long get99thPercentileValueAgeMillis ();
+
+    public long getMaxValueAgeMillis ();
+
+    public long[] getValueAgeHistogram ();
+
+    public long getMeanDispatchTimeMicros ();
+
+    public long getMedianDispatchTimeMicros ();
+
+    public long get99thPercentileDispatchTimeMicros ();
+
+    public long getMaxDispatchTimeMicros ();
+
+    public long[] getDispatchTimeHistogram ();
+
+    public long getWrites ();
+
+    public long getWriteItems ();
+
+    public void reset ();
+}
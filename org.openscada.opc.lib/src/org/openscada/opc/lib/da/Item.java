@@ -76,6 +76,18 @@ public class Item
         return this._group.read ( device, this ).get ( this );
     }
 
+    /**
+     * Read the item but use the last known value if it is not older than <q>maxAge</q>
+     * @param maxAge the maximum age in milliseconds
+     * @return the item state
+     * @throws JIException
+     * @see Group#read(int, Item...)
+     */
+    public ItemState read ( final int maxAge ) throws JIException
+    {
+        return this._group.read ( maxAge, this ).get ( this );
+    }
+
     public Integer write ( final JIVariant value ) throws JIException
     {
         return this._group.write ( new WriteRequest[] { new WriteRequest ( this, value ) } ).get ( this );
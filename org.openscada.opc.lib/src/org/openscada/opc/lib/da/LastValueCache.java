@@ -0,0 +1,231 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the last known value of items by their item ID.
+ * <br/>
+ * The cache can be read and updated by any number of threads without locking the cache.
+ * Only successful item states (error code zero) are stored. The entry of an item is
+ * updated in place, so feeding the cache does not allocate once an item is known.
+ * <br/>
+ * The cache is disabled by default and ignores all updates. Enable it using {@link #setEnabled(boolean)}
+ * or the system property <code>openscada.opc.last-value-cache</code>.
+ */
+public class LastValueCache
+{
+    /**
+     * A cached item state and the time it was received
+     */
+    public static class Entry
+    {
+        private ItemState state;
+
+        private long received;
+
+        public Entry ( final ItemState state, final long received )
+        {
+            super ();
+            this.state = state;
+            this.received = received;
+        }
+
+        synchronized void update ( final ItemState state, final long received )
+        {
+            this.state = state;
+            this.received = received;
+        }
+
+        public synchronized ItemState getState ()
+        {
+            return this.state;
+        }
+
+        /**
+         * Get the time the state was received
+         * @return the time in milliseconds since the epoch
+         */
+        public synchronized long getReceived ()
+        {
+            return this.received;
+        }
+
+        /**
+         * Get the age of the entry
+         * @param now the current time in milliseconds
+         * @return the age in milliseconds
+         */
+        public synchronized long getAge ( final long now )
+        {
+            return now - this.received;
+        }
+
+        /**
+         * Get the state if it is not older than the provided age
+         * @param now the current time in milliseconds
+         * @param maxAge the maximum age in milliseconds
+         * @return the state or <code>null</code> if it is too old
+         */
+        synchronized ItemState getState ( final long now, final int maxAge )
+        {
+            return now - this.received > maxAge ? null : this.state;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry> ();
+
+    private volatile boolean enabled = Boolean.getBoolean ( "openscada.opc.last-value-cache" );
+
+    public boolean isEnabled ()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Enable or disable the cache. A disabled cache ignores updates.
+     * @param enabled the new state
+     */
+    public void setEnabled ( final boolean enabled )
+    {
+        this.enabled = enabled;
+        if ( !enabled )
+        {
+            this.entries.clear ();
+        }
+    }
+
+    /**
+     * Store a new item state
+     * @param itemId the item
+     * @param state the new state
+     */
+    public void update ( final String itemId, final ItemState state )
+    {
+        if ( !this.enabled || state == null || state.getErrorCode () != 0 )
+        {
+            return;
+        }
+
+        final long now = System.currentTimeMillis ();
+        final Entry entry = this.entries.get ( itemId );
+        if ( entry != null )
+        {
+            entry.update ( state, now );
+        }
+        else
+        {
+            final Entry existing = this.entries.putIfAbsent ( itemId, new Entry ( state, now ) );
+            if ( existing != null )
+            {
+                existing.update ( state, now );
+            }
+        }
+    }
+
+    /**
+     * Get the cached entry of an item
+     * @param itemId the item
+     * @return the entry or <code>null</code> if nothing is cached
+     */
+    public Entry getEntry ( final String itemId )
+    {
+        return this.entries.get ( itemId );
+    }
+
+    /**
+     * Get the last state of an item
+     * @param itemId the item
+     * @return the last state or <code>null</code> if nothing is cached
+     */
+    public ItemState get ( final String itemId )
+    {
+        final Entry entry = this.entries.get ( itemId );
+        return entry == null ? null : entry.getState ();
+    }
+
+    /**
+     * Get the last state of an item if it is not older than the provided age
+     * @param itemId the item
+     * @param maxAge the maximum age in milliseconds
+     * @return the last state or <code>null</code> if nothing is cached or the state is too old
+     */
+    public ItemState get ( final String itemId, final int maxAge )
+    {
+        final Entry entry = this.entries.get ( itemId );
+        return entry == null ? null : entry.getState ( System.currentTimeMillis (), maxAge );
+    }
+
+    /**
+     * Get a snapshot of all cached states
+     * @return a new map of item ID to state
+     */
+    public Map<String, ItemState> snapshot ()
+    {
+        final Map<String, ItemState> result = new HashMap<String, ItemState> ( this.entries.size () * 4 / 3 + 1 );
+        for ( final Map.Entry<String, Entry> entry : this.entries.entrySet () )
+        {
+            result.put ( entry.getKey (), entry.getValue ().getState () );
+        }
+        return result;
+    }
+
+    /**
+     * Get a snapshot of the cached states of the requested items
+     * @param itemIds the items
+     * @return a new map of item ID to state, items without a cached state are omitted
+     */
+    public Map<String, ItemState> snapshot ( final String... itemIds )
+    {
+        final Map<String, ItemState> result = new HashMap<String, ItemState> ( itemIds.length * 4 / 3 + 1 );
+        for ( final String itemId : itemIds )
+        {
+            final Entry entry = this.entries.get ( itemId );
+            if ( entry != null )
+            {
+                result.put ( itemId, entry.getState () );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove the state of an item, e.g. when the item was removed
+     * @param itemId the item
+     */
+    public void remove ( final String itemId )
+    {
+        this.entries.remove ( itemId );
+    }
+
+    public void clear ()
+    {
+        this.entries.clear ();
+    }
+
+    public int size ()
+    {
+        return this.entries.size ();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free summary of durations: count, total, maximum and last value.
+ */
+class LatencyCounter
+{
+    private final AtomicLong count = new AtomicLong ();
+
+    private final AtomicLong total = new AtomicLong ();
+
+    private final AtomicLong max = new AtomicLong ();
+
+    private volatile long last;
+
+    /**
+     * Record a duration
+     * @param nanos the duration in nanoseconds
+     */
+    public void record ( final long nanos )
+    {
+        this.count.incrementAndGet ();
+        this.total.addAndGet ( nanos );
+        this.last = nanos;
+
+        long current = this.max.get ();
+        while ( nanos > current && !this.max.compareAndSet ( current, nanos ) )
+        {
+            current = this.max.get ();
+        }
+    }
+
+    public long getCount ()
+    {
+        return this.count.get ();
+    }
+
+    public long getLastMicros ()
+    {
+        return this.last / 1000L;
+    }
+
+    public long getMaxMicros ()
+    {
+        return this.max.get () / 1000L;
+    }
+
+    public long getAverageMicros ()
+    {
+        final long count = this.count.get ();
+        if ( count == 0 )
+        {
+            return 0;
+        }
+        return this.total.get () / count / 1000L;
+    }
+
+    public void reset ()
+    {
+        this.count.set ( 0 );
+        this.total.set ( 0 );
+        this.max.set ( 0 );
+        this.last = 0;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openscada.opc.lib.common.ConnectionInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the statistics of Utgard objects with the platform MBean server.
+ * <br/>
+ * Registration is disabled by default and can be enabled using the system property
+ * <code>openscada.opc.jmx</code>. Failures to register are logged and never passed to the caller.
+ */
+public final class ManagementSupport
+{
+    private static Logger logger = LoggerFactory.getLogger ( ManagementSupport.class );
+
+    public static final String DOMAIN = "org.openscada.opc.lib";
+
+    private static volatile boolean enabled = Boolean.getBoolean ( "openscada.opc.jmx" );
+
+    private static final AtomicInteger instanceCounter = new AtomicInteger ();
+
+    private ManagementSupport ()
+    {
+    }
+
+    public static boolean isEnabled ()
+    {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the registration of objects created afterwards
+     * @param enabled the new state
+     */
+    public static void setEnabled ( final boolean enabled )
+    {
+        ManagementSupport.enabled = enabled;
+    }
+
+    /**
+     * Register an MBean if registration is enabled
+     * <br/>
+     * If the name is already taken by another MBean, the existing MBean is kept and
+     * an <code>instance</code> key property is added to the name of the new one.
+     * @param properties the key properties of the object name, e.g. <code>type=Server,id=1</code>
+     * @param mbean the MBean to register
+     * @return the name of the registered MBean or <code>null</code> if it was not registered
+     */
+    public static ObjectName register ( final String properties, final Object mbean )
+    {
+        if ( !enabled )
+        {
+            return null;
+        }
+
+        try
+        {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer ();
+            ObjectName name = new ObjectName ( DOMAIN + ":" + properties );
+            while ( true )
+            {
+                try
+                {
+                    mbeanServer.registerMBean ( mbean, name );
+                    logger.debug ( "Registered MBean: {}", name );
+                    return name;
+                }
+                catch ( final InstanceAlreadyExistsException e )
+                {
+                    logger.debug ( "MBean name already in use: {}", name );
+                    name = new ObjectName ( DOMAIN + ":" + properties + ",instance=" + instanceCounter.incrementAndGet () );
+                }
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "Failed to register MBean: " + properties, e );
+            return null;
+        }
+    }
+
+    /**
+     * Unregister an MBean
+     * @param name the name returned by {@link #register(String, Object)}, may be <code>null</code>
+     */
+    public static void unregister ( final ObjectName name )
+    {
+        if ( name == null )
+        {
+            return;
+        }
+
+        try
+        {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer ();
+            if ( mbeanServer.isRegistered ( name ) )
+            {
+                mbeanServer.unregisterMBean ( name );
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "Failed to unregister MBean: " + name, e );
+        }
+    }
+
+    /**
+     * Create the identifying part of an object name for a server connection
+     * @param connectionInformation the connection information of the server
+     * @param instance the object the name is created for, used to keep names unique
+     * @return the key properties
+     */
+    static String makeServerProperties ( final ConnectionInformation connectionInformation, final Object instance )
+    {
+        String target = connectionInformation.getClsid ();
+        if ( target == null )
+        {
+            target = connectionInformation.getProgId ();
+        }
+        return String.format ( "server=%s,id=%08x", ObjectName.quote ( connectionInformation.getHost () + "/" + target ), System.identityHashCode ( instance ) );
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.lib.common.NotConnectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A synchronous access which splits its items into chunks and reads the chunks in parallel.
+ * <br/>
+ * Each chunk has its own group holding at most <q>chunkSize</q> items. The reads of one cycle
+ * are run using the provided executor and all results are merged before the items get updated.
+ * If a {@link ServerPool} is used the groups of the chunks are spread over the servers of the
+ * pool so that the reads also use different DCOM sessions. The connection state of this
+ * access follows the first server of the pool. If another server of the pool loses its connection
+ * or fails to read, it is disconnected and the items of its chunks are moved to the servers
+ * which are still connected.
+ */
+public class ParallelSyncAccess extends SyncAccess
+{
+    private static Logger logger = LoggerFactory.getLogger ( ParallelSyncAccess.class );
+
+    private static class Chunk
+    {
+        private final Group group;
+
+        private final Set<Item> items = new HashSet<Item> ();
+
+        private Integer[] handles = null;
+
+        public Chunk ( final Group group )
+        {
+            this.group = group;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final int chunkSize;
+
+    private final ServerPool pool;
+
+    private final List<Chunk> chunks = new ArrayList<Chunk> ();
+
+    /**
+     * The listeners on the servers of the pool other than the first one
+     */
+    private final Map<Server, ServerConnectionStateListener> poolListeners = new HashMap<Server, ServerConnectionStateListener> ();
+
+    public ParallelSyncAccess ( final Server server, final int period, final int chunkSize, final ExecutorService executor ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        this ( server, null, period, chunkSize, executor );
+    }
+
+    public ParallelSyncAccess ( final ServerPool pool, final int period, final int chunkSize, final ExecutorService executor ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        this ( pool.getServer ( 0 ), pool, period, chunkSize, executor );
+    }
+
+    private ParallelSyncAccess ( final Server server, final ServerPool pool, final int period, final int chunkSize, final ExecutorService executor ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        super ( server, period );
+        if ( chunkSize <= 0 )
+        {
+            throw new IllegalArgumentException ( "The chunk size must be greater than zero" );
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void bind ()
+    {
+        if ( isBound () )
+        {
+            return;
+        }
+
+        super.bind ();
+
+        if ( this.pool != null )
+        {
+            for ( final Server server : this.pool.getServers () )
+            {
+                if ( server == this.server )
+                {
+                    continue;
+                }
+
+                final ServerConnectionStateListener listener = new ServerConnectionStateListener () {
+
+                    public void connectionStateChanged ( final boolean connected )
+                    {
+                        if ( !connected )
+                        {
+                            releaseChunks ( server );
+                        }
+                    }
+                };
+                this.poolListeners.put ( server, listener );
+                server.addStateListener ( listener );
+            }
+        }
+    }
+
+    @Override
+    public synchronized void unbind () throws JIException
+    {
+        if ( !isBound () )
+        {
+            return;
+        }
+
+        for ( final Map.Entry<Server, ServerConnectionStateListener> entry : this.poolListeners.entrySet () )
+        {
+            entry.getKey ().removeStateListener ( entry.getValue () );
+        }
+        this.poolListeners.clear ();
+
+        super.unbind ();
+    }
+
+    public int getChunkSize ()
+    {
+        return this.chunkSize;
+    }
+
+    public synchronized int getChunkCount ()
+    {
+        return this.chunks.size ();
+    }
+
+    @Override
+    protected Group createGroup () throws JIException, IllegalArgumentException, UnknownHostException, NotConnectedException, DuplicateGroupException
+    {
+        final Group group = super.createGroup ();
+        removeChunkGroups ();
+        this.chunks.add ( new Chunk ( group ) );
+        return group;
+    }
+
+    /**
+     * Remove the groups of all chunks which are left from an earlier connection, e.g. on the other
+     * servers of the pool, and forget the chunks
+     */
+    private void removeChunkGroups ()
+    {
+        for ( final Chunk chunk : this.chunks )
+        {
+            if ( chunk.group == this.group )
+            {
+                continue;
+            }
+            try
+            {
+                chunk.group.remove ();
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Failed to remove group. No problem if we already lost connection" );
+            }
+        }
+        this.chunks.clear ();
+    }
+
+    /**
+     * Drop the chunks of a pool server which is disconnected and realize their
+     * items again on the servers which are still connected
+     * @param server the disconnected server
+     */
+    private synchronized void releaseChunks ( final Server server )
+    {
+        if ( !isActive () )
+        {
+            return;
+        }
+
+        final List<String> itemIds = new ArrayList<String> ();
+        for ( final Iterator<Chunk> i = this.chunks.iterator (); i.hasNext (); )
+        {
+            final Chunk chunk = i.next ();
+            if ( chunk.group.getServer () != server )
+            {
+                continue;
+            }
+
+            i.remove ();
+            for ( final Item item : chunk.items )
+            {
+                this.itemMap.remove ( item.getId () );
+                this.items.remove ( item );
+                this.itemCache.remove ( item );
+                itemIds.add ( item.getId () );
+            }
+        }
+
+        if ( !itemIds.isEmpty () )
+        {
+            logger.info ( "Pool server disconnected, moving {} items to the remaining servers", itemIds.size () );
+            realizeEach ( itemIds );
+        }
+    }
+
+    /**
+     * Get the server for a new chunk
+     * @return the next connected server of the pool or the server of this access
+     */
+    private Server nextServer ()
+    {
+        if ( this.pool == null )
+        {
+            return this.server;
+        }
+
+        for ( int i = 0; i < this.pool.size (); i++ )
+        {
+            final Server server = this.pool.nextServer ();
+            if ( server.isAvailable () )
+            {
+                return server;
+            }
+        }
+        return this.server;
+    }
+
+    private Chunk findChunk () throws JIException
+    {
+        for ( final Chunk chunk : this.chunks )
+        {
+            if ( chunk.items.size () < this.chunkSize )
+            {
+                return chunk;
+            }
+        }
+
+        final Server server = nextServer ();
+
+        logger.debug ( "Creating group for chunk #{}", this.chunks.size () );
+        try
+        {
+            final Group group = server.addGroup ();
+            group.setActive ( true );
+            final Chunk chunk = new Chunk ( group );
+            this.chunks.add ( chunk );
+            return chunk;
+        }
+        catch ( final JIException e )
+        {
+            throw e;
+        }
+        catch ( final Exception e )
+        {
+            throw new RuntimeException ( "Failed to create group for chunk", e );
+        }
+    }
+
+    private Chunk findChunk ( final Group group )
+    {
+        for ( final Chunk chunk : this.chunks )
+        {
+            if ( chunk.group == group )
+            {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected synchronized void realizeItem ( final String itemId ) throws JIException, AddFailedException
+    {
+        logger.debug ( "Realizing item: {}", itemId );
+
+        final DataCallback dataCallback = this.itemSet.get ( itemId );
+        if ( dataCallback == null )
+        {
+            return;
+        }
+
+        final Chunk chunk = findChunk ();
+        final Item item = chunk.group.addItems ( this.clientHandles, itemId ).get ( itemId );
+        chunk.items.add ( item );
+        chunk.handles = null;
+
+        itemRealized ( item, dataCallback );
+    }
+
+    /**
+     * Realize the items one by one, since they are spread over the groups of the chunks
+     */
+    @Override
+    protected void realizeAll ()
+    {
+        realizeEach ( new ArrayList<String> ( this.itemSet.keySet () ) );
+    }
+
+    @Override
+    protected synchronized void unrealizeItem ( final String itemId )
+    {
+        final Item item = this.itemMap.remove ( itemId );
+        if ( item == null )
+        {
+            return;
+        }
+
+        this.items.remove ( item );
+        this.itemCache.remove ( item );
+
+        final Chunk chunk = findChunk ( item.getGroup () );
+        if ( chunk != null )
+        {
+            chunk.items.remove ( item );
+            chunk.handles = null;
+        }
+
+        try
+        {
+            item.getGroup ().removeItem ( itemId );
+        }
+        catch ( final Throwable e )
+        {
+            logger.error ( String.format ( "Failed to unrealize item '%s'", itemId ), e );
+        }
+    }
+
+    @Override
+    protected synchronized void unrealizeAll ()
+    {
+        this.items.clear ();
+        this.itemCache.clear ();
+
+        for ( final Chunk chunk : this.chunks )
+        {
+            chunk.items.clear ();
+            chunk.handles = null;
+            try
+            {
+                chunk.group.clear ();
+            }
+            catch ( final JIException e )
+            {
+                logger.info ( "Failed to clear group. No problem if we already lost the connection", e );
+            }
+        }
+    }
+
+    @Override
+    protected synchronized void stop () throws JIException
+    {
+        if ( !isActive () )
+        {
+            return;
+        }
+
+        // the first group is removed by the base class
+        final Group group = this.group;
+        super.stop ();
+
+        for ( final Chunk chunk : this.chunks )
+        {
+            if ( chunk.group == group )
+            {
+                continue;
+            }
+            try
+            {
+                chunk.group.remove ();
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Failed to remove group. No problem if we already lost connection" );
+            }
+        }
+        this.chunks.clear ();
+    }
+
+    @Override
+    protected void runOnce () throws JIException
+    {
+        if ( !this.active || this.group == null )
+        {
+            return;
+        }
+
+        final List<Callable<Map<Item, ItemState>>> tasks = new ArrayList<Callable<Map<Item, ItemState>>> ();
+        final List<Server> servers = new ArrayList<Server> ();
+
+        // lock only this section since we could get into a deadlock otherwise
+        // calling updateItem
+        synchronized ( this )
+        {
+            for ( final Chunk chunk : this.chunks )
+            {
+                if ( chunk.items.isEmpty () )
+                {
+                    continue;
+                }
+                if ( chunk.handles == null )
+                {
+                    chunk.handles = chunk.group.getServerHandles ( chunk.items.toArray ( new Item[chunk.items.size ()] ) );
+                }
+
+                final Group group = chunk.group;
+                final Integer[] handles = chunk.handles;
+                servers.add ( group.getServer () );
+                tasks.add ( new Callable<Map<Item, ItemState>> () {
+
+                    public Map<Item, ItemState> call () throws Exception
+                    {
+                        return group.read ( false, handles );
+                    }
+                } );
+            }
+        }
+
+        final Map<Item, ItemState> result = new HashMap<Item, ItemState> ();
+        final Set<Server> failed = new HashSet<Server> ();
+        try
+        {
+            final List<Future<Map<Item, ItemState>>> futures = this.executor.invokeAll ( tasks );
+            for ( int i = 0; i < futures.size (); i++ )
+            {
+                try
+                {
+                    result.putAll ( futures.get ( i ).get () );
+                }
+                catch ( final ExecutionException e )
+                {
+                    final Server server = servers.get ( i );
+                    if ( server == this.server )
+                    {
+                        // the connection of this access failed
+                        if ( e.getCause () instanceof JIException )
+                        {
+                            throw (JIException)e.getCause ();
+                        }
+                        throw new RuntimeException ( e.getCause () );
+                    }
+                    if ( failed.add ( server ) )
+                    {
+                        logger.warn ( "Read on pool server failed", e.getCause () );
+                    }
+                }
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread ().interrupt ();
+            return;
+        }
+
+        final long receiveTime = System.currentTimeMillis ();
+        final long receiveNanos = System.nanoTime ();
+        for ( final Map.Entry<Item, ItemState> entry : result.entrySet () )
+        {
+            // the item may have been removed while reading
+            if ( entry.getKey () != null )
+            {
+                deliverUpdate ( entry.getKey (), entry.getValue (), receiveTime, receiveNanos );
+            }
+        }
+
+        // the chunks of the failed servers are moved by the pool listener
+        for ( final Server server : failed )
+        {
+            server.disconnect ();
+        }
+    }
+}
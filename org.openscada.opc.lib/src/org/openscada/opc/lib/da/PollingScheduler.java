@@ -0,0 +1,283 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduler running periodic polls at a fixed rate.
+ * <br/>
+ * One scheduler can be shared by many {@link SyncAccess} instances so that a few threads
+ * handle all polls. The start of each cycle is calculated from the start of the first
+ * cycle, so the time the poll takes does not add up to the period. If a cycle takes
+ * longer than the period the {@link OverrunPolicy} defines how the missed cycles are handled.
+ */
+public class PollingScheduler
+{
+    private static Logger logger = LoggerFactory.getLogger ( PollingScheduler.class );
+
+    /**
+     * A scheduled poll including the statistics of its cycles
+     */
+    public static class Task implements Runnable
+    {
+        private final ScheduledExecutorService executor;
+
+        private final Runnable runnable;
+
+        private final long period;
+
+        private final OverrunPolicy policy;
+
+        private long deadline;
+
+        private volatile boolean cancelled = false;
+
+        private volatile ScheduledFuture<?> future;
+
+        private final AtomicLong cycles = new AtomicLong ();
+
+        private final AtomicLong overruns = new AtomicLong ();
+
+        private final AtomicLong skippedCycles = new AtomicLong ();
+
+        private final AtomicLong totalLateness = new AtomicLong ();
+
+        private volatile long maxLateness = 0;
+
+        private volatile long lastLateness = 0;
+
+        private volatile long lastDuration = 0;
+
+        Task ( final ScheduledExecutorService executor, final Runnable runnable, final long period, final OverrunPolicy policy )
+        {
+            this.executor = executor;
+            this.runnable = runnable;
+            this.period = period;
+            this.policy = policy;
+        }
+
+        synchronized void start ()
+        {
+            this.deadline = System.nanoTime ();
+            this.future = this.executor.schedule ( this, 0, TimeUnit.NANOSECONDS );
+        }
+
+        public void run ()
+        {
+            if ( this.cancelled )
+            {
+                return;
+            }
+
+            final long start = System.nanoTime ();
+            final long lateness = Math.max ( 0, start - this.deadline );
+            this.lastLateness = lateness;
+            this.totalLateness.addAndGet ( lateness );
+            if ( lateness > this.maxLateness )
+            {
+                this.maxLateness = lateness;
+            }
+            this.cycles.incrementAndGet ();
+
+            try
+            {
+                this.runnable.run ();
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Poll failed", e );
+            }
+
+            final long end = System.nanoTime ();
+            this.lastDuration = end - start;
+
+            long next = this.deadline + this.period;
+            if ( end > next )
+            {
+                this.overruns.incrementAndGet ();
+                if ( this.policy == OverrunPolicy.SKIP )
+                {
+                    final long missed = ( end - this.deadline ) / this.period;
+                    this.skippedCycles.addAndGet ( missed );
+                    next = this.deadline + ( missed + 1 ) * this.period;
+                }
+            }
+            this.deadline = next;
+
+            synchronized ( this )
+            {
+                if ( !this.cancelled )
+                {
+                    this.future = this.executor.schedule ( this, Math.max ( 0, next - System.nanoTime () ), TimeUnit.NANOSECONDS );
+                }
+            }
+        }
+
+        /**
+         * Cancel the poll. A cycle which is currently running will complete.
+         */
+        public synchronized void cancel ()
+        {
+            this.cancelled = true;
+            if ( this.future != null )
+            {
+                this.future.cancel ( false );
+                this.future = null;
+            }
+        }
+
+        public boolean isCancelled ()
+        {
+            return this.cancelled;
+        }
+
+        /**
+         * Get the number of cycles run so far
+         * @return the number of cycles
+         */
+        public long getCycles ()
+        {
+            return this.cycles.get ();
+        }
+
+        /**
+         * Get the number of cycles which took longer than the period
+         * @return the number of overruns
+         */
+        public long getOverruns ()
+        {
+            return this.overruns.get ();
+        }
+
+        /**
+         * Get the number of cycles which were skipped due to overruns
+         * @return the number of skipped cycles
+         */
+        public long getSkippedCycles ()
+        {
+            return this.skippedCycles.get ();
+        }
+
+        /**
+         * Get the maximum time a cycle started after its scheduled time
+         * @return the maximum lateness in nanoseconds
+         */
+        public long getMaxLateness ()
+        {
+            return this.maxLateness;
+        }
+
+        /**
+         * Get the time the last cycle started after its scheduled time
+         * @return the lateness in nanoseconds
+         */
+        public long getLastLateness ()
+        {
+            return this.lastLateness;
+        }
+
+        /**
+         * Get the average time a cycle started after its scheduled time
+         * @return the average lateness in nanoseconds
+         */
+        public long getAverageLateness ()
+        {
+            final long cycles = this.cycles.get ();
+            return cycles == 0 ? 0 : this.totalLateness.get () / cycles;
+        }
+
+        /**
+         * Get the time the last cycle took
+         * @return the duration in nanoseconds
+         */
+        public long getLastDuration ()
+        {
+            return this.lastDuration;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Create a new polling scheduler using the provided executor
+     * @param executor the executor to run the polls
+     */
+    public PollingScheduler ( final ScheduledExecutorService executor )
+    {
+        super ();
+        this.executor = executor;
+    }
+
+    /**
+     * Create a new polling scheduler with its own daemon threads
+     * @param threads the number of threads
+     */
+    public PollingScheduler ( final int threads )
+    {
+        this ( Executors.newScheduledThreadPool ( threads, new ThreadFactory () {
+
+            private final AtomicInteger counter = new AtomicInteger ();
+
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread t = new Thread ( r, "UtgardPollingScheduler/" + this.counter.incrementAndGet () );
+                t.setDaemon ( true );
+                return t;
+            }
+        } ) );
+    }
+
+    /**
+     * Schedule a periodic poll. The first cycle starts right away.
+     * @param runnable the poll to run
+     * @param period the period in milliseconds
+     * @param policy the policy for handling overruns
+     * @return the scheduled task
+     */
+    public Task schedule ( final Runnable runnable, final int period, final OverrunPolicy policy )
+    {
+        if ( period <= 0 )
+        {
+            throw new IllegalArgumentException ( "The period must be greater than zero" );
+        }
+
+        final Task task = new Task ( this.executor, runnable, TimeUnit.MILLISECONDS.toNanos ( period ), policy );
+        task.start ();
+        return task;
+    }
+
+    /**
+     * Shut down the executor of the scheduler
+     */
+    public void shutdown ()
+    {
+        this.executor.shutdown ();
+    }
+}
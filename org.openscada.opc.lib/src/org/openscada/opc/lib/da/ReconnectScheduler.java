@@ -0,0 +1,189 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the reconnect attempts of many {@link AutoReconnectController} instances.
+ * <br/>
+ * All attempts are run on one scheduled executor instead of a thread per attempt.
+ * The number of attempts running at the same time is limited. An attempt that is due while
+ * the limit is reached is deferred by a short, randomized delay and counted in {@link #getDeferrals()}.
+ * The executor needs more threads than the limit, otherwise attempts blocked in connecting
+ * occupy all threads and due attempts are neither run nor deferred.
+ * By default all controllers share the scheduler returned by {@link #getDefault()}, which allows
+ * <code>openscada.opc.reconnect.max-concurrent</code> concurrent attempts (default 8).
+ */
+public class ReconnectScheduler
+{
+    private static Logger logger = LoggerFactory.getLogger ( ReconnectScheduler.class );
+
+    public static final int DEFAULT_MAX_CONCURRENT = Integer.getInteger ( "openscada.opc.reconnect.max-concurrent", 8 );
+
+    private static final long DEFER_DELAY = 100;
+
+    private static ReconnectScheduler defaultInstance;
+
+    private final ScheduledExecutorService executor;
+
+    private final int maxConcurrent;
+
+    private final Semaphore permits;
+
+    private final Random random = new Random ();
+
+    private final AtomicLong attempts = new AtomicLong ();
+
+    private final AtomicLong deferrals = new AtomicLong ();
+
+    /**
+     * Create a new scheduler using the provided executor
+     * @param executor the executor to run the attempts, it should have more threads than <code>maxConcurrent</code>
+     * @param maxConcurrent the maximum number of attempts running at the same time
+     */
+    public ReconnectScheduler ( final ScheduledExecutorService executor, final int maxConcurrent )
+    {
+        if ( maxConcurrent <= 0 )
+        {
+            throw new IllegalArgumentException ( "The maximum number of concurrent attempts must be greater than zero" );
+        }
+
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore ( maxConcurrent );
+    }
+
+    /**
+     * Create a new scheduler with its own daemon threads, one for each concurrent attempt
+     * and one more which defers the attempts that are due while the limit is reached
+     * @param maxConcurrent the maximum number of attempts running at the same time
+     */
+    public ReconnectScheduler ( final int maxConcurrent )
+    {
+        this ( Executors.newScheduledThreadPool ( maxConcurrent + 1, new ThreadFactory () {
+
+            private final AtomicInteger counter = new AtomicInteger ();
+
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread t = new Thread ( r, "OPCReconnectThread/" + this.counter.incrementAndGet () );
+                t.setDaemon ( true );
+                return t;
+            }
+        } ), maxConcurrent );
+    }
+
+    /**
+     * Get the scheduler shared by all controllers which were not given one
+     * @return the default scheduler
+     */
+    public static synchronized ReconnectScheduler getDefault ()
+    {
+        if ( defaultInstance == null )
+        {
+            defaultInstance = new ReconnectScheduler ( DEFAULT_MAX_CONCURRENT );
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Schedule a reconnect attempt
+     * @param attempt the attempt to run
+     * @param delay the delay in milliseconds
+     */
+    public void schedule ( final Runnable attempt, final long delay )
+    {
+        this.executor.schedule ( new Runnable () {
+
+            public void run ()
+            {
+                execute ( attempt );
+            }
+        }, delay, TimeUnit.MILLISECONDS );
+    }
+
+    private void execute ( final Runnable attempt )
+    {
+        if ( !this.permits.tryAcquire () )
+        {
+            this.deferrals.incrementAndGet ();
+            final long delay;
+            synchronized ( this.random )
+            {
+                delay = DEFER_DELAY + this.random.nextInt ( (int)DEFER_DELAY );
+            }
+            schedule ( attempt, delay );
+            return;
+        }
+
+        this.attempts.incrementAndGet ();
+        try
+        {
+            attempt.run ();
+        }
+        catch ( final Throwable e )
+        {
+            logger.warn ( "Reconnect attempt failed", e );
+        }
+        finally
+        {
+            this.permits.release ();
+        }
+    }
+
+    public int getMaxConcurrent ()
+    {
+        return this.maxConcurrent;
+    }
+
+    /**
+     * Get the number of attempts running right now
+     * @return the number of running attempts
+     */
+    public int getActive ()
+    {
+        return this.maxConcurrent - this.permits.availablePermits ();
+    }
+
+    public long getAttempts ()
+    {
+        return this.attempts.get ();
+    }
+
+    /**
+     * Get the number of times an attempt was deferred since the limit was reached
+     * @return the number of deferrals
+     */
+    public long getDeferrals ()
+    {
+        return this.deferrals.get ();
+    }
+}
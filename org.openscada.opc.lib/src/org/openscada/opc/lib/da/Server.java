@@ -24,10 +24,21 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
 
 import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.IJIComObject;
 import org.jinterop.dcom.core.JIClsid;
 import org.jinterop.dcom.core.JIComServer;
 import org.jinterop.dcom.core.JIProgId;
@@ -49,6 +60,28 @@ public class Server
 {
     private static Logger logger = LoggerFactory.getLogger ( Server.class );
 
+    private static volatile ConnectionTracer connectionTracer;
+
+    /**
+     * The default number of accesses which are restored in parallel after connecting
+     */
+    public static final int DEFAULT_RESTORE_PARALLELISM = Integer.getInteger ( "openscada.opc.restore-parallelism", 4 );
+
+    /**
+     * The threads restoring accesses in parallel, shared by all servers. Idle threads terminate after a minute.
+     */
+    private static final ExecutorService restoreExecutor = Executors.newCachedThreadPool ( new ThreadFactory () {
+
+        private final AtomicInteger counter = new AtomicInteger ();
+
+        public Thread newThread ( final Runnable r )
+        {
+            final Thread t = new Thread ( r, "UtgardRestore/" + this.counter.incrementAndGet () );
+            t.setDaemon ( true );
+            return t;
+        }
+    } );
+
     private final ConnectionInformation connectionInformation;
 
     private JISession session;
@@ -57,6 +90,16 @@ public class Server
 
     private OPCServer server;
 
+    /**
+     * Incremented each time a connection is opened or closed
+     */
+    private long connectionEpoch = 0;
+
+    /**
+     * Set while {@link #disconnect()} notifies the listeners
+     */
+    private boolean disconnecting = false;
+
     private boolean defaultActive = true;
 
     private int defaultUpdateRate = 1000;
@@ -75,11 +118,51 @@ public class Server
 
     private final ScheduledExecutorService scheduler;
 
+    private SharedSubscriptionRegistry sharedSubscriptions;
+
+    private final LastValueCache lastValueCache = new LastValueCache ();
+
+    private final ServerStatistics statistics = new ServerStatistics ( this );
+
+    private final String managementProperties;
+
+    private ObjectName objectName;
+
+    private volatile long clockOffset = 0;
+
+    private volatile int restoreParallelism = DEFAULT_RESTORE_PARALLELISM;
+
     public Server ( final ConnectionInformation connectionInformation, final ScheduledExecutorService scheduler )
     {
         super ();
         this.connectionInformation = connectionInformation;
         this.scheduler = scheduler;
+
+        this.managementProperties = ManagementSupport.makeServerProperties ( connectionInformation, this );
+        this.objectName = ManagementSupport.register ( "type=Server," + this.managementProperties, this.statistics );
+    }
+
+    /**
+     * Get the tracer which receives the connection events of all servers
+     * @return the tracer or <code>null</code> if none is set
+     */
+    public static ConnectionTracer getConnectionTracer ()
+    {
+        return connectionTracer;
+    }
+
+    /**
+     * Set the tracer which receives the connection events of all servers
+     * @param connectionTracer the new tracer, <code>null</code> to disable tracing
+     */
+    public static void setConnectionTracer ( final ConnectionTracer connectionTracer )
+    {
+        Server.connectionTracer = connectionTracer;
+    }
+
+    public ConnectionInformation getConnectionInformation ()
+    {
+        return this.connectionInformation;
     }
 
     /**
@@ -95,76 +178,334 @@ public class Server
 
     protected synchronized boolean isConnected ()
     {
-        return this.session != null;
+        return this.server != null;
+    }
+
+    /**
+     * Check if groups can be added to the server
+     * @return <code>true</code> if the server is connected and not disconnecting
+     */
+    synchronized boolean isAvailable ()
+    {
+        return this.server != null && !this.disconnecting;
+    }
+
+    /**
+     * Connect to the server and restore all accesses bound to this server.
+     * <br/>
+     * The listeners are notified after the connection was established, but outside
+     * the lock of the server, so that the accesses can be restored in parallel. See
+     * {@link #setRestoreParallelism(int)}. If the connection is closed while the listeners
+     * are notified, the remaining listeners are not notified.
+     */
+    public void connect () throws IllegalArgumentException, UnknownHostException, JIException, AlreadyConnectedException
+    {
+        final long start = System.nanoTime ();
+        final long epoch = open ( start );
+        restore ( start, epoch );
     }
 
-    public synchronized void connect () throws IllegalArgumentException, UnknownHostException, JIException, AlreadyConnectedException
+    /**
+     * Open the connection
+     * @return the epoch of the new connection
+     */
+    private synchronized long open ( final long start ) throws IllegalArgumentException, UnknownHostException, JIException, AlreadyConnectedException
     {
         if ( isConnected () )
         {
             throw new AlreadyConnectedException ();
         }
 
-        final int socketTimeout = Integer.getInteger ( "rpc.socketTimeout", 0 );
-        logger.info ( String.format ( "Socket timeout: %s ", socketTimeout ) );
+        final ConnectionTracer tracer = connectionTracer;
+        if ( tracer != null )
+        {
+            tracer.connectStarted ( this.connectionInformation );
+        }
 
-        try
+        if ( this.objectName == null )
         {
-            if ( this.connectionInformation.getClsid () != null )
-            {
-                this.session = JISession.createSession ( this.connectionInformation.getDomain (), this.connectionInformation.getUser (), this.connectionInformation.getPassword () );
-                this.session.setGlobalSocketTimeout ( socketTimeout );
-                this.comServer = new JIComServer ( JIClsid.valueOf ( this.connectionInformation.getClsid () ), this.connectionInformation.getHost (), this.session );
-            }
-            else if ( this.connectionInformation.getProgId () != null )
-            {
-                this.session = JISession.createSession ( this.connectionInformation.getDomain (), this.connectionInformation.getUser (), this.connectionInformation.getPassword () );
-                this.session.setGlobalSocketTimeout ( socketTimeout );
-                this.comServer = new JIComServer ( JIProgId.valueOf ( this.connectionInformation.getProgId () ), this.connectionInformation.getHost (), this.session );
-            }
-            else
-            {
-                throw new IllegalArgumentException ( "Neither clsid nor progid is valid!" );
-            }
+            // unregistered by dispose
+            this.objectName = ManagementSupport.register ( "type=Server," + this.managementProperties, this.statistics );
+        }
 
-            this.server = new OPCServer ( this.comServer.createInstance () );
+        try
+        {
+            this.server = new OPCServer ( createInstance () );
             this.errorMessageResolver = new ErrorMessageResolver ( this.server.getCommon (), this.defaultLocaleID );
         }
         catch ( final UnknownHostException e )
         {
             logger.info ( "Unknown host when connecting to server", e );
+            connectCompleted ( start, e );
             cleanup ();
             throw e;
         }
         catch ( final JIException e )
         {
             logger.info ( "Failed to connect to server", e );
+            connectCompleted ( start, e );
             cleanup ();
             throw e;
         }
         catch ( final Throwable e )
         {
             logger.warn ( "Unknown error", e );
+            connectCompleted ( start, e );
             cleanup ();
             throw new RuntimeException ( e );
         }
 
-        notifyConnectionStateChange ( true );
+        connectCompleted ( start, null );
+        return ++this.connectionEpoch;
+    }
+
+    /**
+     * Check if the connection is still the one with the provided epoch
+     * @param epoch the epoch returned by {@link #open(long)}
+     * @return <code>true</code> if the connection was not closed in the meantime
+     */
+    private synchronized boolean isConnection ( final long epoch )
+    {
+        return this.server != null && this.connectionEpoch == epoch;
+    }
+
+    /**
+     * Notify the listeners about the new connection in the order they were added.
+     * Accesses create their groups, add their items and refresh them when they are notified.
+     * Accesses which were added one after another are restored in parallel, up to
+     * {@link #getRestoreParallelism()} at a time. Any other listener is notified once all accesses
+     * added before it are restored.
+     * @param start the time the connect started, from {@link System#nanoTime()}
+     * @param epoch the epoch of the connection
+     */
+    private void restore ( final long start, final long epoch )
+    {
+        final List<AccessBase> accesses = new ArrayList<AccessBase> ();
+        final List<AccessBase> pending = new ArrayList<AccessBase> ();
+
+        for ( final ServerConnectionStateListener listener : this.stateListeners )
+        {
+            if ( listener instanceof AccessBase )
+            {
+                pending.add ( (AccessBase)listener );
+                continue;
+            }
+
+            if ( !restoreAccesses ( pending, epoch ) )
+            {
+                return;
+            }
+            accesses.addAll ( pending );
+            pending.clear ();
+
+            if ( !isConnection ( epoch ) )
+            {
+                return;
+            }
+            listener.connectionStateChanged ( true );
+        }
+
+        if ( !restoreAccesses ( pending, epoch ) )
+        {
+            return;
+        }
+        accesses.addAll ( pending );
+
+        int items = 0;
+        for ( final AccessBase access : accesses )
+        {
+            items += access.itemMap.size ();
+        }
+
+        this.statistics.restored ( System.nanoTime () - start, accesses.size (), items );
+    }
+
+    /**
+     * Restore the accesses using the calling thread and the shared restore threads
+     * @return <code>true</code> if the connection is still open
+     */
+    private boolean restoreAccesses ( final List<AccessBase> accesses, final long epoch )
+    {
+        if ( accesses.isEmpty () )
+        {
+            return isConnection ( epoch );
+        }
+
+        final Queue<AccessBase> queue = new ConcurrentLinkedQueue<AccessBase> ( accesses );
+        final Runnable worker = new Runnable () {
+
+            public void run ()
+            {
+                AccessBase access;
+                while ( ( access = queue.poll () ) != null )
+                {
+                    if ( !isConnection ( epoch ) )
+                    {
+                        queue.clear ();
+                        return;
+                    }
+
+                    try
+                    {
+                        access.connectionStateChanged ( true );
+                    }
+                    catch ( final RuntimeException e )
+                    {
+                        logger.warn ( "Failed to restore access", e );
+                    }
+                }
+            }
+        };
+
+        final int parallelism = Math.min ( this.restoreParallelism, accesses.size () );
+        final List<Future<?>> futures = new ArrayList<Future<?>> ( parallelism );
+        for ( int i = 1; i < parallelism; i++ )
+        {
+            futures.add ( restoreExecutor.submit ( worker ) );
+        }
+
+        worker.run ();
+
+        try
+        {
+            for ( final Future<?> future : futures )
+            {
+                try
+                {
+                    future.get ();
+                }
+                catch ( final ExecutionException e )
+                {
+                    logger.warn ( "Failed to restore access", e.getCause () );
+                }
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            logger.info ( "Interrupted while restoring accesses" );
+            queue.clear ();
+            Thread.currentThread ().interrupt ();
+            return false;
+        }
+
+        return isConnection ( epoch );
+    }
+
+    /**
+     * Set the number of accesses which are restored in parallel after connecting
+     * @param restoreParallelism the number of accesses, one restores them sequentially
+     */
+    public void setRestoreParallelism ( final int restoreParallelism )
+    {
+        this.restoreParallelism = Math.max ( 1, restoreParallelism );
+    }
+
+    public int getRestoreParallelism ()
+    {
+        return this.restoreParallelism;
+    }
+
+    /**
+     * Create the instance of the OPC server.
+     * <br/>
+     * The default implementation creates a DCOM session and instantiates the server
+     * using the connection information. Subclasses may override this method to provide
+     * an instance which is not reached through DCOM, e.g. an in-process simulation.
+     * In this case no DCOM session is used.
+     * @return the instance of the OPC server
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws JIException
+     */
+    protected IJIComObject createInstance () throws IllegalArgumentException, UnknownHostException, JIException
+    {
+        final int socketTimeout = Integer.getInteger ( "rpc.socketTimeout", 0 );
+        logger.info ( String.format ( "Socket timeout: %s ", socketTimeout ) );
+
+        if ( this.connectionInformation.getClsid () != null )
+        {
+            this.session = JISession.createSession ( this.connectionInformation.getDomain (), this.connectionInformation.getUser (), this.connectionInformation.getPassword () );
+            this.session.setGlobalSocketTimeout ( socketTimeout );
+            this.comServer = new JIComServer ( JIClsid.valueOf ( this.connectionInformation.getClsid () ), this.connectionInformation.getHost (), this.session );
+        }
+        else if ( this.connectionInformation.getProgId () != null )
+        {
+            this.session = JISession.createSession ( this.connectionInformation.getDomain (), this.connectionInformation.getUser (), this.connectionInformation.getPassword () );
+            this.session.setGlobalSocketTimeout ( socketTimeout );
+            this.comServer = new JIComServer ( JIProgId.valueOf ( this.connectionInformation.getProgId () ), this.connectionInformation.getHost (), this.session );
+        }
+        else
+        {
+            throw new IllegalArgumentException ( "Neither clsid nor progid is valid!" );
+        }
+
+        return this.comServer.createInstance ();
+    }
+
+    private void connectCompleted ( final long start, final Throwable error )
+    {
+        final long nanos = System.nanoTime () - start;
+        if ( error == null )
+        {
+            this.statistics.connected ( nanos );
+        }
+        else
+        {
+            this.statistics.connectFailed ();
+        }
+
+        final ConnectionTracer tracer = connectionTracer;
+        if ( tracer != null )
+        {
+            tracer.connectCompleted ( this.connectionInformation, nanos, error );
+        }
     }
 
     /**
      * cleanup after the connection is closed
      */
     protected void cleanup ()
+    {
+        if ( this.session != null )
+        {
+            destroySession ( this.session );
+        }
+
+        this.errorMessageResolver = null;
+        this.session = null;
+        this.comServer = null;
+        this.server = null;
+        this.connectionEpoch++;
+        this.lastValueCache.clear ();
+
+        for ( final Group group : this.groups.values () )
+        {
+            group.unregisterMBean ();
+        }
+        this.groups.clear ();
+    }
+
+    /**
+     * Destroy the DCOM session in the background
+     * @param destructSession the session to destroy
+     */
+    private void destroySession ( final JISession destructSession )
     {
         logger.info ( "Destroying DCOM session..." );
-        final JISession destructSession = this.session;
+        final ConnectionInformation connectionInformation = this.connectionInformation;
         final Thread destructor = new Thread ( new Runnable () {
 
             @Override
             public void run ()
             {
+                final ConnectionTracer tracer = connectionTracer;
+                if ( tracer != null )
+                {
+                    tracer.cleanupStarted ( connectionInformation );
+                }
+
                 final long ts = System.currentTimeMillis ();
+                final long start = System.nanoTime ();
                 try
                 {
                     logger.debug ( "Starting destruction of DCOM session" );
@@ -178,6 +519,11 @@ public class Server
                 finally
                 {
                     logger.info ( String.format ( "Session destruction took %s ms", System.currentTimeMillis () - ts ) );
+
+                    if ( tracer != null )
+                    {
+                        tracer.cleanupCompleted ( connectionInformation, System.nanoTime () - start );
+                    }
                 }
             }
         }, "UtgardSessionDestructor" );
@@ -185,23 +531,27 @@ public class Server
         destructor.setDaemon ( true );
         destructor.start ();
         logger.info ( "Destroying DCOM session... forked" );
-
-        this.errorMessageResolver = null;
-        this.session = null;
-        this.comServer = null;
-        this.server = null;
-
-        this.groups.clear ();
     }
 
     /**
-     * Disconnect the connection if it is connected
+     * Disconnect the connection if it is connected.
+     * <br/>
+     * The listeners are notified outside the lock of the server, since the accesses
+     * call the server while holding their own lock. No groups can be added while the listeners are notified.
      */
-    public synchronized void disconnect ()
+    public void disconnect ()
     {
-        if ( !isConnected () )
+        synchronized ( this )
         {
-            return;
+            if ( !isConnected () || this.disconnecting )
+            {
+                return;
+            }
+
+            this.disconnecting = true;
+            // stop a restore which is still running
+            this.connectionEpoch++;
+            this.statistics.disconnected ();
         }
 
         try
@@ -211,16 +561,25 @@ public class Server
         catch ( final Throwable t )
         {
         }
-
-        cleanup ();
+        finally
+        {
+            synchronized ( this )
+            {
+                cleanup ();
+                this.disconnecting = false;
+            }
+        }
     }
 
     /**
-     * Dispose the connection in the case of an error
+     * Dispose the connection in the case of an error or when the server instance is no
+     * longer used. The MBean of the server is unregistered and registered again
+     * if the server gets connected again.
      */
     public void dispose ()
     {
         disconnect ();
+        unregisterMBean ();
     }
 
     protected synchronized Group getGroup ( final OPCGroupStateMgt groupMgt ) throws JIException, IllegalArgumentException, UnknownHostException
@@ -248,16 +607,35 @@ public class Server
      * @throws JIException
      * @throws DuplicateGroupException If a group with this name already exists
      */
-    public synchronized Group addGroup ( final String name ) throws NotConnectedException, IllegalArgumentException, UnknownHostException, JIException, DuplicateGroupException
+    public Group addGroup ( final String name ) throws NotConnectedException, IllegalArgumentException, UnknownHostException, JIException, DuplicateGroupException
     {
-        if ( !isConnected () )
+        return addGroup ( name, this.defaultActive, this.defaultUpdateRate, this.defaultPercentDeadband );
+    }
+
+    /**
+     * Add a new named group to the server using the provided settings instead of
+     * the default settings of the server
+     * @param name The name of the group to use. Must be unique or <code>null</code> so that the server creates a unique name.
+     * @param active The initial active state of the group
+     * @param updateRate The requested update rate in milliseconds
+     * @param percentDeadband The percent deadband or <code>null</code> to let the server decide
+     * @return The new group
+     * @throws NotConnectedException If the server is not connected using {@link Server#connect()}
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws JIException
+     * @throws DuplicateGroupException If a group with this name already exists
+     */
+    public synchronized Group addGroup ( final String name, final boolean active, final int updateRate, final Float percentDeadband ) throws NotConnectedException, IllegalArgumentException, UnknownHostException, JIException, DuplicateGroupException
+    {
+        if ( !isConnected () || this.disconnecting )
         {
             throw new NotConnectedException ();
         }
 
         try
         {
-            final OPCGroupStateMgt groupMgt = this.server.addGroup ( name, this.defaultActive, this.defaultUpdateRate, 0, this.defaultTimeBias, this.defaultPercentDeadband, this.defaultLocaleID );
+            final OPCGroupStateMgt groupMgt = this.server.addGroup ( name, active, updateRate, 0, this.defaultTimeBias, percentDeadband, this.defaultLocaleID );
             return getGroup ( groupMgt );
         }
         catch ( final JIException e )
@@ -290,6 +668,15 @@ public class Server
         return addGroup ( null );
     }
 
+    /**
+     * Get the number of groups currently known to this server instance
+     * @return the number of groups
+     */
+    public synchronized int getGroupCount ()
+    {
+        return this.groups.size ();
+    }
+
     /**
      * Find a group by its name
      * @param name The name to look for
@@ -410,6 +797,60 @@ public class Server
         return new TreeBrowser ( browser );
     }
 
+    /**
+     * Get the cache of the last values received from this server. If it is enabled, it is fed by
+     * all accesses and reads of this server and used by {@link Group#read(int, Item...)}.
+     * It is cleared when the connection is closed.
+     * @return the last value cache
+     */
+    public LastValueCache getLastValueCache ()
+    {
+        return this.lastValueCache;
+    }
+
+    /**
+     * Get the statistics of this server. The statistics are registered as MBean
+     * if {@link ManagementSupport#isEnabled()} was set when the server was created.
+     * @return the statistics
+     */
+    public ServerStatistics getStatistics ()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * Get the object name properties identifying this server
+     * @return the key properties of the object name
+     */
+    String getManagementProperties ()
+    {
+        return this.managementProperties;
+    }
+
+    /**
+     * Unregister the MBean of this server. Call this method when the server instance is no longer used.
+     */
+    public synchronized void unregisterMBean ()
+    {
+        ManagementSupport.unregister ( this.objectName );
+        this.objectName = null;
+    }
+
+    /**
+     * Get the registry for sharing subscriptions between several consumers of this server.
+     * <br/>
+     * The registry is created on the first call using the default update rate of the server.
+     * @return the shared subscription registry of this server
+     */
+    public synchronized SharedSubscriptionRegistry getSharedSubscriptions ()
+    {
+        if ( this.sharedSubscriptions == null )
+        {
+            this.sharedSubscriptions = new SharedSubscriptionRegistry ( this );
+        }
+        return this.sharedSubscriptions;
+    }
+
     public synchronized String getErrorMessage ( final int errorCode )
     {
         if ( this.errorMessageResolver == null )
@@ -452,7 +893,28 @@ public class Server
 
     public OPCSERVERSTATUS getServerState ( final int timeout ) throws Throwable
     {
-        return new ServerStateOperation ( this.server ).getServerState ( timeout );
+        final long before = System.currentTimeMillis ();
+        final OPCSERVERSTATUS status = new ServerStateOperation ( this.server ).getServerState ( timeout );
+        final long after = System.currentTimeMillis ();
+
+        if ( status != null && status.getCurrentTime () != null )
+        {
+            this.clockOffset = status.getCurrentTime ().asCalendar ().getTimeInMillis () - ( before + after ) / 2;
+        }
+
+        return status;
+    }
+
+    /**
+     * Get the estimated offset of the server clock to the local clock.
+     * <br/>
+     * The offset is estimated from the current time of the server status on each call to {@link #getServerState(int)},
+     * so it is kept up to date when using a {@link ServerStateReader}. It is zero until the server state was read once.
+     * @return the server time minus the local time in milliseconds
+     */
+    public long getClockOffset ()
+    {
+        return this.clockOffset;
     }
 
     public OPCSERVERSTATUS getServerState ()
@@ -475,6 +937,8 @@ public class Server
         {
             this.server.removeGroup ( group.getServerHandle (), force );
             this.groups.remove ( group.getServerHandle () );
+            group.evictLastValues ();
+            group.unregisterMBean ();
         }
     }
 }
@@ -0,0 +1,203 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.lib.common.AlreadyConnectedException;
+import org.openscada.opc.lib.common.ConnectionInformation;
+import org.openscada.opc.lib.common.NotConnectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of connections to the same OPC server.
+ * <br/>
+ * Each {@link Server} of the pool has its own DCOM session. Since calls on one server
+ * are serialized, independent workloads (e.g. polling, writing and browsing) should use
+ * different servers of the pool so that they can run in parallel. Groups created using
+ * {@link #addGroup()} are placed on the server with the fewest groups, and all calls
+ * on a group use the session of its server.
+ */
+public class ServerPool
+{
+    private static Logger logger = LoggerFactory.getLogger ( ServerPool.class );
+
+    private final List<Server> servers;
+
+    private final AtomicInteger next = new AtomicInteger ();
+
+    public ServerPool ( final ConnectionInformation connectionInformation, final ScheduledExecutorService scheduler, final int size )
+    {
+        super ();
+        if ( size <= 0 )
+        {
+            throw new IllegalArgumentException ( "The pool size must be greater than zero" );
+        }
+
+        final List<Server> servers = new ArrayList<Server> ( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            servers.add ( createServer ( new ConnectionInformation ( connectionInformation ), scheduler ) );
+        }
+        this.servers = Collections.unmodifiableList ( servers );
+    }
+
+    /**
+     * Create a server instance of the pool
+     * @param connectionInformation the connection information
+     * @param scheduler the scheduler
+     * @return the new server
+     */
+    protected Server createServer ( final ConnectionInformation connectionInformation, final ScheduledExecutorService scheduler )
+    {
+        return new Server ( connectionInformation, scheduler );
+    }
+
+    /**
+     * Connect all servers of the pool. If one connection fails all
+     * servers get disconnected again.
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws JIException
+     * @throws AlreadyConnectedException
+     */
+    public synchronized void connect () throws IllegalArgumentException, UnknownHostException, JIException, AlreadyConnectedException
+    {
+        boolean success = false;
+        try
+        {
+            for ( final Server server : this.servers )
+            {
+                server.connect ();
+            }
+            success = true;
+        }
+        finally
+        {
+            if ( !success )
+            {
+                logger.info ( "Failed to connect the pool. Disconnecting..." );
+                disconnect ();
+            }
+        }
+    }
+
+    /**
+     * Disconnect all servers of the pool
+     */
+    public synchronized void disconnect ()
+    {
+        for ( final Server server : this.servers )
+        {
+            server.disconnect ();
+        }
+    }
+
+    /**
+     * Disconnect all servers of the pool and unregister their MBeans
+     */
+    public synchronized void dispose ()
+    {
+        for ( final Server server : this.servers )
+        {
+            server.dispose ();
+        }
+    }
+
+    public int size ()
+    {
+        return this.servers.size ();
+    }
+
+    /**
+     * Get all servers of the pool
+     * @return an unmodifiable list of the servers
+     */
+    public List<Server> getServers ()
+    {
+        return this.servers;
+    }
+
+    /**
+     * Get the server at a position of the pool
+     * @param index the position of the server
+     * @return the server at the position
+     */
+    public Server getServer ( final int index )
+    {
+        return this.servers.get ( index );
+    }
+
+    /**
+     * Get the next server in a round robin fashion
+     * @return the next server
+     */
+    public Server nextServer ()
+    {
+        final int index = this.next.getAndIncrement () & Integer.MAX_VALUE;
+        return this.servers.get ( index % this.servers.size () );
+    }
+
+    /**
+     * Get the server assigned to a workload. The same key will always
+     * get the same server.
+     * <br/>
+     * Note that this is not a lookup by position, use {@link #getServer(int)} for that.
+     * @param key the key of the workload
+     * @return the server of the workload
+     */
+    public Server getServerFor ( final Object key )
+    {
+        final int hash = key == null ? 0 : key.hashCode () & Integer.MAX_VALUE;
+        return this.servers.get ( hash % this.servers.size () );
+    }
+
+    /**
+     * Add a group to the server with the fewest groups
+     * @return the new group
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws NotConnectedException
+     * @throws JIException
+     * @throws DuplicateGroupException
+     */
+    public Group addGroup () throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        Server target = null;
+        int count = Integer.MAX_VALUE;
+        for ( final Server server : this.servers )
+        {
+            final int groups = server.getGroupCount ();
+            if ( groups < count )
+            {
+                count = groups;
+                target = server;
+            }
+        }
+        return target.addGroup ();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a {@link Server}
+ */
+public class ServerStatistics implements ServerStatisticsMBean
+{
+    private final Server server;
+
+    private volatile boolean connected;
+
+    private final AtomicLong connectFailures = new AtomicLong ();
+
+    private final AtomicLong disconnects = new AtomicLong ();
+
+    private final LatencyCounter connectTime = new LatencyCounter ();
+
+    private final LatencyCounter restoreTime = new LatencyCounter ();
+
+    private volatile int lastRestoredAccesses;
+
+    private volatile int lastRestoredItems;
+
+    ServerStatistics ( final Server server )
+    {
+        this.server = server;
+    }
+
+    void connected ( final long nanos )
+    {
+        this.connected = true;
+        this.connectTime.record ( nanos );
+    }
+
+    void restored ( final long nanos, final int accesses, final int items )
+    {
+        this.restoreTime.record ( nanos );
+        this.lastRestoredAccesses = accesses;
+        this.lastRestoredItems = items;
+    }
+
+    void connectFailed ()
+    {
+        this.connectFailures.incrementAndGet ();
+    }
+
+    void disconnected ()
+    {
+        this.connected = false;
+        this.disconnects.incrementAndGet ();
+    }
+
+    public boolean isConnected ()
+    {
+        return this.connected;
+    }
+
+    public int getGroupCount ()
+    {
+        return this.server.getGroupCount ();
+    }
+
+    public int getLastValueCacheSize ()
+    {
+        return this.server.getLastValueCache ().size ();
+    }
+
+    public long getConnects ()
+    {
+        return this.connectTime.getCount ();
+    }
+
+    public long getConnectFailures ()
+    {
+        return this.connectFailures.get ();
+    }
+
+    public long getDisconnects ()
+    {
+        return this.disconnects.get ();
+    }
+
+    public long getLastConnectTimeMicros ()
+    {
+        return this.connectTime.getLastMicros ();
+    }
+
+    public long getMaxConnectTimeMicros ()
+    {
+        return this.connectTime.getMaxMicros ();
+    }
+
+    public long getAverageConnectTimeMicros ()
+    {
+        return this.connectTime.getAverageMicros ();
+    }
+
+    public long getRestores ()
+    {
+        return this.restoreTime.getCount ();
+    }
+
+    public long getLastRestoreTimeMicros ()
+    {
+        return this.restoreTime.getLastMicros ();
+    }
+
+    public long getMaxRestoreTimeMicros ()
+    {
+        return this.restoreTime.getMaxMicros ();
+    }
+
+    public long getAverageRestoreTimeMicros ()
+    {
+        return this.restoreTime.getAverageMicros ();
+    }
+
+    public int getLastRestoredAccesses ()
+    {
+        return this.lastRestoredAccesses;
+    }
+
+    public int getLastRestoredItems ()
+    {
+        return this.lastRestoredItems;
+    }
+
+    public long getClockOffset ()
+    {
+        return this.server.getClockOffset ();
+    }
+
+    public void reset ()
+    {
+        this.connectFailures.set ( 0 );
+        this.disconnects.set ( 0 );
+        this.connectTime.reset ();
+        this.restoreTime.reset ();
+    }
+}
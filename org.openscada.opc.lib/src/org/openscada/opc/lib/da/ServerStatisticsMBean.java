@@ -0,0 +1,66 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+/**
+ * Management interface of {@link ServerStatistics}
+ */
+public interface ServerStatisticsMBean
+{
+    public boolean isConnected ();
+
+    public int getGroupCount ();
+
+    public int getLastValueCacheSize ();
+
+    public long getConnects ();
+
+    public long getConnectFailures ();
+
+    public long getDisconnects ();
+
+    public long getLastConnectTimeMicros ();
+
+    public long getMaxConnectTimeMicros ();
+
+    public long getAverageConnectTimeMicros ();
+
+    /**
+     * Get the number of times the accesses were restored after connecting
+     */
+    public long getRestores ();
+
+    /**
+     * Get the time from the start of the last connect until all accesses were restored
+     */
+    public long getLastRestoreTimeMicros ();
+
+    public long getMaxRestoreTimeMicros ();
+
+    public long getAverageRestoreTimeMicros ();
+
+    public int getLastRestoredAccesses ();
+
+    public int getLastRestoredItems ();
+
+    public long getClockOffset ();
+
+    public void reset ();
+}
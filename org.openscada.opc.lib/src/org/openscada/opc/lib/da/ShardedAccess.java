@@ -0,0 +1,431 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.lib.common.NotConnectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An access which spreads its items over several groups.
+ * <br/>
+ * Each group (shard) is handled by its own {@link AccessBase} instance and holds at most
+ * {@link #getMaxItemsPerGroup()} items. New items are added to the shard with the fewest
+ * items, shards are created when all existing shards are full and dropped again when the
+ * remaining items fit into fewer shards filled to at most {@link #CONSOLIDATION_FILL}. The margin
+ * prevents shards from being dropped and created over and over again when the number of items
+ * changes around a multiple of the group size. Items which are moved to another shard during
+ * rebalancing are re-added to the server and will report their current value again.
+ * <br/>
+ * The access is active if all of its shards are active.
+ */
+public class ShardedAccess
+{
+    private static Logger logger = LoggerFactory.getLogger ( ShardedAccess.class );
+
+    /**
+     * The default number of items per group. Can be overridden by the java property
+     * <q>openscada.opc.max-items-per-group</q>.
+     */
+    public static final int DEFAULT_MAX_ITEMS_PER_GROUP = Integer.getInteger ( "openscada.opc.max-items-per-group", 1000 );
+
+    /**
+     * Shards are only consolidated if the remaining shards would be filled to at most this fraction
+     */
+    public static final double CONSOLIDATION_FILL = 0.75;
+
+    protected final Server server;
+
+    private final int period;
+
+    private final boolean initialRefresh;
+
+    private int maxItemsPerGroup;
+
+    private boolean bound = false;
+
+    private final List<AccessBase> shards = new CopyOnWriteArrayList<AccessBase> ();
+
+    /**
+     * Holds the item ids assigned to each shard
+     */
+    private final Map<AccessBase, Set<String>> shardItems = new LinkedHashMap<AccessBase, Set<String>> ();
+
+    private final Map<String, AccessBase> assignments = new HashMap<String, AccessBase> ();
+
+    private final Map<String, DataCallback> itemSet = new HashMap<String, DataCallback> ();
+
+    private final List<AccessStateListener> stateListeners = new CopyOnWriteArrayList<AccessStateListener> ();
+
+    private volatile boolean active = false;
+
+    private final AccessStateListener shardListener = new AccessStateListener () {
+
+        public void stateChanged ( final boolean state )
+        {
+            updateState ();
+        }
+
+        public void errorOccured ( final Throwable t )
+        {
+            for ( final AccessStateListener listener : ShardedAccess.this.stateListeners )
+            {
+                listener.errorOccured ( t );
+            }
+        }
+    };
+
+    public ShardedAccess ( final Server server, final int period, final boolean initialRefresh )
+    {
+        this ( server, period, initialRefresh, DEFAULT_MAX_ITEMS_PER_GROUP );
+    }
+
+    public ShardedAccess ( final Server server, final int period, final boolean initialRefresh, final int maxItemsPerGroup )
+    {
+        super ();
+        if ( maxItemsPerGroup <= 0 )
+        {
+            throw new IllegalArgumentException ( "The number of items per group must be greater than zero" );
+        }
+        this.server = server;
+        this.period = period;
+        this.initialRefresh = initialRefresh;
+        this.maxItemsPerGroup = maxItemsPerGroup;
+
+        addShard ();
+    }
+
+    /**
+     * Create a new shard. The default implementation creates an {@link Async20Access}.
+     * @return the new shard
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws NotConnectedException
+     * @throws JIException
+     * @throws DuplicateGroupException
+     */
+    protected AccessBase createShard () throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        return new Async20Access ( this.server, this.period, this.initialRefresh );
+    }
+
+    private AccessBase addShard ()
+    {
+        final AccessBase shard;
+        try
+        {
+            shard = createShard ();
+        }
+        catch ( final Exception e )
+        {
+            throw new RuntimeException ( "Failed to create shard", e );
+        }
+
+        logger.debug ( "Adding shard #{}", this.shards.size () );
+
+        this.shardItems.put ( shard, new HashSet<String> () );
+        this.shards.add ( shard );
+        shard.addStateListener ( this.shardListener );
+        if ( this.bound )
+        {
+            shard.bind ();
+        }
+        return shard;
+    }
+
+    private void removeShard ( final AccessBase shard )
+    {
+        logger.debug ( "Removing shard" );
+
+        this.shards.remove ( shard );
+        this.shardItems.remove ( shard );
+        shard.removeStateListener ( this.shardListener );
+        try
+        {
+            shard.unbind ();
+        }
+        catch ( final JIException e )
+        {
+            logger.info ( "Failed to unbind shard. No problem if we already lost the connection", e );
+        }
+        updateState ();
+    }
+
+    public synchronized boolean isBound ()
+    {
+        return this.bound;
+    }
+
+    public synchronized void bind ()
+    {
+        if ( this.bound )
+        {
+            return;
+        }
+
+        this.bound = true;
+        for ( final AccessBase shard : this.shards )
+        {
+            shard.bind ();
+        }
+    }
+
+    public synchronized void unbind () throws JIException
+    {
+        if ( !this.bound )
+        {
+            return;
+        }
+
+        this.bound = false;
+        for ( final AccessBase shard : this.shards )
+        {
+            shard.unbind ();
+        }
+    }
+
+    public boolean isActive ()
+    {
+        return this.active;
+    }
+
+    public void addStateListener ( final AccessStateListener listener )
+    {
+        this.stateListeners.add ( listener );
+        listener.stateChanged ( isActive () );
+    }
+
+    public void removeStateListener ( final AccessStateListener listener )
+    {
+        this.stateListeners.remove ( listener );
+    }
+
+    /**
+     * Re-calculate the combined state. Must not lock this instance since it is
+     * called from the shards while they hold their own lock.
+     */
+    private void updateState ()
+    {
+        boolean state = !this.shards.isEmpty ();
+        for ( final AccessBase shard : this.shards )
+        {
+            state = state && shard.isActive ();
+        }
+
+        synchronized ( this.stateListeners )
+        {
+            if ( state == this.active )
+            {
+                return;
+            }
+            this.active = state;
+            for ( final AccessStateListener listener : this.stateListeners )
+            {
+                listener.stateChanged ( state );
+            }
+        }
+    }
+
+    public int getPeriod ()
+    {
+        return this.period;
+    }
+
+    public synchronized int getMaxItemsPerGroup ()
+    {
+        return this.maxItemsPerGroup;
+    }
+
+    /**
+     * Set the maximum number of items per group and rebalance the shards
+     * @param maxItemsPerGroup the new maximum number of items per group
+     */
+    public synchronized void setMaxItemsPerGroup ( final int maxItemsPerGroup )
+    {
+        if ( maxItemsPerGroup <= 0 )
+        {
+            throw new IllegalArgumentException ( "The number of items per group must be greater than zero" );
+        }
+        this.maxItemsPerGroup = maxItemsPerGroup;
+        rebalance ();
+    }
+
+    /**
+     * Get the current shards
+     * @return an unmodifiable list of the current shards
+     */
+    public List<AccessBase> getShards ()
+    {
+        return Collections.unmodifiableList ( this.shards );
+    }
+
+    public int getShardCount ()
+    {
+        return this.shards.size ();
+    }
+
+    public synchronized int getItemCount ()
+    {
+        return this.itemSet.size ();
+    }
+
+    public synchronized void addItem ( final String itemId, final DataCallback dataCallback ) throws JIException, AddFailedException
+    {
+        if ( this.itemSet.containsKey ( itemId ) )
+        {
+            return;
+        }
+
+        this.itemSet.put ( itemId, dataCallback );
+        assign ( itemId, findShardWithSpace () );
+    }
+
+    public synchronized void removeItem ( final String itemId )
+    {
+        if ( !this.itemSet.containsKey ( itemId ) )
+        {
+            return;
+        }
+
+        this.itemSet.remove ( itemId );
+        unassign ( itemId );
+        rebalance ();
+    }
+
+    public synchronized void clear ()
+    {
+        for ( final AccessBase shard : this.shards )
+        {
+            shard.clear ();
+        }
+        for ( final Set<String> items : this.shardItems.values () )
+        {
+            items.clear ();
+        }
+        this.assignments.clear ();
+        this.itemSet.clear ();
+        rebalance ();
+    }
+
+    /**
+     * Move items between the shards so that no shard holds more than the maximum number
+     * of items per group and drop shards if the items fit into fewer shards with a
+     * fill level of at most {@link #CONSOLIDATION_FILL}.
+     */
+    public synchronized void rebalance ()
+    {
+        // move items out of overfull shards
+        for ( final AccessBase shard : new ArrayList<AccessBase> ( this.shards ) )
+        {
+            final Set<String> items = this.shardItems.get ( shard );
+            while ( items.size () > this.maxItemsPerGroup )
+            {
+                final String itemId = items.iterator ().next ();
+                unassign ( itemId );
+                assignQuietly ( itemId, findShardWithSpace () );
+            }
+        }
+
+        // drop shards we no longer need
+        while ( this.shards.size () > 1 && this.itemSet.size () <= ( this.shards.size () - 1 ) * this.maxItemsPerGroup * CONSOLIDATION_FILL )
+        {
+            final AccessBase smallest = findSmallestShard ();
+            final Set<String> items = this.shardItems.get ( smallest );
+
+            removeShard ( smallest );
+            for ( final String itemId : items )
+            {
+                this.assignments.remove ( itemId );
+                assignQuietly ( itemId, findShardWithSpace () );
+            }
+        }
+    }
+
+    private AccessBase findSmallestShard ()
+    {
+        AccessBase result = null;
+        int size = Integer.MAX_VALUE;
+        for ( final Map.Entry<AccessBase, Set<String>> entry : this.shardItems.entrySet () )
+        {
+            if ( entry.getValue ().size () < size )
+            {
+                size = entry.getValue ().size ();
+                result = entry.getKey ();
+            }
+        }
+        return result;
+    }
+
+    private AccessBase findShardWithSpace ()
+    {
+        final AccessBase shard = findSmallestShard ();
+        if ( shard != null && this.shardItems.get ( shard ).size () < this.maxItemsPerGroup )
+        {
+            return shard;
+        }
+        return addShard ();
+    }
+
+    private void assign ( final String itemId, final AccessBase shard ) throws JIException, AddFailedException
+    {
+        this.assignments.put ( itemId, shard );
+        this.shardItems.get ( shard ).add ( itemId );
+        shard.addItem ( itemId, this.itemSet.get ( itemId ) );
+    }
+
+    private void assignQuietly ( final String itemId, final AccessBase shard )
+    {
+        try
+        {
+            assign ( itemId, shard );
+        }
+        catch ( final AddFailedException e )
+        {
+            logger.warn ( String.format ( "Failed to add item after moving it: %s", itemId ) );
+        }
+        catch ( final JIException e )
+        {
+            logger.warn ( "Failed to add item after moving it: " + itemId, e );
+        }
+    }
+
+    private void unassign ( final String itemId )
+    {
+        final AccessBase shard = this.assignments.remove ( itemId );
+        if ( shard == null )
+        {
+            return;
+        }
+        this.shardItems.get ( shard ).remove ( itemId );
+        shard.removeItem ( itemId );
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jinterop.dcom.common.JIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares subscriptions of the same item between several consumers of one server.
+ * <br/>
+ * Each item is added to the server only once, no matter how many consumers subscribe
+ * to it. Updates are passed on to all subscribed callbacks. The item is removed from
+ * the server when the last consumer unsubscribes. A consumer subscribing to an item
+ * which already has a value will be notified with that value right away, unless a newer
+ * update has already been passed on to it.
+ * <br/>
+ * Use {@link Server#getSharedSubscriptions()} to get the registry of a server.
+ */
+public class SharedSubscriptionRegistry
+{
+    private static Logger logger = LoggerFactory.getLogger ( SharedSubscriptionRegistry.class );
+
+    /**
+     * A subscribed callback. Remembers the sequence number of the last update
+     * passed on, so that the replayed value never overtakes a newer live update.
+     */
+    private static class Subscriber
+    {
+        private final DataCallback callback;
+
+        private long lastSequence = 0;
+
+        public Subscriber ( final DataCallback callback )
+        {
+            this.callback = callback;
+        }
+
+        public synchronized void deliver ( final long sequence, final Item item, final ItemState itemState )
+        {
+            if ( sequence <= this.lastSequence )
+            {
+                return;
+            }
+            this.lastSequence = sequence;
+
+            try
+            {
+                this.callback.changed ( item, itemState );
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Failed to notify data callback", e );
+            }
+        }
+    }
+
+    private static class FanOutCallback implements DataCallback
+    {
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber> ();
+
+        private long sequence = 0;
+
+        private Item lastItem;
+
+        private ItemState lastState;
+
+        public void changed ( final Item item, final ItemState itemState )
+        {
+            final long sequence;
+            synchronized ( this )
+            {
+                sequence = ++this.sequence;
+                this.lastItem = item;
+                this.lastState = itemState;
+            }
+
+            for ( final Subscriber subscriber : this.subscribers )
+            {
+                subscriber.deliver ( sequence, item, itemState );
+            }
+        }
+
+        /**
+         * Add a subscriber
+         * @param subscriber the new subscriber
+         * @return the runnable replaying the last update to the new subscriber or <code>null</code>
+         * if there was no update yet
+         */
+        public synchronized Runnable add ( final Subscriber subscriber )
+        {
+            this.subscribers.add ( subscriber );
+
+            final long sequence = this.sequence;
+            final Item item = this.lastItem;
+            final ItemState state = this.lastState;
+            if ( item == null || state == null )
+            {
+                return null;
+            }
+
+            return new Runnable () {
+
+                public void run ()
+                {
+                    subscriber.deliver ( sequence, item, state );
+                }
+            };
+        }
+
+        public boolean remove ( final DataCallback callback )
+        {
+            for ( final Subscriber subscriber : this.subscribers )
+            {
+                if ( subscriber.callback == callback )
+                {
+                    return this.subscribers.remove ( subscriber );
+                }
+            }
+            return false;
+        }
+
+        public int size ()
+        {
+            return this.subscribers.size ();
+        }
+    }
+
+    private final ShardedAccess access;
+
+    private final Map<String, FanOutCallback> subscriptions = new HashMap<String, FanOutCallback> ();
+
+    public SharedSubscriptionRegistry ( final Server server )
+    {
+        this ( new ShardedAccess ( server, server.getDefaultUpdateRate (), true ) );
+    }
+
+    /**
+     * Create a new registry using the provided access for the shared items
+     * @param access the access to use. The access must perform an initial refresh.
+     */
+    public SharedSubscriptionRegistry ( final ShardedAccess access )
+    {
+        super ();
+        this.access = access;
+        this.access.bind ();
+    }
+
+    /**
+     * Subscribe to an item. Subscribing the same callback twice counts as two references.
+     * @param itemId the item to subscribe
+     * @param dataCallback the callback to notify
+     * @throws JIException
+     * @throws AddFailedException
+     */
+    public void subscribe ( final String itemId, final DataCallback dataCallback ) throws JIException, AddFailedException
+    {
+        final Runnable replay;
+
+        synchronized ( this )
+        {
+            final FanOutCallback current = this.subscriptions.get ( itemId );
+            if ( current != null )
+            {
+                replay = current.add ( new Subscriber ( dataCallback ) );
+            }
+            else
+            {
+                logger.debug ( "Adding shared item: {}", itemId );
+
+                final FanOutCallback newFanOut = new FanOutCallback ();
+                newFanOut.add ( new Subscriber ( dataCallback ) );
+                this.subscriptions.put ( itemId, newFanOut );
+                try
+                {
+                    this.access.addItem ( itemId, newFanOut );
+                }
+                catch ( final JIException e )
+                {
+                    removeFailed ( itemId );
+                    throw e;
+                }
+                catch ( final AddFailedException e )
+                {
+                    removeFailed ( itemId );
+                    throw e;
+                }
+                catch ( final RuntimeException e )
+                {
+                    removeFailed ( itemId );
+                    throw e;
+                }
+                return;
+            }
+        }
+
+        // notify the new consumer outside of the lock
+        if ( replay != null )
+        {
+            replay.run ();
+        }
+    }
+
+    private void removeFailed ( final String itemId )
+    {
+        logger.info ( "Failed to add shared item: {}", itemId );
+        this.subscriptions.remove ( itemId );
+        this.access.removeItem ( itemId );
+    }
+
+    /**
+     * Remove one reference of the callback from the item
+     * @param itemId the item
+     * @param dataCallback the callback to remove
+     */
+    public synchronized void unsubscribe ( final String itemId, final DataCallback dataCallback )
+    {
+        final FanOutCallback fanOut = this.subscriptions.get ( itemId );
+        if ( fanOut == null )
+        {
+            return;
+        }
+
+        fanOut.remove ( dataCallback );
+        if ( fanOut.size () == 0 )
+        {
+            logger.debug ( "Removing shared item: {}", itemId );
+            this.subscriptions.remove ( itemId );
+            this.access.removeItem ( itemId );
+        }
+    }
+
+    /**
+     * Get the number of references to an item
+     * @param itemId the item
+     * @return the number of subscribed callbacks
+     */
+    public synchronized int getReferenceCount ( final String itemId )
+    {
+        final FanOutCallback fanOut = this.subscriptions.get ( itemId );
+        return fanOut == null ? 0 : fanOut.size ();
+    }
+
+    /**
+     * Get the number of distinct items subscribed on the server
+     * @return the number of items
+     */
+    public synchronized int getItemCount ()
+    {
+        return this.subscriptions.size ();
+    }
+
+    public void addStateListener ( final AccessStateListener listener )
+    {
+        this.access.addStateListener ( listener );
+    }
+
+    public void removeStateListener ( final AccessStateListener listener )
+    {
+        this.access.removeStateListener ( listener );
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da;
+
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jinterop.dcom.common.JIException;
+import org.openscada.opc.lib.common.NotConnectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages subscriptions with different update rate and deadband requirements on one server.
+ * <br/>
+ * Items with the same requirements share one group. The requested update rates can be
+ * mapped onto a small set of rates using {@link #setUpdateRates(int...)} so that only a few
+ * groups get created. An item is mapped to the slowest configured rate which is still at
+ * least as fast as the requested one. Requests faster than the fastest configured rate
+ * are served at the fastest configured rate. Changing the requirements of an item moves it to the
+ * matching group.
+ */
+public class SubscriptionManager
+{
+    private static Logger logger = LoggerFactory.getLogger ( SubscriptionManager.class );
+
+    /**
+     * The key of a group
+     */
+    public static class GroupKey
+    {
+        private final int updateRate;
+
+        private final Float percentDeadband;
+
+        public GroupKey ( final int updateRate, final Float percentDeadband )
+        {
+            super ();
+            this.updateRate = updateRate;
+            this.percentDeadband = percentDeadband;
+        }
+
+        public int getUpdateRate ()
+        {
+            return this.updateRate;
+        }
+
+        public Float getPercentDeadband ()
+        {
+            return this.percentDeadband;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            final int PRIME = 31;
+            int result = 1;
+            result = PRIME * result + this.updateRate;
+            result = PRIME * result + ( this.percentDeadband == null ? 0 : this.percentDeadband.hashCode () );
+            return result;
+        }
+
+        @Override
+        public boolean equals ( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( obj == null )
+            {
+                return false;
+            }
+            if ( getClass () != obj.getClass () )
+            {
+                return false;
+            }
+            final GroupKey other = (GroupKey)obj;
+            if ( this.updateRate != other.updateRate )
+            {
+                return false;
+            }
+            if ( this.percentDeadband == null )
+            {
+                return other.percentDeadband == null;
+            }
+            return this.percentDeadband.equals ( other.percentDeadband );
+        }
+
+        @Override
+        public String toString ()
+        {
+            return String.format ( "%s ms / %s %%", this.updateRate, this.percentDeadband );
+        }
+    }
+
+    /**
+     * An access which creates its group with a specific update rate and deadband
+     */
+    private static class GroupAccess extends Async20Access
+    {
+        private final GroupKey key;
+
+        public GroupAccess ( final Server server, final GroupKey key, final boolean initialRefresh ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+        {
+            super ( server, key.getUpdateRate (), initialRefresh );
+            this.key = key;
+        }
+
+        @Override
+        protected Group createGroup () throws JIException, IllegalArgumentException, UnknownHostException, NotConnectedException, DuplicateGroupException
+        {
+            return this.server.addGroup ( null, true, this.key.getUpdateRate (), this.key.getPercentDeadband () );
+        }
+    }
+
+    private final Server server;
+
+    private final boolean initialRefresh;
+
+    private int[] updateRates = new int[0];
+
+    private boolean bound = false;
+
+    private final Map<GroupKey, AccessBase> accesses = new HashMap<GroupKey, AccessBase> ();
+
+    private final Map<GroupKey, Set<String>> groupItems = new HashMap<GroupKey, Set<String>> ();
+
+    private final Map<String, GroupKey> itemKeys = new HashMap<String, GroupKey> ();
+
+    private final Map<String, DataCallback> itemSet = new HashMap<String, DataCallback> ();
+
+    public SubscriptionManager ( final Server server, final boolean initialRefresh )
+    {
+        super ();
+        this.server = server;
+        this.initialRefresh = initialRefresh;
+    }
+
+    public SubscriptionManager ( final Server server, final boolean initialRefresh, final int... updateRates )
+    {
+        this ( server, initialRefresh );
+        setUpdateRates ( updateRates );
+    }
+
+    /**
+     * Set the update rates groups are created for. If no update rates are set
+     * a group is created for each distinct requested update rate.
+     * <br/>
+     * Items which are already subscribed are not moved.
+     * @param updateRates the update rates in milliseconds, in any order
+     */
+    public synchronized void setUpdateRates ( final int... updateRates )
+    {
+        final int[] rates = updateRates.clone ();
+        for ( final int rate : rates )
+        {
+            if ( rate <= 0 )
+            {
+                throw new IllegalArgumentException ( "Update rates must be greater than zero" );
+            }
+        }
+        Arrays.sort ( rates );
+        this.updateRates = rates;
+    }
+
+    public synchronized int[] getUpdateRates ()
+    {
+        return this.updateRates.clone ();
+    }
+
+    /**
+     * Map a requested update rate to the rate of the group.
+     * <br/>
+     * The update rates are kept sorted ascending by {@link #setUpdateRates(int...)}. If the
+     * requested rate is faster than all configured rates the fastest configured rate is used.
+     * @param updateRate the requested update rate
+     * @return the update rate of the group
+     */
+    protected int mapUpdateRate ( final int updateRate )
+    {
+        int result = updateRate;
+        for ( final int rate : this.updateRates )
+        {
+            if ( rate <= updateRate )
+            {
+                result = rate;
+            }
+        }
+        if ( this.updateRates.length > 0 && updateRate < this.updateRates[0] )
+        {
+            logger.info ( "Requested update rate of {} ms is faster than the fastest configured rate. Using {} ms.", updateRate, this.updateRates[0] );
+            result = this.updateRates[0];
+        }
+        return result;
+    }
+
+    public synchronized boolean isBound ()
+    {
+        return this.bound;
+    }
+
+    public synchronized void bind ()
+    {
+        if ( this.bound )
+        {
+            return;
+        }
+
+        this.bound = true;
+        for ( final AccessBase access : this.accesses.values () )
+        {
+            access.bind ();
+        }
+    }
+
+    public synchronized void unbind () throws JIException
+    {
+        if ( !this.bound )
+        {
+            return;
+        }
+
+        this.bound = false;
+        for ( final AccessBase access : this.accesses.values () )
+        {
+            access.unbind ();
+        }
+    }
+
+    /**
+     * Subscribe to an item using the default settings of the server
+     * @param itemId the item to subscribe
+     * @param dataCallback the callback to notify
+     * @throws JIException
+     * @throws AddFailedException
+     */
+    public void subscribe ( final String itemId, final DataCallback dataCallback ) throws JIException, AddFailedException
+    {
+        subscribe ( itemId, this.server.getDefaultUpdateRate (), this.server.getDefaultPercentDeadband (), dataCallback );
+    }
+
+    /**
+     * Subscribe to an item. If the item is already subscribed its requirements will
+     * be changed to the new ones and the callback will be replaced. If only the callback
+     * changes the item stays in its group.
+     * @param itemId the item to subscribe
+     * @param updateRate the required update rate in milliseconds
+     * @param percentDeadband the required percent deadband or <code>null</code> to let the server decide
+     * @param dataCallback the callback to notify
+     * @throws JIException
+     * @throws AddFailedException
+     */
+    public synchronized void subscribe ( final String itemId, final int updateRate, final Float percentDeadband, final DataCallback dataCallback ) throws JIException, AddFailedException
+    {
+        final GroupKey key = new GroupKey ( mapUpdateRate ( updateRate ), percentDeadband );
+        final GroupKey oldKey = this.itemKeys.get ( itemId );
+
+        if ( key.equals ( oldKey ) )
+        {
+            if ( this.itemSet.get ( itemId ) != dataCallback )
+            {
+                this.itemSet.put ( itemId, dataCallback );
+                this.accesses.get ( key ).setItemCallback ( itemId, dataCallback );
+            }
+            return;
+        }
+
+        if ( oldKey != null )
+        {
+            logger.debug ( "Moving item {} from {} to {}", new Object[] { itemId, oldKey, key } );
+            detach ( itemId, oldKey );
+        }
+
+        this.itemSet.put ( itemId, dataCallback );
+        this.itemKeys.put ( itemId, key );
+        this.groupItems.get ( getAccessKey ( key ) ).add ( itemId );
+        this.accesses.get ( key ).addItem ( itemId, dataCallback );
+    }
+
+    /**
+     * Change the requirements of a subscribed item. The item is moved to the matching group.
+     * @param itemId the item to change
+     * @param updateRate the required update rate in milliseconds
+     * @param percentDeadband the required percent deadband or <code>null</code> to let the server decide
+     * @throws JIException
+     * @throws AddFailedException
+     */
+    public synchronized void changeRequirements ( final String itemId, final int updateRate, final Float percentDeadband ) throws JIException, AddFailedException
+    {
+        final DataCallback dataCallback = this.itemSet.get ( itemId );
+        if ( dataCallback == null )
+        {
+            throw new IllegalArgumentException ( String.format ( "Item '%s' is not subscribed", itemId ) );
+        }
+        subscribe ( itemId, updateRate, percentDeadband, dataCallback );
+    }
+
+    public synchronized void unsubscribe ( final String itemId )
+    {
+        final GroupKey key = this.itemKeys.remove ( itemId );
+        if ( key == null )
+        {
+            return;
+        }
+        this.itemSet.remove ( itemId );
+        detach ( itemId, key );
+    }
+
+    /**
+     * Get the group key an item is currently assigned to
+     * @param itemId the item
+     * @return the group key or <code>null</code> if the item is not subscribed
+     */
+    public synchronized GroupKey getGroupKey ( final String itemId )
+    {
+        return this.itemKeys.get ( itemId );
+    }
+
+    /**
+     * Get the number of groups currently in use
+     * @return the number of groups
+     */
+    public synchronized int getGroupCount ()
+    {
+        return this.accesses.size ();
+    }
+
+    private GroupKey getAccessKey ( final GroupKey key )
+    {
+        if ( this.accesses.containsKey ( key ) )
+        {
+            return key;
+        }
+
+        logger.debug ( "Creating group for {}", key );
+
+        final AccessBase access;
+        try
+        {
+            access = createAccess ( key );
+        }
+        catch ( final Exception e )
+        {
+            throw new RuntimeException ( "Failed to create access", e );
+        }
+
+        this.accesses.put ( key, access );
+        this.groupItems.put ( key, new HashSet<String> () );
+        if ( this.bound )
+        {
+            access.bind ();
+        }
+        return key;
+    }
+
+    /**
+     * Create the access for a group
+     * @param key the group settings
+     * @return the new access
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws NotConnectedException
+     * @throws JIException
+     * @throws DuplicateGroupException
+     */
+    protected AccessBase createAccess ( final GroupKey key ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        return new GroupAccess ( this.server, key, this.initialRefresh );
+    }
+
+    private void detach ( final String itemId, final GroupKey key )
+    {
+        final AccessBase access = this.accesses.get ( key );
+        final Set<String> items = this.groupItems.get ( key );
+
+        items.remove ( itemId );
+        access.removeItem ( itemId );
+
+        if ( items.isEmpty () )
+        {
+            logger.debug ( "Removing unused group for {}", key );
+            this.accesses.remove ( key );
+            this.groupItems.remove ( key );
+            try
+            {
+                access.unbind ();
+            }
+            catch ( final JIException e )
+            {
+                logger.info ( "Failed to unbind access. No problem if we already lost the connection", e );
+            }
+        }
+    }
+}
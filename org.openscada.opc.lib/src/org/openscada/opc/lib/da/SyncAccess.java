@@ -35,6 +35,18 @@ public class SyncAccess extends AccessBase implements Runnable
 
     private Throwable lastError = null;
 
+    private PollingScheduler pollingScheduler = null;
+
+    private OverrunPolicy overrunPolicy = OverrunPolicy.SKIP;
+
+    private PollingScheduler.Task pollingTask = null;
+
+    /**
+     * The server handles of the items to read. <code>null</code> if the
+     * item set changed and they have to be re-created.
+     */
+    private Integer[] readHandles = null;
+
     public SyncAccess ( final Server server, final int period ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
     {
         super ( server, period );
@@ -45,25 +57,50 @@ public class SyncAccess extends AccessBase implements Runnable
         super ( server, period, logTag );
     }
 
+    /**
+     * Create a new sync access which uses a shared polling scheduler instead of its own thread
+     * @param server the server
+     * @param period the period in milliseconds
+     * @param pollingScheduler the shared scheduler
+     * @param overrunPolicy the policy if a poll takes longer than the period
+     * @throws IllegalArgumentException
+     * @throws UnknownHostException
+     * @throws NotConnectedException
+     * @throws JIException
+     * @throws DuplicateGroupException
+     */
+    public SyncAccess ( final Server server, final int period, final PollingScheduler pollingScheduler, final OverrunPolicy overrunPolicy ) throws IllegalArgumentException, UnknownHostException, NotConnectedException, JIException, DuplicateGroupException
+    {
+        super ( server, period );
+        this.pollingScheduler = pollingScheduler;
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    /**
+     * Set the shared polling scheduler. The change is applied the next time the access gets started.
+     * @param pollingScheduler the shared scheduler or <code>null</code> to use a thread of its own
+     * @param overrunPolicy the policy if a poll takes longer than the period
+     */
+    public synchronized void setPollingScheduler ( final PollingScheduler pollingScheduler, final OverrunPolicy overrunPolicy )
+    {
+        this.pollingScheduler = pollingScheduler;
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    /**
+     * Get the scheduled polling task
+     * @return the polling task or <code>null</code> if the access is not using a polling scheduler or is not active
+     */
+    public synchronized PollingScheduler.Task getPollingTask ()
+    {
+        return this.pollingTask;
+    }
+
     public void run ()
     {
         while ( this.active )
         {
-            try
-            {
-                runOnce ();
-                if ( this.lastError != null )
-                {
-                    this.lastError = null;
-                    handleError ( null );
-                }
-            }
-            catch ( Throwable e )
-            {
-                logger.error ( "Sync read failed", e );
-                handleError ( e );
-                this.server.disconnect ();
-            }
+            poll ();
 
             try
             {
@@ -75,6 +112,28 @@ public class SyncAccess extends AccessBase implements Runnable
         }
     }
 
+    /**
+     * Run one cycle and handle errors
+     */
+    protected void poll ()
+    {
+        try
+        {
+            runOnce ();
+            if ( this.lastError != null )
+            {
+                this.lastError = null;
+                handleError ( null );
+            }
+        }
+        catch ( Throwable e )
+        {
+            logger.error ( "Sync read failed", e );
+            handleError ( e );
+            this.server.disconnect ();
+        }
+    }
+
     protected void runOnce () throws JIException
     {
         if ( !this.active || this.group == null )
@@ -88,22 +147,78 @@ public class SyncAccess extends AccessBase implements Runnable
         // calling updateItem
         synchronized ( this )
         {
-            Item[] items = this.items.keySet ().toArray ( new Item[this.items.size ()] );
-            result = this.group.read ( false, items );
+            if ( this.readHandles == null )
+            {
+                this.readHandles = this.group.getServerHandles ( this.items.keySet ().toArray ( new Item[this.items.size ()] ) );
+            }
+            result = this.group.read ( false, this.readHandles );
         }
 
+        final long receiveTime = System.currentTimeMillis ();
+        final long receiveNanos = System.nanoTime ();
         for ( Map.Entry<Item, ItemState> entry : result.entrySet () )
         {
-            updateItem ( entry.getKey (), entry.getValue () );
+            deliverUpdate ( entry.getKey (), entry.getValue (), receiveTime, receiveNanos );
         }
 
     }
 
+    /**
+     * Mark the prepared read request as outdated
+     */
+    protected synchronized void invalidateReadItems ()
+    {
+        this.readHandles = null;
+    }
+
+    @Override
+    protected void itemRealized ( final Item item, final DataCallback dataCallback )
+    {
+        invalidateReadItems ();
+        super.itemRealized ( item, dataCallback );
+    }
+
+    @Override
+    protected void unrealizeItem ( final String itemId )
+    {
+        invalidateReadItems ();
+        super.unrealizeItem ( itemId );
+    }
+
+    @Override
+    protected void unrealizeAll ()
+    {
+        invalidateReadItems ();
+        super.unrealizeAll ();
+    }
+
+    @Override
+    public synchronized void clear ()
+    {
+        invalidateReadItems ();
+        super.clear ();
+    }
+
     @Override
     protected synchronized void start () throws JIException, IllegalArgumentException, UnknownHostException, NotConnectedException, DuplicateGroupException
     {
         super.start ();
 
+        if ( this.pollingScheduler != null )
+        {
+            this.pollingTask = this.pollingScheduler.schedule ( new Runnable () {
+
+                public void run ()
+                {
+                    if ( SyncAccess.this.active )
+                    {
+                        poll ();
+                    }
+                }
+            }, getPeriod (), this.overrunPolicy );
+            return;
+        }
+
         this.runner = new Thread ( this, "UtgardSyncReader" );
         this.runner.setDaemon ( true );
         this.runner.start ();
@@ -114,7 +229,13 @@ public class SyncAccess extends AccessBase implements Runnable
     {
         super.stop ();
 
+        if ( this.pollingTask != null )
+        {
+            this.pollingTask.cancel ();
+            this.pollingTask = null;
+        }
         this.runner = null;
         this.items.clear ();
+        invalidateReadItems ();
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.browser;
+
+/**
+ * The way the {@link TreeBrowser} resolves the item IDs of the leaves it finds
+ */
+public enum ItemIdResolution
+{
+    /**
+     * Resolve the item ID of each leaf while browsing. This requires one call
+     * to the server for each leaf.
+     */
+    EAGER,
+    /**
+     * Resolve the item IDs when one leaf of a branch is first asked for its item ID.
+     * All unresolved leaves of the same branch are resolved together, so the browser is
+     * moved to the branch only once. Each leaf still requires one call to the server,
+     * since the server interface resolves one item ID per call. The calls are deferred,
+     * not saved: leaves which are never asked for their item ID cost nothing.
+     */
+    LAZY,
+    /**
+     * Do not ask the server at all but build the item ID from the branch names and
+     * the leaf name using the item ID separator of the tree browser. This only works
+     * if the server is known to create its item IDs this way.
+     */
+    PATH_DERIVED
+}
@@ -27,6 +27,8 @@ public class Leaf
 
     private String _itemId = null;
 
+    private ItemIdResolver _resolver = null;
+
     public Leaf ( final Branch parent, final String name )
     {
         this._parent = parent;
@@ -40,14 +42,49 @@ public class Leaf
         this._itemId = itemId;
     }
 
+    /**
+     * Create a leaf whose item ID will be resolved on first access
+     * @param parent The parent branch
+     * @param name The name of the leaf
+     * @param resolver The resolver to use for getting the item ID
+     */
+    Leaf ( final Branch parent, final String name, final ItemIdResolver resolver )
+    {
+        this._parent = parent;
+        this._name = name;
+        this._resolver = resolver;
+    }
+
+    /**
+     * Get the item ID of the leaf.
+     * <br/>
+     * If the leaf was browsed using {@link ItemIdResolution#LAZY} the item ID
+     * will be requested from the server on the first call.
+     * @return The item ID or <code>null</code> if it is unknown
+     */
     public String getItemId ()
     {
+        final ItemIdResolver resolver = this._resolver;
+        if ( this._itemId == null && resolver != null )
+        {
+            resolver.resolve ( this );
+        }
         return this._itemId;
     }
 
     public void setItemId ( final String itemId )
     {
         this._itemId = itemId;
+        this._resolver = null;
+    }
+
+    /**
+     * Check if the item ID is known without asking the server
+     * @return <code>false</code> if the item ID still has to be requested from the server
+     */
+    public boolean isItemIdResolved ()
+    {
+        return this._resolver == null;
     }
 
     public String getName ()
@@ -20,15 +20,21 @@
 package org.openscada.opc.lib.da.browser;
 
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import org.jinterop.dcom.common.JIException;
 import org.jinterop.dcom.core.JIVariant;
 import org.openscada.opc.dcom.da.OPCBROWSEDIRECTION;
 import org.openscada.opc.dcom.da.OPCBROWSETYPE;
 import org.openscada.opc.dcom.da.impl.OPCBrowseServerAddressSpace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Browse through the hierarchical server namespace.
@@ -41,6 +47,11 @@ import org.openscada.opc.dcom.da.impl.OPCBrowseServerAddressSpace;
  */
 public class TreeBrowser extends BaseBrowser
 {
+    private static Logger _log = LoggerFactory.getLogger ( TreeBrowser.class );
+
+    private static final int E_NOTIMPL = 0x80004001;
+
+    private static final int E_INVALIDARG = 0x80070057;
 
     private String _filterCriteria = "";
 
@@ -48,6 +59,40 @@ public class TreeBrowser extends BaseBrowser
 
     private int _variantType = JIVariant.VT_EMPTY;
 
+    private ItemIdResolution _itemIdResolution = ItemIdResolution.EAGER;
+
+    private String _itemIdSeparator = ".";
+
+    private boolean _browseToBranches = false;
+
+    /**
+     * The branch stack the browser is currently positioned at or <code>null</code>
+     * if the position is unknown.
+     */
+    private List<String> _position = null;
+
+    /**
+     * The position change counter of the address space browser after our last move
+     */
+    private long _positionChanges = -1;
+
+    private final ItemIdResolver _lazyResolver = new ItemIdResolver () {
+
+        public String resolve ( final Leaf leaf )
+        {
+            try
+            {
+                resolveItemIds ( leaf.getParent ().getLeaves () );
+            }
+            catch ( final JIException e )
+            {
+                _log.warn ( String.format ( "Failed to resolve item ID of leaf '%s'", leaf.getName () ), e );
+                return null;
+            }
+            return leaf.isItemIdResolved () ? leaf.getItemId () : null;
+        }
+    };
+
     /**
      * Browse for all items without search parameters.
      * <br/>
@@ -78,28 +123,197 @@ public class TreeBrowser extends BaseBrowser
         this._variantType = variantType;
     }
 
+    /**
+     * Get the way item IDs of leaves are resolved
+     * @return the item ID resolution mode
+     */
+    public ItemIdResolution getItemIdResolution ()
+    {
+        return this._itemIdResolution;
+    }
+
+    /**
+     * Set the way item IDs of leaves are resolved. The default is {@link ItemIdResolution#EAGER}.
+     * @param itemIdResolution the item ID resolution mode
+     */
+    public void setItemIdResolution ( final ItemIdResolution itemIdResolution )
+    {
+        this._itemIdResolution = itemIdResolution;
+    }
+
+    /**
+     * Get the separator used for {@link ItemIdResolution#PATH_DERIVED}
+     * @return the item ID separator
+     */
+    public String getItemIdSeparator ()
+    {
+        return this._itemIdSeparator;
+    }
+
+    /**
+     * Set the separator which is placed between the branch names and the leaf name
+     * when using {@link ItemIdResolution#PATH_DERIVED} or {@link #setBrowseToBranches(boolean)}.
+     * The default is <q>.</q>.
+     * @param itemIdSeparator the item ID separator
+     */
+    public void setItemIdSeparator ( final String itemIdSeparator )
+    {
+        this._itemIdSeparator = itemIdSeparator;
+    }
+
+    /**
+     * Check if the browser moves to branches using one {@link OPCBROWSEDIRECTION#OPC_BROWSE_TO} call
+     * @return <code>true</code> if branches are addressed by their fully qualified name
+     */
+    public boolean isBrowseToBranches ()
+    {
+        return this._browseToBranches;
+    }
+
+    /**
+     * Move to branches using one {@link OPCBROWSEDIRECTION#OPC_BROWSE_TO} call with the fully
+     * qualified branch name instead of walking up and down the tree.
+     * <br/>
+     * The fully qualified name is built from the branch stack using the item ID separator. So this
+     * only works for servers supporting <code>OPC_BROWSE_TO</code> (OPC DA 2.0) whose branch
+     * names are built that way. If the call fails the browser falls back to relative navigation
+     * for this move. If the server reports the call as not implemented or the name as invalid
+     * the option is turned off.
+     * The default is <code>false</code>.
+     * @param browseToBranches <code>true</code> to use <code>OPC_BROWSE_TO</code>
+     */
+    public void setBrowseToBranches ( final boolean browseToBranches )
+    {
+        this._browseToBranches = browseToBranches;
+    }
+
+    /**
+     * Forget the current position of the browser. The next move will start at the root folder.
+     * <br/>
+     * Moves of the address space browser by someone else (e.g. another tree browser
+     * or a flat browser of the same server) are detected automatically.
+     */
+    public void invalidatePosition ()
+    {
+        this._position = null;
+    }
+
+    /**
+     * Change the position of the address space browser and keep track of the new position
+     * @param position The position parameter
+     * @param direction The direction to move
+     * @throws JIException
+     */
+    protected void changePosition ( final String position, final OPCBROWSEDIRECTION direction ) throws JIException
+    {
+        final List<String> current = this._position;
+        this._position = null;
+
+        this._browser.changePosition ( position, direction );
+        this._positionChanges = this._browser.getPositionChanges ();
+
+        if ( current == null )
+        {
+            return;
+        }
+
+        switch ( direction )
+        {
+        case OPC_BROWSE_DOWN:
+            current.add ( position );
+            this._position = current;
+            break;
+        case OPC_BROWSE_UP:
+            if ( !current.isEmpty () )
+            {
+                current.remove ( current.size () - 1 );
+                this._position = current;
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
     /**
      * Move the tree browser to the root folder
      * @throws JIException
      */
     protected void moveToRoot () throws JIException
     {
+        this._position = null;
         this._browser.changePosition ( null, OPCBROWSEDIRECTION.OPC_BROWSE_TO );
+        this._positionChanges = this._browser.getPositionChanges ();
+        this._position = new ArrayList<String> ();
     }
 
     /**
      * Move the tree browser to a branch
+     * <br/>
+     * If the current position is known the browser will only go up to the
+     * common parent and then down to the branch, if that needs fewer calls
+     * than starting at the root folder.
      * @param branch The branch to move to
      * @throws JIException
      */
     protected void moveToBranch ( final Branch branch ) throws JIException
     {
-        Collection<String> branchStack = branch.getBranchStack ();
+        List<String> branchStack = new ArrayList<String> ( branch.getBranchStack () );
 
-        moveToRoot ();
-        for ( String branchName : branchStack )
+        if ( this._position != null && this._positionChanges != this._browser.getPositionChanges () )
         {
-            this._browser.changePosition ( branchName, OPCBROWSEDIRECTION.OPC_BROWSE_DOWN );
+            _log.debug ( "Address space browser was moved by someone else. Position is unknown." );
+            this._position = null;
+        }
+
+        if ( this._browseToBranches && !branchStack.isEmpty () && !branchStack.equals ( this._position ) )
+        {
+            try
+            {
+                this._position = null;
+                this._browser.changePosition ( deriveItemId ( branch.getParent (), branch.getName () ), OPCBROWSEDIRECTION.OPC_BROWSE_TO );
+                this._positionChanges = this._browser.getPositionChanges ();
+                this._position = branchStack;
+                return;
+            }
+            catch ( final JIException e )
+            {
+                _log.info ( String.format ( "Failed to browse to branch '%s'. Falling back to relative navigation.", branch.getName () ), e );
+                if ( e.getErrorCode () == E_NOTIMPL || e.getErrorCode () == E_INVALIDARG )
+                {
+                    // the server does not support this, don't try again
+                    this._browseToBranches = false;
+                }
+            }
+        }
+
+        int common = 0;
+        final List<String> current = this._position;
+        if ( current != null )
+        {
+            while ( common < current.size () && common < branchStack.size () && current.get ( common ).equals ( branchStack.get ( common ) ) )
+            {
+                common++;
+            }
+        }
+
+        if ( current == null || current.size () - common + branchStack.size () - common > branchStack.size () + 1 )
+        {
+            // moving from the root is cheaper
+            moveToRoot ();
+            common = 0;
+        }
+        else
+        {
+            for ( int i = current.size (); i > common; i-- )
+            {
+                changePosition ( null, OPCBROWSEDIRECTION.OPC_BROWSE_UP );
+            }
+        }
+
+        for ( String branchName : branchStack.subList ( common, branchStack.size () ) )
+        {
+            changePosition ( branchName, OPCBROWSEDIRECTION.OPC_BROWSE_DOWN );
         }
     }
 
@@ -200,11 +414,101 @@ public class TreeBrowser extends BaseBrowser
 
         for ( String item : browse ( OPCBROWSETYPE.OPC_LEAF, this._filterCriteria, this._accessMask, this._variantType ) )
         {
-            Leaf leaf = new Leaf ( branch, item, this._browser.getItemID ( item ) );
+            Leaf leaf;
+            switch ( this._itemIdResolution )
+            {
+            case LAZY:
+                leaf = new Leaf ( branch, item, this._lazyResolver );
+                break;
+            case PATH_DERIVED:
+                leaf = new Leaf ( branch, item, deriveItemId ( branch, item ) );
+                break;
+            default:
+                leaf = new Leaf ( branch, item, this._browser.getItemID ( item ) );
+                break;
+            }
             branch.getLeaves ().add ( leaf );
         }
     }
 
+    /**
+     * Build the item ID of a leaf from its branch stack
+     * @param branch The branch of the leaf
+     * @param name The name of the leaf
+     * @return The derived item ID
+     */
+    protected String deriveItemId ( final Branch branch, final String name )
+    {
+        StringBuilder sb = new StringBuilder ();
+        for ( String branchName : branch.getBranchStack () )
+        {
+            sb.append ( branchName );
+            sb.append ( this._itemIdSeparator );
+        }
+        sb.append ( name );
+        return sb.toString ();
+    }
+
+    /**
+     * Resolve the item IDs of all unresolved leaves of the branch and its sub-branches.
+     * @param branch The branch to resolve
+     * @throws JIException
+     */
+    public void resolveItemIds ( final Branch branch ) throws JIException
+    {
+        List<Leaf> leaves = new LinkedList<Leaf> ();
+        collectLeaves ( branch, leaves );
+        resolveItemIds ( leaves );
+    }
+
+    private void collectLeaves ( final Branch branch, final List<Leaf> leaves )
+    {
+        leaves.addAll ( branch.getLeaves () );
+        for ( Branch subBranch : branch.getBranches () )
+        {
+            collectLeaves ( subBranch, leaves );
+        }
+    }
+
+    /**
+     * Resolve the item IDs of unresolved leaves.
+     * <br/>
+     * The leaves are grouped by their branch so that the browser has to be moved
+     * only once for each branch. Each leaf still takes one call to the server.
+     * Leaves that are already resolved are skipped.
+     * The browser position is changed by this call.
+     * @param leaves The leaves to resolve
+     * @throws JIException
+     */
+    public void resolveItemIds ( final Collection<Leaf> leaves ) throws JIException
+    {
+        Map<Branch, List<Leaf>> batches = new LinkedHashMap<Branch, List<Leaf>> ();
+        for ( Leaf leaf : leaves )
+        {
+            if ( leaf.isItemIdResolved () )
+            {
+                continue;
+            }
+            List<Leaf> batch = batches.get ( leaf.getParent () );
+            if ( batch == null )
+            {
+                batch = new LinkedList<Leaf> ();
+                batches.put ( leaf.getParent (), batch );
+            }
+            batch.add ( leaf );
+        }
+
+        for ( Map.Entry<Branch, List<Leaf>> entry : batches.entrySet () )
+        {
+            _log.debug ( String.format ( "Resolving %d item IDs", entry.getValue ().size () ) );
+            moveToBranch ( entry.getKey () );
+            for ( Leaf leaf : entry.getValue () )
+            {
+                leaf.setItemId ( this._browser.getItemID ( leaf.getName () ) );
+            }
+        }
+    }
+
     protected void browseBranches ( final Branch branch, final boolean leaves, final boolean descend ) throws IllegalArgumentException, UnknownHostException, JIException
     {
         branch.setBranches ( new LinkedList<Branch> () );
@@ -215,9 +519,9 @@ public class TreeBrowser extends BaseBrowser
             // descend only if we should
             if ( descend )
             {
-                this._browser.changePosition ( item, OPCBROWSEDIRECTION.OPC_BROWSE_DOWN );
+                changePosition ( item, OPCBROWSEDIRECTION.OPC_BROWSE_DOWN );
                 browse ( subBranch, leaves, true, true );
-                this._browser.changePosition ( null, OPCBROWSEDIRECTION.OPC_BROWSE_UP );
+                changePosition ( null, OPCBROWSEDIRECTION.OPC_BROWSE_UP );
             }
             branch.getBranches ().add ( subBranch );
         }
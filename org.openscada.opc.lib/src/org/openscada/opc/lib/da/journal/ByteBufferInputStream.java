@@ -0,0 +1,69 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.journal;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading from the current position of a byte buffer.
+ * The buffer can be replaced in order to reuse the stream.
+ */
+class ByteBufferInputStream extends InputStream
+{
+    private ByteBuffer buffer;
+
+    public void setBuffer ( final ByteBuffer buffer )
+    {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read ()
+    {
+        if ( !this.buffer.hasRemaining () )
+        {
+            return -1;
+        }
+        return this.buffer.get () & 0xFF;
+    }
+
+    @Override
+    public int read ( final byte[] b, final int off, final int len )
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !this.buffer.hasRemaining () )
+        {
+            return -1;
+        }
+        final int n = Math.min ( len, this.buffer.remaining () );
+        this.buffer.get ( b, off, n );
+        return n;
+    }
+
+    @Override
+    public int available ()
+    {
+        return this.buffer.remaining ();
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.journal;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+import org.openscada.opc.lib.da.AccessBase;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+import org.openscada.opc.lib.da.UpdateJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk backed store and forward journal of item updates.
+ * <br/>
+ * Set the journal on an {@link AccessBase} using {@link AccessBase#setJournal(UpdateJournal)}
+ * and it will append every update that is delivered to the data callbacks. The
+ * updates are written to memory mapped segment files in the journal directory. When a segment
+ * is full a new one is started and the oldest segments are deleted once there
+ * are more than the configured maximum. The data is read back using a {@link JournalCursor}
+ * which continues from its last acknowledged offset. When the journal is opened again
+ * it continues to append to the last segment.
+ * <br/>
+ * A segment is not deleted as long as a cursor has not acknowledged all of its updates,
+ * even if the journal then exceeds the maximum number of segments. Use {@link #deleteCursor(String)}
+ * to remove a cursor which is no longer consumed.
+ * <br/>
+ * An update takes about 10 to 20 bytes plus the value, so the default of 256 segments of
+ * 64 MB holds several hours of 50.000 updates per second. The defaults can be changed by the system properties
+ * <code>openscada.opc.journal.segment-size</code> and <code>openscada.opc.journal.max-segments</code>.
+ * <br/>
+ * Records are encoded into a reused buffer and copied to the mapped segment, so
+ * appending creates hardly any garbage. Only the current segment is mapped by the writer. The data is forced to disk when a segment is completed, when
+ * the journal is closed or when {@link #flush()} is called.
+ */
+public class Journal implements UpdateJournal, Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger ( Journal.class );
+
+    public static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger ( "openscada.opc.journal.segment-size", 64 * 1024 * 1024 );
+
+    public static final int DEFAULT_MAX_SEGMENTS = Integer.getInteger ( "openscada.opc.journal.max-segments", 256 );
+
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    /**
+     * The segment files by the offset of their first byte
+     */
+    private final TreeMap<Long, File> segments = new TreeMap<Long, File> ();
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer> ();
+
+    private final ScratchBuffer scratch = new ScratchBuffer ( 256 );
+
+    private final DataOutputStream out = new DataOutputStream ( this.scratch );
+
+    private MappedByteBuffer segment;
+
+    private long segmentBase;
+
+    private long lastTimestamp;
+
+    private volatile long endOffset;
+
+    private volatile long appended;
+
+    private volatile long failures;
+
+    private boolean closed;
+
+    public Journal ( final File directory ) throws IOException
+    {
+        this ( directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS );
+    }
+
+    public Journal ( final File directory, final int segmentSize, final int maxSegments ) throws IOException
+    {
+        if ( segmentSize < JournalFormat.HEADER_SIZE + MAX_RECORD_SIZE )
+        {
+            throw new IllegalArgumentException ( String.format ( "Segment size must be at least %d bytes", JournalFormat.HEADER_SIZE + MAX_RECORD_SIZE ) );
+        }
+        if ( maxSegments < 2 )
+        {
+            throw new IllegalArgumentException ( "At least two segments are required" );
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        if ( !directory.isDirectory () && !directory.mkdirs () )
+        {
+            throw new IOException ( String.format ( "Unable to create journal directory: %s", directory ) );
+        }
+
+        final File[] files = directory.listFiles ();
+        if ( files != null )
+        {
+            for ( final File file : files )
+            {
+                final long base = JournalFormat.parseSegmentName ( file.getName () );
+                if ( base >= 0 && file.isFile () )
+                {
+                    this.segments.put ( base, file );
+                }
+            }
+        }
+
+        if ( this.segments.isEmpty () )
+        {
+            startSegment ( 0 );
+        }
+        else if ( !reopenSegment ( this.segments.lastEntry () ) )
+        {
+            final Map.Entry<Long, File> last = this.segments.lastEntry ();
+            startSegment ( last.getKey () + last.getValue ().length () );
+        }
+    }
+
+    public File getDirectory ()
+    {
+        return this.directory;
+    }
+
+    /**
+     * Append an update to the journal. Errors are logged and counted, but not thrown.
+     */
+    public synchronized void append ( final Item item, final ItemState itemState )
+    {
+        if ( this.closed )
+        {
+            this.failures++;
+            return;
+        }
+
+        try
+        {
+            if ( !write ( item.getId (), itemState ) )
+            {
+                roll ();
+                if ( !write ( item.getId (), itemState ) )
+                {
+                    this.failures++;
+                    logger.info ( "Update of {} exceeds maximum record size", item.getId () );
+                    return;
+                }
+            }
+            this.appended++;
+            this.endOffset = this.segmentBase + this.segment.position ();
+        }
+        catch ( final IOException e )
+        {
+            this.failures++;
+            logger.warn ( "Failed to append update", e );
+        }
+    }
+
+    /**
+     * Write the update to the current segment
+     * @return <code>false</code> if the update does not fit in the current segment
+     * @throws IOException if the update cannot be written
+     */
+    private boolean write ( final String itemId, final ItemState itemState ) throws IOException
+    {
+        Integer index = this.dictionary.get ( itemId );
+        if ( index == null )
+        {
+            index = this.dictionary.size ();
+
+            this.scratch.reset ();
+            this.out.writeByte ( JournalFormat.TYPE_DEFINE );
+            VariantCodec.writeVarLong ( this.out, index );
+            this.out.writeUTF ( itemId );
+            if ( !put () )
+            {
+                return false;
+            }
+
+            this.dictionary.put ( itemId, index );
+        }
+
+        final Calendar timestamp = itemState.getTimestamp ();
+        final Short quality = itemState.getQuality ();
+
+        int flags = 0;
+        if ( timestamp != null )
+        {
+            flags |= JournalFormat.FLAG_TIMESTAMP;
+        }
+        if ( quality != null )
+        {
+            flags |= JournalFormat.FLAG_QUALITY;
+        }
+
+        this.scratch.reset ();
+        this.out.writeByte ( JournalFormat.TYPE_UPDATE );
+        VariantCodec.writeVarLong ( this.out, index );
+        this.out.writeByte ( flags );
+
+        long time = this.lastTimestamp;
+        if ( timestamp != null )
+        {
+            time = timestamp.getTimeInMillis ();
+            VariantCodec.writeZigZag ( this.out, time - this.lastTimestamp );
+        }
+        if ( quality != null )
+        {
+            this.out.writeShort ( quality );
+        }
+        VariantCodec.writeZigZag ( this.out, itemState.getErrorCode () );
+        VariantCodec.writeValue ( this.out, itemState.getValue () );
+
+        if ( !put () )
+        {
+            return false;
+        }
+
+        this.lastTimestamp = time;
+        return true;
+    }
+
+    /**
+     * Copy the scratch buffer as record to the current segment. The length is
+     * written last so that readers never see a partial record.
+     * @return <code>false</code> if the record does not fit in the current segment
+     */
+    private boolean put ()
+    {
+        final int length = this.scratch.size ();
+        if ( length > MAX_RECORD_SIZE )
+        {
+            return false;
+        }
+
+        final int position = this.segment.position ();
+        if ( this.segment.remaining () < 4 + length )
+        {
+            return false;
+        }
+
+        this.segment.position ( position + 4 );
+        this.segment.put ( this.scratch.getBuffer (), 0, length );
+        if ( this.segment.remaining () >= 4 )
+        {
+            // clear what a crashed writer may have left behind in a reopened segment
+            this.segment.putInt ( this.segment.position (), 0 );
+        }
+        this.segment.putInt ( position, length );
+        return true;
+    }
+
+    private void roll () throws IOException
+    {
+        final long next = this.segmentBase + this.segment.capacity ();
+        this.segment.force ();
+        startSegment ( next );
+    }
+
+    private void startSegment ( final long base ) throws IOException
+    {
+        final File file = new File ( this.directory, JournalFormat.segmentName ( base ) );
+
+        final RandomAccessFile raf = new RandomAccessFile ( file, "rw" );
+        try
+        {
+            raf.setLength ( this.segmentSize );
+            this.segment = raf.getChannel ().map ( MapMode.READ_WRITE, 0, this.segmentSize );
+        }
+        finally
+        {
+            raf.close ();
+        }
+
+        this.segment.putInt ( JournalFormat.MAGIC );
+        this.segment.put ( JournalFormat.VERSION );
+
+        this.segmentBase = base;
+        this.dictionary.clear ();
+        this.lastTimestamp = 0;
+        this.segments.put ( base, file );
+        this.endOffset = base + this.segment.position ();
+
+        discardSegments ();
+    }
+
+    /**
+     * Map an existing segment and continue after its last record. The records are read in order
+     * to restore the segment dictionary and the timestamp base.
+     * @return <code>false</code> if the segment is not a valid segment
+     */
+    private boolean reopenSegment ( final Map.Entry<Long, File> entry ) throws IOException
+    {
+        final File file = entry.getValue ();
+        if ( file.length () < JournalFormat.HEADER_SIZE + 4 )
+        {
+            logger.warn ( "Journal segment is too short, starting a new one: {}", file );
+            return false;
+        }
+
+        final MappedByteBuffer buffer;
+        final RandomAccessFile raf = new RandomAccessFile ( file, "rw" );
+        try
+        {
+            buffer = raf.getChannel ().map ( MapMode.READ_WRITE, 0, raf.length () );
+        }
+        finally
+        {
+            raf.close ();
+        }
+
+        if ( buffer.getInt () != JournalFormat.MAGIC || buffer.get () != JournalFormat.VERSION )
+        {
+            logger.warn ( "Invalid journal segment, starting a new one: {}", file );
+            return false;
+        }
+
+        final ByteBufferInputStream stream = new ByteBufferInputStream ();
+        stream.setBuffer ( buffer );
+        final DataInputStream in = new DataInputStream ( stream );
+
+        this.dictionary.clear ();
+        this.lastTimestamp = 0;
+
+        while ( buffer.remaining () >= 4 )
+        {
+            final int start = buffer.position ();
+            final int length = buffer.getInt ( start );
+            if ( length <= 0 || length > buffer.remaining () - 4 )
+            {
+                break;
+            }
+
+            buffer.position ( start + 4 );
+            final byte type = in.readByte ();
+            if ( type == JournalFormat.TYPE_DEFINE )
+            {
+                final int index = (int)VariantCodec.readVarLong ( in );
+                this.dictionary.put ( in.readUTF (), index );
+            }
+            else if ( type == JournalFormat.TYPE_UPDATE )
+            {
+                VariantCodec.readVarLong ( in );
+                if ( ( in.readUnsignedByte () & JournalFormat.FLAG_TIMESTAMP ) != 0 )
+                {
+                    this.lastTimestamp += VariantCodec.readZigZag ( in );
+                }
+            }
+            buffer.position ( start + 4 + length );
+        }
+
+        logger.info ( "Continuing journal segment {} at {}", file, buffer.position () );
+
+        this.segment = buffer;
+        this.segmentBase = entry.getKey ();
+        this.endOffset = this.segmentBase + buffer.position ();
+        return true;
+    }
+
+    /**
+     * Delete the oldest segments while there are more than the maximum, as long as they
+     * are acknowledged by all cursors
+     */
+    private void discardSegments ()
+    {
+        if ( this.segments.size () <= this.maxSegments )
+        {
+            return;
+        }
+
+        final long acknowledged = getMinimumAcknowledgedOffset ();
+
+        while ( this.segments.size () > this.maxSegments )
+        {
+            final Map.Entry<Long, File> oldest = this.segments.firstEntry ();
+            final long following = this.segments.higherKey ( oldest.getKey () );
+            if ( acknowledged < following )
+            {
+                logger.error ( "Journal has {} segments (maximum {}), but {} is not acknowledged by all cursors", new Object[] { this.segments.size (), this.maxSegments, oldest.getValue () } );
+                return;
+            }
+
+            this.segments.pollFirstEntry ();
+            logger.warn ( "Discarding journal segment: {}", oldest.getValue () );
+            if ( !oldest.getValue ().delete () )
+            {
+                logger.warn ( "Failed to delete journal segment: {}", oldest.getValue () );
+            }
+        }
+    }
+
+    /**
+     * Get the lowest acknowledged offset of all cursors stored in the journal directory
+     * @return the lowest offset, {@link Long#MAX_VALUE} if there are no cursors or {@link Long#MIN_VALUE} if a cursor cannot be read
+     */
+    private long getMinimumAcknowledgedOffset ()
+    {
+        long result = Long.MAX_VALUE;
+
+        final File[] files = this.directory.listFiles ();
+        if ( files == null )
+        {
+            return Long.MIN_VALUE;
+        }
+
+        for ( final File file : files )
+        {
+            if ( file.getName ().endsWith ( JournalFormat.CURSOR_SUFFIX ) )
+            {
+                try
+                {
+                    result = Math.min ( result, readCursor ( file ) );
+                }
+                catch ( final IOException e )
+                {
+                    logger.warn ( String.format ( "Failed to read journal cursor: %s", file ), e );
+                    return Long.MIN_VALUE;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    static long readCursor ( final File file ) throws IOException
+    {
+        final DataInputStream in = new DataInputStream ( new FileInputStream ( file ) );
+        try
+        {
+            return in.readLong ();
+        }
+        finally
+        {
+            in.close ();
+        }
+    }
+
+    /**
+     * Force the current segment to disk
+     */
+    public synchronized void flush ()
+    {
+        if ( !this.closed )
+        {
+            this.segment.force ();
+        }
+    }
+
+    public synchronized void close ()
+    {
+        if ( this.closed )
+        {
+            return;
+        }
+        this.segment.force ();
+        this.segment = null;
+        this.closed = true;
+    }
+
+    /**
+     * Open a cursor on the journal. The cursor stores its acknowledged offset in
+     * the journal directory and continues from there when it is opened again.
+     * @param name the name of the cursor
+     * @return the new cursor
+     * @throws IOException if the stored offset cannot be read
+     */
+    public JournalCursor openCursor ( final String name ) throws IOException
+    {
+        return new JournalCursor ( this, new File ( this.directory, name + JournalFormat.CURSOR_SUFFIX ) );
+    }
+
+    /**
+     * Delete the stored position of a cursor, so that the journal no longer keeps
+     * segments which the cursor has not acknowledged
+     * @param name the name of the cursor
+     * @return <code>true</code> if the cursor was deleted
+     */
+    public boolean deleteCursor ( final String name )
+    {
+        return new File ( this.directory, name + JournalFormat.CURSOR_SUFFIX ).delete ();
+    }
+
+    /**
+     * Get the offset following the last appended update
+     * @return the end offset of the journal
+     */
+    public long getEndOffset ()
+    {
+        return this.endOffset;
+    }
+
+    /**
+     * Get the offset of the oldest update that is still available
+     * @return the start offset of the journal
+     */
+    public synchronized long getStartOffset ()
+    {
+        return this.segments.firstKey () + JournalFormat.HEADER_SIZE;
+    }
+
+    public long getAppended ()
+    {
+        return this.appended;
+    }
+
+    public long getFailures ()
+    {
+        return this.failures;
+    }
+
+    synchronized Map.Entry<Long, File> floorSegment ( final long offset )
+    {
+        return this.segments.floorEntry ( offset );
+    }
+
+    synchronized Map.Entry<Long, File> firstSegment ()
+    {
+        return this.segments.firstEntry ();
+    }
+
+    synchronized Map.Entry<Long, File> higherSegment ( final long base )
+    {
+        return this.segments.higherEntry ( base );
+    }
+
+    static MappedByteBuffer mapReadOnly ( final File file ) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile ( file, "r" );
+        try
+        {
+            final FileChannel channel = raf.getChannel ();
+            return channel.map ( MapMode.READ_ONLY, 0, channel.size () );
+        }
+        finally
+        {
+            raf.close ();
+        }
+    }
+}
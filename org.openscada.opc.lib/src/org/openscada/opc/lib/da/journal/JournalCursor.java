@@ -0,0 +1,338 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.journal;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+import org.openscada.opc.lib.da.ItemState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A consumer position in a {@link Journal}.
+ * <br/>
+ * {@link #next()} returns the updates in the order they were appended. Once
+ * the consumer has forwarded the updates it calls {@link #acknowledge()}, which
+ * stores the position in the journal directory. A cursor that is opened again
+ * with the same name, e.g. after a restart, continues with the first update that was
+ * not acknowledged. {@link #rewind()} returns to that update without reopening the cursor.
+ * <br/>
+ * The position is stored when the cursor is created, so the journal keeps the segments
+ * the cursor has not acknowledged yet. If the segment containing the position was discarded
+ * anyway, e.g. because the cursor was deleted, the cursor continues with the oldest segment
+ * still available.
+ */
+public class JournalCursor implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger ( JournalCursor.class );
+
+    private final Journal journal;
+
+    private final File file;
+
+    private final List<String> dictionary = new ArrayList<String> ();
+
+    private final ByteBufferInputStream stream = new ByteBufferInputStream ();
+
+    private final DataInputStream in = new DataInputStream ( this.stream );
+
+    private ByteBuffer segment;
+
+    private long segmentBase;
+
+    private long lastTimestamp;
+
+    private long position;
+
+    private long acknowledgedOffset;
+
+    private long skipped;
+
+    JournalCursor ( final Journal journal, final File file ) throws IOException
+    {
+        this.journal = journal;
+        this.file = file;
+
+        if ( file.isFile () )
+        {
+            this.acknowledgedOffset = Journal.readCursor ( file );
+        }
+        else
+        {
+            store ( journal.getStartOffset () );
+        }
+
+        this.position = this.acknowledgedOffset;
+    }
+
+    /**
+     * Get the next update
+     * @return the next update or <code>null</code> if the cursor reached the end of the journal
+     * @throws IOException if the journal cannot be read
+     */
+    public synchronized JournalEntry next () throws IOException
+    {
+        while ( true )
+        {
+            final long end = this.journal.getEndOffset ();
+            if ( this.position >= end )
+            {
+                return null;
+            }
+
+            if ( this.segment == null )
+            {
+                seek ( this.position );
+                continue;
+            }
+
+            final int start = this.segment.position ();
+            final int length = this.segment.remaining () < 4 ? 0 : this.segment.getInt ( start );
+            if ( length == 0 )
+            {
+                // end of segment
+                final Map.Entry<Long, File> following = this.journal.higherSegment ( this.segmentBase );
+                if ( following == null )
+                {
+                    return null;
+                }
+                this.segment = null;
+                this.position = following.getKey () + JournalFormat.HEADER_SIZE;
+                continue;
+            }
+
+            final long offset = this.segmentBase + start;
+            this.segment.position ( start + 4 );
+            final JournalEntry entry = readRecord ( offset, offset + 4 + length );
+            this.segment.position ( start + 4 + length );
+            this.position = offset + 4 + length;
+
+            if ( entry != null )
+            {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Map the segment containing the offset and read the segment up to the offset in order to
+     * restore the dictionary and timestamp base
+     */
+    private void seek ( final long offset ) throws IOException
+    {
+        Map.Entry<Long, File> entry = this.journal.floorSegment ( offset );
+        if ( entry == null )
+        {
+            entry = this.journal.firstSegment ();
+            logger.warn ( "Journal position {} was discarded, continuing at {}", offset, entry.getKey () );
+            this.skipped++;
+        }
+
+        this.segment = Journal.mapReadOnly ( entry.getValue () );
+        this.segmentBase = entry.getKey ();
+        this.stream.setBuffer ( this.segment );
+        this.dictionary.clear ();
+        this.lastTimestamp = 0;
+
+        if ( this.segment.getInt () != JournalFormat.MAGIC || this.segment.get () != JournalFormat.VERSION )
+        {
+            throw new IOException ( String.format ( "Invalid journal segment: %s", entry.getValue () ) );
+        }
+
+        final long target = Math.max ( offset, this.segmentBase + JournalFormat.HEADER_SIZE );
+        while ( this.segmentBase + this.segment.position () < target && this.segment.remaining () >= 4 )
+        {
+            final int start = this.segment.position ();
+            final int length = this.segment.getInt ( start );
+            if ( length == 0 )
+            {
+                break;
+            }
+            this.segment.position ( start + 4 );
+            readRecord ( this.segmentBase + start, this.segmentBase + start + 4 + length );
+            this.segment.position ( start + 4 + length );
+        }
+
+        this.position = this.segmentBase + this.segment.position ();
+    }
+
+    /**
+     * Read a record body
+     * @return the update or <code>null</code> if the record was a definition
+     */
+    private JournalEntry readRecord ( final long offset, final long nextOffset ) throws IOException
+    {
+        final byte type = this.in.readByte ();
+        switch ( type )
+        {
+            case JournalFormat.TYPE_DEFINE:
+            {
+                final int index = (int)VariantCodec.readVarLong ( this.in );
+                final String itemId = this.in.readUTF ();
+                if ( index != this.dictionary.size () )
+                {
+                    throw new IOException ( String.format ( "Invalid item index %d at %d", index, offset ) );
+                }
+                this.dictionary.add ( itemId );
+                return null;
+            }
+            case JournalFormat.TYPE_UPDATE:
+            {
+                final int index = (int)VariantCodec.readVarLong ( this.in );
+                final int flags = this.in.readUnsignedByte ();
+
+                Calendar timestamp = null;
+                if ( ( flags & JournalFormat.FLAG_TIMESTAMP ) != 0 )
+                {
+                    this.lastTimestamp += VariantCodec.readZigZag ( this.in );
+                    timestamp = Calendar.getInstance ();
+                    timestamp.setTimeInMillis ( this.lastTimestamp );
+                }
+                Short quality = null;
+                if ( ( flags & JournalFormat.FLAG_QUALITY ) != 0 )
+                {
+                    quality = this.in.readShort ();
+                }
+                final int errorCode = (int)VariantCodec.readZigZag ( this.in );
+                final JIVariant value = VariantCodec.readValue ( this.in );
+
+                if ( index >= this.dictionary.size () )
+                {
+                    throw new IOException ( String.format ( "Unknown item index %d at %d", index, offset ) );
+                }
+                return new JournalEntry ( offset, nextOffset, this.dictionary.get ( index ), new ItemState ( errorCode, value, timestamp, quality ) );
+            }
+            default:
+                throw new IOException ( String.format ( "Unknown record type %d at %d", type, offset ) );
+        }
+    }
+
+    /**
+     * Acknowledge all updates returned by {@link #next()} so far and store the
+     * position in the journal directory
+     * @throws IOException if the position cannot be stored
+     */
+    public synchronized void acknowledge () throws IOException
+    {
+        acknowledge ( this.position );
+    }
+
+    /**
+     * Acknowledge all updates up to the entry
+     * @param entry the last entry that was forwarded
+     * @throws IOException if the position cannot be stored
+     */
+    public synchronized void acknowledge ( final JournalEntry entry ) throws IOException
+    {
+        acknowledge ( entry.getNextOffset () );
+    }
+
+    private void acknowledge ( final long offset ) throws IOException
+    {
+        if ( offset == this.acknowledgedOffset )
+        {
+            return;
+        }
+        store ( offset );
+    }
+
+    private void store ( final long offset ) throws IOException
+    {
+        final File tmp = new File ( this.file.getParentFile (), this.file.getName () + ".tmp" );
+        final FileOutputStream fos = new FileOutputStream ( tmp );
+        try
+        {
+            final DataOutputStream out = new DataOutputStream ( fos );
+            out.writeLong ( offset );
+            out.flush ();
+            fos.getFD ().sync ();
+        }
+        finally
+        {
+            fos.close ();
+        }
+
+        if ( !tmp.renameTo ( this.file ) )
+        {
+            // some platforms do not replace existing files
+            this.file.delete ();
+            if ( !tmp.renameTo ( this.file ) )
+            {
+                throw new IOException ( String.format ( "Unable to store cursor: %s", this.file ) );
+            }
+        }
+
+        this.acknowledgedOffset = offset;
+    }
+
+    /**
+     * Return to the first update that was not acknowledged
+     */
+    public synchronized void rewind ()
+    {
+        this.segment = null;
+        this.position = this.acknowledgedOffset;
+    }
+
+    public synchronized long getPosition ()
+    {
+        return this.position;
+    }
+
+    public synchronized long getAcknowledgedOffset ()
+    {
+        return this.acknowledgedOffset;
+    }
+
+    /**
+     * Get the number of times the cursor had to skip discarded segments
+     * @return the number of skips
+     */
+    public synchronized long getSkipped ()
+    {
+        return this.skipped;
+    }
+
+    /**
+     * Get the distance between the cursor and the end of the journal
+     * @return the number of bytes not yet read
+     */
+    public long getLag ()
+    {
+        return Math.max ( 0, this.journal.getEndOffset () - getPosition () );
+    }
+
+    public synchronized void close ()
+    {
+        this.segment = null;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.journal;
+
+import org.openscada.opc.lib.da.ItemState;
+
+/**
+ * An update read back from a journal
+ */
+public class JournalEntry
+{
+    private final long offset;
+
+    private final long nextOffset;
+
+    private final String itemId;
+
+    private final ItemState itemState;
+
+    public JournalEntry ( final long offset, final long nextOffset, final String itemId, final ItemState itemState )
+    {
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.itemId = itemId;
+        this.itemState = itemState;
+    }
+
+    /**
+     * Get the offset of the entry in the journal
+     * @return the offset of the entry
+     */
+    public long getOffset ()
+    {
+        return this.offset;
+    }
+
+    /**
+     * Get the offset directly following the entry. This is the offset a
+     * cursor stores when the entry is acknowledged.
+     * @return the offset after the entry
+     */
+    public long getNextOffset ()
+    {
+        return this.nextOffset;
+    }
+
+    public String getItemId ()
+    {
+        return this.itemId;
+    }
+
+    public ItemState getItemState ()
+    {
+        return this.itemState;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format ( "%s@%d: %s", this.itemId, this.offset, this.itemState );
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.journal;
+
+/**
+ * The layout of a journal segment.
+ * <br/>
+ * A segment file is named after the offset of its first byte and starts with
+ * the magic number and the format version. It is followed by records, each
+ * consisting of an <code>int</code> length and the record body. A length of
+ * zero marks the end of the segment, since the file is zero filled when it is
+ * created.
+ * <br/>
+ * A define record assigns a segment local index to an item ID. An update record
+ * refers to the item by that index and stores the timestamp as difference to the
+ * timestamp of the previous update in the same segment. Each segment can therefore
+ * be read without looking at the segments before it.
+ */
+final class JournalFormat
+{
+    public static final int MAGIC = 0x4F504A4C;
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 4 + 1;
+
+    public static final byte TYPE_DEFINE = 1;
+
+    public static final byte TYPE_UPDATE = 2;
+
+    public static final int FLAG_TIMESTAMP = 1;
+
+    public static final int FLAG_QUALITY = 2;
+
+    public static final String SEGMENT_SUFFIX = ".journal";
+
+    public static final String CURSOR_SUFFIX = ".cursor";
+
+    private JournalFormat ()
+    {
+    }
+
+    public static String segmentName ( final long base )
+    {
+        return String.format ( "%020d%s", base, SEGMENT_SUFFIX );
+    }
+
+    public static long parseSegmentName ( final String name )
+    {
+        if ( !name.endsWith ( SEGMENT_SUFFIX ) )
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong ( name.substring ( 0, name.length () - SEGMENT_SUFFIX.length () ) );
+        }
+        catch ( final NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.recorder;
+
+import java.io.EOFException;
+
+/**
+ * Reads bits written by a {@link BitOutput}
+ */
+class BitInput
+{
+    private final byte[] buffer;
+
+    private final long limit;
+
+    private long position;
+
+    public BitInput ( final byte[] buffer, final int offset, final int length )
+    {
+        this.buffer = buffer;
+        this.position = (long)offset << 3;
+        this.limit = (long) ( offset + length ) << 3;
+    }
+
+    public boolean readBit () throws EOFException
+    {
+        return readBits ( 1 ) != 0;
+    }
+
+    public long readBits ( int count ) throws EOFException
+    {
+        if ( this.position + count > this.limit )
+        {
+            throw new EOFException ();
+        }
+
+        long value = 0;
+        while ( count > 0 )
+        {
+            final int index = (int) ( this.position >>> 3 );
+            final int available = 8 - (int) ( this.position & 7 );
+            final int n = Math.min ( available, count );
+            final int chunk = ( this.buffer[index] >>> ( available - n ) ) & ( ( 1 << n ) - 1 );
+            value = value << n | chunk;
+            this.position += n;
+            count -= n;
+        }
+        return value;
+    }
+}
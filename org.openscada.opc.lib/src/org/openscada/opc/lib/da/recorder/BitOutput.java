@@ -0,0 +1,92 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.recorder;
+
+import java.util.Arrays;
+
+/**
+ * A growing buffer of bits, written most significant bit first
+ */
+class BitOutput
+{
+    private byte[] buffer;
+
+    private long bitCount;
+
+    public BitOutput ( final int initialSize )
+    {
+        this.buffer = new byte[Math.max ( 1, initialSize )];
+    }
+
+    public void writeBit ( final boolean bit )
+    {
+        writeBits ( bit ? 1 : 0, 1 );
+    }
+
+    /**
+     * Write the lowest bits of a value
+     * @param value the value
+     * @param count the number of bits to write, from 0 to 64
+     */
+    public void writeBits ( final long value, int count )
+    {
+        ensureCapacity ( this.bitCount + count );
+        while ( count > 0 )
+        {
+            final int index = (int) ( this.bitCount >>> 3 );
+            final int free = 8 - (int) ( this.bitCount & 7 );
+            final int n = Math.min ( free, count );
+            final int chunk = (int) ( value >>> ( count - n ) ) & ( ( 1 << n ) - 1 );
+            this.buffer[index] |= chunk << ( free - n );
+            this.bitCount += n;
+            count -= n;
+        }
+    }
+
+    private void ensureCapacity ( final long bits )
+    {
+        final int bytes = (int) ( ( bits + 7 ) >>> 3 );
+        if ( bytes > this.buffer.length )
+        {
+            this.buffer = Arrays.copyOf ( this.buffer, Math.max ( bytes, this.buffer.length * 2 ) );
+        }
+    }
+
+    public long getBitCount ()
+    {
+        return this.bitCount;
+    }
+
+    public int getByteCount ()
+    {
+        return (int) ( ( this.bitCount + 7 ) >>> 3 );
+    }
+
+    public byte[] getBuffer ()
+    {
+        return this.buffer;
+    }
+
+    public void reset ()
+    {
+        Arrays.fill ( this.buffer, 0, getByteCount (), (byte)0 );
+        this.bitCount = 0;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.recorder;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.jinterop.dcom.core.JIString;
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+import org.openscada.opc.lib.da.ItemState;
+
+/**
+ * Decodes a block written by {@link SeriesEncoder}
+ */
+class SeriesDecoder
+{
+    private final BitInput in;
+
+    private final int count;
+
+    private long lastTimestamp;
+
+    private long lastDelta;
+
+    private long lastBits;
+
+    private int lastLeading = -1;
+
+    private int lastTrailing;
+
+    private long lastStatus;
+
+    private final List<Long> statuses = new ArrayList<Long> ();
+
+    private final List<String> strings = new ArrayList<String> ();
+
+    public SeriesDecoder ( final byte[] data, final int offset, final int length, final long firstTimestamp, final int count )
+    {
+        this.in = new BitInput ( data, offset, length );
+        this.count = count;
+        this.lastTimestamp = firstTimestamp;
+    }
+
+    /**
+     * Decode all samples of the block and add those within the range to the result
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     * @param result the collection to add the samples to
+     * @throws IOException if the block is malformed
+     */
+    public void decode ( final long from, final long to, final Collection<ItemState> result ) throws IOException
+    {
+        for ( int i = 0; i < this.count; i++ )
+        {
+            if ( i > 0 )
+            {
+                this.lastDelta += readDeltaOfDelta ();
+                this.lastTimestamp += this.lastDelta;
+            }
+
+            if ( this.in.readBit () )
+            {
+                this.lastStatus = readStatus ();
+            }
+
+            final byte tag = SeriesFormat.getTag ( this.lastStatus );
+            final JIVariant value = readValue ( tag, SeriesFormat.getStringType ( this.lastStatus ) );
+
+            if ( this.lastTimestamp >= from && this.lastTimestamp < to )
+            {
+                final Calendar timestamp = Calendar.getInstance ();
+                timestamp.setTimeInMillis ( this.lastTimestamp );
+                result.add ( new ItemState ( SeriesFormat.getErrorCode ( this.lastStatus ), value, timestamp, SeriesFormat.getQuality ( this.lastStatus ) ) );
+            }
+        }
+    }
+
+    private long readDeltaOfDelta () throws IOException
+    {
+        final long zigZag;
+        if ( !this.in.readBit () )
+        {
+            return 0;
+        }
+        else if ( !this.in.readBit () )
+        {
+            zigZag = this.in.readBits ( 7 );
+        }
+        else if ( !this.in.readBit () )
+        {
+            zigZag = this.in.readBits ( 9 );
+        }
+        else if ( !this.in.readBit () )
+        {
+            zigZag = this.in.readBits ( 12 );
+        }
+        else
+        {
+            zigZag = this.in.readBits ( 64 );
+        }
+        return ( zigZag >>> 1 ) ^ - ( zigZag & 1 );
+    }
+
+    private long readStatus () throws IOException
+    {
+        final int index = (int)this.in.readBits ( SeriesFormat.bitsFor ( this.statuses.size () ) );
+        if ( index < this.statuses.size () )
+        {
+            return this.statuses.get ( index );
+        }
+
+        final long status = this.in.readBits ( 64 );
+        this.statuses.add ( status );
+        return status;
+    }
+
+    private JIVariant readValue ( final byte tag, final int stringType ) throws IOException
+    {
+        switch ( tag )
+        {
+            case SeriesFormat.TAG_EMPTY:
+                return JIVariant.EMPTY ();
+            case SeriesFormat.TAG_NULL:
+                return JIVariant.NULL ();
+            case SeriesFormat.TAG_STRING:
+                return JIVariant.makeVariant ( new JIString ( readString (), stringType ) );
+            case SeriesFormat.TAG_OTHER:
+                return VariantCodec.readValue ( new DataInputStream ( new ByteArrayInputStream ( readBytes () ) ) );
+        }
+
+        final long bits = readXor ();
+        final double number = Double.longBitsToDouble ( bits );
+        switch ( tag )
+        {
+            case SeriesFormat.TAG_BOOLEAN:
+                return JIVariant.makeVariant ( number != 0.0 );
+            case SeriesFormat.TAG_BYTE:
+                return JIVariant.makeVariant ( (byte)number );
+            case SeriesFormat.TAG_CHARACTER:
+                return JIVariant.makeVariant ( (char)number );
+            case SeriesFormat.TAG_SHORT:
+                return JIVariant.makeVariant ( (short)number );
+            case SeriesFormat.TAG_INTEGER:
+                return JIVariant.makeVariant ( (int)number );
+            case SeriesFormat.TAG_LONG:
+                return JIVariant.makeVariant ( bits );
+            case SeriesFormat.TAG_FLOAT:
+                return JIVariant.makeVariant ( (float)number );
+            case SeriesFormat.TAG_DOUBLE:
+                return JIVariant.makeVariant ( number );
+            case SeriesFormat.TAG_DATE:
+                return JIVariant.makeVariant ( new Date ( bits ) );
+            default:
+                throw new IOException ( String.format ( "Invalid value tag: %s", tag ) );
+        }
+    }
+
+    private long readXor () throws IOException
+    {
+        if ( !this.in.readBit () )
+        {
+            return this.lastBits;
+        }
+
+        if ( !this.in.readBit () )
+        {
+            this.lastBits ^= this.in.readBits ( 64 - this.lastLeading - this.lastTrailing ) << this.lastTrailing;
+        }
+        else
+        {
+            final int leading = (int)this.in.readBits ( 6 );
+            final int length = (int)this.in.readBits ( 6 ) + 1;
+            this.lastLeading = leading;
+            this.lastTrailing = 64 - leading - length;
+            this.lastBits ^= this.in.readBits ( length ) << this.lastTrailing;
+        }
+        return this.lastBits;
+    }
+
+    private String readString () throws IOException
+    {
+        final int index = (int)this.in.readBits ( SeriesFormat.bitsFor ( this.strings.size () ) );
+        if ( index < this.strings.size () )
+        {
+            return this.strings.get ( index );
+        }
+
+        final String string = new String ( readBytes (), "UTF-8" );
+        this.strings.add ( string );
+        return string;
+    }
+
+    private byte[] readBytes () throws IOException
+    {
+        final byte[] data = new byte[(int)this.in.readBits ( 32 )];
+        for ( int i = 0; i < data.length; i++ )
+        {
+            data[i] = (byte)this.in.readBits ( 8 );
+        }
+        return data;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.recorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIString;
+import org.jinterop.dcom.core.JIVariant;
+import org.openscada.opc.dcom.common.impl.VariantCodec;
+
+/**
+ * Encodes the samples of one item into a block.
+ * <br/>
+ * Each sample consists of the timestamp, the status and the value:
+ * <ul>
+ * <li>The timestamp is stored as difference between the current and the previous delta.
+ * A regular interval therefore takes a single bit.</li>
+ * <li>The status combines the quality, the error code and the value type. It is either
+ * the same as for the previous sample or an index into the status dictionary of the block.</li>
+ * <li>Numbers, dates and booleans are stored as XOR to the bits of the previous value, only the
+ * bits between the leading and trailing zeros are written. Strings are stored as index into
+ * the string dictionary of the block. All other values are stored using the {@link VariantCodec}.</li>
+ * </ul>
+ */
+class SeriesEncoder
+{
+    private final String itemId;
+
+    private final BitOutput out = new BitOutput ( 1024 );
+
+    private long partition;
+
+    private int count;
+
+    private long firstTimestamp;
+
+    private long minTimestamp;
+
+    private long maxTimestamp;
+
+    private long lastTimestamp;
+
+    private long lastDelta;
+
+    private long lastBits;
+
+    private int lastLeading;
+
+    private int lastTrailing;
+
+    private long lastStatus;
+
+    private long[] statuses = new long[8];
+
+    private int statusCount;
+
+    private final Map<String, Integer> strings = new HashMap<String, Integer> ();
+
+    private final ByteArrayOutputStream other = new ByteArrayOutputStream ();
+
+    private final DataOutputStream otherOut = new DataOutputStream ( this.other );
+
+    public SeriesEncoder ( final String itemId, final long partition )
+    {
+        this.itemId = itemId;
+        reset ( partition );
+    }
+
+    public void reset ( final long partition )
+    {
+        this.partition = partition;
+        this.out.reset ();
+        this.count = 0;
+        this.lastDelta = 0;
+        this.lastBits = 0;
+        this.lastLeading = -1;
+        this.lastTrailing = 0;
+        this.statusCount = 0;
+        this.strings.clear ();
+    }
+
+    public String getItemId ()
+    {
+        return this.itemId;
+    }
+
+    public long getPartition ()
+    {
+        return this.partition;
+    }
+
+    public int getCount ()
+    {
+        return this.count;
+    }
+
+    public void add ( final long timestamp, final Short quality, final int errorCode, final JIVariant value ) throws IOException
+    {
+        // classify the value
+
+        byte tag;
+        int stringType = 0;
+        long bits = 0;
+        String string = null;
+
+        try
+        {
+            final int type = value != null ? value.getType () : JIVariant.VT_EMPTY;
+            final Object object = type == JIVariant.VT_EMPTY || type == JIVariant.VT_NULL || value.isArray () ? null : value.getObject ();
+
+            if ( type == JIVariant.VT_EMPTY )
+            {
+                tag = SeriesFormat.TAG_EMPTY;
+            }
+            else if ( type == JIVariant.VT_NULL )
+            {
+                tag = SeriesFormat.TAG_NULL;
+            }
+            else if ( object instanceof Boolean )
+            {
+                tag = SeriesFormat.TAG_BOOLEAN;
+                bits = Double.doubleToRawLongBits ( (Boolean)object ? 1.0 : 0.0 );
+            }
+            else if ( object instanceof Character )
+            {
+                tag = SeriesFormat.TAG_CHARACTER;
+                bits = Double.doubleToRawLongBits ( (Character)object );
+            }
+            else if ( object instanceof Long )
+            {
+                tag = SeriesFormat.TAG_LONG;
+                bits = (Long)object;
+            }
+            else if ( object instanceof Byte || object instanceof Short || object instanceof Integer || object instanceof Float || object instanceof Double )
+            {
+                tag = SeriesFormat.tagOf ( object );
+                bits = Double.doubleToRawLongBits ( ( (Number)object ).doubleValue () );
+            }
+            else if ( object instanceof Date )
+            {
+                tag = SeriesFormat.TAG_DATE;
+                bits = ( (Date)object ).getTime ();
+            }
+            else if ( object instanceof JIString && ( (JIString)object ).getString () != null )
+            {
+                tag = SeriesFormat.TAG_STRING;
+                string = ( (JIString)object ).getString ();
+                stringType = ( (JIString)object ).getType ();
+            }
+            else
+            {
+                tag = SeriesFormat.TAG_OTHER;
+            }
+        }
+        catch ( final JIException e )
+        {
+            tag = SeriesFormat.TAG_EMPTY;
+        }
+
+        // timestamp
+
+        if ( this.count == 0 )
+        {
+            this.firstTimestamp = this.minTimestamp = this.maxTimestamp = timestamp;
+        }
+        else
+        {
+            final long delta = timestamp - this.lastTimestamp;
+            writeDeltaOfDelta ( delta - this.lastDelta );
+            this.lastDelta = delta;
+            this.minTimestamp = Math.min ( this.minTimestamp, timestamp );
+            this.maxTimestamp = Math.max ( this.maxTimestamp, timestamp );
+        }
+        this.lastTimestamp = timestamp;
+
+        // status
+
+        final long status = SeriesFormat.makeStatus ( quality, errorCode, tag, stringType );
+        if ( this.count > 0 && status == this.lastStatus )
+        {
+            this.out.writeBit ( false );
+        }
+        else
+        {
+            this.out.writeBit ( true );
+            writeStatus ( status );
+            this.lastStatus = status;
+        }
+
+        // value
+
+        switch ( tag )
+        {
+            case SeriesFormat.TAG_EMPTY:
+            case SeriesFormat.TAG_NULL:
+                break;
+            case SeriesFormat.TAG_STRING:
+                writeString ( string );
+                break;
+            case SeriesFormat.TAG_OTHER:
+                writeOther ( value );
+                break;
+            default:
+                writeXor ( bits );
+                break;
+        }
+
+        this.count++;
+    }
+
+    private void writeDeltaOfDelta ( final long value )
+    {
+        if ( value == 0 )
+        {
+            this.out.writeBits ( 0, 1 );
+            return;
+        }
+
+        final long zigZag = ( value << 1 ) ^ ( value >> 63 );
+        if ( zigZag < ( 1 << 7 ) )
+        {
+            this.out.writeBits ( 2, 2 );
+            this.out.writeBits ( zigZag, 7 );
+        }
+        else if ( zigZag < ( 1 << 9 ) )
+        {
+            this.out.writeBits ( 6, 3 );
+            this.out.writeBits ( zigZag, 9 );
+        }
+        else if ( zigZag < ( 1 << 12 ) )
+        {
+            this.out.writeBits ( 14, 4 );
+            this.out.writeBits ( zigZag, 12 );
+        }
+        else
+        {
+            this.out.writeBits ( 15, 4 );
+            this.out.writeBits ( zigZag, 64 );
+        }
+    }
+
+    private void writeStatus ( final long status )
+    {
+        int index = 0;
+        while ( index < this.statusCount && this.statuses[index] != status )
+        {
+            index++;
+        }
+
+        this.out.writeBits ( index, SeriesFormat.bitsFor ( this.statusCount ) );
+        if ( index == this.statusCount )
+        {
+            this.out.writeBits ( status, 64 );
+            if ( this.statusCount == this.statuses.length )
+            {
+                final long[] statuses = new long[this.statusCount * 2];
+                System.arraycopy ( this.statuses, 0, statuses, 0, this.statusCount );
+                this.statuses = statuses;
+            }
+            this.statuses[this.statusCount++] = status;
+        }
+    }
+
+    private void writeXor ( final long bits )
+    {
+        final long xor = bits ^ this.lastBits;
+        this.lastBits = bits;
+
+        if ( xor == 0 )
+        {
+            this.out.writeBit ( false );
+            return;
+        }
+        this.out.writeBit ( true );
+
+        final int leading = Long.numberOfLeadingZeros ( xor );
+        final int trailing = Long.numberOfTrailingZeros ( xor );
+
+        if ( this.lastLeading >= 0 && leading >= this.lastLeading && trailing >= this.lastTrailing )
+        {
+            // fits into the window of the previous value
+            this.out.writeBit ( false );
+            this.out.writeBits ( xor >>> this.lastTrailing, 64 - this.lastLeading - this.lastTrailing );
+        }
+        else
+        {
+            final int length = 64 - leading - trailing;
+            this.out.writeBit ( true );
+            this.out.writeBits ( leading, 6 );
+            this.out.writeBits ( length - 1, 6 );
+            this.out.writeBits ( xor >>> trailing, length );
+            this.lastLeading = leading;
+            this.lastTrailing = trailing;
+        }
+    }
+
+    private void writeString ( final String string ) throws IOException
+    {
+        final Integer index = this.strings.get ( string );
+        final int size = this.strings.size ();
+        this.out.writeBits ( index != null ? index : size, SeriesFormat.bitsFor ( size ) );
+        if ( index == null )
+        {
+            writeBytes ( string.getBytes ( "UTF-8" ) );
+            this.strings.put ( string, size );
+        }
+    }
+
+    private void writeOther ( final JIVariant value ) throws IOException
+    {
+        this.other.reset ();
+        VariantCodec.writeValue ( this.otherOut, value );
+        writeBytes ( this.other.toByteArray () );
+    }
+
+    private void writeBytes ( final byte[] data )
+    {
+        this.out.writeBits ( data.length, 32 );
+        for ( final byte b : data )
+        {
+            this.out.writeBits ( b, 8 );
+        }
+    }
+
+    /**
+     * Write the block
+     * @param out the output to write the block to
+     */
+    public void writeTo ( final DataOutput out ) throws IOException
+    {
+        out.writeUTF ( this.itemId );
+        out.writeLong ( this.minTimestamp );
+        out.writeLong ( this.maxTimestamp );
+        out.writeLong ( this.firstTimestamp );
+        out.writeInt ( this.count );
+        out.writeInt ( this.out.getByteCount () );
+        out.write ( this.out.getBuffer (), 0, this.out.getByteCount () );
+    }
+}
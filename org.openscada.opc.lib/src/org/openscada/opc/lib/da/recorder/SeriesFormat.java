@@ -0,0 +1,145 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.recorder;
+
+/**
+ * The layout of the series files.
+ * <br/>
+ * A series file holds the samples of all items for one partition of time and is named
+ * after the start of the partition. It is a sequence of blocks, each consisting of
+ * an <code>int</code> length and the block written by {@link SeriesEncoder#writeTo(java.io.DataOutput)}.
+ */
+final class SeriesFormat
+{
+    public static final byte TAG_EMPTY = 0;
+
+    public static final byte TAG_NULL = 1;
+
+    public static final byte TAG_BOOLEAN = 2;
+
+    public static final byte TAG_BYTE = 3;
+
+    public static final byte TAG_CHARACTER = 4;
+
+    public static final byte TAG_SHORT = 5;
+
+    public static final byte TAG_INTEGER = 6;
+
+    public static final byte TAG_LONG = 7;
+
+    public static final byte TAG_FLOAT = 8;
+
+    public static final byte TAG_DOUBLE = 9;
+
+    public static final byte TAG_STRING = 10;
+
+    public static final byte TAG_DATE = 11;
+
+    public static final byte TAG_OTHER = 12;
+
+    public static final String SUFFIX = ".series";
+
+    private SeriesFormat ()
+    {
+    }
+
+    public static byte tagOf ( final Object number )
+    {
+        if ( number instanceof Byte )
+        {
+            return TAG_BYTE;
+        }
+        else if ( number instanceof Short )
+        {
+            return TAG_SHORT;
+        }
+        else if ( number instanceof Integer )
+        {
+            return TAG_INTEGER;
+        }
+        else if ( number instanceof Float )
+        {
+            return TAG_FLOAT;
+        }
+        return TAG_DOUBLE;
+    }
+
+    /**
+     * Pack the status of a sample into a number
+     */
+    public static long makeStatus ( final Short quality, final int errorCode, final byte tag, final int stringType )
+    {
+        long status = errorCode & 0xFFFFFFFFL;
+        if ( quality != null )
+        {
+            status |= ( quality & 0xFFFFL ) << 32 | 1L << 48;
+        }
+        return status | ( tag & 0xFL ) << 49 | ( stringType & 0xFFL ) << 53;
+    }
+
+    public static Short getQuality ( final long status )
+    {
+        return ( status & 1L << 48 ) != 0 ? (short) ( status >>> 32 ) : null;
+    }
+
+    public static int getErrorCode ( final long status )
+    {
+        return (int)status;
+    }
+
+    public static byte getTag ( final long status )
+    {
+        return (byte) ( status >>> 49 & 0xF );
+    }
+
+    public static int getStringType ( final long status )
+    {
+        return (int) ( status >>> 53 & 0xFF );
+    }
+
+    /**
+     * Get the number of bits required to store the numbers from zero up to and including <code>value</code>
+     */
+    public static int bitsFor ( final int value )
+    {
+        return 32 - Integer.numberOfLeadingZeros ( value );
+    }
+
+    public static String fileName ( final long partition )
+    {
+        return String.format ( "%020d%s", partition, SUFFIX );
+    }
+
+    public static long parseFileName ( final String name )
+    {
+        if ( !name.endsWith ( SUFFIX ) )
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong ( name.substring ( 0, name.length () - SUFFIX.length () ) );
+        }
+        catch ( final NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+}
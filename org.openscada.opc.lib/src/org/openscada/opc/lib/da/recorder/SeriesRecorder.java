@@ -0,0 +1,449 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.opc.lib.da.recorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openscada.opc.lib.da.AccessBase;
+import org.openscada.opc.lib.da.Item;
+import org.openscada.opc.lib.da.ItemState;
+import org.openscada.opc.lib.da.UpdateJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the values of items into compressed, time partitioned series files.
+ * <br/>
+ * Set the recorder on an {@link AccessBase} using {@link AccessBase#setJournal(UpdateJournal)}
+ * and it will record every update that is delivered to the data callbacks. The samples of
+ * each item are collected in memory and written as block once the block is full, the sample falls into another
+ * partition or {@link #flush()} is called. See {@link SeriesEncoder} for the encoding of the samples.
+ * Samples without a timestamp are recorded with the local time.
+ * <br/>
+ * Recorded values can be read back using {@link #query(String, long, long)}, which includes
+ * the samples that are not yet written.
+ * <br/>
+ * The partition period and the number of samples per block default to one hour and 1024 and can be changed by the
+ * system properties <code>openscada.opc.recorder.partition-period</code> and <code>openscada.opc.recorder.block-size</code>.
+ * The partition period must not be changed for an existing directory.
+ */
+public class SeriesRecorder implements UpdateJournal, Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger ( SeriesRecorder.class );
+
+    public static final long DEFAULT_PARTITION_PERIOD = Long.getLong ( "openscada.opc.recorder.partition-period", 60 * 60 * 1000 );
+
+    public static final int DEFAULT_BLOCK_SIZE = Integer.getInteger ( "openscada.opc.recorder.block-size", 1024 );
+
+    private final File directory;
+
+    private final long partitionPeriod;
+
+    private final int blockSize;
+
+    private final Map<String, SeriesEncoder> encoders = new HashMap<String, SeriesEncoder> ();
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream ( 4096 );
+
+    private final DataOutputStream blockOut = new DataOutputStream ( this.block );
+
+    private long currentPartition = Long.MIN_VALUE;
+
+    private DataOutputStream current;
+
+    private boolean closed;
+
+    private long samples;
+
+    private long blocks;
+
+    private long bytesWritten;
+
+    private long failures;
+
+    public SeriesRecorder ( final File directory ) throws IOException
+    {
+        this ( directory, DEFAULT_PARTITION_PERIOD, DEFAULT_BLOCK_SIZE );
+    }
+
+    public SeriesRecorder ( final File directory, final long partitionPeriod, final int blockSize ) throws IOException
+    {
+        if ( partitionPeriod <= 0 )
+        {
+            throw new IllegalArgumentException ( "Partition period must be positive" );
+        }
+        if ( blockSize <= 0 )
+        {
+            throw new IllegalArgumentException ( "Block size must be positive" );
+        }
+        if ( !directory.isDirectory () && !directory.mkdirs () )
+        {
+            throw new IOException ( String.format ( "Unable to create recorder directory: %s", directory ) );
+        }
+
+        this.directory = directory;
+        this.partitionPeriod = partitionPeriod;
+        this.blockSize = blockSize;
+    }
+
+    public File getDirectory ()
+    {
+        return this.directory;
+    }
+
+    /**
+     * Record an update. Errors are logged and counted, but not thrown.
+     */
+    public synchronized void append ( final Item item, final ItemState itemState )
+    {
+        if ( this.closed )
+        {
+            this.failures++;
+            return;
+        }
+
+        final long timestamp = itemState.getTimestamp () != null ? itemState.getTimestamp ().getTimeInMillis () : System.currentTimeMillis ();
+        final long partition = partitionOf ( timestamp );
+
+        try
+        {
+            SeriesEncoder encoder = this.encoders.get ( item.getId () );
+            if ( encoder == null )
+            {
+                encoder = new SeriesEncoder ( item.getId (), partition );
+                this.encoders.put ( item.getId (), encoder );
+            }
+            else if ( encoder.getPartition () != partition )
+            {
+                writeBlock ( encoder );
+                encoder.reset ( partition );
+            }
+
+            encoder.add ( timestamp, itemState.getQuality (), itemState.getErrorCode (), itemState.getValue () );
+            this.samples++;
+
+            if ( encoder.getCount () >= this.blockSize )
+            {
+                writeBlock ( encoder );
+                encoder.reset ( partition );
+            }
+        }
+        catch ( final IOException e )
+        {
+            this.failures++;
+            logger.warn ( "Failed to record update", e );
+        }
+    }
+
+    private long partitionOf ( final long timestamp )
+    {
+        final long offset = timestamp % this.partitionPeriod;
+        return timestamp - ( offset < 0 ? offset + this.partitionPeriod : offset );
+    }
+
+    private void writeBlock ( final SeriesEncoder encoder ) throws IOException
+    {
+        if ( encoder.getCount () == 0 )
+        {
+            return;
+        }
+
+        this.block.reset ();
+        encoder.writeTo ( this.blockOut );
+
+        final long partition = encoder.getPartition ();
+        if ( partition >= this.currentPartition )
+        {
+            if ( partition > this.currentPartition )
+            {
+                closeCurrent ();
+                this.current = openPartition ( partition );
+                this.currentPartition = partition;
+            }
+            writeBlock ( this.current );
+        }
+        else
+        {
+            // late samples for an older partition
+            final DataOutputStream out = openPartition ( partition );
+            try
+            {
+                writeBlock ( out );
+            }
+            finally
+            {
+                out.close ();
+            }
+        }
+
+        this.blocks++;
+        this.bytesWritten += 4 + this.block.size ();
+    }
+
+    private void writeBlock ( final DataOutputStream out ) throws IOException
+    {
+        out.writeInt ( this.block.size () );
+        this.block.writeTo ( out );
+    }
+
+    private DataOutputStream openPartition ( final long partition ) throws IOException
+    {
+        return new DataOutputStream ( new BufferedOutputStream ( new FileOutputStream ( new File ( this.directory, SeriesFormat.fileName ( partition ) ), true ), 64 * 1024 ) );
+    }
+
+    private void closeCurrent () throws IOException
+    {
+        if ( this.current != null )
+        {
+            this.current.close ();
+            this.current = null;
+        }
+    }
+
+    /**
+     * Write all collected samples to the series files
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush () throws IOException
+    {
+        if ( this.closed )
+        {
+            return;
+        }
+
+        for ( final SeriesEncoder encoder : this.encoders.values () )
+        {
+            writeBlock ( encoder );
+            encoder.reset ( encoder.getPartition () );
+        }
+        if ( this.current != null )
+        {
+            this.current.flush ();
+        }
+    }
+
+    public synchronized void close () throws IOException
+    {
+        if ( this.closed )
+        {
+            return;
+        }
+
+        try
+        {
+            flush ();
+            closeCurrent ();
+        }
+        finally
+        {
+            this.encoders.clear ();
+            this.closed = true;
+        }
+    }
+
+    /**
+     * Get the recorded samples of an item
+     * @param itemId the item ID
+     * @param from the start of the time range, inclusive
+     * @param to the end of the time range, exclusive
+     * @return the samples in the time range, ordered by timestamp
+     * @throws IOException if the series files cannot be read
+     */
+    public List<ItemState> query ( final String itemId, final long from, final long to ) throws IOException
+    {
+        final List<ItemState> result = new ArrayList<ItemState> ();
+
+        final List<File> files;
+        final long[] lengths;
+        final byte[] pending;
+        synchronized ( this )
+        {
+            if ( this.current != null )
+            {
+                this.current.flush ();
+            }
+
+            // capture the file lengths together with the pending samples, blocks written later must not be read
+            files = findFiles ( from, to );
+            lengths = new long[files.size ()];
+            for ( int i = 0; i < lengths.length; i++ )
+            {
+                lengths[i] = files.get ( i ).length ();
+            }
+
+            final SeriesEncoder encoder = this.encoders.get ( itemId );
+            if ( encoder != null && encoder.getCount () > 0 )
+            {
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream ();
+                encoder.writeTo ( new DataOutputStream ( bos ) );
+                pending = bos.toByteArray ();
+            }
+            else
+            {
+                pending = null;
+            }
+        }
+
+        for ( int i = 0; i < lengths.length; i++ )
+        {
+            readFile ( files.get ( i ), lengths[i], itemId, from, to, result );
+        }
+        if ( pending != null )
+        {
+            readBlock ( new DataInputStream ( new ByteArrayInputStream ( pending ) ), itemId, from, to, result );
+        }
+
+        Collections.sort ( result, new Comparator<ItemState> () {
+            public int compare ( final ItemState o1, final ItemState o2 )
+            {
+                return o1.getTimestamp ().compareTo ( o2.getTimestamp () );
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * Get the series files which may contain samples of the time range
+     */
+    private List<File> findFiles ( final long from, final long to )
+    {
+        final TreeMap<Long, File> files = new TreeMap<Long, File> ();
+        final File[] list = this.directory.listFiles ();
+        if ( list != null )
+        {
+            for ( final File file : list )
+            {
+                final long partition = SeriesFormat.parseFileName ( file.getName () );
+                if ( partition >= 0 && partition < to && partition + this.partitionPeriod > from )
+                {
+                    files.put ( partition, file );
+                }
+            }
+        }
+        return new ArrayList<File> ( files.values () );
+    }
+
+    /**
+     * Read the blocks of a file up to the provided length. The file may grow while it is read.
+     */
+    private void readFile ( final File file, final long fileLength, final String itemId, final long from, final long to, final List<ItemState> result ) throws IOException
+    {
+        long remaining = fileLength;
+
+        final DataInputStream in = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( file ), 64 * 1024 ) );
+        try
+        {
+            while ( remaining >= 4 )
+            {
+                final int length = in.readInt ();
+                remaining -= 4;
+                if ( length > remaining )
+                {
+                    break;
+                }
+                remaining -= length;
+                readBlock ( in, itemId, from, to, result );
+            }
+        }
+        catch ( final EOFException e )
+        {
+            logger.info ( "Series file is truncated: {}", file );
+        }
+        finally
+        {
+            in.close ();
+        }
+    }
+
+    private void readBlock ( final DataInputStream in, final String itemId, final long from, final long to, final List<ItemState> result ) throws IOException
+    {
+        final String blockItemId = in.readUTF ();
+        final long minTimestamp = in.readLong ();
+        final long maxTimestamp = in.readLong ();
+        final long firstTimestamp = in.readLong ();
+        final int count = in.readInt ();
+        final int length = in.readInt ();
+
+        if ( !blockItemId.equals ( itemId ) || maxTimestamp < from || minTimestamp >= to )
+        {
+            skipFully ( in, length );
+            return;
+        }
+
+        final byte[] data = new byte[length];
+        in.readFully ( data );
+        new SeriesDecoder ( data, 0, length, firstTimestamp, count ).decode ( from, to, result );
+    }
+
+    private static void skipFully ( final DataInputStream in, int length ) throws IOException
+    {
+        while ( length > 0 )
+        {
+            final int skipped = in.skipBytes ( length );
+            if ( skipped <= 0 )
+            {
+                throw new EOFException ();
+            }
+            length -= skipped;
+        }
+    }
+
+    public synchronized long getSamples ()
+    {
+        return this.samples;
+    }
+
+    public synchronized long getBlocks ()
+    {
+        return this.blocks;
+    }
+
+    /**
+     * Get the number of bytes written to the series files
+     * @return the number of bytes written
+     */
+    public synchronized long getBytesWritten ()
+    {
+        return this.bytesWritten;
+    }
+
+    public synchronized long getFailures ()
+    {
+        return this.failures;
+    }
+}